@@ -0,0 +1,68 @@
+package com.xmldatamodifier;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Sends command line arguments to a {@link ConversionServer} running on the same machine and prints its response.
+ * The token of the server is read from its token file, so only the user running the server can send jobs.
+ */
+public class ConversionClient {
+
+    static final String BEARER_PREFIX = "Bearer ";
+
+    private final Gson gson = new Gson();
+    private final URL url;
+    private final String token;
+
+    public ConversionClient(int port) throws IOException {
+        this(port, ConversionServer.DEFAULT_TOKEN_DIRECTORY);
+    }
+
+    /**
+     * @param tokenDirectory directory where the server wrote its token
+     */
+    public ConversionClient(int port, Path tokenDirectory) throws IOException {
+        this.url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, ConversionServer.CONVERT_PATH);
+        try {
+            this.token = new String(Files.readAllBytes(ConversionServer.tokenFile(tokenDirectory, port)), StandardCharsets.US_ASCII).trim();
+        } catch (NoSuchFileException e) {
+            throw new IOException("No conversion server of this user is running on port " + port, e);
+        }
+    }
+
+    /**
+     * Runs a job on the server, and returns the exit code the command line would have returned.
+     */
+    public int execute(List<String> arguments, PrintStream out) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        connection.setRequestProperty("Authorization", BEARER_PREFIX + token);
+        try (Writer writer = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)) {
+            gson.toJson(arguments, writer);
+        }
+
+        int status = connection.getResponseCode();
+        try (InputStream response = status == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream()) {
+            if (response != null) {
+                ByteStreams.copy(response, out);
+            }
+        } finally {
+            connection.disconnect();
+        }
+        out.flush();
+        return status == HttpURLConnection.HTTP_OK ? 0 : -1;
+    }
+}
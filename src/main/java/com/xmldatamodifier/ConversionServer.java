@@ -0,0 +1,186 @@
+package com.xmldatamodifier;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.xmldatamodifier.input.JsonPropertiesReader;
+import com.xmldatamodifier.input.RuleSetCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Long running server accepting conversion jobs on the loopback interface, so that the JVM stays warm and rule sets
+ * are loaded only once. A job is a POST to {@link #CONVERT_PATH} with the command line arguments as a json array;
+ * the response holds what the command line would have printed. Jobs run concurrently on a fixed thread pool.
+ * <p>
+ * Jobs read and write files as the user running the server, so every request must carry the token generated when the
+ * server starts, as a bearer token. The token is written to a file of the token directory only its owner can read,
+ * where {@link ConversionClient} picks it up: other local users, and web pages reaching the loopback interface
+ * through a browser, can't submit jobs.
+ */
+public class ConversionServer {
+
+    public static final String CONVERT_PATH = "/convert";
+    public static final Path DEFAULT_TOKEN_DIRECTORY = Paths.get(System.getProperty("user.home"), ".xdm-server");
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final Logger log = LoggerFactory.getLogger(ConversionServer.class);
+
+    private final Gson gson = new Gson();
+    private final RuleSetCache ruleSetCache = new RuleSetCache(new JsonPropertiesReader());
+    private final ExecutorService executor;
+    private final HttpServer server;
+    private final Path tokenDirectory;
+    private final byte[] token;
+
+    /**
+     * @param port    port to listen on, 0 to pick a free one
+     * @param threads number of jobs which can run at the same time
+     */
+    public ConversionServer(int port, int threads) throws IOException {
+        this(port, threads, DEFAULT_TOKEN_DIRECTORY);
+    }
+
+    /**
+     * @param tokenDirectory directory where the token of the server is written
+     */
+    public ConversionServer(int port, int threads, Path tokenDirectory) throws IOException {
+        checkArgument(threads > 0, "Number of threads must be positive");
+        this.tokenDirectory = tokenDirectory;
+        byte[] randomBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(randomBytes);
+        this.token = BaseEncoding.base16().lowerCase().encode(randomBytes).getBytes(StandardCharsets.US_ASCII);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("conversion-job-%d").build());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(CONVERT_PATH, new ConvertHandler());
+    }
+
+    public void start() throws IOException {
+        writeToken();
+        server.start();
+        log.info("Conversion server listening on port {}, token in {}", getPort(), tokenFile(tokenDirectory, getPort()));
+    }
+
+    public void stop() throws IOException {
+        server.stop(0);
+        executor.shutdown();
+        Files.deleteIfExists(tokenFile(tokenDirectory, getPort()));
+    }
+
+    /**
+     * Returns the file holding the token of the server listening on the given port.
+     */
+    public static Path tokenFile(Path tokenDirectory, int port) {
+        return tokenDirectory.resolve(port + ".token");
+    }
+
+    /**
+     * Writes the token to a new file readable by its owner only, on file systems supporting POSIX permissions.
+     */
+    private void writeToken() throws IOException {
+        boolean posix = tokenDirectory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(tokenDirectory)) {
+            if (posix) {
+                Files.createDirectories(tokenDirectory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(tokenDirectory);
+            }
+        }
+        Path tokenFile = tokenFile(tokenDirectory, getPort());
+        Files.deleteIfExists(tokenFile);
+        try {
+            if (posix) {
+                Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } else {
+                Files.createFile(tokenFile);
+            }
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Token file created concurrently: " + tokenFile, e);
+        }
+        Files.write(tokenFile, token);
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith(ConversionClient.BEARER_PREFIX) && MessageDigest.isEqual(token,
+                authorization.substring(ConversionClient.BEARER_PREFIX.length()).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private class ConvertHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!isAuthorized(exchange)) {
+                    log.warn("Refused unauthorized request from {}", exchange.getRemoteAddress());
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAUTHORIZED, -1);
+                    return;
+                }
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+                    return;
+                }
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8.name());
+                int status = execute(exchange.getRequestBody(), out);
+
+                byte[] response = output.toByteArray();
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                exchange.sendResponseHeaders(status, response.length);
+                exchange.getResponseBody().write(response);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private int execute(InputStream requestBody, PrintStream out) {
+            try {
+                String[] arguments = gson.fromJson(new InputStreamReader(requestBody, StandardCharsets.UTF_8), String[].class);
+                checkArgument(arguments != null, "Missing arguments");
+                Map<Main.Argument, String> argumentsMap = Main.parseArguments(Arrays.asList(arguments));
+                checkArgument(!argumentsMap.containsKey(Main.Argument.SERVER) && !argumentsMap.containsKey(Main.Argument.REMOTE),
+                        "Server arguments cannot be sent to the server");
+                Main.execute(argumentsMap, ruleSetCache, out, null);
+                return HttpURLConnection.HTTP_OK;
+            } catch (IllegalArgumentException | NullPointerException | JsonParseException e) {
+                out.println(e.getMessage());
+                return HttpURLConnection.HTTP_BAD_REQUEST;
+            } catch (Exception e) {
+                log.error("Error executing conversion", e);
+                out.println("Error executing conversion: " + e);
+                return HttpURLConnection.HTTP_INTERNAL_ERROR;
+            }
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.xmldatamodifier;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
+import com.xmldatamodifier.input.RuleSetCache;
 import com.xmldatamodifier.xml.XMLConverter;
+import com.xmldatamodifier.xml.output.OutputFormat;
+import com.xmldatamodifier.xml.output.SplitOptions;
+import com.xmldatamodifier.xml.parsing.CatalogEntityResolver;
+import com.xmldatamodifier.xml.parsing.QuarantinedRecord;
+import com.xmldatamodifier.xml.parsing.SampleOptions;
+import com.xmldatamodifier.xml.validation.SchemaCache;
+import com.xmldatamodifier.xml.validation.ValidationError;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -16,48 +30,243 @@ import static java.util.Objects.requireNonNull;
 
 public class Main {
 
-    public static final String USAGE_STRING = "Usage: \"java -jar <library> -i inputFilePath [-o outputFile] [-p propertyFilePath]\"";
+    public static final String USAGE_STRING = "Usage: \"java -jar <library> -i inputFilePath [-o outputFile] [-p propertyFilePath]"
+            + " [--record recordXPath [--split-records n] [--split-bytes n] [--compress] [--checkpoint-every n] [--resume] [--follow] [--index | [--use-index] [--range from:to] [--shard k/n]] [--sample [records:|bytes:|random:]n]] [--pipelined] [--minify [--preserve-whitespace path1,path2]] [--buffer-limit bytes] [--output-encoding charset] [--output-format xml|jsonl] [--catalog dir] [--no-fetch] [--entity-limit n] [--cache dir] [--schema xsdFile [--fail-on-invalid]] [--time-limit seconds] [--max-output bytes] [--quarantine file] [--audit auditFile] [--analyze] [--remote port]\""
+            + "\nServer usage: \"java -jar <library> --server port [--server-threads n]\"";
+
+    private static final ConcurrentMap<String, CatalogEntityResolver> ENTITY_RESOLVERS = new ConcurrentHashMap<>();
+    private static final SchemaCache SCHEMAS = new SchemaCache();
+    private static final int PRINTED_VALIDATION_ERRORS = 10;
+    private static final int PRINTED_QUARANTINED_RECORDS = 10;
 
     public static void main(String[] args) throws Exception {
         final Timer timer = new Timer();
         try {
             List<String> argumentsList = Arrays.asList(args);
 
-            validateArgument(argumentsList.contains(Argument.INPUT_FILE_PATH.getParam()), "\nWrong arguments.\n\n" + USAGE_STRING);
-
             Map<Argument, String> argumentsMap = parseArguments(argumentsList);
 
-            String inputFile = argumentsMap.get(Argument.INPUT_FILE_PATH);
-            checkNotNull(inputFile, "Input file cannot be null");
-            Path inputFilePath = Paths.get(inputFile);
-            checkArgument(Files.exists(inputFilePath), "Input file doesn't exist");
+            if (argumentsMap.containsKey(Argument.SERVER)) {
+                int threads = argumentsMap.containsKey(Argument.SERVER_THREADS)
+                        ? (int) parseLong(argumentsMap, Argument.SERVER_THREADS)
+                        : Runtime.getRuntime().availableProcessors();
+                new ConversionServer((int) parseLong(argumentsMap, Argument.SERVER), threads).start();
+                return;
+            }
+
+            if (argumentsMap.containsKey(Argument.REMOTE)) {
+                int port = (int) parseLong(argumentsMap, Argument.REMOTE);
+                System.exit(new ConversionClient(port).execute(toRemoteArguments(argumentsMap), System.out));
+            }
+
+            execute(argumentsMap, null, System.out, timer);
+
+        } catch (InvalidArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        } catch (Exception e) {
+            LoggerFactory.getLogger(Main.class).error("Error executing conversion", e);
+            throw e;
+        } finally {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Runs the conversion, or the analysis, described by the given arguments.
+     *
+     * @param ruleSetCache cache of the rule sets, or null to read the configuration file
+     * @param timer        timer used to show progress, or null
+     */
+    static void execute(Map<Argument, String> argumentsMap, RuleSetCache ruleSetCache, PrintStream out, Timer timer) throws Exception {
+        validateArgument(argumentsMap.containsKey(Argument.INPUT_FILE_PATH), "\nWrong arguments.\n\n" + USAGE_STRING);
+
+        String inputFile = argumentsMap.get(Argument.INPUT_FILE_PATH);
+        checkNotNull(inputFile, "Input file cannot be null");
+        Path inputFilePath = Paths.get(inputFile);
+        checkArgument(Files.exists(inputFilePath), "Input file doesn't exist");
 
-            String outputFile = Optional.ofNullable(argumentsMap.get(Argument.OUTPUT_FILE_PATH)).orElse(inputFile + " " + ".converted.xml");
+        String outputFile = outputFile(argumentsMap);
 
-            String configurationFile = Optional.ofNullable(argumentsMap.get(Argument.CONFIGURATION_FILE_PATH)).orElse("config.json");
-            Path configurationFilePath = Paths.get(configurationFile);
+        String configurationFile = configurationFile(argumentsMap);
+        Path configurationFilePath = Paths.get(configurationFile);
 
-            validateArgument(Files.exists(configurationFilePath), "Configuration file not found. Please specify the configuration file location through the \"-c\" param, or place a configuration file in the jar folder.");
+        validateArgument(Files.exists(configurationFilePath), "Configuration file not found. Please specify the configuration file location through the \"-c\" param, or place a configuration file in the jar folder.");
 
-            System.out.println("Starting conversion");
+        out.println(argumentsMap.containsKey(Argument.INDEX) ? "Starting indexing"
+                : argumentsMap.containsKey(Argument.ANALYZE) ? "Starting analysis" : "Starting conversion");
 
-            final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
 
+        if (timer != null) {
             timer.scheduleAtFixedRate(new AliveTask(stopwatch), 6000, 12000);
+        }
+
+        XMLConverter converter = ruleSetCache == null
+                ? new XMLConverter(inputFile, outputFile, configurationFile)
+                : new XMLConverter(inputFile, outputFile, ruleSetCache.get(configurationFile));
+        converter.setRecordPath(argumentsMap.get(Argument.RECORD_PATH));
+        if (argumentsMap.containsKey(Argument.SPLIT_RECORDS) || argumentsMap.containsKey(Argument.SPLIT_BYTES)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to split the output.");
+            converter.setSplitOptions(new SplitOptions(
+                    parseLong(argumentsMap, Argument.SPLIT_RECORDS),
+                    parseLong(argumentsMap, Argument.SPLIT_BYTES),
+                    argumentsMap.containsKey(Argument.COMPRESS_PARTS)));
+        }
+        if (argumentsMap.containsKey(Argument.CHECKPOINT_INTERVAL) || argumentsMap.containsKey(Argument.RESUME)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to checkpoint the conversion.");
+            converter.setCheckpointInterval(parseLong(argumentsMap, Argument.CHECKPOINT_INTERVAL));
+            converter.setResume(argumentsMap.containsKey(Argument.RESUME));
+        }
+        if (argumentsMap.containsKey(Argument.FOLLOW)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to follow the input.");
+            converter.setFollow(true);
+        }
+        converter.setPipelined(argumentsMap.containsKey(Argument.PIPELINED));
+        if (argumentsMap.containsKey(Argument.MINIFY) || argumentsMap.containsKey(Argument.PRESERVE_WHITESPACE)) {
+            validateArgument(argumentsMap.containsKey(Argument.MINIFY), "Whitespace can only be preserved through the \"--preserve-whitespace\" param together with \"--minify\".");
+            String preservedPaths = argumentsMap.containsKey(Argument.PRESERVE_WHITESPACE) ? argumentsMap.get(Argument.PRESERVE_WHITESPACE) : "";
+            converter.setMinify(true, Splitter.on(',').trimResults().omitEmptyStrings().splitToList(preservedPaths));
+        }
+        if (argumentsMap.containsKey(Argument.RECORD_BUFFER_LIMIT)) {
+            converter.setRecordBufferLimit(parseLong(argumentsMap, Argument.RECORD_BUFFER_LIMIT));
+        }
+        if (argumentsMap.containsKey(Argument.OUTPUT_ENCODING)) {
+            String encoding = argumentsMap.get(Argument.OUTPUT_ENCODING);
+            validateArgument(Charset.isSupported(encoding), "Unsupported output encoding: " + encoding);
+            converter.setOutputEncoding(Charset.forName(encoding));
+        }
+        if (argumentsMap.containsKey(Argument.OUTPUT_FORMAT)) {
+            String format = argumentsMap.get(Argument.OUTPUT_FORMAT);
+            validateArgument(format.equals("xml") || format.equals("jsonl"), "Unsupported output format: " + format);
+            validateArgument(format.equals("xml") || argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to write JSON lines.");
+            converter.setOutputFormat(format.equals("jsonl") ? OutputFormat.JSON_LINES : OutputFormat.XML);
+        }
+        if (argumentsMap.containsKey(Argument.CATALOG) || argumentsMap.containsKey(Argument.NO_FETCH)) {
+            converter.setEntityResolver(entityResolver(argumentsMap.get(Argument.CATALOG), !argumentsMap.containsKey(Argument.NO_FETCH)));
+        }
+        if (argumentsMap.containsKey(Argument.ENTITY_EXPANSION_LIMIT)) {
+            converter.setEntityExpansionLimit((int) parseLong(argumentsMap, Argument.ENTITY_EXPANSION_LIMIT));
+        }
+        if (argumentsMap.containsKey(Argument.SAMPLE)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to sample the input.");
+            converter.setSampleOptions(parseSampleOptions(argumentsMap.get(Argument.SAMPLE)));
+        }
+        if (argumentsMap.containsKey(Argument.CACHE)) {
+            converter.setResultCache(Paths.get(argumentsMap.get(Argument.CACHE)));
+        }
+        if (argumentsMap.containsKey(Argument.SCHEMA) || argumentsMap.containsKey(Argument.FAIL_ON_INVALID)) {
+            validateArgument(argumentsMap.containsKey(Argument.SCHEMA), "A schema must be specified through the \"--schema\" param in order to fail on invalid input.");
+            Path schemaFile = Paths.get(argumentsMap.get(Argument.SCHEMA));
+            validateArgument(Files.isRegularFile(schemaFile), "Schema file not found: " + schemaFile);
+            converter.setSchema(SCHEMAS.getSchema(schemaFile));
+            converter.setFailOnInvalid(argumentsMap.containsKey(Argument.FAIL_ON_INVALID));
+        }
+        if (argumentsMap.containsKey(Argument.TIME_LIMIT)) {
+            converter.setTimeLimit(parseLong(argumentsMap, Argument.TIME_LIMIT), TimeUnit.SECONDS);
+        }
+        if (argumentsMap.containsKey(Argument.MAX_OUTPUT_BYTES)) {
+            converter.setMaxOutputBytes(parseLong(argumentsMap, Argument.MAX_OUTPUT_BYTES));
+        }
+        if (argumentsMap.containsKey(Argument.QUARANTINE_FILE)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to quarantine malformed records.");
+            converter.setQuarantineFile(Paths.get(argumentsMap.get(Argument.QUARANTINE_FILE)));
+        }
+        converter.setAuditFile(argumentsMap.get(Argument.AUDIT_FILE));
+        if (argumentsMap.containsKey(Argument.INDEX) || argumentsMap.containsKey(Argument.USE_INDEX)
+                || argumentsMap.containsKey(Argument.RECORD_RANGE) || argumentsMap.containsKey(Argument.SHARD)) {
+            validateArgument(argumentsMap.containsKey(Argument.RECORD_PATH), "A record path must be specified through the \"--record\" param in order to use an index.");
+            converter.setUseIndex(argumentsMap.containsKey(Argument.USE_INDEX));
+            if (argumentsMap.containsKey(Argument.RECORD_RANGE)) {
+                int[] range = parsePair(argumentsMap, Argument.RECORD_RANGE, ":");
+                converter.setRecordRange(range[0], range[1]);
+            }
+            if (argumentsMap.containsKey(Argument.SHARD)) {
+                int[] shard = parsePair(argumentsMap, Argument.SHARD, "/");
+                converter.setShard(shard[0], shard[1]);
+            }
+        }
+        if (argumentsMap.containsKey(Argument.INDEX)) {
+            out.println("Indexed " + converter.index().getRecordCount() + " records in " + stopwatch.stop());
+        } else if (argumentsMap.containsKey(Argument.ANALYZE)) {
+            converter.analyze().print(out);
+            out.println("Analysis completed in " + stopwatch.stop());
+        } else {
+            converter.convert();
+            if (argumentsMap.containsKey(Argument.SAMPLE)) {
+                out.println(String.format("Sampled %d records, %.2f%% of the input", converter.getSampledRecords(), converter.getSampledFraction() * 100));
+            }
+            if (argumentsMap.containsKey(Argument.CACHE)) {
+                out.println(String.format("Served %d of %d bytes of input from the cache", converter.getCachedBytes(), Files.size(inputFilePath)));
+            }
+            if (argumentsMap.containsKey(Argument.SCHEMA)) {
+                out.println("Found " + converter.getValidationErrorCount() + " validation errors");
+                List<ValidationError> errors = converter.getValidationErrors();
+                for (ValidationError error : errors.subList(0, Math.min(errors.size(), PRINTED_VALIDATION_ERRORS))) {
+                    out.println(error);
+                }
+            }
+            if (argumentsMap.containsKey(Argument.QUARANTINE_FILE)) {
+                List<QuarantinedRecord> records = converter.getQuarantinedRecords();
+                out.println("Quarantined " + records.size() + " malformed records");
+                for (QuarantinedRecord record : records.subList(0, Math.min(records.size(), PRINTED_QUARANTINED_RECORDS))) {
+                    out.println(record);
+                }
+            }
+            out.println("Conversion completed in " + stopwatch.stop());
+        }
+    }
 
-            new XMLConverter(inputFile, outputFile, configurationFile).convert();
+    private static String outputFile(Map<Argument, String> argumentsMap) {
+        return Optional.ofNullable(argumentsMap.get(Argument.OUTPUT_FILE_PATH)).orElse(argumentsMap.get(Argument.INPUT_FILE_PATH) + " " + ".converted.xml");
+    }
 
-            System.out.println("Conversion completed in " + stopwatch.stop());
+    private static String configurationFile(Map<Argument, String> argumentsMap) {
+        return Optional.ofNullable(argumentsMap.get(Argument.CONFIGURATION_FILE_PATH)).orElse("config.json");
+    }
 
-        } catch (Exception e) {
-            LoggerFactory.getLogger(Main.class).error("Error executing conversion", e);
-            throw e;
-        } finally {
-            timer.cancel();
+    /**
+     * Returns the arguments to be sent to a conversion server, with absolute file paths as the server may run
+     * in a different directory.
+     */
+    private static List<String> toRemoteArguments(Map<Argument, String> argumentsMap) {
+        validateArgument(argumentsMap.containsKey(Argument.INPUT_FILE_PATH), "\nWrong arguments.\n\n" + USAGE_STRING);
+        Map<Argument, String> remoteArgumentsMap = new EnumMap<>(argumentsMap);
+        remoteArgumentsMap.remove(Argument.REMOTE);
+        remoteArgumentsMap.put(Argument.INPUT_FILE_PATH, absolutePath(argumentsMap.get(Argument.INPUT_FILE_PATH)));
+        remoteArgumentsMap.put(Argument.OUTPUT_FILE_PATH, absolutePath(outputFile(argumentsMap)));
+        remoteArgumentsMap.put(Argument.CONFIGURATION_FILE_PATH, absolutePath(configurationFile(argumentsMap)));
+        if (argumentsMap.containsKey(Argument.AUDIT_FILE)) {
+            remoteArgumentsMap.put(Argument.AUDIT_FILE, absolutePath(argumentsMap.get(Argument.AUDIT_FILE)));
         }
+        if (argumentsMap.containsKey(Argument.CACHE)) {
+            remoteArgumentsMap.put(Argument.CACHE, absolutePath(argumentsMap.get(Argument.CACHE)));
+        }
+        if (argumentsMap.containsKey(Argument.CATALOG)) {
+            remoteArgumentsMap.put(Argument.CATALOG, absolutePath(argumentsMap.get(Argument.CATALOG)));
+        }
+        if (argumentsMap.containsKey(Argument.SCHEMA)) {
+            remoteArgumentsMap.put(Argument.SCHEMA, absolutePath(argumentsMap.get(Argument.SCHEMA)));
+        }
+        if (argumentsMap.containsKey(Argument.QUARANTINE_FILE)) {
+            remoteArgumentsMap.put(Argument.QUARANTINE_FILE, absolutePath(argumentsMap.get(Argument.QUARANTINE_FILE)));
+        }
+
+        List<String> remoteArguments = new ArrayList<>();
+        for (Map.Entry<Argument, String> argument : remoteArgumentsMap.entrySet()) {
+            remoteArguments.add(argument.getKey().getParam());
+            if (!argument.getKey().isSingleArgument()) {
+                remoteArguments.add(argument.getValue());
+            }
+        }
+        return remoteArguments;
     }
 
-    private static Map<Argument, String> parseArguments(List<String> argumentsList) {
+    private static String absolutePath(String file) {
+        return Paths.get(file).toAbsolutePath().toString();
+    }
+
+    static Map<Argument, String> parseArguments(List<String> argumentsList) {
         Map<Argument, String> argumentsMap = new HashMap<>();
         for (int i = 0; i < argumentsList.size(); ) {
             Argument argument = Argument.getArgumentByParam(argumentsList.get(i));
@@ -74,18 +283,115 @@ public class Main {
         return argumentsMap;
     }
 
+    private static long parseLong(Map<Argument, String> argumentsMap, Argument argument) {
+        String value = argumentsMap.get(argument);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s is not a valid number for argument %s.\n%s", value, argument, USAGE_STRING), e);
+        }
+    }
+
+    private static int[] parsePair(Map<Argument, String> argumentsMap, Argument argument, String separator) {
+        String value = argumentsMap.get(argument);
+        String[] parts = value.split(separator, -1);
+        try {
+            validateArgument(parts.length == 2, String.format("%s is not a valid value for argument %s.\n%s", value, argument, USAGE_STRING));
+            return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s is not a valid value for argument %s.\n%s", value, argument, USAGE_STRING), e);
+        }
+    }
+
+    /**
+     * Parses a sample as "n" or "records:n" for the first records, "bytes:n" for the records up to n bytes, or
+     * "random:n[:seed]" for n random records.
+     */
+    private static SampleOptions parseSampleOptions(String value) {
+        String[] parts = value.split(":", -1);
+        try {
+            SampleOptions.Mode mode = parts.length == 1 ? SampleOptions.Mode.RECORDS : SampleOptions.Mode.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            validateArgument(parts.length <= 2 || (parts.length == 3 && mode == SampleOptions.Mode.RANDOM),
+                    String.format("%s is not a valid value for argument %s.\n%s", value, Argument.SAMPLE, USAGE_STRING));
+            long size = Long.parseLong(parts[parts.length == 1 ? 0 : 1]);
+            return parts.length == 3 ? new SampleOptions(mode, size, Long.parseLong(parts[2])) : new SampleOptions(mode, size);
+        } catch (IllegalArgumentException e) {
+            if (e instanceof InvalidArgumentException) {
+                throw e;
+            }
+            throw new IllegalArgumentException(String.format("%s is not a valid value for argument %s.\n%s", value, Argument.SAMPLE, USAGE_STRING), e);
+        }
+    }
+
+    /**
+     * Returns the resolver of the given catalog, shared by all the conversions of the process so that they read every
+     * entity only once.
+     */
+    private static CatalogEntityResolver entityResolver(String catalog, boolean fetchAllowed) throws IOException {
+        String key = catalog + '|' + fetchAllowed;
+        CatalogEntityResolver resolver = ENTITY_RESOLVERS.get(key);
+        if (resolver == null) {
+            Path directory = catalog != null ? Paths.get(catalog) : null;
+            validateArgument(directory == null || Files.isDirectory(directory), "Catalog directory not found: " + catalog);
+            resolver = new CatalogEntityResolver(directory, fetchAllowed);
+            CatalogEntityResolver existing = ENTITY_RESOLVERS.putIfAbsent(key, resolver);
+            resolver = existing != null ? existing : resolver;
+        }
+        return resolver;
+    }
+
     private static void validateArgument(boolean condition, String message) {
         if (!condition) {
-            System.err.println(message);
-            System.exit(-1);
+            throw new InvalidArgumentException(message);
+        }
+    }
+
+    static class InvalidArgumentException extends IllegalArgumentException {
+        InvalidArgumentException(String message) {
+            super(message);
         }
     }
 
 
-    private enum Argument {
+    enum Argument {
         OUTPUT_FILE_PATH("-o", false),
         INPUT_FILE_PATH("-i", false),
-        CONFIGURATION_FILE_PATH("-c", false);
+        CONFIGURATION_FILE_PATH("-c", false),
+        RECORD_PATH("--record", false),
+        SPLIT_RECORDS("--split-records", false),
+        SPLIT_BYTES("--split-bytes", false),
+        COMPRESS_PARTS("--compress", true),
+        CHECKPOINT_INTERVAL("--checkpoint-every", false),
+        RESUME("--resume", true),
+        PIPELINED("--pipelined", true),
+        MINIFY("--minify", true),
+        PRESERVE_WHITESPACE("--preserve-whitespace", false),
+        ANALYZE("--analyze", true),
+        AUDIT_FILE("--audit", false),
+        RECORD_BUFFER_LIMIT("--buffer-limit", false),
+        OUTPUT_ENCODING("--output-encoding", false),
+        OUTPUT_FORMAT("--output-format", false),
+        CATALOG("--catalog", false),
+        NO_FETCH("--no-fetch", true),
+        ENTITY_EXPANSION_LIMIT("--entity-limit", false),
+        FOLLOW("--follow", true),
+        INDEX("--index", true),
+        USE_INDEX("--use-index", true),
+        RECORD_RANGE("--range", false),
+        SHARD("--shard", false),
+        SAMPLE("--sample", false),
+        CACHE("--cache", false),
+        SCHEMA("--schema", false),
+        FAIL_ON_INVALID("--fail-on-invalid", true),
+        TIME_LIMIT("--time-limit", false),
+        MAX_OUTPUT_BYTES("--max-output", false),
+        QUARANTINE_FILE("--quarantine", false),
+        SERVER("--server", false),
+        SERVER_THREADS("--server-threads", false),
+        REMOTE("--remote", false);
 
         private final String param;
         private final boolean singleArgument;
@@ -0,0 +1,111 @@
+package com.xmldatamodifier.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable set of chars, stored as sorted disjoint ranges with a lookup table for ASCII.
+ */
+final class CharClass {
+
+    static final CharClass DIGIT = new Builder().add('0', '9').build(false);
+    static final CharClass WORD = new Builder().add('a', 'z').add('A', 'Z').add('0', '9').add('_', '_').build(false);
+    static final CharClass SPACE = new Builder().add(' ', ' ').add('\t', '\r').build(false);
+    static final CharClass DOT = new Builder().add('\n', '\n').add('\r', '\r').add('\u0085', '\u0085')
+            .add('\u2028', '\u2029').build(true);
+
+    private final boolean[] ascii = new boolean[128];
+    private final char[] lows;
+    private final char[] highs;
+
+    private CharClass(char[] lows, char[] highs) {
+        this.lows = lows;
+        this.highs = highs;
+        for (int i = 0; i < lows.length && lows[i] < ascii.length; i++) {
+            for (int c = lows[i]; c <= highs[i] && c < ascii.length; c++) {
+                ascii[c] = true;
+            }
+        }
+    }
+
+    boolean matches(char c) {
+        if (c < ascii.length) {
+            return ascii[c];
+        }
+        int low = 0;
+        int high = lows.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (c < lows[middle]) {
+                high = middle - 1;
+            } else if (c > highs[middle]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Builder {
+        private final List<char[]> ranges = new ArrayList<>();
+
+        Builder add(char low, char high) {
+            ranges.add(new char[]{low, high});
+            return this;
+        }
+
+        Builder add(CharClass charClass, boolean negated) {
+            CharClass added = negated ? charClass.negate() : charClass;
+            for (int i = 0; i < added.lows.length; i++) {
+                add(added.lows[i], added.highs[i]);
+            }
+            return this;
+        }
+
+        CharClass build(boolean negated) {
+            char[][] sorted = ranges.toArray(new char[ranges.size()][]);
+            Arrays.sort(sorted, new Comparator<char[]>() {
+                @Override
+                public int compare(char[] first, char[] second) {
+                    return first[0] - second[0];
+                }
+            });
+            char[] lows = new char[sorted.length];
+            char[] highs = new char[sorted.length];
+            int count = 0;
+            for (char[] range : sorted) {
+                if (count > 0 && range[0] <= highs[count - 1] + 1) {
+                    highs[count - 1] = (char) Math.max(highs[count - 1], range[1]);
+                } else {
+                    lows[count] = range[0];
+                    highs[count] = range[1];
+                    count++;
+                }
+            }
+            CharClass charClass = new CharClass(Arrays.copyOf(lows, count), Arrays.copyOf(highs, count));
+            return negated ? charClass.negate() : charClass;
+        }
+    }
+
+    private CharClass negate() {
+        char[] negatedLows = new char[lows.length + 1];
+        char[] negatedHighs = new char[lows.length + 1];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < lows.length; i++) {
+            if (lows[i] > next) {
+                negatedLows[count] = (char) next;
+                negatedHighs[count++] = (char) (lows[i] - 1);
+            }
+            next = highs[i] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            negatedLows[count] = (char) next;
+            negatedHighs[count++] = Character.MAX_VALUE;
+        }
+        return new CharClass(Arrays.copyOf(negatedLows, count), Arrays.copyOf(negatedHighs, count));
+    }
+}
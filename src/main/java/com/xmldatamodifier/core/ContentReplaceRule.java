@@ -2,34 +2,104 @@ package com.xmldatamodifier.core;
 
 import com.google.common.base.Strings;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static java.util.Objects.requireNonNull;
 
 public class ContentReplaceRule extends ContentRule {
 
+    /**
+     * Regular expression engine matching the content: {@link LinearPattern} guarantees a matching time linear in the
+     * length of the content, but only supports the common subset of the java syntax.
+     */
+    public enum Engine {
+        JAVA, LINEAR
+    }
+
     private final String regex;
     private final String replacement;
+    private final Engine engine;
+    private final Pattern pattern;
+    private final LinearPattern linearPattern;
+    private final int maxMatchLength;
+    private final ContentStream singleCharacterStream = new SingleCharacterStream();
 
     public ContentReplaceRule(String regex, String replacement) {
+        this(regex, replacement, Engine.JAVA);
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the regex is not valid, or not supported by the linear engine
+     * @throws IllegalArgumentException               if the replacement refers to missing groups of a linear pattern
+     */
+    public ContentReplaceRule(String regex, String replacement, Engine engine) {
         requireNonNull(regex, "Regex string cannot be null");
         requireNonNull(replacement, "Replacement string cannot be null");
+        requireNonNull(engine, "Engine cannot be null");
         this.regex = regex;
         this.replacement = replacement;
+        this.engine = engine;
+        boolean star = STAR_REGEX.equals(regex);
+        this.pattern = star || engine != Engine.JAVA ? null : Pattern.compile(regex);
+        this.linearPattern = star || engine != Engine.LINEAR ? null : LinearPattern.compile(regex);
+        if (linearPattern != null) {
+            linearPattern.checkReplacement(replacement);
+        }
+        // empty matches would be found again at every window boundary
+        this.maxMatchLength = star || matchesEmpty()
+                ? RegexMatchLength.UNBOUNDED : RegexMatchLength.maxLength(regex);
+    }
+
+    private boolean matchesEmpty() {
+        return pattern != null ? pattern.matcher("").find() : linearPattern.matcher("").find();
     }
 
     private static final String STAR_REGEX = "*";
 
     @Override
     public String elaborate(String content) {
-        if (STAR_REGEX.equals(regex)) {
+        if (ignoresContent()) {
             return replacement;
         }
 
-        return Strings.nullToEmpty(content).replaceAll(regex, replacement);
+        return replaceAll(Strings.nullToEmpty(content));
+    }
+
+    private String replaceAll(CharSequence content) {
+        if (linearPattern != null) {
+            return linearPattern.matcher(content).replaceAll(replacement);
+        }
+        return pattern.matcher(content).replaceAll(replacement);
+    }
+
+    /**
+     * Replacements of the whole content discard it as it comes, and regular expressions with a bounded match length
+     * only keep as many characters as the longest match between chunks. Other expressions need the whole content.
+     */
+    @Override
+    public ContentStream openStream() {
+        if (ignoresContent()) {
+            return new ConstantStream();
+        }
+        if (maxMatchLength == 1) {
+            return singleCharacterStream;
+        }
+        if (maxMatchLength > 0) {
+            return new WindowStream();
+        }
+        return super.openStream();
+    }
+
+    @Override
+    public boolean ignoresContent() {
+        return pattern == null && linearPattern == null;
     }
 
     @Override
     public String toString() {
-        return "ContentReplaceRule{" + "regex='" + regex + '\'' + ", replacement='" + replacement + '\'' + '}';
+        return "ContentReplaceRule{" + "regex='" + regex + '\'' + ", replacement='" + replacement + '\''
+                + (engine == Engine.JAVA ? "" : ", engine=" + engine) + '}';
     }
 
     @Override
@@ -40,7 +110,8 @@ public class ContentReplaceRule extends ContentRule {
         ContentReplaceRule that = (ContentReplaceRule) o;
 
         if (regex != null ? !regex.equals(that.regex) : that.regex != null) return false;
-        return !(replacement != null ? !replacement.equals(that.replacement) : that.replacement != null);
+        if (replacement != null ? !replacement.equals(that.replacement) : that.replacement != null) return false;
+        return engine == that.engine;
 
     }
 
@@ -48,6 +119,92 @@ public class ContentReplaceRule extends ContentRule {
     public int hashCode() {
         int result = regex != null ? regex.hashCode() : 0;
         result = 31 * result + (replacement != null ? replacement.hashCode() : 0);
+        result = 31 * result + engine.hashCode();
         return result;
     }
+
+    private class ConstantStream implements ContentStream {
+        private boolean replaced;
+
+        @Override
+        public String next(CharSequence chunk) {
+            return finish();
+        }
+
+        @Override
+        public String finish() {
+            if (replaced) {
+                return "";
+            }
+            replaced = true;
+            return replacement;
+        }
+    }
+
+    /**
+     * Matches of a single character never span two chunks, so that chunks are elaborated on their own.
+     */
+    private class SingleCharacterStream implements ContentStream {
+
+        @Override
+        public String next(CharSequence chunk) {
+            return replaceAll(chunk);
+        }
+
+        @Override
+        public String finish() {
+            return "";
+        }
+    }
+
+    /**
+     * Keeps the last maxMatchLength - 1 characters between chunks: a match starting before them is entirely
+     * available, so whether there is one doesn't depend on the following chunks.
+     */
+    private class WindowStream implements ContentStream {
+        private final StringBuilder window = new StringBuilder();
+        private final StringBuffer result = new StringBuffer();
+
+        @Override
+        public String next(CharSequence chunk) {
+            window.append(chunk);
+            int settledLength = window.length() - maxMatchLength + 1;
+            if (settledLength <= 0) {
+                return "";
+            }
+            result.setLength(0);
+            int matchEnd = linearPattern != null ? appendLinearMatches(settledLength) : appendMatches(settledLength);
+            int cut = Math.max(matchEnd, settledLength);
+            result.append(window, matchEnd, cut);
+            window.delete(0, cut);
+            return result.toString();
+        }
+
+        private int appendMatches(int settledLength) {
+            Matcher matcher = pattern.matcher(window);
+            int matchEnd = 0;
+            while (matcher.find() && matcher.start() < settledLength) {
+                matcher.appendReplacement(result, replacement);
+                matchEnd = matcher.end();
+            }
+            return matchEnd;
+        }
+
+        private int appendLinearMatches(int settledLength) {
+            LinearMatcher matcher = linearPattern.matcher(window);
+            int matchEnd = 0;
+            while (matcher.find() && matcher.start() < settledLength) {
+                matcher.appendReplacement(result, replacement);
+                matchEnd = matcher.end();
+            }
+            return matchEnd;
+        }
+
+        @Override
+        public String finish() {
+            String rest = replaceAll(window);
+            window.setLength(0);
+            return rest;
+        }
+    }
 }
@@ -3,4 +3,34 @@ package com.xmldatamodifier.core;
 public abstract class ContentRule extends Rule {
 
     public abstract String elaborate(String content);
+
+    /**
+     * Opens a stream elaborating a content delivered in several chunks. By default the chunks are collected and the
+     * content is elaborated as a whole once complete: rules able to work on a bounded window should override this.
+     */
+    public ContentStream openStream() {
+        return new BufferingStream();
+    }
+
+    /**
+     * Returns true if the result doesn't depend on the content, which then doesn't need to be prepared at all.
+     */
+    public boolean ignoresContent() {
+        return false;
+    }
+
+    private class BufferingStream implements ContentStream {
+        private final StringBuilder content = new StringBuilder();
+
+        @Override
+        public String next(CharSequence chunk) {
+            content.append(chunk);
+            return "";
+        }
+
+        @Override
+        public String finish() {
+            return elaborate(content.toString());
+        }
+    }
 }
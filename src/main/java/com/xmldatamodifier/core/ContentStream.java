@@ -0,0 +1,21 @@
+package com.xmldatamodifier.core;
+
+/**
+ * Elaboration of a single content delivered in consecutive chunks, as opened by {@link ContentRule#openStream()}.
+ */
+public interface ContentStream {
+
+    /**
+     * Elaborates the next chunk of the content. The chunk may be reused by the caller once the method returns.
+     *
+     * @return the part of the result which is already final, possibly empty
+     */
+    String next(CharSequence chunk);
+
+    /**
+     * Called once the whole content has been read.
+     *
+     * @return the rest of the result
+     */
+    String finish();
+}
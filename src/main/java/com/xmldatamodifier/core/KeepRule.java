@@ -0,0 +1,13 @@
+package com.xmldatamodifier.core;
+
+/**
+ * Keeps the element and its descendants in a document projected on the kept paths: once a rule set has a keep rule,
+ * only the elements at kept paths, their descendants and their ancestors are written.
+ */
+public class KeepRule extends Rule {
+
+    @Override
+    public String toString() {
+        return "KeepRule{}";
+    }
+}
@@ -0,0 +1,347 @@
+package com.xmldatamodifier.core;
+
+import java.util.Arrays;
+
+import static com.xmldatamodifier.core.LinearPattern.*;
+
+/**
+ * Finds the matches of a {@link LinearPattern} in a char sequence, with the same results as
+ * {@link java.util.regex.Matcher}. All the paths through the automaton are followed at once, one input char at a
+ * time, in order of priority: once a path reaches a match the lower priority ones are dropped, and the higher
+ * priority ones go on to find a preferred match. Each char is read at most once per match attempt, and the threads
+ * are bounded by the size of the program, so that finding a match takes O(input length * program size).
+ * <p>
+ * Not thread safe.
+ */
+public final class LinearMatcher {
+
+    private final LinearPattern pattern;
+    private final CharSequence input;
+    private final int slots;
+    private final int[] groups;
+    private final int[] work;
+    private final int[] stack;
+    private ThreadList current;
+    private ThreadList next;
+    private int searchFrom;
+    private int appendPosition;
+    private boolean matched;
+
+    LinearMatcher(LinearPattern pattern, CharSequence input) {
+        this.pattern = pattern;
+        this.input = input;
+        this.slots = 2 * (pattern.groupCount() + 1);
+        this.groups = new int[slots];
+        this.work = new int[slots];
+        // every instruction is visited at most once per closure, pushing at most one entry of two ints
+        this.stack = new int[4 * pattern.programSize() + 2];
+        this.current = new ThreadList(pattern.programSize(), slots);
+        this.next = new ThreadList(pattern.programSize(), slots);
+    }
+
+    /**
+     * Finds the next match, starting after the previous one (or after the next char, if the previous match was empty).
+     */
+    public boolean find() {
+        matched = false;
+        if (searchFrom > input.length()) {
+            return false;
+        }
+        current.clear();
+        for (int position = searchFrom; ; position++) {
+            if (current.size == 0 && !matched) {
+                position = skipToFirstChar(position);
+            }
+            if (!matched) {
+                // lowest priority: a match starting here is only taken if none started earlier
+                Arrays.fill(work, -1);
+                addThread(current, 0, position);
+            }
+            if (matched && current.size == 0) {
+                break;
+            }
+            step(position);
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+            if (position == input.length()) {
+                break;
+            }
+        }
+        if (matched) {
+            searchFrom = groups[1] == groups[0] ? groups[1] + 1 : groups[1];
+        } else {
+            searchFrom = input.length() + 1;
+        }
+        return matched;
+    }
+
+    private int skipToFirstChar(int position) {
+        CharClass firstChars = pattern.firstChars;
+        if (firstChars == null) {
+            return position;
+        }
+        int length = input.length();
+        while (position < length && !firstChars.matches(input.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private void step(int position) {
+        next.clear();
+        boolean atEnd = position == input.length();
+        char c = atEnd ? 0 : input.charAt(position);
+        for (int i = 0; i < current.size; i++) {
+            int pc = current.pcs[i];
+            int argument = pattern.arguments[pc];
+            switch (pattern.ops[pc]) {
+                case CHAR:
+                    if (!atEnd && c == argument) {
+                        current.copyCaptures(i, work);
+                        addThread(next, pc + 1, position + 1);
+                    }
+                    break;
+                case CLASS:
+                    if (!atEnd && pattern.classes[argument].matches(c)) {
+                        current.copyCaptures(i, work);
+                        addThread(next, pc + 1, position + 1);
+                    }
+                    break;
+                case MATCH:
+                    current.copyCaptures(i, groups);
+                    matched = true;
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected instruction " + pattern.ops[pc]);
+            }
+        }
+    }
+
+    /**
+     * Follows the instructions which don't read any char from pc, depth first in order of priority, adding the
+     * threads reaching a char, class or match instruction to the list. The thread starts with the groups in work.
+     */
+    private void addThread(ThreadList list, int startPc, int position) {
+        int top = 0;
+        stack[top++] = startPc;
+        stack[top++] = 0;
+        while (top > 0) {
+            int value = stack[--top];
+            int pc = stack[--top];
+            if (pc < 0) {
+                work[-pc - 1] = value;
+                continue;
+            }
+            while (!list.contains(pc)) {
+                list.mark(pc);
+                int argument = pattern.arguments[pc];
+                byte op = pattern.ops[pc];
+                if (op == JUMP) {
+                    pc = argument;
+                } else if (op == SPLIT) {
+                    stack[top++] = pattern.alternatives[pc];
+                    stack[top++] = 0;
+                    pc = argument;
+                } else if (op == SAVE) {
+                    stack[top++] = -argument - 1;
+                    stack[top++] = work[argument];
+                    work[argument] = position;
+                    pc++;
+                } else if (op == ASSERT) {
+                    if (!holds(argument, position)) {
+                        break;
+                    }
+                    pc++;
+                } else {
+                    list.add(pc, work);
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean holds(int assertion, int position) {
+        int length = input.length();
+        switch (assertion) {
+            case BEGIN_INPUT:
+                return position == 0;
+            case END_INPUT:
+                return position == length;
+            case END_LINE:
+                if (position == length) {
+                    return true;
+                }
+                if (position == length - 2) {
+                    return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+                }
+                if (position == length - 1) {
+                    char c = input.charAt(position);
+                    if (c == '\n') {
+                        return position == 0 || input.charAt(position - 1) != '\r';
+                    }
+                    return c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+                }
+                return false;
+            case WORD_BOUNDARY:
+                return isWordBefore(position) != isWordAt(position);
+            case NOT_WORD_BOUNDARY:
+                return isWordBefore(position) == isWordAt(position);
+            default:
+                throw new IllegalStateException("Unexpected assertion " + assertion);
+        }
+    }
+
+    private boolean isWordBefore(int position) {
+        return position > 0 && isWord(input.charAt(position - 1));
+    }
+
+    private boolean isWordAt(int position) {
+        return position < input.length() && isWord(input.charAt(position));
+    }
+
+    private static boolean isWord(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    public int start() {
+        checkMatch();
+        return groups[0];
+    }
+
+    public int end() {
+        checkMatch();
+        return groups[1];
+    }
+
+    /**
+     * @return the text matched by the given group in the last match, or null if the group didn't take part in it
+     */
+    public String group(int group) {
+        checkMatch();
+        if (group < 0 || group > pattern.groupCount()) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+        int start = groups[2 * group];
+        return start < 0 ? null : input.subSequence(start, groups[2 * group + 1]).toString();
+    }
+
+    public int groupCount() {
+        return pattern.groupCount();
+    }
+
+    /**
+     * Appends the input between the previous match and this one, followed by the replacement, which can refer to
+     * groups as {@code $n} and escape chars with a backslash, as in {@link java.util.regex.Matcher#appendReplacement}.
+     */
+    public LinearMatcher appendReplacement(StringBuffer buffer, String replacement) {
+        checkMatch();
+        buffer.append(input, appendPosition, groups[0]);
+        expandReplacement(replacement, pattern.groupCount(), groups, input, buffer);
+        appendPosition = groups[1];
+        return this;
+    }
+
+    public StringBuffer appendTail(StringBuffer buffer) {
+        return buffer.append(input, appendPosition, input.length());
+    }
+
+    public String replaceAll(String replacement) {
+        if (!find()) {
+            return input.toString();
+        }
+        StringBuffer buffer = new StringBuffer(input.length() + 16);
+        do {
+            appendReplacement(buffer, replacement);
+        } while (find());
+        return appendTail(buffer).toString();
+    }
+
+    private void checkMatch() {
+        if (!matched) {
+            throw new IllegalStateException("No match available");
+        }
+    }
+
+    /**
+     * Expands the group references of a replacement into the buffer, or only checks them if the buffer is null.
+     */
+    static void expandReplacement(String replacement, int groupCount, int[] groups, CharSequence input, StringBuffer buffer) {
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                c = replacement.charAt(i++);
+            } else if (c == '$') {
+                if (i == replacement.length() || !isDigit(replacement.charAt(i))) {
+                    throw new IllegalArgumentException("Illegal group reference in '" + replacement + "'");
+                }
+                int group = replacement.charAt(i++) - '0';
+                if (group > groupCount) {
+                    throw new IllegalArgumentException("No group " + group + " in '" + replacement + "'");
+                }
+                while (i < replacement.length() && isDigit(replacement.charAt(i))
+                        && group * 10 + replacement.charAt(i) - '0' <= groupCount) {
+                    group = group * 10 + replacement.charAt(i++) - '0';
+                }
+                if (buffer != null && groups[2 * group] >= 0) {
+                    buffer.append(input, groups[2 * group], groups[2 * group + 1]);
+                }
+                continue;
+            }
+            if (buffer != null) {
+                buffer.append(c);
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Threads waiting to read the next char, each being an instruction and the positions of its groups, in order of
+     * priority. Instructions are marked as visited with a generation number, so that clearing the list costs nothing.
+     */
+    private static final class ThreadList {
+        private final int slots;
+        private final int[] pcs;
+        private final int[] captures;
+        private final int[] generations;
+        private int generation;
+        private int size;
+
+        ThreadList(int programSize, int slots) {
+            this.slots = slots;
+            this.pcs = new int[programSize];
+            this.captures = new int[programSize * slots];
+            this.generations = new int[programSize];
+        }
+
+        void clear() {
+            size = 0;
+            generation++;
+        }
+
+        boolean contains(int pc) {
+            return generations[pc] == generation;
+        }
+
+        void mark(int pc) {
+            generations[pc] = generation;
+        }
+
+        void add(int pc, int[] threadCaptures) {
+            pcs[size] = pc;
+            System.arraycopy(threadCaptures, 0, captures, size * slots, slots);
+            size++;
+        }
+
+        void copyCaptures(int i, int[] destination) {
+            System.arraycopy(captures, i * slots, destination, 0, slots);
+        }
+    }
+}
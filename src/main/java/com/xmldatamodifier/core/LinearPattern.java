@@ -0,0 +1,640 @@
+package com.xmldatamodifier.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Regular expression matched in time linear in the length of the input, whatever the expression. The expression is
+ * compiled to a non-deterministic automaton, which {@link LinearMatcher} runs on all its states at once (Pike's VM):
+ * nothing is ever backtracked, so no input can make matching blow up.
+ * <p>
+ * Supports the common subset of the {@link java.util.regex.Pattern} syntax, with the same matches: literals and
+ * escapes, character classes with ranges and negation, {@code . \d \D \w \W \s \S}, alternation, greedy and lazy
+ * {@code * + ? {n} {n,} {n,m}}, capturing and non-capturing groups, {@code ^ $ \A \z \Z \b \B}. Back references,
+ * lookarounds, possessive quantifiers, named groups, flags and unicode classes are rejected when compiling. Chars are
+ * matched one UTF-16 unit at a time. Unlike java, a repeated group never matches the empty string once more after a
+ * non-empty iteration, which only shows in what such a group captures (e.g. {@code (a*)+b}).
+ */
+public final class LinearPattern {
+
+    static final int MAX_PROGRAM_SIZE = 10000;
+
+    static final byte CHAR = 0;
+    static final byte CLASS = 1;
+    static final byte SPLIT = 2;
+    static final byte JUMP = 3;
+    static final byte SAVE = 4;
+    static final byte ASSERT = 5;
+    static final byte MATCH = 6;
+
+    static final int BEGIN_INPUT = 0;
+    static final int END_INPUT = 1;
+    static final int END_LINE = 2;
+    static final int WORD_BOUNDARY = 3;
+    static final int NOT_WORD_BOUNDARY = 4;
+
+    private final String regex;
+    private final int groupCount;
+
+    // instruction i is ops[i] with its arguments: the char, class, assertion or group slot, or the two targets of a
+    // split, the first one being preferred
+    final byte[] ops;
+    final int[] arguments;
+    final int[] alternatives;
+    final CharClass[] classes;
+    // chars any match starts with, so that the others can be skipped without running the automaton; null if the
+    // pattern matches the empty string
+    final CharClass firstChars;
+
+    private LinearPattern(String regex, int groupCount, Program program) {
+        this.regex = regex;
+        this.groupCount = groupCount;
+        this.ops = Arrays.copyOf(program.ops, program.size);
+        this.arguments = Arrays.copyOf(program.arguments, program.size);
+        this.alternatives = Arrays.copyOf(program.alternatives, program.size);
+        this.classes = program.classes.toArray(new CharClass[program.classes.size()]);
+        this.firstChars = firstChars();
+    }
+
+    /**
+     * Collects the chars read first on every path from the start, assertions being ignored: the result may be too
+     * large, never too small.
+     */
+    private CharClass firstChars() {
+        CharClass.Builder builder = new CharClass.Builder();
+        boolean[] visited = new boolean[ops.length];
+        List<Integer> pending = new ArrayList<>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int pc = pending.remove(pending.size() - 1);
+            if (visited[pc]) {
+                continue;
+            }
+            visited[pc] = true;
+            switch (ops[pc]) {
+                case CHAR:
+                    builder.add((char) arguments[pc], (char) arguments[pc]);
+                    break;
+                case CLASS:
+                    builder.add(classes[arguments[pc]], false);
+                    break;
+                case MATCH:
+                    return null;
+                case JUMP:
+                    pending.add(arguments[pc]);
+                    break;
+                case SPLIT:
+                    pending.add(arguments[pc]);
+                    pending.add(alternatives[pc]);
+                    break;
+                default:
+                    pending.add(pc + 1);
+            }
+        }
+        return builder.build(false);
+    }
+
+    /**
+     * @throws PatternSyntaxException if the expression isn't valid, or uses syntax not supported by this engine
+     */
+    public static LinearPattern compile(String regex) {
+        Parser parser = new Parser(regex);
+        Node root = parser.parse();
+        Program program = new Program(regex);
+        program.emit(SAVE, 0, 0);
+        root.emit(program);
+        program.emit(SAVE, 1, 0);
+        program.emit(MATCH, 0, 0);
+        return new LinearPattern(regex, parser.groupCount, program);
+    }
+
+    public LinearMatcher matcher(CharSequence input) {
+        return new LinearMatcher(this, input);
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public String pattern() {
+        return regex;
+    }
+
+    int programSize() {
+        return ops.length;
+    }
+
+    /**
+     * Checks a replacement string against the groups of this pattern, the way {@link LinearMatcher#appendReplacement}
+     * would use it.
+     *
+     * @throws IllegalArgumentException if the replacement is not valid
+     */
+    public void checkReplacement(String replacement) {
+        LinearMatcher.expandReplacement(replacement, groupCount, null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+
+    private static final class Program {
+        private final String regex;
+        private byte[] ops = new byte[64];
+        private int[] arguments = new int[64];
+        private int[] alternatives = new int[64];
+        private final List<CharClass> classes = new ArrayList<>();
+        private int size;
+
+        Program(String regex) {
+            this.regex = regex;
+        }
+
+        int emit(byte op, int argument, int alternative) {
+            if (size == MAX_PROGRAM_SIZE) {
+                throw new PatternSyntaxException("Expression too large for the linear engine", regex, -1);
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                arguments = Arrays.copyOf(arguments, size * 2);
+                alternatives = Arrays.copyOf(alternatives, size * 2);
+            }
+            ops[size] = op;
+            arguments[size] = argument;
+            alternatives[size] = alternative;
+            return size++;
+        }
+
+        void patchSplit(int split, int body, int exit, boolean greedy) {
+            arguments[split] = greedy ? body : exit;
+            alternatives[split] = greedy ? exit : body;
+        }
+
+        int addClass(CharClass charClass) {
+            classes.add(charClass);
+            return classes.size() - 1;
+        }
+    }
+
+    private abstract static class Node {
+        abstract void emit(Program program);
+    }
+
+    private static final class Literal extends Node {
+        private final char c;
+
+        Literal(char c) {
+            this.c = c;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.emit(CHAR, c, 0);
+        }
+    }
+
+    private static final class ClassNode extends Node {
+        private final CharClass charClass;
+
+        ClassNode(CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.emit(CLASS, program.addClass(charClass), 0);
+        }
+    }
+
+    private static final class Assertion extends Node {
+        private final int kind;
+
+        Assertion(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.emit(ASSERT, kind, 0);
+        }
+    }
+
+    private static final class Group extends Node {
+        private final int index;
+        private final Node body;
+
+        Group(int index, Node body) {
+            this.index = index;
+            this.body = body;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.emit(SAVE, 2 * index, 0);
+            body.emit(program);
+            program.emit(SAVE, 2 * index + 1, 0);
+        }
+    }
+
+    private static final class Sequence extends Node {
+        private final List<Node> nodes;
+
+        Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void emit(Program program) {
+            for (Node node : nodes) {
+                node.emit(program);
+            }
+        }
+    }
+
+    private static final class Alternation extends Node {
+        private final List<Node> alternatives;
+
+        Alternation(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void emit(Program program) {
+            List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < alternatives.size() - 1; i++) {
+                int split = program.emit(SPLIT, 0, 0);
+                alternatives.get(i).emit(program);
+                jumps.add(program.emit(JUMP, 0, 0));
+                program.patchSplit(split, split + 1, program.size, true);
+            }
+            alternatives.get(alternatives.size() - 1).emit(program);
+            for (int jump : jumps) {
+                program.arguments[jump] = program.size;
+            }
+        }
+    }
+
+    private static final class Repetition extends Node {
+        private final Node body;
+        private final int min;
+        private final int max;
+        private final boolean greedy;
+
+        Repetition(Node body, int min, int max, boolean greedy) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+
+        @Override
+        void emit(Program program) {
+            for (int i = 0; i < min; i++) {
+                body.emit(program);
+            }
+            if (max < 0) {
+                int loop = program.emit(SPLIT, 0, 0);
+                body.emit(program);
+                program.emit(JUMP, loop, 0);
+                program.patchSplit(loop, loop + 1, program.size, greedy);
+                return;
+            }
+            List<Integer> splits = new ArrayList<>();
+            for (int i = min; i < max; i++) {
+                splits.add(program.emit(SPLIT, 0, 0));
+                body.emit(program);
+            }
+            for (int split : splits) {
+                program.patchSplit(split, split + 1, program.size, greedy);
+            }
+        }
+    }
+
+    private static final class Parser {
+        private final String regex;
+        private int position;
+        private int groupCount;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            Node root = alternation();
+            if (position < regex.length()) {
+                throw error("Unmatched closing ')'");
+            }
+            return root;
+        }
+
+        private Node alternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (position < regex.length() && regex.charAt(position) == '|') {
+                position++;
+                alternatives.add(sequence());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+        }
+
+        private Node sequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (position < regex.length() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+                nodes.add(repetition());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes);
+        }
+
+        private Node repetition() {
+            Node atom = atom();
+            if (position == regex.length()) {
+                return atom;
+            }
+            int min;
+            int max;
+            switch (regex.charAt(position)) {
+                case '*':
+                    min = 0;
+                    max = -1;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{':
+                    int end = regex.indexOf('}', position);
+                    String[] bounds = end < 0 ? new String[0] : regex.substring(position + 1, end).split(",", -1);
+                    if (bounds.length < 1 || bounds.length > 2 || !isNumber(bounds[0]) || (bounds.length == 2 && !bounds[1].isEmpty() && !isNumber(bounds[1]))) {
+                        throw error("Illegal repetition");
+                    }
+                    min = Integer.parseInt(bounds[0]);
+                    max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    if (max >= 0 && max < min) {
+                        throw error("Illegal repetition range");
+                    }
+                    position = end;
+                    break;
+                default:
+                    return atom;
+            }
+            position++;
+            boolean greedy = true;
+            if (position < regex.length() && regex.charAt(position) == '?') {
+                greedy = false;
+                position++;
+            } else if (position < regex.length() && regex.charAt(position) == '+') {
+                throw unsupported("possessive quantifiers");
+            }
+            if (position < regex.length() && "*+?{".indexOf(regex.charAt(position)) >= 0) {
+                throw unsupported("repeated quantifiers");
+            }
+            return new Repetition(atom, min, max, greedy);
+        }
+
+        private Node atom() {
+            char c = regex.charAt(position++);
+            switch (c) {
+                case '(':
+                    int index = -1;
+                    if (regex.startsWith("?:", position)) {
+                        position += 2;
+                    } else if (regex.startsWith("?", position)) {
+                        throw unsupported("lookarounds, named and atomic groups and flags");
+                    } else {
+                        index = ++groupCount;
+                    }
+                    Node body = alternation();
+                    if (position == regex.length()) {
+                        throw error("Unclosed group");
+                    }
+                    position++;
+                    return index < 0 ? body : new Group(index, body);
+                case '[':
+                    return new ClassNode(characterClass());
+                case '.':
+                    return new ClassNode(CharClass.DOT);
+                case '^':
+                    return new Assertion(BEGIN_INPUT);
+                case '$':
+                    return new Assertion(END_LINE);
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw error("Dangling meta character '" + c + "'");
+                default:
+                    return new Literal(c);
+            }
+        }
+
+        private Node escape() {
+            if (position == regex.length()) {
+                throw error("Unexpected end of expression");
+            }
+            char c = regex.charAt(position);
+            switch (c) {
+                case 'd':
+                case 'D':
+                case 'w':
+                case 'W':
+                case 's':
+                case 'S':
+                    position++;
+                    return new ClassNode(new CharClass.Builder().add(predefinedClass(c), Character.isUpperCase(c)).build(false));
+                case 'b':
+                    position++;
+                    return new Assertion(WORD_BOUNDARY);
+                case 'B':
+                    position++;
+                    return new Assertion(NOT_WORD_BOUNDARY);
+                case 'A':
+                    position++;
+                    return new Assertion(BEGIN_INPUT);
+                case 'z':
+                    position++;
+                    return new Assertion(END_INPUT);
+                case 'Z':
+                    position++;
+                    return new Assertion(END_LINE);
+                case 'Q':
+                    int end = regex.indexOf("\\E", position);
+                    String quoted = regex.substring(position + 1, end < 0 ? regex.length() : end);
+                    position = end < 0 ? regex.length() : end + 2;
+                    List<Node> literals = new ArrayList<>();
+                    for (int i = 0; i < quoted.length(); i++) {
+                        literals.add(new Literal(quoted.charAt(i)));
+                    }
+                    return new Sequence(literals);
+                default:
+                    return new Literal(escapedChar());
+            }
+        }
+
+        private CharClass characterClass() {
+            boolean negated = position < regex.length() && regex.charAt(position) == '^';
+            if (negated) {
+                position++;
+            }
+            CharClass.Builder builder = new CharClass.Builder();
+            boolean first = true;
+            while (true) {
+                if (position == regex.length()) {
+                    throw error("Unclosed character class");
+                }
+                char c = regex.charAt(position++);
+                if (c == ']' && !first) {
+                    return builder.build(negated);
+                }
+                first = false;
+                if (c == '[' || (c == '&' && regex.startsWith("&", position))) {
+                    throw unsupported("nested classes and intersections");
+                }
+                if (c == '\\') {
+                    char escaped = position < regex.length() ? regex.charAt(position) : 0;
+                    if ("dDwWsS".indexOf(escaped) >= 0) {
+                        position++;
+                        builder.add(predefinedClass(escaped), Character.isUpperCase(escaped));
+                        continue;
+                    }
+                    c = escapedChar();
+                }
+                if (position + 1 < regex.length() && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']') {
+                    position++;
+                    char high = regex.charAt(position++);
+                    if (high == '\\') {
+                        if (position < regex.length() && "dDwWsS".indexOf(regex.charAt(position)) >= 0) {
+                            throw error("Illegal character range");
+                        }
+                        high = escapedChar();
+                    } else if (high == '[') {
+                        throw unsupported("nested classes and intersections");
+                    }
+                    if (high < c) {
+                        throw error("Illegal character range");
+                    }
+                    builder.add(c, high);
+                } else {
+                    builder.add(c, c);
+                }
+            }
+        }
+
+        /**
+         * Reads the escaped char following a backslash.
+         */
+        private char escapedChar() {
+            if (position == regex.length()) {
+                throw error("Unexpected end of expression");
+            }
+            char c = regex.charAt(position++);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case '0':
+                    int octal = 0;
+                    int digits = 0;
+                    while (digits < 3 && position < regex.length() && regex.charAt(position) >= '0' && regex.charAt(position) <= '7'
+                            && octal * 8 + regex.charAt(position) - '0' <= 0377) {
+                        octal = octal * 8 + regex.charAt(position++) - '0';
+                        digits++;
+                    }
+                    if (digits == 0) {
+                        throw error("Illegal octal escape sequence");
+                    }
+                    return (char) octal;
+                case 'x':
+                    if (regex.startsWith("{", position)) {
+                        int end = regex.indexOf('}', position);
+                        int codePoint = end < 0 ? -1 : hex(position + 1, end);
+                        if (codePoint < 0 || codePoint > Character.MAX_VALUE) {
+                            throw unsupported("supplementary characters");
+                        }
+                        position = end + 1;
+                        return (char) codePoint;
+                    }
+                    return hexChar(2);
+                case 'u':
+                    return hexChar(4);
+                case 'c':
+                    if (position == regex.length()) {
+                        throw error("Illegal control escape sequence");
+                    }
+                    return (char) (regex.charAt(position++) ^ 64);
+                default:
+                    if (c >= '1' && c <= '9') {
+                        throw unsupported("back references");
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        throw unsupported("escape \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private char hexChar(int digits) {
+            int value = position + digits <= regex.length() ? hex(position, position + digits) : -1;
+            if (value < 0) {
+                throw error("Illegal hexadecimal escape sequence");
+            }
+            position += digits;
+            return (char) value;
+        }
+
+        private int hex(int start, int end) {
+            if (start == end || end - start > 8) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(regex.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        private static CharClass predefinedClass(char c) {
+            switch (Character.toLowerCase(c)) {
+                case 'd':
+                    return CharClass.DIGIT;
+                case 'w':
+                    return CharClass.WORD;
+                default:
+                    return CharClass.SPACE;
+            }
+        }
+
+        private static boolean isNumber(String value) {
+            return !value.isEmpty() && value.length() < 10 && value.matches("[0-9]+");
+        }
+
+        private PatternSyntaxException error(String description) {
+            return new PatternSyntaxException(description, regex, position - 1);
+        }
+
+        private PatternSyntaxException unsupported(String construct) {
+            return new PatternSyntaxException("Not supported by the linear engine: " + construct, regex, position - 1);
+        }
+    }
+}
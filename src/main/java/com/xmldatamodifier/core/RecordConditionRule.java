@@ -0,0 +1,78 @@
+package com.xmldatamodifier.core;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Rule dropping or masking a whole element when one of its descendants has a given value, e.g. dropping a
+ * &lt;customer&gt; whose &lt;status&gt; is "closed". The value is compared after trimming whitespace.
+ */
+public class RecordConditionRule extends Rule {
+
+    public enum Action {
+        DROP,
+        MASK
+    }
+
+    private final Action action;
+    private final String child;
+    private final String value;
+    private final String replacement;
+
+    /**
+     * @param child       path of the descendant relative to the element, e.g. "status" or "account/status"
+     * @param replacement replacement of every text node of a masked element, ignored when dropping
+     */
+    public RecordConditionRule(Action action, String child, String value, String replacement) {
+        requireNonNull(action, "Action cannot be null");
+        requireNonNull(child, "Child path cannot be null");
+        requireNonNull(value, "Value cannot be null");
+        this.action = action;
+        this.child = child.startsWith("/") ? child.substring(1) : child;
+        this.value = value;
+        this.replacement = action == Action.MASK ? requireNonNull(replacement, "Replacement string cannot be null") : null;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public String getChild() {
+        return child;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordConditionRule{" + "action=" + action + ", child='" + child + '\'' + ", value='" + value + '\''
+                + (replacement != null ? ", replacement='" + replacement + '\'' : "") + '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RecordConditionRule that = (RecordConditionRule) o;
+
+        if (action != that.action) return false;
+        if (!child.equals(that.child)) return false;
+        if (!value.equals(that.value)) return false;
+        return !(replacement != null ? !replacement.equals(that.replacement) : that.replacement != null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = action.hashCode();
+        result = 31 * result + child.hashCode();
+        result = 31 * result + value.hashCode();
+        result = 31 * result + (replacement != null ? replacement.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,241 @@
+package com.xmldatamodifier.core;
+
+/**
+ * Computes an upper bound of the length of the matches of a (valid) java regular expression, so that the content can
+ * be matched through a window of that size. Expressions whose matches depend on more than the matched characters
+ * (anchors, word boundaries, lookarounds, back references) are reported as unbounded, as well as the ones containing
+ * unbounded quantifiers or using the comments flag. Supplementary characters are accounted for: classes and dots
+ * count as two chars.
+ */
+final class RegexMatchLength {
+
+    static final int UNBOUNDED = -1;
+
+    private static final long MAX_LENGTH = 1 << 20;
+
+    private final String regex;
+    private int position;
+
+    private RegexMatchLength(String regex) {
+        this.regex = regex;
+    }
+
+    static int maxLength(String regex) {
+        RegexMatchLength parser = new RegexMatchLength(regex);
+        long length = parser.alternation();
+        return parser.position == regex.length() && length >= 0 && length <= MAX_LENGTH ? (int) length : UNBOUNDED;
+    }
+
+    private long alternation() {
+        long length = sequence();
+        while (length >= 0 && peek() == '|') {
+            position++;
+            long alternative = sequence();
+            length = alternative < 0 ? UNBOUNDED : Math.max(length, alternative);
+        }
+        return length;
+    }
+
+    private long sequence() {
+        long length = 0;
+        while (position < regex.length() && peek() != '|' && peek() != ')') {
+            long term = term();
+            if (term < 0) {
+                return UNBOUNDED;
+            }
+            length += term;
+        }
+        return length;
+    }
+
+    private long term() {
+        long length = atom();
+        while (length >= 0 && position < regex.length()) {
+            char c = peek();
+            if (c == '*' || c == '+') {
+                return UNBOUNDED;
+            } else if (c == '?') {
+                position++;
+            } else if (c == '{') {
+                length = repetition(length);
+            } else {
+                break;
+            }
+            if (position < regex.length() && (peek() == '?' || peek() == '+')) {
+                position++;
+            }
+        }
+        return length;
+    }
+
+    private long repetition(long length) {
+        int end = regex.indexOf('}', position);
+        if (end < 0) {
+            return UNBOUNDED;
+        }
+        String bounds = regex.substring(position + 1, end);
+        position = end + 1;
+        int comma = bounds.indexOf(',');
+        if (comma == bounds.length() - 1) {
+            return UNBOUNDED;
+        }
+        try {
+            long max = Long.parseLong(bounds.substring(comma + 1).trim());
+            return max > MAX_LENGTH ? UNBOUNDED : length * max;
+        } catch (NumberFormatException e) {
+            return UNBOUNDED;
+        }
+    }
+
+    private long atom() {
+        char c = regex.charAt(position++);
+        switch (c) {
+            case '(':
+                return group();
+            case '[':
+                return characterClass();
+            case '\\':
+                return escape();
+            case '.':
+                return 2;
+            case '^':
+            case '$':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                return UNBOUNDED;
+            default:
+                if (Character.isHighSurrogate(c) && position < regex.length() && Character.isLowSurrogate(peek())) {
+                    position++;
+                    return 2;
+                }
+                return 1;
+        }
+    }
+
+    private long group() {
+        if (regex.startsWith("?", position)) {
+            position++;
+            char c = peek();
+            if (c == '=' || c == '!' || regex.startsWith("<=", position) || regex.startsWith("<!", position)) {
+                return UNBOUNDED;
+            } else if (c == '<') {
+                position = regex.indexOf('>', position) + 1;
+            } else if (c == ':' || c == '>') {
+                position++;
+            } else {
+                int flagsStart = position;
+                while (position < regex.length() && peek() != ')' && peek() != ':') {
+                    position++;
+                }
+                if (regex.substring(flagsStart, position).indexOf('x') >= 0 || position == regex.length()) {
+                    return UNBOUNDED;
+                }
+                if (regex.charAt(position++) == ')') {
+                    return 0;
+                }
+            }
+        }
+        long length = alternation();
+        if (length < 0 || position == regex.length() || regex.charAt(position) != ')') {
+            return UNBOUNDED;
+        }
+        position++;
+        return length;
+    }
+
+    private long characterClass() {
+        int depth = 1;
+        if (peek() == '^') {
+            position++;
+        }
+        if (peek() == ']') {
+            position++;
+        }
+        while (depth > 0 && position < regex.length()) {
+            char c = regex.charAt(position++);
+            if (c == '\\') {
+                skipEscapedCharacter();
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+        return depth == 0 ? 2 : UNBOUNDED;
+    }
+
+    private void skipEscapedCharacter() {
+        char c = regex.charAt(position++);
+        if (c == 'Q') {
+            int end = regex.indexOf("\\E", position);
+            position = end < 0 ? regex.length() : end + 2;
+        } else if ((c == 'p' || c == 'P' || c == 'x' || c == 'N') && peek() == '{') {
+            position = regex.indexOf('}', position) + 1;
+        } else if (c == 'p' || c == 'P') {
+            position++;
+        }
+    }
+
+    private long escape() {
+        char c = regex.charAt(position);
+        switch (c) {
+            case 'Q':
+                int end = regex.indexOf("\\E", position + 1);
+                long length = (end < 0 ? regex.length() : end) - position - 1;
+                position = end < 0 ? regex.length() : end + 2;
+                return length;
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'z':
+            case 'Z':
+            case 'G':
+            case 'X':
+            case 'k':
+                return UNBOUNDED;
+            case 'R':
+                position++;
+                return 2;
+            case 'p':
+            case 'P':
+            case 'N':
+                skipEscapedCharacter();
+                return 2;
+            case 'x':
+                if (regex.startsWith("{", position + 1)) {
+                    skipEscapedCharacter();
+                    return 2;
+                }
+                position += 3;
+                return 1;
+            case 'u':
+                position += 5;
+                return 1;
+            case 'c':
+                position += 2;
+                return 1;
+            case '0':
+                position++;
+                for (int digits = 0; digits < 3 && position < regex.length() && isOctalDigit(peek()); digits++) {
+                    position++;
+                }
+                return 1;
+            default:
+                if (c >= '1' && c <= '9') {
+                    return UNBOUNDED;
+                }
+                position++;
+                return 1;
+        }
+    }
+
+    private char peek() {
+        return position < regex.length() ? regex.charAt(position) : 0;
+    }
+
+    private static boolean isOctalDigit(char c) {
+        return c >= '0' && c <= '7';
+    }
+}
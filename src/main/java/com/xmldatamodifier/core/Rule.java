@@ -4,6 +4,9 @@ public abstract class Rule {
 
     public enum RuleType {
         REPLACE,
-        SKIP
+        SKIP,
+        DROP_IF,
+        MASK_IF,
+        KEEP
     }
 }
@@ -1,4 +1,9 @@
 package com.xmldatamodifier.core;
 
 public class SkipRule extends Rule {
+
+    @Override
+    public String toString() {
+        return "SkipRule{}";
+    }
 }
@@ -1,7 +1,10 @@
 package com.xmldatamodifier.input;
 
+import com.google.common.base.Joiner;
 import com.google.gson.*;
 import com.xmldatamodifier.core.ContentReplaceRule;
+import com.xmldatamodifier.core.KeepRule;
+import com.xmldatamodifier.core.RecordConditionRule;
 import com.xmldatamodifier.core.Rule;
 import com.xmldatamodifier.core.SkipRule;
 import com.xmldatamodifier.xml.manipulation.XPathRule;
@@ -25,6 +28,7 @@ public class JsonPropertiesReader implements FilePropertiesReader {
     private Gson gsonParser = new GsonBuilder().create();
 
     static final Rule SKIP_RULE = new SkipRule();
+    static final Rule KEEP_RULE = new KeepRule();
 
     @Override
     public Map<String, XPathRule> read(String fileName) throws IOException {
@@ -61,15 +65,50 @@ public class JsonPropertiesReader implements FilePropertiesReader {
                 case REPLACE:
                     String regex = rule.get("match").getAsString();
                     String replacement = rule.get("replacement").getAsString();
-                    ruleSet.add(new ContentReplaceRule(regex, replacement));
+                    ruleSet.add(new ContentReplaceRule(regex, replacement, getEngine(rule, xPath)));
                     break;
                 case SKIP:
                     ruleSet.add(SKIP_RULE);
                     break;
+                case KEEP:
+                    ruleSet.add(KEEP_RULE);
+                    break;
+                case DROP_IF:
+                    ruleSet.add(new RecordConditionRule(RecordConditionRule.Action.DROP,
+                            getField(rule, "child", type, xPath), getField(rule, "equals", type, xPath), null));
+                    break;
+                case MASK_IF:
+                    ruleSet.add(new RecordConditionRule(RecordConditionRule.Action.MASK, getField(rule, "child", type, xPath),
+                            getField(rule, "equals", type, xPath), getField(rule, "replacement", type, xPath)));
+                    break;
                 default:
                     throw new IllegalArgumentException("Rule type is not valid: " + type);
             }
         }
         return new XPathRule(xPath, ruleSet);
     }
+
+    private static ContentReplaceRule.Engine getEngine(JsonObject rule, String xPath) {
+        JsonElement value = rule.get("engine");
+        if (value == null) {
+            return ContentReplaceRule.Engine.JAVA;
+        }
+        if (value.isJsonPrimitive()) {
+            for (ContentReplaceRule.Engine engine : ContentReplaceRule.Engine.values()) {
+                if (engine.name().equalsIgnoreCase(value.getAsString())) {
+                    return engine;
+                }
+            }
+        }
+        throw new JsonParseException(String.format("Configuration file has errors, REPLACE rule of %s with unknown engine %s, expected one of %s!",
+                xPath, value, Joiner.on(", ").join(ContentReplaceRule.Engine.values())));
+    }
+
+    private static String getField(JsonObject rule, String field, Rule.RuleType type, String xPath) {
+        JsonElement value = rule.get(field);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new JsonParseException(String.format("Configuration file has errors, %s rule of %s without \"%s\"!", type, xPath, field));
+        }
+        return value.getAsString();
+    }
 }
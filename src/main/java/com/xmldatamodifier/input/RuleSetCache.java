@@ -0,0 +1,71 @@
+package com.xmldatamodifier.input;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.xmldatamodifier.xml.manipulation.XmlRuleSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Thread safe cache of the rule sets loaded from configuration files. A cached rule set is reused as long as the
+ * modification time and size of its file don't change; when they do, the file is hashed and only read again if its
+ * content actually changed.
+ */
+public class RuleSetCache {
+
+    private final Logger log = LoggerFactory.getLogger(RuleSetCache.class);
+
+    private final FilePropertiesReader reader;
+    private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    public RuleSetCache(FilePropertiesReader reader) {
+        this.reader = requireNonNull(reader, "Reader cannot be null");
+    }
+
+    public XmlRuleSet get(String configurationFile) throws IOException {
+        requireNonNull(configurationFile, "Configuration file cannot be null");
+        Path path = Paths.get(configurationFile).toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(path);
+        long size = Files.size(path);
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.lastModified.equals(lastModified) && entry.size == size) {
+            return entry.ruleSet;
+        }
+
+        HashCode hash = com.google.common.io.Files.hash(path.toFile(), Hashing.sha256());
+        XmlRuleSet ruleSet;
+        if (entry != null && entry.hash.equals(hash)) {
+            ruleSet = entry.ruleSet;
+        } else {
+            log.info("Loading rule set from {}", path);
+            ruleSet = new XmlRuleSet(reader.read(path.toString()));
+        }
+        entries.put(path, new Entry(hash, lastModified, size, ruleSet));
+        return ruleSet;
+    }
+
+    private static class Entry {
+        private final HashCode hash;
+        private final FileTime lastModified;
+        private final long size;
+        private final XmlRuleSet ruleSet;
+
+        Entry(HashCode hash, FileTime lastModified, long size, XmlRuleSet ruleSet) {
+            this.hash = hash;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.ruleSet = ruleSet;
+        }
+    }
+}
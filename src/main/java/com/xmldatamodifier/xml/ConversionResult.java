@@ -0,0 +1,65 @@
+package com.xmldatamodifier.xml;
+
+/**
+ * Figures of a completed conversion.
+ */
+public class ConversionResult {
+
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long elements;
+    private final long rulesApplied;
+    private final long durationMillis;
+
+    public ConversionResult(long inputBytes, long outputBytes, long elements, long rulesApplied, long durationMillis) {
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.elements = elements;
+        this.rulesApplied = rulesApplied;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Returns the size of the input file.
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * Returns the number of bytes written to the output file by the conversion, 0 when the output is split.
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * Returns the number of elements parsed, 0 when the output was found in the result cache.
+     */
+    public long getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the number of times a rule was applied, see
+     * {@link com.xmldatamodifier.xml.parsing.SAXTransformationHandler#getRulesApplied()}, conditional rules included.
+     */
+    public long getRulesApplied() {
+        return rulesApplied;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConversionResult{" +
+                "inputBytes=" + inputBytes +
+                ", outputBytes=" + outputBytes +
+                ", elements=" + elements +
+                ", rulesApplied=" + rulesApplied +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+}
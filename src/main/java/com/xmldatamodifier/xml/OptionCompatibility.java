@@ -0,0 +1,114 @@
+package com.xmldatamodifier.xml;
+
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
+
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Pairs of conversion options which can't be used together, with the message rejecting each pair. Options missing
+ * from the table work together, e.g. minified output with the index, which then copies no record as it is.
+ */
+public class OptionCompatibility {
+
+    public enum Option {
+        SPLIT_OUTPUT("split output"),
+        CHECKPOINTS("checkpoints"),
+        FOLLOW("follow"),
+        PIPELINED("pipelined mode"),
+        CONDITIONAL_RULES("conditional rules"),
+        KEEP_RULES("keep rules"),
+        SAMPLE("sampling"),
+        RANDOM_SAMPLE("random samples"),
+        BYTE_SAMPLE("byte samples"),
+        RECORD_RANGE("record ranges"),
+        SHARDS("shards"),
+        INDEX("the index"),
+        RESULT_CACHE("the result cache"),
+        AUDIT("audit"),
+        JSON_LINES("JSON lines"),
+        SCHEMA("schema validation"),
+        OUTPUT_LIMIT("an output limit"),
+        QUARANTINE("quarantining malformed records"),
+        MINIFY("minified output");
+
+        private final String label;
+
+        Option(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Table<Option, Option, String> REJECTED = rejected();
+
+    private OptionCompatibility() {
+    }
+
+    /**
+     * Returns the rejected pairs, in the order they are checked, with their messages.
+     */
+    public static Table<Option, Option, String> getRejected() {
+        return REJECTED;
+    }
+
+    /**
+     * @throws IllegalArgumentException with the message of the first rejected pair of the given options
+     */
+    public static void check(Set<Option> options) {
+        String rejection = rejection(options);
+        if (rejection != null) {
+            throw new IllegalArgumentException(rejection);
+        }
+    }
+
+    /**
+     * Returns the message of the first rejected pair of the given options, null if they all work together.
+     */
+    public static String rejection(Set<Option> options) {
+        for (Table.Cell<Option, Option, String> cell : REJECTED.cellSet()) {
+            if (options.contains(cell.getRowKey()) && options.contains(cell.getColumnKey())) {
+                return cell.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Table<Option, Option, String> rejected() {
+        ImmutableTable.Builder<Option, Option, String> builder = ImmutableTable.builder();
+        reject(builder, Option.SPLIT_OUTPUT, Option.CHECKPOINTS, Option.PIPELINED, Option.SAMPLE, Option.RECORD_RANGE,
+                Option.SHARDS, Option.INDEX, Option.RESULT_CACHE, Option.JSON_LINES, Option.OUTPUT_LIMIT, Option.QUARANTINE);
+        reject(builder, Option.CHECKPOINTS, Option.PIPELINED, Option.CONDITIONAL_RULES, Option.KEEP_RULES, Option.SAMPLE,
+                Option.RECORD_RANGE, Option.SHARDS, Option.INDEX, Option.RESULT_CACHE, Option.JSON_LINES, Option.SCHEMA,
+                Option.QUARANTINE);
+        reject(builder, Option.FOLLOW, Option.PIPELINED, Option.SAMPLE, Option.RECORD_RANGE, Option.SHARDS, Option.INDEX,
+                Option.RESULT_CACHE, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.PIPELINED, Option.SAMPLE, Option.RESULT_CACHE, Option.JSON_LINES, Option.QUARANTINE);
+        reject(builder, Option.SAMPLE, Option.RESULT_CACHE, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.RANDOM_SAMPLE, Option.RECORD_RANGE, Option.SHARDS);
+        reject(builder, Option.BYTE_SAMPLE, Option.RECORD_RANGE, Option.SHARDS, Option.INDEX);
+        reject(builder, Option.RECORD_RANGE, Option.RESULT_CACHE, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.SHARDS, Option.RESULT_CACHE, Option.SCHEMA, Option.QUARANTINE);
+        // records copied as they are by the index wouldn't go through the JSON writer
+        reject(builder, Option.INDEX, Option.JSON_LINES, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.RESULT_CACHE, Option.AUDIT, Option.JSON_LINES, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.JSON_LINES, Option.QUARANTINE);
+        reject(builder, Option.CONDITIONAL_RULES, Option.QUARANTINE);
+        reject(builder, Option.SCHEMA, Option.QUARANTINE);
+        reject(builder, Option.AUDIT, Option.QUARANTINE);
+        return builder.build();
+    }
+
+    private static void reject(ImmutableTable.Builder<Option, Option, String> builder, Option option, Option... others) {
+        String label = option.getLabel();
+        for (Option other : others) {
+            builder.put(option, other, format("%s%s cannot be used together with %s",
+                    Character.toUpperCase(label.charAt(0)), label.substring(1), other.getLabel()));
+        }
+    }
+}
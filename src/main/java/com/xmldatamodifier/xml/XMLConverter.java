@@ -1,26 +1,137 @@
 package com.xmldatamodifier.xml;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CharStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.primitives.Bytes;
+import com.xmldatamodifier.core.KeepRule;
+import com.xmldatamodifier.core.RecordConditionRule;
 import com.xmldatamodifier.input.JsonPropertiesReader;
-import com.xmldatamodifier.xml.manipulation.XPathRule;
+import com.xmldatamodifier.xml.analysis.AnalysisReport;
+import com.xmldatamodifier.xml.analysis.PathAnalysisHandler;
+import com.xmldatamodifier.xml.audit.BinaryAuditTrail;
+import com.xmldatamodifier.xml.cache.ChunkPlan;
+import com.xmldatamodifier.xml.cache.ExternalEntityFingerprint;
+import com.xmldatamodifier.xml.cache.ChunkRecorder;
+import com.xmldatamodifier.xml.cache.ResultCache;
+import com.xmldatamodifier.xml.checkpoint.Checkpoint;
+import com.xmldatamodifier.xml.checkpoint.Checkpointer;
+import com.xmldatamodifier.xml.index.IndexedInputStream;
+import com.xmldatamodifier.xml.index.IndexedRecordSource;
+import com.xmldatamodifier.xml.index.RecordIndex;
 import com.xmldatamodifier.xml.manipulation.XmlRuleSet;
+import com.xmldatamodifier.xml.output.EncodedOutputWriter;
+import com.xmldatamodifier.xml.output.JsonLinesWriter;
+import com.xmldatamodifier.xml.output.OutputFormat;
+import com.xmldatamodifier.xml.output.RecordBufferingWriter;
+import com.xmldatamodifier.xml.output.SplitOptions;
+import com.xmldatamodifier.xml.output.SharedCountingOutputStream;
+import com.xmldatamodifier.xml.output.SplitOutputWriter;
+import com.xmldatamodifier.xml.parsing.CatalogEntityResolver;
+import com.xmldatamodifier.xml.parsing.ConversionAbortedException;
+import com.xmldatamodifier.xml.parsing.ElementOffsetTracker;
+import com.xmldatamodifier.xml.parsing.ConversionGuard;
+import com.xmldatamodifier.xml.parsing.FollowingInputStream;
+import com.xmldatamodifier.xml.parsing.LenientParser;
+import com.xmldatamodifier.xml.parsing.OffsetTrackingInputStream;
+import com.xmldatamodifier.xml.parsing.QuarantinedRecord;
+import com.xmldatamodifier.xml.parsing.RecordConditionFilter;
+import com.xmldatamodifier.xml.parsing.RecordListener;
+import com.xmldatamodifier.xml.parsing.RecordOffsetTracker;
+import com.xmldatamodifier.xml.parsing.RecordSampler;
 import com.xmldatamodifier.xml.parsing.SAXTransformationHandler;
+import com.xmldatamodifier.xml.parsing.SampleOptions;
+import com.xmldatamodifier.xml.parsing.SpillingEventBuffer;
+import com.xmldatamodifier.xml.parsing.XmlByteScanner;
+import com.xmldatamodifier.xml.parsing.XmlDeclaration;
+import com.xmldatamodifier.xml.pipeline.ConversionPipeline;
+import com.xmldatamodifier.xml.validation.SchemaValidationFilter;
+import com.xmldatamodifier.xml.validation.ValidationError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.util.Map;
+import javax.xml.validation.Schema;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 public class XMLConverter {
 
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 10000;
+    public static final long FOLLOW_CHECKPOINT_PERIOD_MILLIS = 1000;
+    private static final String CACHE_FORMAT = "xdm-cache-1";
+    private static final String ENTITY_EXPANSION_LIMIT_PROPERTY = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit";
+
+    private final Logger log = LoggerFactory.getLogger(XMLConverter.class);
+
     private String inputFile;
     private String outputFile;
-    private Map<String, XPathRule> xPathRules;
+    private XmlRuleSet ruleSet;
+
+    private String recordPath;
+    private SplitOptions splitOptions;
+    private long checkpointInterval;
+    private boolean resume;
+    private boolean pipelined;
+    private String auditFile;
+    private boolean follow;
+    private long recordBufferLimit = SpillingEventBuffer.DEFAULT_SPILL_THRESHOLD;
+    private boolean useIndex;
+    private int rangeFrom = -1;
+    private int rangeTo = -1;
+    private int shardIndex;
+    private int shardCount;
+    private boolean minify;
+    private List<String> preservedWhitespacePaths = Collections.emptyList();
+    private Charset outputEncoding;
+    private OutputFormat outputFormat = OutputFormat.XML;
+    private EntityResolver entityResolver;
+    private int entityExpansionLimit;
+    private SampleOptions sampleOptions;
+    private long sampledRecords;
+    private double sampledFraction;
+    private Path cacheDirectory;
+    private long cacheChunkSize = ChunkPlan.DEFAULT_CHUNK_SIZE;
+    private long cachedBytes;
+    private Schema schema;
+    private boolean failOnInvalid;
+    private List<ValidationError> validationErrors = Collections.emptyList();
+    private long validationErrorCount;
+    private long timeLimitNanos;
+    private long maxOutputBytes;
+    private Path quarantineFile;
+    private List<QuarantinedRecord> quarantinedRecords = Collections.emptyList();
+    private ConversionResult result;
+    private final AtomicBoolean running = new AtomicBoolean();
 
     public XMLConverter(String inputFile, String outputFile, String configurationFile) throws Exception {
         requireNonNull(inputFile, "Input file cannot be null");
@@ -29,18 +140,838 @@ public class XMLConverter {
 
         this.inputFile = inputFile;
         this.outputFile = outputFile;
-        this.xPathRules = new JsonPropertiesReader().read(configurationFile);
+        this.ruleSet = new XmlRuleSet(new JsonPropertiesReader().read(configurationFile));
+    }
+
+    /**
+     * Creates a converter using an already loaded rule set, e.g. one kept by a {@link com.xmldatamodifier.input.RuleSetCache}.
+     */
+    public XMLConverter(String inputFile, String outputFile, XmlRuleSet ruleSet) {
+        requireNonNull(inputFile, "Input file cannot be null");
+        requireNonNull(outputFile, "Output file cannot be null");
+        requireNonNull(ruleSet, "Rule set cannot be null");
+
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.ruleSet = ruleSet;
+    }
+
+    /**
+     * Sets the xpath of the record elements, e.g. "/catalog/item". Required by the features working at record level.
+     */
+    public void setRecordPath(String recordPath) {
+        this.recordPath = recordPath;
+    }
+
+    /**
+     * Splits the output into several part files, see {@link SplitOutputWriter}. Requires a record path.
+     */
+    public void setSplitOptions(SplitOptions splitOptions) {
+        this.splitOptions = splitOptions;
+    }
+
+    /**
+     * Saves a checkpoint every given number of records, see {@link Checkpointer}. The checkpoint is kept next to
+     * the output file and deleted once the conversion completes. Requires a record path.
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        checkArgument(checkpointInterval >= 0, "Checkpoint interval cannot be negative");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Resumes the conversion from the last checkpoint, if any. Enables checkpoints if they aren't already.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Runs parsing, transformation and output writing on separate threads, see {@link ConversionPipeline}.
+     * Not supported together with split output or checkpoints.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Records every rule application to the given file, see {@link BinaryAuditTrail}.
+     */
+    public void setAuditFile(String auditFile) {
+        this.auditFile = auditFile;
+    }
+
+    /**
+     * Sets the number of bytes of events held in memory for an element with conditional rules, see
+     * {@link RecordConditionFilter}. Larger elements are moved to a temporary file.
+     */
+    public void setRecordBufferLimit(long recordBufferLimit) {
+        checkArgument(recordBufferLimit > 0, "Record buffer limit must be positive");
+        this.recordBufferLimit = recordBufferLimit;
+    }
+
+    /**
+     * Drops the text nodes made only of whitespace (indentation) from the output, except in the elements at the given
+     * paths and their descendants.
+     */
+    public void setMinify(boolean minify, List<String> preservedWhitespacePaths) {
+        this.minify = minify;
+        this.preservedWhitespacePaths = requireNonNull(preservedWhitespacePaths, "Preserved paths cannot be null");
+    }
+
+    /**
+     * Writes the output in the given encoding. By default the output has the encoding of the input, detected from
+     * its byte order mark and xml declaration, so that records copied as they are through the index aren't decoded.
+     * Chars the encoding can't represent are written as character references.
+     */
+    public void setOutputEncoding(Charset outputEncoding) {
+        this.outputEncoding = outputEncoding;
+    }
+
+    /**
+     * Writes the output in the given format. With {@link OutputFormat#JSON_LINES}, every record of the transformed
+     * document is written as a line of JSON instead, in UTF-8: requires a record path, and is not supported together
+     * with split output, checkpoints, pipelined mode, the use of the index or the result cache.
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = requireNonNull(outputFormat, "Output format cannot be null");
+    }
+
+    /**
+     * Resolves the external DTDs and entities of the input with the given resolver, e.g. a
+     * {@link CatalogEntityResolver} shared by the conversions of several files.
+     */
+    public void setEntityResolver(EntityResolver entityResolver) {
+        this.entityResolver = entityResolver;
+    }
+
+    /**
+     * Fails the conversion once the input expands more entities than the given limit, instead of the limit of the
+     * parser. 0 keeps the limit of the parser.
+     */
+    public void setEntityExpansionLimit(int entityExpansionLimit) {
+        checkArgument(entityExpansionLimit >= 0, "Entity expansion limit cannot be negative");
+        this.entityExpansionLimit = entityExpansionLimit;
+    }
+
+    /**
+     * Follows an input which is still being written, with its root element not closed yet: appended records are
+     * transformed and flushed to the output as soon as they are complete, and the conversion ends once the root
+     * element is closed. Unless set by {@link #setCheckpointInterval} or {@link #setResume}, a checkpoint is saved
+     * about once a second, without syncing the output, and resumed from by the next conversion; none is saved when the
+     * other options don't support checkpoints. Requires a record path.
+     */
+    public void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
+    /**
+     * Reads the input through its {@link RecordIndex}, built or refreshed when needed: records which don't contain
+     * any path with rules are copied as they are, without being parsed. Requires a record path, and is not supported
+     * together with split output or checkpoints.
+     */
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * Converts only the records from the given one, included, to the given one, excluded, counting from 0. The
+     * content before the first record of the input is kept. Uses the index.
+     */
+    public void setRecordRange(int from, int to) {
+        checkArgument(0 <= from && from <= to, "Invalid record range %s-%s", from, to);
+        this.rangeFrom = from;
+        this.rangeTo = to;
+    }
+
+    /**
+     * Converts only the given share of the records, e.g. shard 1 of 3 holds the second third. Uses the index.
+     */
+    public void setShard(int shardIndex, int shardCount) {
+        checkArgument(shardCount > 0 && 0 <= shardIndex && shardIndex < shardCount, "Invalid shard %s of %s", shardIndex, shardCount);
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Converts only a sample of the records, to try a configuration quickly: the first records, the records up to a
+     * number of bytes, or random records picked through the index. The elements still open when a sample ends are
+     * closed, so that the output is well-formed. Requires a record path.
+     */
+    public void setSampleOptions(SampleOptions sampleOptions) {
+        this.sampleOptions = sampleOptions;
+    }
+
+    /**
+     * Returns the number of records of the last sample converted.
+     */
+    public long getSampledRecords() {
+        return sampledRecords;
+    }
+
+    /**
+     * Returns the share of the input the last sample covers: of the bytes for the first records, of the records for
+     * random or indexed samples.
+     */
+    public double getSampledFraction() {
+        return sampledFraction;
+    }
+
+    /**
+     * Serves the output from the given cache when the input and the configuration haven't changed since a previous
+     * conversion, and otherwise stores it there. With a record path, the records are split into chunks (see
+     * {@link ChunkPlan}) and the chunks found in the cache are copied instead of being converted again. Uses the
+     * index.
+     */
+    public void setResultCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    void setCacheChunkSize(long cacheChunkSize) {
+        this.cacheChunkSize = cacheChunkSize;
+    }
+
+    /**
+     * Returns the number of bytes of input of the last conversion whose output was found in the cache.
+     */
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Validates the input against the given schema while converting it, see {@link SchemaValidationFilter}. Not
+     * supported together with checkpoints, follow, samples, the index or the result cache, which don't parse the
+     * whole input.
+     */
+    public void setSchema(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Fails the conversion at the first validation error, instead of collecting the errors and carrying on.
+     */
+    public void setFailOnInvalid(boolean failOnInvalid) {
+        this.failOnInvalid = failOnInvalid;
+    }
+
+    /**
+     * Fails the conversion with a {@link ConversionAbortedException} once it has run for longer than the given time,
+     * counted from the submission for {@link #convertAsync(Executor)}, including while following the input. 0 for no
+     * limit.
+     */
+    public void setTimeLimit(long timeLimit, TimeUnit unit) {
+        checkArgument(timeLimit >= 0, "Time limit cannot be negative");
+        this.timeLimitNanos = unit.toNanos(timeLimit);
+    }
+
+    /**
+     * Fails the conversion with a {@link ConversionAbortedException} once it has written more than the given number
+     * of bytes, give or take the buffer of the writer. 0 for no limit. Not supported together with split output.
+     */
+    public void setMaxOutputBytes(long maxOutputBytes) {
+        checkArgument(maxOutputBytes >= 0, "Output limit cannot be negative");
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * Converts the input leniently, see {@link LenientParser}: malformed records are copied to the given file and left
+     * out of the output instead of failing the conversion. A record path is required. Not supported together with
+     * split output, checkpoints, follow, pipelined mode, the index, samples, JSON lines, conditional rules, schema
+     * validation or audit.
+     */
+    public void setQuarantineFile(Path quarantineFile) {
+        this.quarantineFile = quarantineFile;
+    }
+
+    /**
+     * Returns the byte ranges of the input quarantined by the last conversion.
+     */
+    public List<QuarantinedRecord> getQuarantinedRecords() {
+        return quarantinedRecords;
+    }
+
+    /**
+     * Returns the validation errors and warnings of the last conversion, the first
+     * {@link SchemaValidationFilter#MAX_KEPT_ERRORS} ones only.
+     */
+    public List<ValidationError> getValidationErrors() {
+        return validationErrors;
+    }
+
+    /**
+     * Returns the number of validation errors of the last conversion, warnings excluded.
+     */
+    public long getValidationErrorCount() {
+        return validationErrorCount;
+    }
+
+    public Path getIndexFile() {
+        return Paths.get(inputFile + ".idx");
+    }
+
+    /**
+     * Builds the index of the records of the input, see {@link RecordIndex}. Requires a record path.
+     */
+    public RecordIndex index() throws IOException {
+        checkArgument(recordPath != null, "A record path is required to index the input");
+        RecordIndex.build(Paths.get(inputFile), recordPath, getIndexFile());
+        return RecordIndex.open(getIndexFile());
+    }
+
+    public Path getCheckpointFile() {
+        return Paths.get(outputFile + ".checkpoint");
     }
 
     public void convert() throws Exception {
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        SAXParser saxParser = factory.newSAXParser();
-        XMLReader xmlReader = saxParser.getXMLReader();
+        result = null;
+        result = convert(null, deadline());
+    }
+
+    /**
+     * Returns the figures of the last conversion run by {@link #convert()}, or null if none completed.
+     */
+    public ConversionResult getResult() {
+        return result;
+    }
+
+    /**
+     * Runs the conversion on the given executor. Cancelling the returned future stops the conversion before the next
+     * parsing event, or while following the input, closing its files; the output is left as it is. The time limit
+     * runs from the submission, including the time spent waiting for the executor. A converter runs one conversion at
+     * a time: one starting while another one runs fails with an {@link IllegalStateException}.
+     */
+    public CompletableFuture<ConversionResult> convertAsync(Executor executor) {
+        requireNonNull(executor, "Executor cannot be null");
+        final long deadline = deadline();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<ConversionResult> future = new CompletableFuture<ConversionResult>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                cancelled.set(true);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(convert(cancelled, deadline));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns the options of the conversion checked by {@link OptionCompatibility}.
+     */
+    private Set<OptionCompatibility.Option> options(long checkpointInterval, boolean conditional, boolean keepOnly) {
+        Set<OptionCompatibility.Option> options = EnumSet.noneOf(OptionCompatibility.Option.class);
+        addIf(options, splitOptions != null, OptionCompatibility.Option.SPLIT_OUTPUT);
+        addIf(options, checkpointInterval > 0, OptionCompatibility.Option.CHECKPOINTS);
+        addIf(options, follow, OptionCompatibility.Option.FOLLOW);
+        addIf(options, pipelined, OptionCompatibility.Option.PIPELINED);
+        addIf(options, conditional, OptionCompatibility.Option.CONDITIONAL_RULES);
+        addIf(options, keepOnly, OptionCompatibility.Option.KEEP_RULES);
+        addIf(options, sampleOptions != null, OptionCompatibility.Option.SAMPLE);
+        addIf(options, sampleOptions != null && sampleOptions.getMode() == SampleOptions.Mode.RANDOM, OptionCompatibility.Option.RANDOM_SAMPLE);
+        addIf(options, sampleOptions != null && sampleOptions.getMode() == SampleOptions.Mode.BYTES, OptionCompatibility.Option.BYTE_SAMPLE);
+        addIf(options, rangeFrom >= 0, OptionCompatibility.Option.RECORD_RANGE);
+        addIf(options, shardCount > 0, OptionCompatibility.Option.SHARDS);
+        addIf(options, useIndex, OptionCompatibility.Option.INDEX);
+        addIf(options, cacheDirectory != null, OptionCompatibility.Option.RESULT_CACHE);
+        addIf(options, auditFile != null, OptionCompatibility.Option.AUDIT);
+        addIf(options, outputFormat == OutputFormat.JSON_LINES, OptionCompatibility.Option.JSON_LINES);
+        addIf(options, schema != null, OptionCompatibility.Option.SCHEMA);
+        addIf(options, maxOutputBytes > 0, OptionCompatibility.Option.OUTPUT_LIMIT);
+        addIf(options, quarantineFile != null, OptionCompatibility.Option.QUARANTINE);
+        addIf(options, minify, OptionCompatibility.Option.MINIFY);
+        return options;
+    }
 
-        try (Writer fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"))) {
-            xmlReader.setContentHandler(new SAXTransformationHandler(fileWriter, new XmlRuleSet(xPathRules)));
-            xmlReader.parse(inputFile);
+    private static <T> void addIf(Set<T> set, boolean condition, T element) {
+        if (condition) {
+            set.add(element);
         }
+    }
 
+    /**
+     * Returns the {@link System#nanoTime()} after which a conversion starting now fails, or {@link Long#MAX_VALUE}.
+     */
+    private long deadline() {
+        return timeLimitNanos > 0 ? System.nanoTime() + timeLimitNanos : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param cancelled flag set to cancel the conversion, or null if it can't be cancelled
+     * @param deadline  {@link System#nanoTime()} after which the conversion fails, or {@link Long#MAX_VALUE}
+     */
+    private ConversionResult convert(AtomicBoolean cancelled, long deadline) throws Exception {
+        checkState(running.compareAndSet(false, true), "A conversion is already running");
+        try {
+            return run(cancelled, deadline);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private ConversionResult run(AtomicBoolean cancelled, long deadline) throws Exception {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new ConversionAbortedException(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED,
+                    "Conversion time limit exceeded before it started");
+        }
+        long checkpointInterval = this.checkpointInterval;
+        if (checkpointInterval == 0 && resume) {
+            checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        }
+        boolean conditional = ruleSet.hasRules(RecordConditionRule.class);
+        boolean keepOnly = ruleSet.hasRules(KeepRule.class);
+        boolean randomSample = sampleOptions != null && sampleOptions.getMode() == SampleOptions.Mode.RANDOM;
+        boolean jsonLines = outputFormat == OutputFormat.JSON_LINES;
+        boolean lenient = quarantineFile != null;
+        long checkpointPeriod = 0;
+        if (follow && checkpointInterval == 0) {
+            String rejection = OptionCompatibility.rejection(options(Long.MAX_VALUE, conditional, keepOnly));
+            if (rejection == null) {
+                checkpointInterval = Long.MAX_VALUE;
+                checkpointPeriod = FOLLOW_CHECKPOINT_PERIOD_MILLIS;
+            } else {
+                log.info("Not saving the offset of the followed input: {}", rejection);
+            }
+        }
+        boolean indexed = useIndex || rangeFrom >= 0 || shardCount > 0 || randomSample || (cacheDirectory != null && recordPath != null);
+        checkArgument(!follow || recordPath != null, "A record path is required to follow the input");
+        checkArgument(splitOptions == null || recordPath != null, "A record path is required to split the output");
+        checkArgument(checkpointInterval == 0 || recordPath != null, "A record path is required to checkpoint the conversion");
+        checkArgument(sampleOptions == null || recordPath != null, "A record path is required to sample the input");
+        checkArgument(!jsonLines || recordPath != null, "A record path is required to write JSON lines");
+        checkArgument(!indexed || recordPath != null, "A record path is required to use the index");
+        checkArgument(!lenient || recordPath != null, "A record path is required to quarantine malformed records");
+        OptionCompatibility.check(options(checkpointInterval, conditional, keepOnly));
+        quarantinedRecords = Collections.emptyList();
+        validationErrors = Collections.emptyList();
+        validationErrorCount = 0;
+        sampledRecords = 0;
+        sampledFraction = 1;
+        RecordIndex index = indexed ? loadIndex() : null;
+
+        XmlDeclaration declaration = XmlDeclaration.read(Paths.get(inputFile));
+        Charset outputEncoding = Optional.fromNullable(this.outputEncoding).or(declaration.getEncoding());
+        if (outputEncoding.equals(StandardCharsets.UTF_16)) {
+            // the byte order mark is written with the declaration, so that it isn't repeated when appending
+            outputEncoding = StandardCharsets.UTF_16BE;
+        }
+        log.info("Writing output encoded in {}", outputEncoding);
+
+        Checkpoint checkpoint = null;
+        if ((resume || checkpointPeriod > 0) && Files.exists(getCheckpointFile())) {
+            checkpoint = Checkpoint.read(getCheckpointFile());
+            checkpoint.checkMatches(Paths.get(inputFile), follow, ruleSet.fingerprint(), recordPath, Paths.get(outputFile),
+                    outputEncoding.name(), minify, outputFormat);
+            log.info("Resuming conversion from {}", checkpoint);
+        }
+
+        cachedBytes = 0;
+        ResultCache cache = cacheDirectory != null ? new ResultCache(cacheDirectory) : null;
+        ChunkPlan plan = cache != null ? ChunkPlan.create(Paths.get(inputFile), index, cacheContext(outputEncoding), cacheChunkSize) : null;
+        if (plan != null && cache.contains(plan.getKey())) {
+            Files.copy(cache.getEntry(plan.getKey()), Paths.get(outputFile), StandardCopyOption.REPLACE_EXISTING);
+            cachedBytes = Files.size(Paths.get(inputFile));
+            log.info("Output found in the cache");
+            return new ConversionResult(cachedBytes, Files.size(Paths.get(outputFile)), 0, 0, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
+        ChunkRecorder chunkRecorder = null;
+
+        XMLReader xmlReader = newXmlReader();
+
+        FileOutputStream outputStream = splitOptions == null ? openOutput(checkpoint) : null;
+        SharedCountingOutputStream countingOutput = outputStream != null ? new SharedCountingOutputStream(outputStream) : null;
+        ConversionPipeline pipeline = pipelined ? new ConversionPipeline(countingOutput, outputEncoding) : null;
+        long elements;
+        long rulesApplied;
+        try (OutputStream output = outputStream;
+             JsonLinesWriter jsonWriter = jsonLines ? new JsonLinesWriter(countingOutput) : null;
+             Writer fileWriter = createWriter(countingOutput, pipeline, outputEncoding);
+             BinaryAuditTrail auditTrail = auditFile != null ? new BinaryAuditTrail(Paths.get(auditFile)) : null;
+             FileInputStream inputStream = new FileInputStream(inputFile)) {
+
+            RecordBufferingWriter recordWriter = lenient ? new RecordBufferingWriter(fileWriter) : null;
+            SAXTransformationHandler handler = new SAXTransformationHandler(recordWriter != null ? recordWriter : fileWriter,
+                    declaration.toDocumentStart(outputEncoding), ruleSet);
+            handler.setAuditTrail(auditTrail);
+            // offsets are only tracked in the bytes read straight from the input, on the parsing thread
+            ElementOffsetTracker elementOffsets = auditTrail != null && pipeline == null && index == null
+                    && OffsetTrackingInputStream.isAsciiCompatibleEncoding(Paths.get(inputFile)) ? new ElementOffsetTracker() : null;
+            handler.setElementOffsets(elementOffsets);
+            handler.setRecordPath(recordPath);
+            handler.setMinify(minify, preservedWhitespacePaths);
+            handler.setKeepOnly(keepOnly);
+            if (fileWriter instanceof SplitOutputWriter) {
+                handler.addRecordListener((SplitOutputWriter) fileWriter);
+            }
+            if (jsonWriter != null) {
+                handler.addRecordListener(jsonWriter);
+                handler.setOutputHandler(jsonWriter);
+            }
+
+            InputStream input = inputStream;
+            if (checkpointInterval > 0) {
+                input = trackCheckpoints(inputStream, checkpoint, checkpointInterval, checkpointPeriod, handler, fileWriter,
+                        outputStream, outputEncoding, elementOffsets, cancelled, deadline);
+            } else if (follow) {
+                input = follow(inputStream, handler, elementOffsets, cancelled, deadline);
+            } else if (elementOffsets != null) {
+                input = new OffsetTrackingInputStream(inputStream, new XmlByteScanner(elementOffsets));
+            }
+            if (follow) {
+                handler.addRecordListener(new RecordFlusher(jsonWriter != null ? jsonWriter : fileWriter));
+            }
+            if (index != null) {
+                IndexedInputStream indexedInput = readIndexed(inputStream, index, handler, outputEncoding);
+                handler.setMarkerTarget(indexedInput.getMarkerTarget());
+                if (plan != null && plan.getChunkCount() > 0) {
+                    chunkRecorder = new ChunkRecorder(cache, plan, outputStream.getChannel());
+                    indexedInput.setChunks(plan.getChunkStarts(), chunkRecorder.getCachedChunks());
+                    handler.setChunkListener(chunkRecorder);
+                }
+                input = indexedInput;
+            }
+            CountingInputStream countingInput = null;
+            RecordSampler sampler = null;
+            if (sampleOptions != null && index == null) {
+                countingInput = new CountingInputStream(input);
+                input = countingInput;
+                sampler = new RecordSampler(sampleOptions, countingInput);
+                handler.addRecordListener(sampler);
+            }
+
+            InputSource inputSource = new InputSource(input);
+            inputSource.setSystemId(new File(inputFile).toURI().toString());
+
+            RecordConditionFilter conditionFilter = conditional ? new RecordConditionFilter(handler, ruleSet, recordBufferLimit) : null;
+            if (conditionFilter != null) {
+                conditionFilter.setAuditTrail(auditTrail);
+                conditionFilter.setElementOffsets(elementOffsets);
+            }
+            ContentHandler contentHandler = conditional ? conditionFilter : handler;
+            SchemaValidationFilter validationFilter = schema != null ? new SchemaValidationFilter(contentHandler, schema, failOnInvalid) : null;
+            if (validationFilter != null) {
+                contentHandler = validationFilter;
+            }
+            if (cancelled != null || deadline != Long.MAX_VALUE || maxOutputBytes > 0) {
+                contentHandler = new ConversionGuard(contentHandler, cancelled != null ? cancelled : new AtomicBoolean(),
+                        deadline, countingOutput, maxOutputBytes);
+            }
+            if (elementOffsets != null) {
+                // outermost, to be told about the entities
+                contentHandler = elementOffsets.filter(contentHandler);
+            }
+            if (pipeline != null) {
+                pipeline.run(xmlReader, inputSource, contentHandler);
+            } else if (lenient) {
+                LenientParser lenientParser = new LenientParser(xmlReader, handler, recordWriter, Paths.get(inputFile),
+                        declaration.getEncoding(), recordPath, quarantineFile);
+                lenientParser.parse(contentHandler);
+                quarantinedRecords = lenientParser.getQuarantinedRecords();
+                log.info("Quarantined {} malformed records", quarantinedRecords.size());
+            } else {
+                xmlReader.setContentHandler(contentHandler);
+                xmlReader.setProperty(SAXTransformationHandler.LEXICAL_HANDLER_PROPERTY, contentHandler);
+                try {
+                    xmlReader.parse(inputSource);
+                } catch (IOException e) {
+                    // stopped while following the input
+                    if (e.getCause() instanceof ConversionAbortedException) {
+                        throw (ConversionAbortedException) e.getCause();
+                    }
+                    throw e;
+                } catch (SAXException e) {
+                    if (sampler == null || !sampler.isComplete()) {
+                        throw e;
+                    }
+                    handler.closeOpenElements();
+                }
+            }
+            if (sampler != null) {
+                sampledRecords = sampler.getRecords();
+                sampledFraction = sampler.isComplete() ? Math.min(1, (double) countingInput.getCount() / new File(inputFile).length()) : 1;
+            }
+            if (sampleOptions != null) {
+                log.info("Sampled {} records, {}% of the input", sampledRecords, format("%.2f", sampledFraction * 100));
+            }
+            if (conditionFilter != null) {
+                log.info("Dropped {} and masked {} elements with conditional rules", conditionFilter.getDroppedRecords(), conditionFilter.getMaskedRecords());
+            }
+            if (validationFilter != null) {
+                validationErrors = validationFilter.getErrors();
+                validationErrorCount = validationFilter.getErrorCount();
+                log.info("Found {} validation errors", validationErrorCount);
+            }
+            elements = handler.getElements();
+            rulesApplied = handler.getRulesApplied()
+                    + (conditionFilter != null ? conditionFilter.getDroppedRecords() + conditionFilter.getMaskedRecords() : 0);
+        }
+
+        if (checkpointInterval > 0) {
+            Files.deleteIfExists(getCheckpointFile());
+        }
+        if (cache != null) {
+            storeInCache(cache, plan, chunkRecorder);
+        }
+        return new ConversionResult(Files.size(Paths.get(inputFile)), countingOutput != null ? countingOutput.getCount() : 0,
+                elements, rulesApplied, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Returns what else than the input and the rules changes the output, as far as the result cache is concerned:
+     * the options, the external entities read by the prolog and the settings of their resolution.
+     */
+    private String cacheContext(Charset outputEncoding) throws Exception {
+        String externalEntities = ExternalEntityFingerprint.compute(newXmlReader(), Paths.get(inputFile));
+        return Joiner.on('\n').useForNull("").join(CACHE_FORMAT, ruleSet.fingerprint(), outputEncoding.name(), recordPath,
+                useIndex, minify, preservedWhitespacePaths, externalEntities, entityResolver, entityExpansionLimit);
+    }
+
+    private void storeInCache(ResultCache cache, ChunkPlan plan, ChunkRecorder chunkRecorder) throws IOException {
+        if (chunkRecorder != null) {
+            try (FileChannel output = FileChannel.open(Paths.get(outputFile), StandardOpenOption.READ)) {
+                chunkRecorder.storeChunks(output);
+            }
+            cachedBytes = chunkRecorder.getCachedInputBytes();
+            log.info("Reused {} of {} chunks from the cache, {} bytes of input", chunkRecorder.getCachedChunks().cardinality(),
+                    plan.getChunkCount(), cachedBytes);
+        }
+        cache.store(plan.getKey(), Paths.get(outputFile));
+    }
+
+    private Writer createWriter(OutputStream outputStream, ConversionPipeline pipeline, Charset outputEncoding) throws IOException {
+        if (pipeline != null) {
+            return pipeline.getWriter();
+        }
+        if (outputStream == null) {
+            return new SplitOutputWriter(outputFile, recordPath, splitOptions, outputEncoding);
+        }
+        if (outputFormat == OutputFormat.JSON_LINES) {
+            // the records are written as JSON by the output handler
+            return CharStreams.nullWriter();
+        }
+        return new EncodedOutputWriter(outputStream, outputEncoding);
+    }
+
+    /**
+     * Reads the input without writing any output, and reports its paths and the rules matching them.
+     */
+    public AnalysisReport analyze() throws Exception {
+        XMLReader xmlReader = newXmlReader();
+
+        PathAnalysisHandler handler = new PathAnalysisHandler();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(inputFile);
+        return new AnalysisReport(handler.getRoot(), handler.getMaxDepth(), ruleSet.getXPathRules());
+    }
+
+    private XMLReader newXmlReader() throws Exception {
+        XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        if (entityResolver != null) {
+            xmlReader.setEntityResolver(entityResolver);
+        }
+        if (entityExpansionLimit > 0) {
+            xmlReader.setProperty(ENTITY_EXPANSION_LIMIT_PROPERTY, entityExpansionLimit);
+        }
+        return xmlReader;
+    }
+
+    private RecordIndex loadIndex() throws IOException {
+        if (Files.exists(getIndexFile())) {
+            RecordIndex index = RecordIndex.open(getIndexFile());
+            if (index.isUpToDate(Paths.get(inputFile), recordPath)) {
+                return index;
+            }
+            log.info("Index {} is out of date", getIndexFile());
+        }
+        return index();
+    }
+
+    private IndexedInputStream readIndexed(FileInputStream inputStream, RecordIndex index, SAXTransformationHandler handler,
+                                    Charset outputEncoding) throws IOException {
+        int from = 0;
+        int to = index.getRecordCount();
+        if (rangeFrom >= 0) {
+            from = Math.min(rangeFrom, to);
+            to = Math.min(rangeTo, to);
+        }
+        if (shardCount > 0) {
+            int records = to - from;
+            int shardFrom = from + (int) ((long) records * shardIndex / shardCount);
+            to = from + (int) ((long) records * (shardIndex + 1) / shardCount);
+            from = shardFrom;
+        }
+        if (sampleOptions != null && sampleOptions.getMode() == SampleOptions.Mode.RECORDS) {
+            to = (int) Math.min(to, from + sampleOptions.getSize());
+        }
+        long rulePathMask = useIndex ? index.getPathMask(ruleSet.getXPathRules().keySet()) : -1L;
+        if (ruleSet.hasRules(KeepRule.class) && ruleSet.getProjection(recordPath) == XmlRuleSet.Projection.ANCESTOR) {
+            // records are projected on their kept descendants, even the ones without any
+            rulePathMask = -1L;
+        }
+        if (minify) {
+            // records copied as they are would keep their indentation
+            rulePathMask = -1L;
+        }
+        if (hasInternalSubset(inputStream.getChannel(), index)) {
+            // records copied as they are would refer to entities and default attributes the output doesn't declare
+            rulePathMask = -1L;
+        }
+        handler.setRawRecordSource(new IndexedRecordSource(inputStream.getChannel(), index, outputEncoding));
+        if (sampleOptions != null && sampleOptions.getMode() == SampleOptions.Mode.RANDOM) {
+            BitSet picked = RecordSampler.pickRecords(index.getRecordCount(), sampleOptions);
+            setSampled(picked.cardinality(), index);
+            log.info("Converting {} random records of {}", sampledRecords, index.getRecordCount());
+            return new IndexedInputStream(inputStream.getChannel(), index, picked, rulePathMask);
+        }
+        if (sampleOptions != null) {
+            setSampled(to - from, index);
+        }
+        log.info("Converting records {} to {} of {}", from, to, index.getRecordCount());
+        return new IndexedInputStream(inputStream.getChannel(), index, from, to, rulePathMask);
+    }
+
+    /**
+     * Returns true if the doctype before the first record of the indexed input has an internal subset.
+     */
+    private static boolean hasInternalSubset(FileChannel channel, RecordIndex index) throws IOException {
+        long prologEnd = index.getRecordCount() > 0 ? index.getRecordStart(0) : channel.size();
+        XmlByteScanner scanner = new XmlByteScanner(new XmlByteScanner.Listener() {
+            @Override
+            public void startTag(byte[] name, int nameLength, int depth, long offset) {
+            }
+
+            @Override
+            public void endTag(int depth, long endOffset) {
+            }
+        });
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        long position = 0;
+        while (position < prologEnd && !scanner.hasInternalSubset()) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), prologEnd - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            scanner.scan(buffer.array(), 0, read);
+            position += read;
+        }
+        return scanner.hasInternalSubset();
+    }
+
+    private FileOutputStream openOutput(Checkpoint checkpoint) throws IOException {
+        if (checkpoint == null) {
+            return new FileOutputStream(outputFile);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.WRITE)) {
+            channel.truncate(checkpoint.getOutputLength());
+        }
+        return new FileOutputStream(outputFile, true);
+    }
+
+    /**
+     * @param checkpointPeriod time after which a checkpoint is saved without syncing the output, 0 to only save them,
+     *                         synced, every interval
+     */
+    private InputStream trackCheckpoints(FileInputStream inputStream, Checkpoint checkpoint, long checkpointInterval,
+                                         long checkpointPeriod, SAXTransformationHandler handler, Writer writer,
+                                         FileOutputStream outputStream, Charset outputEncoding,
+                                         ElementOffsetTracker elementOffsets, AtomicBoolean cancelled, long deadline)
+            throws IOException {
+        Path input = Paths.get(inputFile);
+        if (checkpoint == null) {
+            OffsetTrackingInputStream.checkAsciiCompatibleEncoding(input);
+            RecordOffsetTracker offsetTracker = new RecordOffsetTracker(recordPath);
+            handler.addRecordListener(offsetTracker);
+            handler.addRecordListener(checkpointer(checkpointInterval, checkpointPeriod, handler, offsetTracker, writer,
+                    outputStream, outputEncoding, null));
+            XmlByteScanner scanner = new XmlByteScanner(XmlByteScanner.both(offsetTracker, elementOffsets));
+            return new OffsetTrackingInputStream(source(inputStream, scanner, cancelled, deadline), scanner);
+        }
+
+        List<String> openElements = checkpoint.getOpenElements();
+        RecordOffsetTracker offsetTracker = new RecordOffsetTracker(recordPath, openElements);
+        handler.addRecordListener(offsetTracker);
+        handler.addRecordListener(checkpointer(checkpointInterval, checkpointPeriod, handler, offsetTracker, writer,
+                outputStream, outputEncoding, checkpoint));
+        handler.resumeFrom(openElements, checkpoint.isSkipMode(), checkpoint.getSkippedPath());
+
+        // the prolog is replayed as it is, so that the doctype and its entities are still declared
+        ByteBuffer prolog = ByteBuffer.allocate((int) checkpoint.getPrologLength());
+        while (prolog.hasRemaining() && inputStream.getChannel().read(prolog, prolog.position()) > 0) {
+            // reads the whole prolog
+        }
+        inputStream.getChannel().position(checkpoint.getInputOffset());
+        XmlByteScanner scanner = new XmlByteScanner(XmlByteScanner.both(offsetTracker, elementOffsets), checkpoint.getInputOffset(),
+                openElements.size());
+        InputStream remainingInput = new OffsetTrackingInputStream(source(inputStream, scanner, cancelled, deadline), scanner);
+
+        String encoding = Optional.fromNullable(checkpoint.getInputEncoding()).or("UTF-8");
+        byte[] wrapperStartTags = Joiner.on("").join(checkpoint.getWrapperStartTags()).getBytes(encoding);
+        return new SequenceInputStream(new ByteArrayInputStream(Bytes.concat(prolog.array(), wrapperStartTags)), remainingInput);
+    }
+
+    private Checkpointer checkpointer(long checkpointInterval, long checkpointPeriod, SAXTransformationHandler handler,
+                                      RecordOffsetTracker offsetTracker, Writer writer, FileOutputStream outputStream,
+                                      Charset outputEncoding, Checkpoint resumedFrom) {
+        Checkpointer checkpointer = new Checkpointer(getCheckpointFile(), checkpointInterval, Paths.get(inputFile),
+                ruleSet.fingerprint(), recordPath, outputEncoding.name(), minify, outputFormat, handler, offsetTracker,
+                writer, outputStream, resumedFrom);
+        checkpointer.setPeriod(checkpointPeriod);
+        checkpointer.setSync(checkpointPeriod == 0);
+        return checkpointer;
+    }
+
+    private void setSampled(int records, RecordIndex index) {
+        sampledRecords = records;
+        sampledFraction = index.getRecordCount() > 0 ? (double) records / index.getRecordCount() : 1;
+    }
+
+    /**
+     * Follows the input without checkpoints: the offsets are only tracked to find out when the root element is closed.
+     */
+    private InputStream follow(FileInputStream inputStream, SAXTransformationHandler handler,
+                               ElementOffsetTracker elementOffsets, AtomicBoolean cancelled, long deadline) throws IOException {
+        OffsetTrackingInputStream.checkAsciiCompatibleEncoding(Paths.get(inputFile));
+        RecordOffsetTracker offsetTracker = new RecordOffsetTracker(recordPath);
+        handler.addRecordListener(offsetTracker);
+        XmlByteScanner scanner = new XmlByteScanner(XmlByteScanner.both(offsetTracker, elementOffsets));
+        return new OffsetTrackingInputStream(source(inputStream, scanner, cancelled, deadline), scanner);
+    }
+
+    private InputStream source(FileInputStream inputStream, XmlByteScanner scanner, AtomicBoolean cancelled, long deadline) {
+        return follow ? new FollowingInputStream(inputStream, scanner, FollowingInputStream.DEFAULT_POLL_MILLIS, cancelled, deadline) : inputStream;
+    }
+
+    /**
+     * Flushes the output after every record.
+     */
+    private static class RecordFlusher implements RecordListener {
+        private final Flushable writer;
+
+        RecordFlusher(Flushable writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void recordStarted() throws IOException {
+        }
+
+        @Override
+        public void recordEnded() throws IOException {
+            writer.flush();
+        }
     }
 }
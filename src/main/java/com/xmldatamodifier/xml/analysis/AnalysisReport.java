@@ -0,0 +1,146 @@
+package com.xmldatamodifier.xml.analysis;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Ordering;
+import com.xmldatamodifier.xml.manipulation.XPathRule;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Result of the analysis of a document against a rule configuration: statistics of every distinct path, how many
+ * elements each configured rule xpath matches, and the paths close to the xpaths matching nothing, which are
+ * likely typos in the configuration.
+ */
+public class AnalysisReport {
+
+    private static final int MAX_NEAR_MISSES = 3;
+
+    private final List<PathNode> paths;
+    private final Map<String, PathNode> pathsByXPath = new HashMap<>();
+    private final int maxDepth;
+    private final Map<String, XPathRule> xPathRules;
+
+    public AnalysisReport(PathNode root, int maxDepth, Map<String, XPathRule> xPathRules) {
+        List<PathNode> descendants = root.getDescendants();
+        this.paths = Ordering.natural().onResultOf(new Function<PathNode, String>() {
+            @Override
+            public String apply(PathNode path) {
+                return path.getPath();
+            }
+        }).immutableSortedCopy(descendants.subList(1, descendants.size()));
+        for (PathNode path : paths) {
+            pathsByXPath.put(path.getPath(), path);
+        }
+        this.maxDepth = maxDepth;
+        this.xPathRules = new TreeMap<>(xPathRules);
+    }
+
+    public List<PathNode> getPaths() {
+        return paths;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the number of elements found at the given xpath.
+     */
+    public long getHits(String xPath) {
+        PathNode path = pathsByXPath.get(xPath);
+        return path == null ? 0 : path.getCount();
+    }
+
+    /**
+     * Returns, for every configured xpath matching no element, the closest paths found in the document.
+     */
+    public Map<String, List<String>> getNearMisses() {
+        Map<String, List<String>> nearMisses = new TreeMap<>();
+        for (String xPath : xPathRules.keySet()) {
+            if (getHits(xPath) == 0) {
+                List<String> candidates = nearMisses(xPath);
+                if (!candidates.isEmpty()) {
+                    nearMisses.put(xPath, candidates);
+                }
+            }
+        }
+        return nearMisses;
+    }
+
+    public void print(PrintStream out) {
+        out.println("Paths:");
+        out.println(String.format("%12s %14s  %s", "elements", "text bytes", "path"));
+        for (PathNode path : paths) {
+            out.println(String.format("%12d %14d  %s", path.getCount(), path.getTextBytes(), path.getPath()));
+        }
+        out.println("Distinct paths: " + paths.size() + ", max depth: " + maxDepth);
+
+        out.println();
+        out.println("Rules:");
+        for (XPathRule xPathRule : xPathRules.values()) {
+            out.println(String.format("%12d  %s %s", getHits(xPathRule.getXPath()), xPathRule.getXPath(), xPathRule.getRuleSet()));
+        }
+
+        Map<String, List<String>> nearMisses = getNearMisses();
+        if (!nearMisses.isEmpty()) {
+            out.println();
+            out.println("Rules matching nothing, with similar paths found:");
+            for (Map.Entry<String, List<String>> nearMiss : nearMisses.entrySet()) {
+                out.println("  " + nearMiss.getKey() + " -> did you mean " + nearMiss.getValue() + "?");
+            }
+        }
+    }
+
+    private List<String> nearMisses(final String xPath) {
+        int maxDistance = Math.max(2, xPath.length() / 10);
+        final Map<String, Integer> distances = new HashMap<>();
+        for (PathNode path : paths) {
+            String candidate = path.getPath();
+            int distance = candidate.equalsIgnoreCase(xPath) ? 0 : distance(xPath, candidate, maxDistance);
+            if (distance <= maxDistance) {
+                distances.put(candidate, distance);
+            }
+        }
+
+        List<String> candidates = new ArrayList<>(distances.keySet());
+        Collections.sort(candidates, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                int comparison = Integer.compare(distances.get(first), distances.get(second));
+                return comparison != 0 ? comparison : first.compareTo(second);
+            }
+        });
+        return candidates.subList(0, Math.min(MAX_NEAR_MISSES, candidates.size()));
+    }
+
+    /**
+     * Levenshtein distance between the two strings, or maxDistance + 1 as soon as it's known to be greater.
+     */
+    static int distance(String first, String second, int maxDistance) {
+        if (Math.abs(first.length() - second.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= second.length(); j++) {
+                int substitution = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[second.length()];
+    }
+}
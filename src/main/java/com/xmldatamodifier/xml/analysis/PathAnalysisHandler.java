@@ -0,0 +1,67 @@
+package com.xmldatamodifier.xml.analysis;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Arrays;
+
+/**
+ * Collects the statistics of every distinct path of a document. Nothing is escaped, transformed or written: the
+ * work per event is a lookup in the path tree and a few counter updates.
+ */
+public class PathAnalysisHandler extends DefaultHandler {
+
+    private final PathNode root = new PathNode(null, "");
+    private PathNode[] openNodes = new PathNode[32];
+    private int depth;
+    private int maxDepth;
+
+    public PathAnalysisHandler() {
+        openNodes[0] = root;
+    }
+
+    public PathNode getRoot() {
+        return root;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        PathNode node = openNodes[depth].child(qName);
+        node.entered();
+        if (++depth == openNodes.length) {
+            openNodes = Arrays.copyOf(openNodes, openNodes.length * 2);
+        }
+        openNodes[depth] = node;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        depth--;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        openNodes[depth].addTextBytes(utf8Length(ch, start, length));
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    static int utf8Length(char[] ch, int start, int length) {
+        int bytes = length;
+        for (int i = start; i < start + length; i++) {
+            char c = ch[i];
+            if (c >= 0x80) {
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return bytes;
+    }
+}
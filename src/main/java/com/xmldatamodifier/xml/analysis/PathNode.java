@@ -0,0 +1,83 @@
+package com.xmldatamodifier.xml.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node of the tree of the distinct paths found in a document, with the statistics collected for that path.
+ */
+public class PathNode {
+
+    private final PathNode parent;
+    private final String name;
+    private final int depth;
+    private final Map<String, PathNode> children = new HashMap<>();
+
+    private long count;
+    private long textBytes;
+
+    PathNode(PathNode parent, String name) {
+        this.parent = parent;
+        this.name = name;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    PathNode child(String name) {
+        PathNode child = children.get(name);
+        if (child == null) {
+            child = new PathNode(this, name);
+            children.put(name, child);
+        }
+        return child;
+    }
+
+    void entered() {
+        count++;
+    }
+
+    void addTextBytes(long bytes) {
+        textBytes += bytes;
+    }
+
+    public String getPath() {
+        if (parent == null) {
+            return "";
+        }
+        return parent.getPath() + "/" + name;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTextBytes() {
+        return textBytes;
+    }
+
+    public Collection<PathNode> getChildren() {
+        return children.values();
+    }
+
+    /**
+     * Returns this node and all its descendants, parents before their children.
+     */
+    public List<PathNode> getDescendants() {
+        List<PathNode> descendants = new ArrayList<>();
+        collect(descendants);
+        return descendants;
+    }
+
+    private void collect(List<PathNode> descendants) {
+        descendants.add(this);
+        for (PathNode child : children.values()) {
+            child.collect(descendants);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.xmldatamodifier.xml.audit;
+
+import com.xmldatamodifier.core.Rule;
+
+/**
+ * Record of the rules applied during a transformation.
+ */
+public interface AuditTrail {
+
+    /**
+     * Called every time a rule changes, or may have changed, some content: once per text node for content rules, once
+     * per skipped element for skip rules, and once per dropped or masked element for conditional rules. Must return
+     * quickly, without waiting for the trail to be written, and never loses an entry.
+     *
+     * @param xPath        path of the transformed content
+     * @param rule         applied rule
+     * @param offset       byte offset in the input of the start tag of the element holding the content, or -1 if not
+     *                     available
+     * @param beforeLength length of the text before the rule was applied
+     * @param afterLength  length of the text after the rule was applied
+     */
+    void ruleApplied(String xPath, Rule rule, long offset, int beforeLength, int afterLength);
+}
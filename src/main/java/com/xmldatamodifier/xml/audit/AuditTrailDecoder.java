@@ -0,0 +1,70 @@
+package com.xmldatamodifier.xml.audit;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.xmldatamodifier.xml.audit.BinaryAuditTrail.*;
+import static java.lang.String.format;
+
+/**
+ * Prints the content of a file written by {@link BinaryAuditTrail}, one rule application per line.
+ * <p>
+ * The file starts with a magic number (int) and a version (short), followed by entries made of a type byte and:
+ * <ul>
+ * <li>path or rule definition: id (int), text (modified UTF-8)</li>
+ * <li>rule application: path id, rule id (ints), offset in the input (long), length before and length after the rule
+ * (ints)</li>
+ * </ul>
+ */
+public class AuditTrailDecoder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: \"java -cp <library> " + AuditTrailDecoder.class.getName() + " auditFile\"");
+            System.exit(-1);
+        }
+        decode(Paths.get(args[0]), System.out);
+    }
+
+    public static void decode(Path auditFile, PrintStream out) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(auditFile)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(auditFile + " is not an audit trail file");
+            }
+            short version = input.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported audit trail version " + version);
+            }
+
+            Map<Integer, String> paths = new HashMap<>();
+            Map<Integer, String> rules = new HashMap<>();
+            long applications = 0;
+            for (int type = input.read(); type != -1; type = input.read()) {
+                switch (type) {
+                    case PATH_ENTRY:
+                        paths.put(input.readInt(), input.readUTF());
+                        break;
+                    case RULE_ENTRY:
+                        rules.put(input.readInt(), input.readUTF());
+                        break;
+                    case APPLICATION_ENTRY:
+                        String path = paths.get(input.readInt());
+                        String rule = rules.get(input.readInt());
+                        long offset = input.readLong();
+                        int beforeLength = input.readInt();
+                        int afterLength = input.readInt();
+                        out.println(format("%d\t%s\t%s\t%d -> %d", offset, path, rule, beforeLength, afterLength));
+                        applications++;
+                        break;
+                    default:
+                        throw new IOException("Unknown audit trail entry type " + type);
+                }
+            }
+            out.println(format("%d rule applications", applications));
+        }
+    }
+}
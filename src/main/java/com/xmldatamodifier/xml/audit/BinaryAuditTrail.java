@@ -0,0 +1,216 @@
+package com.xmldatamodifier.xml.audit;
+
+import com.google.common.base.Supplier;
+import com.xmldatamodifier.core.Rule;
+import com.xmldatamodifier.xml.pipeline.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Audit trail writing compact binary entries to a file on a background thread. Entries are handed over through a
+ * {@link RingBuffer} of preallocated slots; if the writer thread falls behind and the buffer is full, entries overflow
+ * into an unbounded queue, emptied by the writer before the ring is used again. The caller never waits and no entry is
+ * ever lost, at the cost of an allocation per overflowing entry. Paths and rules are written once, in a dictionary
+ * entry, and then referred to by id. See {@link AuditTrailDecoder} for the file format.
+ */
+public class BinaryAuditTrail implements AuditTrail, Closeable {
+
+    static final int MAGIC = 0x58444d41;
+    static final short VERSION = 1;
+
+    static final byte PATH_ENTRY = 1;
+    static final byte RULE_ENTRY = 2;
+    static final byte APPLICATION_ENTRY = 3;
+
+    static final int CAPACITY = 16384;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final Logger log = LoggerFactory.getLogger(BinaryAuditTrail.class);
+
+    private final RingBuffer<Application> ring = new RingBuffer<>(CAPACITY, new Supplier<Application>() {
+        @Override
+        public Application get() {
+            return new Application();
+        }
+    });
+    private final Queue<Application> overflow = new ConcurrentLinkedQueue<>();
+    private final Queue<Definition> definitions = new ConcurrentLinkedQueue<>();
+    private final Map<String, Integer> pathIds = new HashMap<>();
+    private final Map<Rule, Integer> ruleIds = new HashMap<>();
+
+    private final DataOutputStream output;
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile IOException writeError;
+    private long overflowed;
+
+    public BinaryAuditTrail(Path auditFile) throws IOException {
+        this(new FileOutputStream(requireNonNull(auditFile, "Audit file cannot be null").toFile()));
+    }
+
+    BinaryAuditTrail(OutputStream outputStream) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+        this.output.writeInt(MAGIC);
+        this.output.writeShort(VERSION);
+        this.writerThread = new Thread(new EntryWriter(), "audit-trail-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void ruleApplied(String xPath, Rule rule, long offset, int beforeLength, int afterLength) {
+        if (writeError != null) {
+            throw new UncheckedIOException("Error writing the audit trail", writeError);
+        }
+        // once overflowing, entries keep going to the queue until the writer has emptied it, so that they stay in order
+        Application application = overflow.isEmpty() ? ring.tryClaim() : null;
+        boolean overflowing = application == null;
+        if (overflowing) {
+            application = new Application();
+            overflowed++;
+        }
+        application.pathId = pathId(xPath);
+        application.ruleId = ruleId(rule);
+        application.offset = offset;
+        application.beforeLength = beforeLength;
+        application.afterLength = afterLength;
+        if (overflowing) {
+            overflow.add(application);
+        } else {
+            ring.publish();
+        }
+    }
+
+    /**
+     * Returns the number of entries which didn't fit in the ring and were queued instead.
+     */
+    public long getOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Waits for the pending entries to be written, then closes the file. Must be called by the thread which
+     * reported the rule applications, or after it has finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the audit trail");
+        }
+        if (overflowed > 0) {
+            log.info("{} audit entries overflowed the ring buffer", overflowed);
+        }
+        try (DataOutputStream out = output) {
+            if (writeError != null) {
+                throw writeError;
+            }
+        }
+    }
+
+    private int pathId(String xPath) {
+        Integer id = pathIds.get(xPath);
+        if (id == null) {
+            id = pathIds.size();
+            pathIds.put(xPath, id);
+            definitions.add(new Definition(PATH_ENTRY, id, xPath));
+        }
+        return id;
+    }
+
+    private int ruleId(Rule rule) {
+        Integer id = ruleIds.get(rule);
+        if (id == null) {
+            id = ruleIds.size();
+            ruleIds.put(rule, id);
+            definitions.add(new Definition(RULE_ENTRY, id, rule.toString()));
+        }
+        return id;
+    }
+
+    private static class Application {
+        private int pathId;
+        private int ruleId;
+        private long offset;
+        private int beforeLength;
+        private int afterLength;
+    }
+
+    private static class Definition {
+        private final byte type;
+        private final int id;
+        private final String value;
+
+        Definition(byte type, int id, String value) {
+            this.type = type;
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private class EntryWriter implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    boolean closing = closed;
+                    // the ring only holds entries older than the overflowing ones
+                    Application application = ring.poll();
+                    if (application != null) {
+                        write(application);
+                        ring.release();
+                        continue;
+                    }
+                    application = overflow.poll();
+                    if (application != null) {
+                        write(application);
+                        continue;
+                    }
+                    if (closing) {
+                        return;
+                    }
+                    output.flush();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                writeError = e;
+                log.error("Error writing the audit trail", e);
+            }
+        }
+
+        private void write(Application application) throws IOException {
+            writeDefinitions();
+            output.writeByte(APPLICATION_ENTRY);
+            output.writeInt(application.pathId);
+            output.writeInt(application.ruleId);
+            output.writeLong(application.offset);
+            output.writeInt(application.beforeLength);
+            output.writeInt(application.afterLength);
+        }
+
+        private void writeDefinitions() throws IOException {
+            for (Definition definition = definitions.poll(); definition != null; definition = definitions.poll()) {
+                output.writeByte(definition.type);
+                output.writeInt(definition.id);
+                output.writeUTF(definition.value);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.xmldatamodifier.xml.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.xmldatamodifier.xml.index.RecordIndex;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Cache keys of the conversion of a file, computed in a single pass over it. The records are split into chunks with
+ * content-defined boundaries: a chunk ends after a record whose hash falls below a threshold proportional to its
+ * length, so that chunks average the target size, and so that a change only moves the boundaries around it. The key
+ * of a chunk is the hash of its bytes and of the content before the first record (the prolog, with the doctype and
+ * its entities, and the start tags of the elements containing the records), the key of the file the hash of the
+ * content around the records and of the keys of the chunks. Every key also covers the given context, i.e. whatever
+ * else changes the output.
+ */
+public class ChunkPlan {
+
+    public static final long DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final HashFunction KEY_HASH = Hashing.sha256();
+    private static final HashFunction BOUNDARY_HASH = Hashing.murmur3_32();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String key;
+    private final int[] chunkStarts;
+    private final String[] chunkKeys;
+    private final long[] chunkLengths;
+
+    private ChunkPlan(String key, int[] chunkStarts, String[] chunkKeys, long[] chunkLengths) {
+        this.key = key;
+        this.chunkStarts = chunkStarts;
+        this.chunkKeys = chunkKeys;
+        this.chunkLengths = chunkLengths;
+    }
+
+    /**
+     * @param index     index of the records of the file, or null to only compute the key of the file
+     * @param context   description of whatever else than the file changes the output
+     * @param chunkSize average size of the chunks in bytes: chunks are at least a quarter, and at most four times, as
+     *                  large, unless made of a single record
+     */
+    public static ChunkPlan create(Path file, RecordIndex index, String context, long chunkSize) throws IOException {
+        checkArgument(chunkSize >= 4, "Chunk size must be at least 4 bytes");
+        Hasher fileHasher = KEY_HASH.newHasher().putString(context, StandardCharsets.UTF_8);
+        List<Integer> chunkStarts = new ArrayList<>();
+        List<String> chunkKeys = new ArrayList<>();
+        List<Long> chunkLengths = new ArrayList<>();
+        long fileLength = Files.size(file);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            int recordCount = index != null ? index.getRecordCount() : 0;
+            if (recordCount == 0) {
+                hash(input, fileLength, buffer, fileHasher, null);
+                return new ChunkPlan(fileHasher.hash().toString(), new int[0], new String[0], new long[0]);
+            }
+            Hasher headHasher = KEY_HASH.newHasher();
+            hash(input, index.getRecordStart(0), buffer, headHasher, null);
+            String headKey = headHasher.hash().toString();
+            fileHasher.putString(headKey, StandardCharsets.UTF_8);
+
+            // a record of length n ends its chunk with probability n / chunkSize
+            long thresholdPerByte = (1L << 32) / chunkSize;
+            Hasher chunkHasher = null;
+            long chunkLength = 0;
+            for (int record = 0; record < recordCount; record++) {
+                if (chunkHasher == null) {
+                    chunkHasher = KEY_HASH.newHasher().putString(context, StandardCharsets.UTF_8)
+                            .putString(headKey, StandardCharsets.UTF_8);
+                    chunkStarts.add(record);
+                }
+                long end = record + 1 < recordCount ? index.getRecordStart(record + 1) : index.getRecordEnd(record);
+                long length = end - index.getRecordStart(record);
+                Hasher recordHasher = BOUNDARY_HASH.newHasher();
+                hash(input, length, buffer, chunkHasher, recordHasher);
+                chunkLength += length;
+
+                boolean boundary = length >= chunkSize || (recordHasher.hash().asInt() & 0xFFFFFFFFL) < length * thresholdPerByte;
+                if (record + 1 == recordCount || chunkLength >= 4 * chunkSize || (chunkLength >= chunkSize / 4 && boundary)) {
+                    String chunkKey = chunkHasher.hash().toString();
+                    chunkKeys.add(chunkKey);
+                    chunkLengths.add(chunkLength);
+                    fileHasher.putString(chunkKey, StandardCharsets.UTF_8);
+                    chunkHasher = null;
+                    chunkLength = 0;
+                }
+            }
+            hash(input, fileLength - index.getRecordEnd(recordCount - 1), buffer, fileHasher, null);
+        }
+        return new ChunkPlan(fileHasher.hash().toString(), Ints.toArray(chunkStarts),
+                chunkKeys.toArray(new String[chunkKeys.size()]), Longs.toArray(chunkLengths));
+    }
+
+    private static void hash(InputStream input, long length, byte[] buffer, Hasher hasher, Hasher otherHasher) throws IOException {
+        while (length > 0) {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Input file is shorter than its index");
+            }
+            hasher.putBytes(buffer, 0, read);
+            if (otherHasher != null) {
+                otherHasher.putBytes(buffer, 0, read);
+            }
+            length -= read;
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the first record of every chunk.
+     */
+    public int[] getChunkStarts() {
+        return chunkStarts;
+    }
+
+    public int getChunkCount() {
+        return chunkStarts.length;
+    }
+
+    public String getChunkKey(int chunk) {
+        return chunkKeys[chunk];
+    }
+
+    /**
+     * Returns the length in bytes of the input of the given chunk.
+     */
+    public long getChunkLength(int chunk) {
+        return chunkLengths[chunk];
+    }
+}
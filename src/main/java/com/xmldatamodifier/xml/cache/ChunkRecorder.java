@@ -0,0 +1,77 @@
+package com.xmldatamodifier.xml.cache;
+
+import com.xmldatamodifier.xml.output.EncodedOutputWriter;
+import com.xmldatamodifier.xml.parsing.ChunkListener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes the cached chunks of a conversion from a {@link ResultCache}, and notes where the output of the other
+ * chunks starts and ends, to store it once the output is complete. The output must be written through an
+ * {@link EncodedOutputWriter} to the given channel.
+ */
+public class ChunkRecorder implements ChunkListener {
+
+    private final ResultCache cache;
+    private final ChunkPlan plan;
+    private final FileChannel output;
+    private final BitSet cachedChunks = new BitSet();
+    private final long[] outputPositions;
+
+    public ChunkRecorder(ResultCache cache, ChunkPlan plan, FileChannel output) {
+        this.cache = cache;
+        this.plan = plan;
+        this.output = output;
+        this.outputPositions = new long[plan.getChunkCount() + 1];
+        for (int chunk = 0; chunk < plan.getChunkCount(); chunk++) {
+            if (cache.contains(plan.getChunkKey(chunk))) {
+                cachedChunks.set(chunk);
+            }
+        }
+    }
+
+    public BitSet getCachedChunks() {
+        return cachedChunks;
+    }
+
+    /**
+     * Returns the number of bytes of input whose output was found in the cache.
+     */
+    public long getCachedInputBytes() {
+        long bytes = 0;
+        for (int chunk = cachedChunks.nextSetBit(0); chunk >= 0; chunk = cachedChunks.nextSetBit(chunk + 1)) {
+            bytes += plan.getChunkLength(chunk);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void chunkStarted(int chunk, boolean cached, Writer writer) throws IOException {
+        writer.flush();
+        outputPositions[chunk] = output.position();
+        if (cached) {
+            try (FileChannel entry = FileChannel.open(cache.getEntry(plan.getChunkKey(chunk)), StandardOpenOption.READ)) {
+                ((EncodedOutputWriter) writer).writeBytes(entry, 0, entry.size());
+            }
+        }
+    }
+
+    /**
+     * Stores the output of the chunks which were not cached, read from the complete output.
+     */
+    public void storeChunks(FileChannel completeOutput) throws IOException {
+        checkState(plan.getChunkCount() == 0 || outputPositions[plan.getChunkCount()] > 0, "Conversion not complete");
+        for (int chunk = 0; chunk < plan.getChunkCount(); chunk++) {
+            if (!cachedChunks.get(chunk)) {
+                long start = outputPositions[chunk];
+                cache.store(plan.getChunkKey(chunk), completeOutput, start, outputPositions[chunk + 1] - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.xmldatamodifier.xml.cache;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.EntityResolver2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Hash of the external DTDs and entities an input reads before its root element, i.e. of what its output depends on
+ * besides its own bytes. The prolog is parsed with the given reader, so that entities are resolved through its
+ * resolver, e.g. from a catalog, and the content of every entity resolved, or read from a local file, is hashed.
+ * Remote entities the parser would fetch itself are only identified by their system id. External entities
+ * referenced after the root start tag are not covered.
+ */
+public class ExternalEntityFingerprint {
+
+    private ExternalEntityFingerprint() {
+    }
+
+    /**
+     * @param xmlReader reader set up as for the conversion, whose handlers and resolver are replaced
+     */
+    public static String compute(XMLReader xmlReader, Path file) throws IOException, SAXException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        xmlReader.setEntityResolver(new RecordingResolver(xmlReader.getEntityResolver(), hasher));
+        xmlReader.setContentHandler(new DefaultHandler2() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                throw new PrologEnd();
+            }
+        });
+        try {
+            xmlReader.parse(new InputSource(file.toUri().toString()));
+        } catch (PrologEnd e) {
+            // the root element has been reached
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Thrown to stop the parsing at the root element.
+     */
+    private static class PrologEnd extends SAXException {
+    }
+
+    /**
+     * Resolves the entities with the given resolver, if any, and hashes their content before handing it to the parser.
+     */
+    private static class RecordingResolver implements EntityResolver2 {
+        private final EntityResolver resolver;
+        private final Hasher hasher;
+
+        RecordingResolver(EntityResolver resolver, Hasher hasher) {
+            this.resolver = resolver;
+            this.hasher = hasher;
+        }
+
+        @Override
+        public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
+            return resolver instanceof EntityResolver2 ? record(((EntityResolver2) resolver).getExternalSubset(name, baseURI)) : null;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+            return resolveEntity(null, publicId, null, systemId);
+        }
+
+        @Override
+        public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
+            String absoluteSystemId = absolute(baseURI, systemId);
+            InputSource inputSource;
+            if (resolver instanceof EntityResolver2) {
+                inputSource = ((EntityResolver2) resolver).resolveEntity(name, publicId, baseURI, systemId);
+            } else if (resolver != null) {
+                inputSource = resolver.resolveEntity(publicId, absoluteSystemId);
+            } else {
+                inputSource = null;
+            }
+            if (inputSource == null && absoluteSystemId != null) {
+                inputSource = new InputSource(absoluteSystemId);
+                inputSource.setPublicId(publicId);
+            }
+            return record(inputSource);
+        }
+
+        private InputSource record(InputSource inputSource) throws IOException {
+            if (inputSource == null) {
+                return null;
+            }
+            hasher.putString(String.valueOf(inputSource.getSystemId()), StandardCharsets.UTF_8);
+            InputSource recorded = new InputSource(inputSource.getSystemId());
+            recorded.setPublicId(inputSource.getPublicId());
+            recorded.setEncoding(inputSource.getEncoding());
+            if (inputSource.getCharacterStream() != null) {
+                try (Reader reader = inputSource.getCharacterStream()) {
+                    String content = CharStreams.toString(reader);
+                    hasher.putString(content, StandardCharsets.UTF_8);
+                    recorded.setCharacterStream(new StringReader(content));
+                }
+            } else if (inputSource.getByteStream() != null || isLocal(inputSource.getSystemId())) {
+                try (InputStream input = inputSource.getByteStream() != null
+                        ? inputSource.getByteStream() : new URL(inputSource.getSystemId()).openStream()) {
+                    byte[] content = ByteStreams.toByteArray(input);
+                    hasher.putBytes(content);
+                    recorded.setByteStream(new ByteArrayInputStream(content));
+                }
+            }
+            return recorded;
+        }
+
+        private static String absolute(String baseURI, String systemId) {
+            if (systemId == null || baseURI == null) {
+                return systemId;
+            }
+            try {
+                return new URI(baseURI).resolve(new URI(systemId)).toString();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return systemId;
+            }
+        }
+
+        private static boolean isLocal(String systemId) {
+            if (systemId == null) {
+                return false;
+            }
+            try {
+                String scheme = new URI(systemId.replace(" ", "%20")).getScheme();
+                return "file".equalsIgnoreCase(scheme) || "jar".equalsIgnoreCase(scheme);
+            } catch (URISyntaxException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.xmldatamodifier.xml.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Local cache of conversion results, addressed by the hash of what produced them (see {@link ChunkPlan}): the output
+ * of whole files and of chunks of records. Entries are written to a temporary file then moved in place, so that
+ * concurrent conversions sharing the cache never see partial entries. Entries are never evicted: the directory can
+ * be deleted at any time.
+ */
+public class ResultCache {
+
+    private final Path directory;
+
+    public ResultCache(Path directory) throws IOException {
+        this.directory = requireNonNull(directory, "Cache directory cannot be null");
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Returns the file of the given entry, which may not exist.
+     */
+    public Path getEntry(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    public boolean contains(String key) {
+        return Files.isRegularFile(getEntry(key));
+    }
+
+    /**
+     * Stores the given range of a file as the given entry.
+     */
+    public void store(String key, FileChannel source, long position, long length) throws IOException {
+        Path entry = getEntry(key);
+        Files.createDirectories(entry.getParent());
+        Path temporary = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < length) {
+                    long transferred = source.transferTo(position + copied, length - copied, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file at " + (position + copied));
+                    }
+                    copied += transferred;
+                }
+            }
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Stores the whole given file as the given entry.
+     */
+    public void store(String key, Path file) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            store(key, source, 0, source.size());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.xmldatamodifier.xml.checkpoint;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.xmldatamodifier.xml.output.OutputFormat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * State of a conversion right after a record, from which the conversion can be resumed. It also identifies the
+ * conversion (input, rules, record path and output settings), so that it's never resumed from a checkpoint of another
+ * one.
+ */
+public class Checkpoint {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final long inputOffset;
+    private final List<String> openElements;
+    private final boolean skipMode;
+    private final String skippedPath;
+    private final long outputLength;
+    private final long records;
+    private final String inputEncoding;
+    private final long prologLength;
+    private final List<String> wrapperStartTags;
+    private final long inputLength;
+    private final long inputModified;
+    private final String rulesFingerprint;
+    private final String recordPath;
+    private final String outputEncoding;
+    private final boolean minify;
+    private final OutputFormat outputFormat;
+
+    /**
+     * @param prologLength     length of the input before the root element
+     * @param wrapperStartTags start tags of the open elements, attributes included
+     */
+    public Checkpoint(long inputOffset, List<String> openElements, boolean skipMode, String skippedPath,
+                      long outputLength, long records, String inputEncoding, long prologLength, List<String> wrapperStartTags,
+                      long inputLength, long inputModified, String rulesFingerprint, String recordPath,
+                      String outputEncoding, boolean minify, OutputFormat outputFormat) {
+        this.inputOffset = inputOffset;
+        this.openElements = new ArrayList<>(openElements);
+        this.prologLength = prologLength;
+        this.wrapperStartTags = new ArrayList<>(wrapperStartTags);
+        this.inputLength = inputLength;
+        this.inputModified = inputModified;
+        this.rulesFingerprint = rulesFingerprint;
+        this.recordPath = recordPath;
+        this.outputEncoding = outputEncoding;
+        this.minify = minify;
+        this.outputFormat = outputFormat;
+        this.skipMode = skipMode;
+        this.skippedPath = skippedPath;
+        this.outputLength = outputLength;
+        this.records = records;
+        this.inputEncoding = inputEncoding;
+    }
+
+    public static Checkpoint read(Path checkpointFile) throws IOException {
+        try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, Checkpoint.class);
+        }
+    }
+
+    /**
+     * Fails unless the checkpoint was saved by the same conversion of the same input: the input must not have changed
+     * since, except for growing when it's followed, and the output must still hold what was written up to it, in the
+     * same encoding and format.
+     */
+    public void checkMatches(Path inputFile, boolean growing, String rulesFingerprint, String recordPath, Path outputFile,
+                             String outputEncoding, boolean minify, OutputFormat outputFormat) throws IOException {
+        checkState(Objects.equals(this.rulesFingerprint, rulesFingerprint), "Checkpoint was saved with different rules");
+        checkState(Objects.equals(this.recordPath, recordPath), "Checkpoint was saved with record path %s", this.recordPath);
+        checkState(Objects.equals(this.outputEncoding, outputEncoding), "Checkpoint was saved with output encoding %s",
+                this.outputEncoding);
+        checkState(this.minify == minify, "Checkpoint was saved %s minified output", this.minify ? "with" : "without");
+        checkState(this.outputFormat == outputFormat, "Checkpoint was saved with output format %s", this.outputFormat);
+        long length = Files.size(inputFile);
+        checkState(growing ? length >= inputLength : (length == inputLength
+                && Files.getLastModifiedTime(inputFile).toMillis() == inputModified), "Input %s changed since the checkpoint", inputFile);
+        checkState(Files.exists(outputFile) && Files.size(outputFile) >= outputLength, "Output %s is shorter than at the checkpoint", outputFile);
+        checkState(wrapperStartTags.size() == openElements.size(), "Checkpoint doesn't hold the start tags of the open elements");
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file which is then moved over the given one, so that a crash while
+     * writing never leaves a truncated checkpoint behind.
+     */
+    public void write(Path checkpointFile) throws IOException {
+        Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        }
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Offset of the input right after the end tag of the last record converted.
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    public List<String> getOpenElements() {
+        return openElements;
+    }
+
+    public boolean isSkipMode() {
+        return skipMode;
+    }
+
+    public String getSkippedPath() {
+        return skippedPath;
+    }
+
+    public long getOutputLength() {
+        return outputLength;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public String getInputEncoding() {
+        return inputEncoding;
+    }
+
+    /**
+     * Length of the input before the root element: declaration, doctype, comments and processing instructions.
+     */
+    public long getPrologLength() {
+        return prologLength;
+    }
+
+    public List<String> getWrapperStartTags() {
+        return wrapperStartTags;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" + "inputOffset=" + inputOffset + ", openElements=" + openElements + ", skipMode=" + skipMode
+                + ", skippedPath='" + skippedPath + '\'' + ", outputLength=" + outputLength + ", records=" + records
+                + ", inputEncoding='" + inputEncoding + '\'' + ", prologLength=" + prologLength
+                + ", wrapperStartTags=" + wrapperStartTags + ", inputLength=" + inputLength + ", inputModified=" + inputModified
+                + ", rulesFingerprint='" + rulesFingerprint + '\'' + ", recordPath='" + recordPath + '\''
+                + ", outputEncoding='" + outputEncoding + '\'' + ", minify=" + minify + ", outputFormat=" + outputFormat + '}';
+    }
+}
@@ -0,0 +1,123 @@
+package com.xmldatamodifier.xml.checkpoint;
+
+import com.xmldatamodifier.xml.output.OutputFormat;
+import com.xmldatamodifier.xml.parsing.RecordListener;
+import com.xmldatamodifier.xml.parsing.RecordOffsetTracker;
+import com.xmldatamodifier.xml.parsing.SAXTransformationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves a {@link Checkpoint} every given number of records, and optionally once a given time has passed since the
+ * last one. The output is flushed and synced to disk before the checkpoint is written, so the output length recorded
+ * is always safe to resume from.
+ * Between checkpoints the only cost is a counter increment per record.
+ */
+public class Checkpointer implements RecordListener {
+
+    private final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final Path checkpointFile;
+    private final long interval;
+    private final Path inputFile;
+    private final String rulesFingerprint;
+    private final String recordPath;
+    private final String outputEncoding;
+    private final boolean minify;
+    private final OutputFormat outputFormat;
+    private final SAXTransformationHandler handler;
+    private final RecordOffsetTracker offsetTracker;
+    private final Writer writer;
+    private final FileOutputStream outputStream;
+
+    private long records;
+    private final long prologLength;
+    private long periodNanos;
+    private boolean sync = true;
+    private long lastCheckpoint = System.nanoTime();
+
+    /**
+     * @param resumedFrom checkpoint the conversion was resumed from, null otherwise
+     */
+    public Checkpointer(Path checkpointFile, long interval, Path inputFile, String rulesFingerprint, String recordPath,
+                        String outputEncoding, boolean minify, OutputFormat outputFormat,
+                        SAXTransformationHandler handler, RecordOffsetTracker offsetTracker, Writer writer,
+                        FileOutputStream outputStream, Checkpoint resumedFrom) {
+        this.checkpointFile = checkpointFile;
+        this.interval = interval;
+        this.inputFile = inputFile;
+        this.rulesFingerprint = rulesFingerprint;
+        this.recordPath = recordPath;
+        this.outputEncoding = outputEncoding;
+        this.minify = minify;
+        this.outputFormat = outputFormat;
+        this.handler = handler;
+        this.offsetTracker = offsetTracker;
+        this.writer = writer;
+        this.outputStream = outputStream;
+        this.records = resumedFrom != null ? resumedFrom.getRecords() : 0;
+        this.prologLength = resumedFrom != null ? resumedFrom.getPrologLength() : -1;
+    }
+
+    /**
+     * Also saves a checkpoint at the end of a record once the given time has passed since the last one, 0 to save
+     * them only every interval.
+     */
+    public void setPeriod(long periodMillis) {
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    }
+
+    /**
+     * Whether the output is synced to disk before every checkpoint, true by default. Without it a checkpoint is
+     * still safe to resume from after the process is killed, but not after the system crashes.
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    @Override
+    public void recordStarted() throws IOException {
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        if (++records % interval == 0 || (periodNanos > 0 && System.nanoTime() - lastCheckpoint >= periodNanos)) {
+            checkpoint();
+        }
+    }
+
+    public void checkpoint() throws IOException {
+        writer.flush();
+        if (sync) {
+            outputStream.getFD().sync();
+        }
+        lastCheckpoint = System.nanoTime();
+
+        Checkpoint checkpoint = new Checkpoint(
+                offsetTracker.getLastRecordEndOffset(),
+                handler.getOpenElements(),
+                handler.isSkipMode(),
+                handler.getSkippedPath(),
+                outputStream.getChannel().position(),
+                records,
+                handler.getInputEncoding(),
+                prologLength >= 0 ? prologLength : offsetTracker.getRootStartOffset(),
+                handler.getWrapperStartTags(),
+                Files.size(inputFile),
+                Files.getLastModifiedTime(inputFile).toMillis(),
+                rulesFingerprint,
+                recordPath,
+                outputEncoding,
+                minify,
+                outputFormat);
+        checkpoint.write(checkpointFile);
+        log.debug("Written {}", checkpoint);
+    }
+}
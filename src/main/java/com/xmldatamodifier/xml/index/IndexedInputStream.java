@@ -0,0 +1,210 @@
+package com.xmldatamodifier.xml.index;
+
+import com.xmldatamodifier.xml.output.SplitOutputWriter;
+import com.xmldatamodifier.xml.parsing.SAXTransformationHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Input stream giving the parser a range of the records of an indexed file. The content before the first record is
+ * always included, so that the xml declaration and the wrapper elements are there, and the wrapper elements are
+ * closed after the last record of the range. Records which don't contain any of the given paths are replaced with a
+ * marker referring to them, see {@link IndexedRecordSource}. Records can also be picked one by one, then the ones
+ * between them are left out.
+ * <p>
+ * Markers are processing instructions, so that they are reported by the parser where they belong, with a target drawn
+ * at random for every stream: the handler is given the target by {@link #getMarkerTarget()}, and processing
+ * instructions of the input are never taken for markers.
+ */
+public class IndexedInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final RecordIndex index;
+    private final int to;
+    private final long rulePathMask;
+    private final BitSet picked;
+    private int[] chunkStarts;
+    private BitSet cachedChunks;
+    private int nextChunk;
+    private final byte[] single = new byte[1];
+    private final String markerTarget = "xdm-" + UUID.randomUUID().toString().replace("-", "");
+
+    private long position;
+    private long segmentEnd;
+    private byte[] literal;
+    private int literalPosition;
+    private byte[] pendingLiteral;
+
+    private int nextRecord;
+    private long cursor;
+    private boolean recordsDone;
+    private boolean done;
+
+    /**
+     * @param from         first record to include
+     * @param to           record after the last one to include
+     * @param rulePathMask mask of the paths with rules, see {@link RecordIndex#getPathMask(java.util.Collection)}
+     */
+    public IndexedInputStream(FileChannel channel, RecordIndex index, int from, int to, long rulePathMask) throws IOException {
+        this(channel, index, from, to, rulePathMask, null);
+    }
+
+    /**
+     * @param picked       records to include
+     * @param rulePathMask mask of the paths with rules, see {@link RecordIndex#getPathMask(java.util.Collection)}
+     */
+    public IndexedInputStream(FileChannel channel, RecordIndex index, BitSet picked, long rulePathMask) throws IOException {
+        this(channel, index, Math.max(picked.nextSetBit(0), 0), picked.length(), rulePathMask, picked);
+    }
+
+    private IndexedInputStream(FileChannel channel, RecordIndex index, int from, int to, long rulePathMask, BitSet picked) throws IOException {
+        checkArgument(0 <= from && from <= to && to <= index.getRecordCount(), "Invalid record range %s-%s", from, to);
+        this.channel = channel;
+        this.index = index;
+        this.to = to;
+        this.rulePathMask = rulePathMask;
+        this.picked = picked;
+        this.nextRecord = from;
+
+        if (index.getRecordCount() == 0) {
+            setSegment(0, channel.size(), null);
+            recordsDone = true;
+            done = true;
+        } else {
+            setSegment(0, index.getRecordStart(0), null);
+            cursor = from < to ? index.getRecordStart(from) : index.getRecordStart(0);
+        }
+    }
+
+    /**
+     * Splits the records into chunks starting at the given records, the first one being the first record: every
+     * chunk starts with a {@link SAXTransformationHandler#CHUNK_MARKER} marker, and the records after the last chunk
+     * are followed by one referring to the number of chunks. A chunk holds its records and the content after them, up
+     * to the next chunk. Cached chunks are replaced with a {@link SAXTransformationHandler#CACHED_CHUNK_MARKER} marker.
+     * Must be called before reading.
+     */
+    public void setChunks(int[] chunkStarts, BitSet cachedChunks) {
+        checkArgument(picked == null && index.getRecordCount() > 0 && to == index.getRecordCount()
+                && chunkStarts.length > 0 && chunkStarts[0] == nextRecord, "Chunks must cover all the records");
+        this.chunkStarts = chunkStarts;
+        this.cachedChunks = cachedChunks;
+    }
+
+    /**
+     * Returns the target of the processing instructions marking the raw records and the chunks, see
+     * {@link SAXTransformationHandler#setMarkerTarget}.
+     */
+    public String getMarkerTarget() {
+        return markerTarget;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (position < segmentEnd) {
+                int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, segmentEnd - position)), position);
+                if (read == -1) {
+                    throw new IOException("Input file is shorter than its index");
+                }
+                position += read;
+                return read;
+            }
+            if (literal != null && literalPosition < literal.length) {
+                int read = Math.min(len, literal.length - literalPosition);
+                System.arraycopy(literal, literalPosition, b, off, read);
+                literalPosition += read;
+                return read;
+            }
+            if (pendingLiteral != null) {
+                literal = pendingLiteral;
+                literalPosition = 0;
+                pendingLiteral = null;
+                continue;
+            }
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (done) {
+            return false;
+        }
+        while (nextRecord < to) {
+            int record = nextRecord;
+            if (chunkStarts != null && nextChunk < chunkStarts.length && record == chunkStarts[nextChunk]) {
+                startChunk(nextChunk++);
+                return true;
+            }
+            nextRecord++;
+            if (picked != null && !picked.get(record)) {
+                // the run of records left out ends right before the next picked one, which is before the end
+                int lastLeftOut = picked.nextSetBit(record) - 1;
+                setSegment(cursor, index.getRecordStart(record), null);
+                cursor = index.getRecordEnd(lastLeftOut);
+                nextRecord = lastLeftOut + 1;
+                return true;
+            }
+            if ((index.getPathMask(record) & rulePathMask) == 0) {
+                setSegment(cursor, index.getRecordStart(record), marker(SAXTransformationHandler.RAW_RECORD_MARKER, record));
+                cursor = index.getRecordEnd(record);
+                return true;
+            }
+        }
+        if (chunkStarts != null && nextChunk == chunkStarts.length) {
+            long end = Math.max(cursor, index.getRecordEnd(to - 1));
+            setSegment(cursor, end, marker(SAXTransformationHandler.CHUNK_MARKER, nextChunk++));
+            cursor = end;
+            return true;
+        }
+        done = true;
+        if (to == index.getRecordCount()) {
+            setSegment(cursor, channel.size(), null);
+        } else {
+            long end = to > 0 ? Math.max(cursor, index.getRecordEnd(to - 1)) : cursor;
+            setSegment(cursor, end, SplitOutputWriter.wrapperEndTags(index.getRecordPath()).getBytes(index.getEncoding()));
+        }
+        return true;
+    }
+
+    private void startChunk(int chunk) {
+        int record = chunkStarts[chunk];
+        if (!cachedChunks.get(chunk)) {
+            setSegment(cursor, index.getRecordStart(record), marker(SAXTransformationHandler.CHUNK_MARKER, chunk));
+            cursor = index.getRecordStart(record);
+            return;
+        }
+        setSegment(cursor, index.getRecordStart(record), marker(SAXTransformationHandler.CACHED_CHUNK_MARKER, chunk));
+        nextRecord = chunk + 1 < chunkStarts.length ? chunkStarts[chunk + 1] : to;
+        cursor = nextRecord < to ? index.getRecordStart(nextRecord) : index.getRecordEnd(to - 1);
+    }
+
+    private void setSegment(long start, long end, byte[] followingLiteral) {
+        position = start;
+        segmentEnd = end;
+        literal = null;
+        pendingLiteral = followingLiteral;
+    }
+
+    private byte[] marker(String kind, int number) {
+        return ("<?" + markerTarget + " " + kind + " " + number + "?>").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,54 @@
+package com.xmldatamodifier.xml.index;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import com.xmldatamodifier.xml.output.EncodedOutputWriter;
+import com.xmldatamodifier.xml.parsing.RawRecordSource;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copies records of an indexed file. When the output has the encoding of the file, the bytes of the records are
+ * copied as they are, otherwise they are decoded with the encoding of the file. Moves the position of the channel,
+ * which must only be read with positional reads elsewhere.
+ */
+public class IndexedRecordSource implements RawRecordSource {
+
+    private final FileChannel channel;
+    private final RecordIndex index;
+    private final Charset encoding;
+    private final boolean sameEncoding;
+
+    public IndexedRecordSource(FileChannel channel, RecordIndex index, Charset outputEncoding) {
+        this.channel = channel;
+        this.index = index;
+        this.encoding = withByteOrder(Charset.forName(index.getEncoding()));
+        this.sameEncoding = withByteOrder(outputEncoding).equals(encoding);
+    }
+
+    /**
+     * Returns the charset the bytes of a record are actually in: UTF-16 without byte order mark, as in the middle of
+     * a file, is big endian.
+     */
+    private static Charset withByteOrder(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_16) ? StandardCharsets.UTF_16BE : charset;
+    }
+
+    @Override
+    public void copyRecord(int record, Writer writer) throws IOException {
+        long start = index.getRecordStart(record);
+        long end = index.getRecordEnd(record);
+        if (sameEncoding && writer instanceof EncodedOutputWriter) {
+            ((EncodedOutputWriter) writer).writeBytes(channel, start, end - start);
+            return;
+        }
+        channel.position(start);
+        CharStreams.copy(new InputStreamReader(ByteStreams.limit(Channels.newInputStream(channel), end - start), encoding), writer);
+    }
+}
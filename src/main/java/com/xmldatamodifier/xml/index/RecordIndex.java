@@ -0,0 +1,188 @@
+package com.xmldatamodifier.xml.index;
+
+import com.google.common.collect.ImmutableList;
+import com.xmldatamodifier.xml.parsing.OffsetTrackingInputStream;
+import com.xmldatamodifier.xml.parsing.XmlByteScanner;
+import com.xmldatamodifier.xml.parsing.XmlDeclaration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sidecar index of the record elements of an xml file, read through a memory mapping. For every record it holds the
+ * byte offsets of its start and end tags, and a mask of the paths found inside it: bit {@code id % 64} is set for
+ * every path of the dictionary found in the record, so that records which certainly don't contain a given set of
+ * paths can be found without parsing them.
+ * <p>
+ * The file is made of a fixed size header (magic number, version, size and modification time of the indexed file,
+ * number of records, offset of the dictionary), one 24 bytes entry per record (start offset, end offset, path mask)
+ * and the dictionary: the encoding of the indexed file, the record path, then all the paths found in the file.
+ */
+public class RecordIndex {
+
+    static final int MAGIC = 0x58444d49;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int ENTRY_SIZE = 24;
+
+    private final MappedByteBuffer buffer;
+    private final long inputLength;
+    private final long inputLastModified;
+    private final int recordCount;
+    private final String encoding;
+    private final String recordPath;
+    private final List<String> paths;
+    private final Map<String, Integer> pathIds = new HashMap<>();
+
+    private RecordIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a record index, or unsupported version");
+        }
+        this.inputLength = buffer.getLong(8);
+        this.inputLastModified = buffer.getLong(16);
+        this.recordCount = (int) buffer.getLong(24);
+        long dictionaryOffset = buffer.getLong(32);
+
+        ByteBuffer dictionaryBuffer = buffer.duplicate();
+        dictionaryBuffer.position((int) dictionaryOffset);
+        byte[] dictionary = new byte[dictionaryBuffer.remaining()];
+        dictionaryBuffer.get(dictionary);
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(dictionary))) {
+            this.encoding = input.readUTF();
+            this.recordPath = input.readUTF();
+            int pathCount = input.readInt();
+            ImmutableList.Builder<String> pathsBuilder = ImmutableList.builder();
+            for (int id = 0; id < pathCount; id++) {
+                String path = input.readUTF();
+                pathsBuilder.add(path);
+                pathIds.put(path, id);
+            }
+            this.paths = pathsBuilder.build();
+        }
+    }
+
+    public static RecordIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            checkArgument(channel.size() <= Integer.MAX_VALUE, "Index file too big: %s", indexFile);
+            return new RecordIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Scans the given input, without parsing it, and writes the index of the elements found at the record path.
+     */
+    public static void build(Path inputFile, String recordPath, Path indexFile) throws IOException {
+        requireNonNull(recordPath, "Record path cannot be null");
+        OffsetTrackingInputStream.checkAsciiCompatibleEncoding(inputFile);
+        String encoding = XmlDeclaration.read(inputFile).getEncoding().name();
+
+        Logger log = LoggerFactory.getLogger(RecordIndex.class);
+        log.info("Indexing {} records of {}", recordPath, inputFile);
+
+        long dictionaryOffset;
+        RecordIndexer indexer;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 65536));
+             InputStream input = Files.newInputStream(inputFile)) {
+            output.write(new byte[HEADER_SIZE]);
+            indexer = new RecordIndexer(recordPath, encoding, output);
+            XmlByteScanner scanner = new XmlByteScanner(indexer);
+            byte[] buffer = new byte[65536];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                scanner.scan(buffer, 0, read);
+            }
+            indexer.checkWriteError();
+
+            dictionaryOffset = HEADER_SIZE + (long) indexer.getRecordCount() * ENTRY_SIZE;
+            output.writeUTF(encoding);
+            output.writeUTF(recordPath);
+            output.writeInt(indexer.getPaths().size());
+            for (String path : indexer.getPaths()) {
+                output.writeUTF(path);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putLong(Files.size(inputFile))
+                .putLong(Files.getLastModifiedTime(inputFile).toMillis())
+                .putLong(indexer.getRecordCount())
+                .putLong(dictionaryOffset);
+        header.rewind();
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+        }
+        log.info("Indexed {} records and {} paths", indexer.getRecordCount(), indexer.getPaths().size());
+    }
+
+    /**
+     * Returns true if the index was built on the given file as it is now, for the given record path.
+     */
+    public boolean isUpToDate(Path inputFile, String recordPath) throws IOException {
+        return this.recordPath.equals(recordPath)
+                && inputLength == Files.size(inputFile)
+                && inputLastModified == Files.getLastModifiedTime(inputFile).toMillis();
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getRecordStart(int record) {
+        return buffer.getLong(entryOffset(record));
+    }
+
+    public long getRecordEnd(int record) {
+        return buffer.getLong(entryOffset(record) + 8);
+    }
+
+    public long getPathMask(int record) {
+        return buffer.getLong(entryOffset(record) + 16);
+    }
+
+    /**
+     * Returns the mask of the given paths, ignoring the ones which are not in the dictionary.
+     */
+    public long getPathMask(Collection<String> paths) {
+        long mask = 0;
+        for (String path : paths) {
+            Integer id = pathIds.get(path);
+            if (id != null) {
+                mask |= pathBit(id);
+            }
+        }
+        return mask;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    static long pathBit(int pathId) {
+        return 1L << (pathId & 63);
+    }
+
+    private int entryOffset(int record) {
+        checkArgument(record >= 0 && record < recordCount, "Record %s out of range", record);
+        return HEADER_SIZE + record * ENTRY_SIZE;
+    }
+}
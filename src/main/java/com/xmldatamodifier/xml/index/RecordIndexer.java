@@ -0,0 +1,105 @@
+package com.xmldatamodifier.xml.index;
+
+import com.xmldatamodifier.xml.parsing.XmlByteScanner;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Writes the index entries of the records found by a {@link XmlByteScanner}, and collects the path dictionary.
+ */
+class RecordIndexer implements XmlByteScanner.Listener {
+
+    private final String recordPath;
+    private final Charset charset;
+    private final DataOutput output;
+
+    private final List<String> paths = new ArrayList<>();
+    private PathNode[] openNodes = new PathNode[16];
+
+    private int recordCount;
+    private int recordDepth;
+    private long recordStart;
+    private long recordPathMask;
+    private IOException writeError;
+
+    RecordIndexer(String recordPath, String encoding, DataOutput output) {
+        this.recordPath = recordPath;
+        this.charset = Charset.forName(encoding);
+        this.output = output;
+        this.openNodes[0] = new PathNode(-1, "");
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    List<String> getPaths() {
+        return paths;
+    }
+
+    void checkWriteError() throws IOException {
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    @Override
+    public void startTag(byte[] name, int nameLength, int depth, long offset) {
+        if (depth == openNodes.length) {
+            openNodes = Arrays.copyOf(openNodes, depth * 2);
+        }
+        PathNode node = openNodes[depth - 1].child(new String(name, 0, nameLength, charset));
+        openNodes[depth] = node;
+
+        if (recordDepth == 0 && node.path.equals(recordPath)) {
+            recordDepth = depth;
+            recordStart = offset;
+            recordPathMask = 0;
+        }
+        if (recordDepth > 0) {
+            recordPathMask |= RecordIndex.pathBit(node.id);
+        }
+    }
+
+    @Override
+    public void endTag(int depth, long endOffset) {
+        if (depth != recordDepth) {
+            return;
+        }
+        recordDepth = 0;
+        recordCount++;
+        try {
+            output.writeLong(recordStart);
+            output.writeLong(endOffset);
+            output.writeLong(recordPathMask);
+        } catch (IOException e) {
+            if (writeError == null) {
+                writeError = e;
+            }
+        }
+    }
+
+    private class PathNode {
+        private final int id;
+        private final String path;
+        private final Map<String, PathNode> children = new HashMap<>();
+
+        PathNode(int id, String path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        PathNode child(String name) {
+            PathNode child = children.get(name);
+            if (child == null) {
+                child = new PathNode(paths.size(), path + "/" + name);
+                paths.add(child.path);
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+}
@@ -2,33 +2,147 @@ package com.xmldatamodifier.xml.manipulation;
 
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.xmldatamodifier.core.KeepRule;
 import com.xmldatamodifier.core.Rule;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Objects.requireNonNull;
 
 
 public class XmlRuleSet {
 
+    /**
+     * Whether an element is written when the document is projected on the paths with keep rules.
+     */
+    public enum Projection {
+        /**
+         * At a kept path or below: written with its whole subtree.
+         */
+        KEPT,
+        /**
+         * Ancestor of a kept path: only its tags are written.
+         */
+        ANCESTOR,
+        /**
+         * Neither: not written, nor anything below it.
+         */
+        PRUNED
+    }
+
     private final Map<String, XPathRule> xPathRulesMap;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Set<?>>> rulesByClass = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Projection> projections = new ConcurrentHashMap<>();
+    private volatile List<String> keptPaths;
 
     public XmlRuleSet(Map<String, XPathRule> xPathRulesMap) {
         this.xPathRulesMap = xPathRulesMap;
     }
 
+    public Map<String, XPathRule> getXPathRules() {
+        return xPathRulesMap;
+    }
+
+    /**
+     * Returns a hash of the paths and their rules, in the order the rules of a path are applied: rule sets with the
+     * same fingerprint transform documents the same way.
+     */
+    public String fingerprint() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String xPath : new TreeSet<>(xPathRulesMap.keySet())) {
+            hasher.putString(xPath, StandardCharsets.UTF_8).putChar('\n');
+            for (Rule rule : xPathRulesMap.get(xPath).getRuleSet()) {
+                hasher.putString(rule.toString(), StandardCharsets.UTF_8).putChar('\n');
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns true if any path has a rule of the given type.
+     */
+    public boolean hasRules(Class<? extends Rule> ruleClassType) {
+        for (XPathRule xPathRule : xPathRulesMap.values()) {
+            if (FluentIterable.from(xPathRule.getRuleSet()).filter(ruleClassType).first().isPresent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the element at the given path is written when the document is projected on the paths with
+     * keep rules. Lookups are cached.
+     */
+    public Projection getProjection(String xPath) {
+        Projection projection = projections.get(xPath);
+        if (projection == null) {
+            projection = Projection.PRUNED;
+            for (String keptPath : getKeptPaths()) {
+                if (isSameOrDescendant(xPath, keptPath)) {
+                    projection = Projection.KEPT;
+                    break;
+                } else if (isSameOrDescendant(keptPath, xPath)) {
+                    projection = Projection.ANCESTOR;
+                }
+            }
+            projections.put(xPath, projection);
+        }
+        return projection;
+    }
+
+    private List<String> getKeptPaths() {
+        if (keptPaths == null) {
+            List<String> paths = new ArrayList<>();
+            for (XPathRule xPathRule : xPathRulesMap.values()) {
+                if (FluentIterable.from(xPathRule.getRuleSet()).filter(KeepRule.class).first().isPresent()) {
+                    paths.add(xPathRule.getXPath());
+                }
+            }
+            keptPaths = paths;
+        }
+        return keptPaths;
+    }
+
+    private static boolean isSameOrDescendant(String xPath, String ancestor) {
+        return xPath.startsWith(ancestor) && (xPath.length() == ancestor.length() || xPath.charAt(ancestor.length()) == '/');
+    }
+
+    /**
+     * Returns the rules of the given type defined for the given path. Lookups are cached, so that they don't
+     * allocate once a path has been seen.
+     */
+    @SuppressWarnings("unchecked")
     public <T extends Rule> Set<T> getRulesForXPath(String xPath, Class<T> ruleClassType) {
         requireNonNull(xPath, "XPath cannot be null");
         requireNonNull(ruleClassType, "Rule class cannot be null");
 
         XPathRule xPathRule = xPathRulesMap.get(xPath);
-        if (xPathRule != null) {
-            return FluentIterable
+        if (xPathRule == null) {
+            return ImmutableSet.of();
+        }
+
+        ConcurrentMap<String, Set<?>> rulesByPath = rulesByClass.get(ruleClassType);
+        if (rulesByPath == null) {
+            rulesByClass.putIfAbsent(ruleClassType, new ConcurrentHashMap<String, Set<?>>());
+            rulesByPath = rulesByClass.get(ruleClassType);
+        }
+        Set<T> rules = (Set<T>) rulesByPath.get(xPath);
+        if (rules == null) {
+            rules = FluentIterable
                     .from(xPathRule.getRuleSet())
                     .filter(ruleClassType).toSet();
-        } else {
-            return ImmutableSet.of();
+            rulesByPath.put(xPath, rules);
         }
+        return rules;
     }
 }
@@ -0,0 +1,186 @@
+package com.xmldatamodifier.xml.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Buffered writer encoding chars to an output stream, which also takes bytes already in the output encoding (e.g.
+ * parts of the input copied as they are) without decoding them. Chars the encoding can't represent are written as
+ * character references, which is only valid in text and attribute values.
+ */
+public class EncodedOutputWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final OutputStream output;
+    private final CharsetEncoder encoder;
+    private final CharsetEncoder referenceEncoder;
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer reference = CharBuffer.allocate(16);
+    private boolean finished;
+
+    public EncodedOutputWriter(OutputStream output, Charset charset) {
+        requireNonNull(output, "Output cannot be null");
+        requireNonNull(charset, "Charset cannot be null");
+        this.output = output;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.referenceEncoder = charset.newEncoder();
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encodeChars(false);
+        }
+        chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encodeChars(false);
+            }
+            int count = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encodeChars(false);
+            }
+            int count = Math.min(length, chars.remaining());
+            string.getChars(offset, offset + count, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes bytes which are already encoded with the charset of this writer.
+     */
+    public void writeBytes(byte[] buffer, int offset, int length) throws IOException {
+        encodeChars(false);
+        while (length > 0) {
+            if (!bytes.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(length, bytes.remaining());
+            bytes.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies the given range of a file, which must be encoded with the charset of this writer, reading it straight
+     * into the output buffer.
+     */
+    public void writeBytes(FileChannel channel, long position, long length) throws IOException {
+        encodeChars(false);
+        long end = position + length;
+        while (position < end) {
+            if (!bytes.hasRemaining()) {
+                drain();
+            }
+            int limit = bytes.limit();
+            bytes.limit(bytes.position() + (int) Math.min(bytes.remaining(), end - position));
+            int read = channel.read(bytes, position);
+            bytes.limit(limit);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encodeChars(false);
+        drain();
+        output.flush();
+    }
+
+    /**
+     * Encodes and writes whatever is left, including a high surrogate which was waiting for its pair, without
+     * closing the output. Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        encodeChars(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Encodes the buffered chars, except a trailing high surrogate unless at the end of the input.
+     */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnmappable()) {
+                writeReference(Character.codePointAt(chars, 0));
+                chars.position(chars.position() + result.length());
+            } else {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    private void writeReference(int codePoint) throws IOException {
+        reference.clear();
+        reference.put("&#").put(Integer.toString(codePoint)).put(';').flip();
+        // with its own encoder, as the main one may have already been told that the input ended
+        referenceEncoder.reset();
+        while (referenceEncoder.encode(reference, bytes, true).isOverflow()) {
+            drain();
+        }
+        while (referenceEncoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        bytes.clear();
+    }
+}
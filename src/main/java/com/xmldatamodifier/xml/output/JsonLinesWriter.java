@@ -0,0 +1,187 @@
+package com.xmldatamodifier.xml.output;
+
+import com.google.gson.stream.JsonWriter;
+import com.xmldatamodifier.xml.parsing.RecordListener;
+import org.xml.sax.Attributes;
+import org.xml.sax.ext.DefaultHandler2;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sink turning every record of the transformed document into a line of JSON, encoded in UTF-8. It receives the
+ * transformed document as SAX events, see {@link com.xmldatamodifier.xml.parsing.SAXTransformationHandler#setOutputHandler},
+ * and ignores everything outside the records. A record is an object, holding its attributes as "@name" members and
+ * its children as members named after them, repeated children as arrays. An element without attributes nor children
+ * is its text, otherwise its text, unless only whitespace, is the "#text" member. Values are always strings.
+ */
+public class JsonLinesWriter extends DefaultHandler2 implements RecordListener, Flushable, Closeable {
+
+    public static final String ATTRIBUTE_PREFIX = "@";
+    public static final String TEXT_MEMBER = "#text";
+
+    private final EncodedOutputWriter output;
+    private final JsonWriter json;
+
+    private boolean inRecord;
+
+    private final List<Element> pool = new ArrayList<>();
+    private int pooled;
+    private final List<Element> openElements = new ArrayList<>();
+    private Element record;
+    private long records;
+
+    public JsonLinesWriter(OutputStream output) {
+        requireNonNull(output, "Output cannot be null");
+        this.output = new EncodedOutputWriter(output, StandardCharsets.UTF_8);
+        this.json = new JsonWriter(this.output);
+        // every record is a top-level value
+        this.json.setLenient(true);
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    @Override
+    public void recordStarted() {
+        inRecord = true;
+        openElements.clear();
+        record = null;
+        pooled = 0;
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        inRecord = false;
+        if (record != null) {
+            writeObject(record);
+            output.write('\n');
+            records++;
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (!inRecord) {
+            return;
+        }
+        Element element = newElement(qName);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            element.attributes.add(attributes.getLocalName(i));
+            element.attributes.add(attributes.getValue(i));
+        }
+        if (openElements.isEmpty()) {
+            if (record == null) {
+                record = element;
+            }
+        } else {
+            openElements.get(openElements.size() - 1).children.add(element);
+        }
+        openElements.add(element);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (inRecord && !openElements.isEmpty()) {
+            openElements.remove(openElements.size() - 1);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (inRecord && !openElements.isEmpty()) {
+            openElements.get(openElements.size() - 1).text.append(ch, start, length);
+        }
+    }
+
+    private Element newElement(String name) {
+        if (pooled == pool.size()) {
+            pool.add(new Element());
+        }
+        Element element = pool.get(pooled++);
+        element.name = name;
+        element.attributes.clear();
+        element.children.clear();
+        element.text.setLength(0);
+        element.written = false;
+        return element;
+    }
+
+    private void writeValue(Element element) throws IOException {
+        if (element.attributes.isEmpty() && element.children.isEmpty()) {
+            json.value(element.text.toString());
+        } else {
+            writeObject(element);
+        }
+    }
+
+    private void writeObject(Element element) throws IOException {
+        json.beginObject();
+        for (int i = 0; i < element.attributes.size(); i += 2) {
+            json.name(ATTRIBUTE_PREFIX + element.attributes.get(i)).value(element.attributes.get(i + 1));
+        }
+        List<Element> children = element.children;
+        for (int i = 0; i < children.size(); i++) {
+            Element child = children.get(i);
+            if (child.written) {
+                continue;
+            }
+            json.name(child.name);
+            boolean repeated = false;
+            for (int j = i + 1; j < children.size() && !repeated; j++) {
+                repeated = children.get(j).name.equals(child.name);
+            }
+            if (!repeated) {
+                writeValue(child);
+                continue;
+            }
+            json.beginArray();
+            for (int j = i; j < children.size(); j++) {
+                if (children.get(j).name.equals(child.name)) {
+                    children.get(j).written = true;
+                    writeValue(children.get(j));
+                }
+            }
+            json.endArray();
+        }
+        if (!isWhitespace(element.text) || (element.attributes.isEmpty() && element.children.isEmpty())) {
+            json.name(TEXT_MEMBER).value(element.text.toString());
+        }
+        json.endObject();
+    }
+
+    private static boolean isWhitespace(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private static class Element {
+        private String name;
+        private final List<String> attributes = new ArrayList<>();
+        private final List<Element> children = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean written;
+    }
+}
@@ -0,0 +1,12 @@
+package com.xmldatamodifier.xml.output;
+
+public enum OutputFormat {
+    /**
+     * The transformed document.
+     */
+    XML,
+    /**
+     * A line of JSON per record of the transformed document, see {@link JsonLinesWriter}.
+     */
+    JSON_LINES
+}
@@ -0,0 +1,86 @@
+package com.xmldatamodifier.xml.output;
+
+import com.xmldatamodifier.xml.parsing.RecordListener;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writer holding back the output of every record until its end tag has been written, so that a record whose parsing
+ * fails half way can be discarded. Everything outside the records is written through.
+ */
+public class RecordBufferingWriter extends Writer implements RecordListener {
+
+    private final Writer writer;
+    private final StringBuilder record = new StringBuilder();
+    private boolean inRecord;
+
+    public RecordBufferingWriter(Writer writer) {
+        requireNonNull(writer, "Writer cannot be null");
+        this.writer = writer;
+    }
+
+    public boolean isInRecord() {
+        return inRecord;
+    }
+
+    /**
+     * Drops what has been written of the current record.
+     */
+    public void discardRecord() {
+        record.setLength(0);
+        inRecord = false;
+    }
+
+    @Override
+    public void recordStarted() {
+        record.setLength(0);
+        inRecord = true;
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        inRecord = false;
+        writer.append(record);
+        record.setLength(0);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (inRecord) {
+            record.append((char) c);
+        } else {
+            writer.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        if (inRecord) {
+            record.append(buffer, offset, length);
+        } else {
+            writer.write(buffer, offset, length);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        if (inRecord) {
+            record.append(string, offset, offset + length);
+        } else {
+            writer.write(string, offset, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,34 @@
+package com.xmldatamodifier.xml.output;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the bytes written through it, without buffering them. Unlike Guava's
+ * {@link com.google.common.io.CountingOutputStream}, the count can be read by other threads than the writing one.
+ */
+public class SharedCountingOutputStream extends FilterOutputStream {
+
+    private volatile long count;
+
+    public SharedCountingOutputStream(OutputStream output) {
+        super(output);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+}
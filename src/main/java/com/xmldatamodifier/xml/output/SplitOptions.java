@@ -0,0 +1,41 @@
+package com.xmldatamodifier.xml.output;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+public class SplitOptions {
+
+    private final long maxRecordsPerPart;
+    private final long maxBytesPerPart;
+    private final boolean compressParts;
+
+    /**
+     * @param maxRecordsPerPart records after which a new part is started, 0 for no limit
+     * @param maxBytesPerPart   approximate size in bytes after which a new part is started, 0 for no limit
+     * @param compressParts     whether finished parts are gzipped
+     */
+    public SplitOptions(long maxRecordsPerPart, long maxBytesPerPart, boolean compressParts) {
+        checkArgument(maxRecordsPerPart >= 0, "Max records per part cannot be negative");
+        checkArgument(maxBytesPerPart >= 0, "Max bytes per part cannot be negative");
+        checkArgument(maxRecordsPerPart > 0 || maxBytesPerPart > 0, "Either max records or max bytes per part must be specified");
+        this.maxRecordsPerPart = maxRecordsPerPart;
+        this.maxBytesPerPart = maxBytesPerPart;
+        this.compressParts = compressParts;
+    }
+
+    public long getMaxRecordsPerPart() {
+        return maxRecordsPerPart;
+    }
+
+    public long getMaxBytesPerPart() {
+        return maxBytesPerPart;
+    }
+
+    public boolean isCompressParts() {
+        return compressParts;
+    }
+
+    @Override
+    public String toString() {
+        return "SplitOptions{" + "maxRecordsPerPart=" + maxRecordsPerPart + ", maxBytesPerPart=" + maxBytesPerPart + ", compressParts=" + compressParts + '}';
+    }
+}
@@ -0,0 +1,232 @@
+package com.xmldatamodifier.xml.output;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xmldatamodifier.xml.parsing.RecordListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writer which spreads the output over several well-formed part files. Everything written before the first record
+ * (xml declaration and wrapper elements) is repeated at the beginning of every part, and the wrapper elements are
+ * closed at the end of every part. A new part is started at the first record following the one which reached the
+ * configured limits. Finished parts are flushed, synced to disk and optionally gzipped on background threads.
+ */
+public class SplitOutputWriter extends Writer implements RecordListener {
+
+    private static final int FINISHER_THREADS = 2;
+
+    private final Logger log = LoggerFactory.getLogger(SplitOutputWriter.class);
+
+    private final String outputFile;
+    private final SplitOptions options;
+    private final Charset charset;
+    private final String wrapperEndTags;
+    private final ExecutorService finisher;
+    private final List<Future<Path>> finishedParts = new ArrayList<>();
+
+    private final StringBuilder header = new StringBuilder();
+    private boolean headerComplete;
+
+    private Part currentPart;
+    private int partIndex;
+    private long recordsInPart;
+    private boolean rolloverPending;
+
+    public SplitOutputWriter(String outputFile, String recordPath, SplitOptions options) throws IOException {
+        this(outputFile, recordPath, options, StandardCharsets.UTF_8);
+    }
+
+    public SplitOutputWriter(String outputFile, String recordPath, SplitOptions options, Charset charset) throws IOException {
+        requireNonNull(outputFile, "Output file cannot be null");
+        requireNonNull(recordPath, "Record path cannot be null");
+        requireNonNull(options, "Split options cannot be null");
+        requireNonNull(charset, "Charset cannot be null");
+        this.outputFile = outputFile;
+        this.options = options;
+        this.charset = charset;
+        this.wrapperEndTags = wrapperEndTags(recordPath);
+        this.finisher = Executors.newFixedThreadPool(FINISHER_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("split-output-finisher-%d").setDaemon(true).build());
+        this.currentPart = openPart();
+    }
+
+    /**
+     * Returns the name of the part with the given index, e.g. "output.00003.xml" for "output.xml".
+     */
+    public static Path partFile(String outputFile, int index) {
+        String suffix = String.format(".%05d", index);
+        Path path = Paths.get(outputFile);
+        String fileName = path.getFileName().toString();
+        int extensionIndex = fileName.lastIndexOf('.');
+        String partName = extensionIndex > 0
+                ? fileName.substring(0, extensionIndex) + suffix + fileName.substring(extensionIndex)
+                : fileName + suffix;
+        return path.resolveSibling(partName);
+    }
+
+    @Override
+    public void recordStarted() throws IOException {
+        headerComplete = true;
+        if (rolloverPending) {
+            rollover();
+        }
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        recordsInPart++;
+        if ((options.getMaxRecordsPerPart() > 0 && recordsInPart >= options.getMaxRecordsPerPart())
+                || (options.getMaxBytesPerPart() > 0 && currentPart.counter.getCount() >= options.getMaxBytesPerPart())) {
+            rolloverPending = true;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (!headerComplete) {
+            header.append(cbuf, off, len);
+        }
+        currentPart.writer.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (!headerComplete) {
+            header.append(str, off, off + len);
+        }
+        currentPart.writer.write(str, off, len);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!headerComplete) {
+            header.append((char) c);
+        }
+        currentPart.writer.write(c);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        currentPart.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (currentPart == null) {
+            return;
+        }
+        finishedParts.add(finisher.submit(new PartFinisher(currentPart)));
+        currentPart = null;
+        finisher.shutdown();
+        for (Future<Path> finishedPart : finishedParts) {
+            log.info("Written part {}", waitFor(finishedPart));
+        }
+    }
+
+    private void rollover() throws IOException {
+        currentPart.writer.write(wrapperEndTags);
+        finishedParts.add(finisher.submit(new PartFinisher(currentPart)));
+        checkFinishedParts();
+
+        currentPart = openPart();
+        currentPart.writer.write(header.toString());
+        recordsInPart = 0;
+        rolloverPending = false;
+    }
+
+    private void checkFinishedParts() throws IOException {
+        for (Future<Path> finishedPart : finishedParts) {
+            if (finishedPart.isDone()) {
+                waitFor(finishedPart);
+            }
+        }
+    }
+
+    private Path waitFor(Future<Path> finishedPart) throws IOException {
+        try {
+            return finishedPart.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing output parts");
+        } catch (ExecutionException e) {
+            throw new IOException("Error finishing output part", e.getCause());
+        }
+    }
+
+    private Part openPart() throws IOException {
+        return new Part(partFile(outputFile, ++partIndex), charset);
+    }
+
+    /**
+     * Returns the end tags of the elements containing the records, e.g. "&lt;/b&gt;&lt;/a&gt;" for "/a/b/record".
+     */
+    public static String wrapperEndTags(String recordPath) {
+        List<String> elements = Lists.newArrayList(Splitter.on('/').omitEmptyStrings().split(recordPath));
+        StringBuilder endTags = new StringBuilder();
+        for (String element : Lists.reverse(elements.subList(0, Math.max(0, elements.size() - 1)))) {
+            endTags.append("</").append(element).append(">");
+        }
+        return endTags.toString();
+    }
+
+    private static class Part {
+        private final Path path;
+        private final FileOutputStream fileOutputStream;
+        private final CountingOutputStream counter;
+        private final Writer writer;
+
+        Part(Path path, Charset charset) throws IOException {
+            this.path = path;
+            this.fileOutputStream = new FileOutputStream(path.toFile());
+            this.counter = new CountingOutputStream(fileOutputStream);
+            this.writer = new EncodedOutputWriter(counter, charset);
+        }
+    }
+
+    private class PartFinisher implements Callable<Path> {
+        private final Part part;
+
+        PartFinisher(Part part) {
+            this.part = part;
+        }
+
+        @Override
+        public Path call() throws IOException {
+            try (Writer writer = part.writer) {
+                writer.flush();
+                part.fileOutputStream.getFD().sync();
+            }
+            if (!options.isCompressParts()) {
+                return part.path;
+            }
+
+            Path compressedPath = part.path.resolveSibling(part.path.getFileName() + ".gz");
+            try (InputStream input = Files.newInputStream(part.path);
+                 FileOutputStream compressedOutput = new FileOutputStream(compressedPath.toFile())) {
+                GZIPOutputStream gzipOutput = new GZIPOutputStream(compressedOutput);
+                ByteStreams.copy(input, gzipOutput);
+                gzipOutput.finish();
+                compressedOutput.getFD().sync();
+            }
+            Files.delete(part.path);
+            return compressedPath;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.EntityResolver2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves external DTDs and entities from a local catalog instead of fetching them over the network. The catalog is
+ * a directory, or the {@link #CLASSPATH_CATALOG} folder of the classpath, holding the files and optionally a
+ * {@link #CATALOG_FILE} mapping public or system ids to file names relative to it; otherwise an entity is looked up by
+ * the file name of its system id. Resolved entities are kept in memory, so that the conversions sharing a resolver
+ * read every entity only once. Thread safe.
+ * <p>
+ * Local entities (file and jar URIs) missing from the catalog are read by the parser as usual. Remote ones are
+ * fetched by the parser only if fetching is allowed, otherwise they fail the conversion.
+ */
+public class CatalogEntityResolver implements EntityResolver2 {
+
+    public static final String CLASSPATH_CATALOG = "xdm-catalog/";
+    public static final String CATALOG_FILE = "catalog.properties";
+
+    private final Logger log = LoggerFactory.getLogger(CatalogEntityResolver.class);
+
+    private final Path directory;
+    private final boolean fetchAllowed;
+    private final Properties mappings = new Properties();
+    private final ConcurrentMap<String, byte[]> entities = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory    directory of the catalog, or null to only use the one on the classpath
+     * @param fetchAllowed whether remote entities missing from the catalog can be fetched
+     */
+    public CatalogEntityResolver(Path directory, boolean fetchAllowed) throws IOException {
+        this.directory = directory;
+        this.fetchAllowed = fetchAllowed;
+        try (InputStream classpathCatalog = getClass().getClassLoader().getResourceAsStream(CLASSPATH_CATALOG + CATALOG_FILE)) {
+            if (classpathCatalog != null) {
+                mappings.load(classpathCatalog);
+            }
+        }
+        if (directory != null && Files.exists(directory.resolve(CATALOG_FILE))) {
+            try (Reader catalog = Files.newBufferedReader(directory.resolve(CATALOG_FILE), StandardCharsets.UTF_8)) {
+                mappings.load(catalog);
+            }
+        }
+    }
+
+    @Override
+    public InputSource getExternalSubset(String name, String baseURI) {
+        return null;
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+        return resolveEntity(null, publicId, null, systemId);
+    }
+
+    @Override
+    public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
+        String absoluteSystemId = absolute(baseURI, systemId);
+        String fileName = mappings.getProperty(publicId != null ? publicId : "", mappings.getProperty(nullToEmpty(systemId),
+                mappings.getProperty(nullToEmpty(absoluteSystemId), fileName(absoluteSystemId))));
+        byte[] entity = fileName != null ? load(fileName) : null;
+        if (entity != null) {
+            InputSource inputSource = new InputSource(new ByteArrayInputStream(entity));
+            inputSource.setPublicId(publicId);
+            inputSource.setSystemId(absoluteSystemId);
+            return inputSource;
+        }
+        if (absoluteSystemId == null || isLocal(absoluteSystemId) || fetchAllowed) {
+            return null;
+        }
+        throw new SAXException("External entity " + (publicId != null ? publicId + " " : "") + absoluteSystemId
+                + " is not in the catalog, and fetching is disabled");
+    }
+
+    /**
+     * Returns the content of the given catalog file, or null if there is no such file.
+     */
+    private byte[] load(String fileName) throws IOException {
+        byte[] entity = entities.get(fileName);
+        if (entity != null) {
+            return entity;
+        }
+        if (directory != null && Files.isRegularFile(directory.resolve(fileName))) {
+            entity = Files.readAllBytes(directory.resolve(fileName));
+        } else {
+            try (InputStream resource = getClass().getClassLoader().getResourceAsStream(CLASSPATH_CATALOG + fileName)) {
+                if (resource == null) {
+                    return null;
+                }
+                entity = ByteStreams.toByteArray(resource);
+            }
+        }
+        log.debug("Caching catalog entity {}", fileName);
+        byte[] cached = entities.putIfAbsent(fileName, entity);
+        return cached != null ? cached : entity;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogEntityResolver{" + "directory=" + directory + ", fetchAllowed=" + fetchAllowed + '}';
+    }
+
+    private static String absolute(String baseURI, String systemId) {
+        if (systemId == null || baseURI == null) {
+            return systemId;
+        }
+        try {
+            return new URI(baseURI).resolve(new URI(systemId)).toString();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return systemId;
+        }
+    }
+
+    private static String fileName(String systemId) {
+        if (systemId == null) {
+            return null;
+        }
+        String path = systemId.replaceFirst("[?#].*$", "");
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        return fileName.isEmpty() ? null : fileName;
+    }
+
+    private static boolean isLocal(String systemId) {
+        String scheme = URI.create(systemId.replace(" ", "%20")).getScheme();
+        return scheme == null || "file".equalsIgnoreCase(scheme) || "jar".equalsIgnoreCase(scheme);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,17 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Notified by {@link SAXTransformationHandler} of the chunk markers of the input, which split the records into chunks
+ * whose output can be cached, see {@link com.xmldatamodifier.xml.index.IndexedInputStream#setChunks}.
+ */
+public interface ChunkListener {
+
+    /**
+     * Called at the start of every chunk, and after the last one with the number of chunks. The records of a cached
+     * chunk are not in the input: its output is written by the listener.
+     */
+    void chunkStarted(int chunk, boolean cached, Writer writer) throws IOException;
+}
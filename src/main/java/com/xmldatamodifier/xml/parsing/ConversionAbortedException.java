@@ -0,0 +1,26 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Thrown by a {@link ConversionGuard} to stop a conversion which was cancelled or exceeded one of its limits.
+ */
+public class ConversionAbortedException extends SAXException {
+
+    public enum Reason {
+        CANCELLED,
+        TIME_LIMIT_EXCEEDED,
+        OUTPUT_LIMIT_EXCEEDED
+    }
+
+    private final Reason reason;
+
+    public ConversionAbortedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
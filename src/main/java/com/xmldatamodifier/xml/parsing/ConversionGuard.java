@@ -0,0 +1,127 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.xmldatamodifier.xml.output.SharedCountingOutputStream;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content handler stopping the conversion in front of another handler, with a {@link ConversionAbortedException},
+ * once it's cancelled or past its deadline, or once its output exceeds the given size. Cancellation is checked before
+ * every event, the deadline and the output size every {@link #CHECK_INTERVAL} events. The output size is the one
+ * flushed to the output stream, so it may exceed the limit by the buffer of the writer. CDATA boundaries are sent on
+ * if the handler is a {@link LexicalHandler}.
+ */
+public class ConversionGuard extends DefaultHandler2 {
+
+    public static final int CHECK_INTERVAL = 256;
+
+    private final ContentHandler handler;
+    private final LexicalHandler lexicalHandler;
+    private final AtomicBoolean cancelled;
+    private final long deadline;
+    private final SharedCountingOutputStream output;
+    private final long maxOutputBytes;
+    private int events;
+
+    /**
+     * @param cancelled      flag set to cancel the conversion
+     * @param deadline       {@link System#nanoTime()} after which the conversion fails, or {@link Long#MAX_VALUE}
+     * @param output         output stream to be limited, or null
+     * @param maxOutputBytes maximum number of bytes written to the output, or 0 for no limit
+     */
+    public ConversionGuard(ContentHandler handler, AtomicBoolean cancelled, long deadline,
+                           SharedCountingOutputStream output, long maxOutputBytes) {
+        this.handler = requireNonNull(handler, "Handler cannot be null");
+        this.lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        this.cancelled = requireNonNull(cancelled, "Cancellation flag cannot be null");
+        this.deadline = deadline;
+        this.output = output;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    private void check() throws ConversionAbortedException {
+        if (cancelled.get()) {
+            throw new ConversionAbortedException(ConversionAbortedException.Reason.CANCELLED, "Conversion cancelled");
+        }
+        if (++events < CHECK_INTERVAL) {
+            return;
+        }
+        events = 0;
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new ConversionAbortedException(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED, "Conversion time limit exceeded");
+        }
+        if (maxOutputBytes > 0 && output != null && output.getCount() > maxOutputBytes) {
+            throw new ConversionAbortedException(ConversionAbortedException.Reason.OUTPUT_LIMIT_EXCEEDED,
+                    "Conversion output exceeded " + maxOutputBytes + " bytes");
+        }
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        handler.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        check();
+        handler.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        check();
+        handler.endDocument();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        check();
+        handler.startElement(uri, localName, qName, attributes);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        check();
+        handler.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        check();
+        handler.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        check();
+        handler.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        check();
+        handler.processingInstruction(target, data);
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        if (lexicalHandler != null) {
+            lexicalHandler.startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        if (lexicalHandler != null) {
+            lexicalHandler.endCDATA();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds the byte offsets of the start tags of all the elements while the input is read by the parser, and gives the
+ * one of the innermost open element to the handlers behind {@link #filter(ContentHandler)}. As the parser always reads
+ * ahead of the events it reports, the offset of an element is known by the time its start event is received.
+ * <p>
+ * Start tags are matched with the start events by depth, so an element without a start tag of its own in the scanned
+ * bytes, e.g. from the wrapper elements replayed on resume, gets the offset of its parent, or -1. So do the elements
+ * from the replacement text of entities, provided the filter is also set as lexical handler to be told about them.
+ */
+public class ElementOffsetTracker implements XmlByteScanner.Listener {
+
+    private long[] queuedOffsets = new long[64];
+    private int[] queuedDepths = new int[64];
+    private int head;
+    private int size;
+
+    private long[] openOffsets = new long[16];
+    private int depth;
+    private int entityDepth;
+
+    /**
+     * Returns the offset of the start tag of the innermost open element, -1 if unknown or outside the root element.
+     */
+    public long getElementOffset() {
+        return depth > 0 ? openOffsets[depth - 1] : -1;
+    }
+
+    /**
+     * Returns a content handler tracking the open elements in front of the given handler.
+     */
+    public ContentHandler filter(ContentHandler handler) {
+        return new TrackingHandler(handler);
+    }
+
+    @Override
+    public void startTag(byte[] name, int nameLength, int depth, long offset) {
+        if (size == queuedOffsets.length) {
+            long[] offsets = new long[size * 2];
+            int[] depths = new int[size * 2];
+            for (int i = 0; i < size; i++) {
+                offsets[i] = queuedOffsets[(head + i) % size];
+                depths[i] = queuedDepths[(head + i) % size];
+            }
+            queuedOffsets = offsets;
+            queuedDepths = depths;
+            head = 0;
+        }
+        int tail = (head + size++) % queuedOffsets.length;
+        queuedOffsets[tail] = offset;
+        queuedDepths[tail] = depth;
+    }
+
+    @Override
+    public void endTag(int depth, long endOffset) {
+    }
+
+    private void elementStarted() {
+        if (depth == openOffsets.length) {
+            openOffsets = Arrays.copyOf(openOffsets, depth * 2);
+        }
+        long offset = depth > 0 ? openOffsets[depth - 1] : -1;
+        depth++;
+        if (entityDepth == 0 && size > 0 && queuedDepths[head] == depth) {
+            offset = queuedOffsets[head];
+            head = (head + 1) % queuedOffsets.length;
+            size--;
+        }
+        openOffsets[depth - 1] = offset;
+    }
+
+    private class TrackingHandler extends DefaultHandler2 {
+        private final ContentHandler handler;
+        private final LexicalHandler lexicalHandler;
+
+        TrackingHandler(ContentHandler handler) {
+            this.handler = requireNonNull(handler, "Handler cannot be null");
+            this.lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            handler.setDocumentLocator(locator);
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            handler.startDocument();
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            handler.endDocument();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            elementStarted();
+            handler.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            // the element is still open for what its end triggers, e.g. the release of a held back element
+            handler.endElement(uri, localName, qName);
+            depth--;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            handler.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            handler.processingInstruction(target, data);
+        }
+
+        @Override
+        public void startEntity(String name) throws SAXException {
+            entityDepth++;
+            if (lexicalHandler != null) {
+                lexicalHandler.startEntity(name);
+            }
+        }
+
+        @Override
+        public void endEntity(String name) throws SAXException {
+            entityDepth--;
+            if (lexicalHandler != null) {
+                lexicalHandler.endEntity(name);
+            }
+        }
+
+        @Override
+        public void startCDATA() throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.startCDATA();
+            }
+        }
+
+        @Override
+        public void endCDATA() throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.endCDATA();
+            }
+        }
+    }
+}
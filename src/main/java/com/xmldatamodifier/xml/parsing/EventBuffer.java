@@ -0,0 +1,268 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.Arrays;
+
+/**
+ * Reusable compact buffer of SAX events: event types, offsets and characters are stored in flat arrays, which keep
+ * their capacity when the buffer is cleared. Names are turned back into strings through a small table when the
+ * events are replayed, so that a name is only allocated the first time it is seen.
+ */
+public class EventBuffer {
+
+    private static final byte START_DOCUMENT = 1;
+    private static final byte END_DOCUMENT = 2;
+    private static final byte START_ELEMENT = 3;
+    private static final byte END_ELEMENT = 4;
+    private static final byte CHARACTERS = 5;
+    private static final byte IGNORABLE_WHITESPACE = 6;
+    private static final byte PROCESSING_INSTRUCTION = 7;
+    private static final byte START_CDATA = 8;
+    private static final byte END_CDATA = 9;
+
+    private byte[] types = new byte[256];
+    private int eventCount;
+    private int[] ints = new int[1024];
+    private int intCount;
+    private char[] chars = new char[4096];
+    private int charCount;
+
+    private final NameTable names = new NameTable();
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getCharCount() {
+        return charCount;
+    }
+
+    public boolean isEmpty() {
+        return eventCount == 0;
+    }
+
+    public boolean endsDocument() {
+        return eventCount > 0 && types[eventCount - 1] == END_DOCUMENT;
+    }
+
+    public void clear() {
+        eventCount = 0;
+        intCount = 0;
+        charCount = 0;
+    }
+
+    public void startDocument() {
+        addEvent(START_DOCUMENT);
+    }
+
+    public void endDocument() {
+        addEvent(END_DOCUMENT);
+    }
+
+    public void startElement(String qName, Attributes attributes) {
+        addEvent(START_ELEMENT);
+        addString(qName);
+        int length = attributes.getLength();
+        addInt(length);
+        for (int i = 0; i < length; i++) {
+            addString(attributes.getQName(i));
+            addString(attributes.getLocalName(i));
+            addString(attributes.getValue(i));
+        }
+    }
+
+    public void endElement(String qName) {
+        addEvent(END_ELEMENT);
+        addString(qName);
+    }
+
+    public void characters(char[] ch, int start, int length) {
+        addEvent(CHARACTERS);
+        addChars(ch, start, length);
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        addEvent(IGNORABLE_WHITESPACE);
+        addChars(ch, start, length);
+    }
+
+    public void processingInstruction(String target, String data) {
+        addEvent(PROCESSING_INSTRUCTION);
+        addString(target);
+        addString(data);
+    }
+
+    public void startCDATA() {
+        addEvent(START_CDATA);
+    }
+
+    public void endCDATA() {
+        addEvent(END_CDATA);
+    }
+
+    /**
+     * Sends the buffered events to the given handler, in the order they were added. CDATA boundaries are only sent
+     * to handlers which are also {@link LexicalHandler}s.
+     */
+    public void replay(ContentHandler handler) throws SAXException {
+        LexicalHandler lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        int intIndex = 0;
+        for (int event = 0; event < eventCount; event++) {
+            switch (types[event]) {
+                case START_DOCUMENT:
+                    handler.startDocument();
+                    break;
+                case END_DOCUMENT:
+                    handler.endDocument();
+                    break;
+                case START_ELEMENT:
+                    String qName = names.get(chars, ints[intIndex], ints[intIndex + 1]);
+                    int attributeCount = ints[intIndex + 2];
+                    intIndex += 3;
+                    attributes.clear();
+                    for (int i = 0; i < attributeCount; i++) {
+                        attributes.addAttribute("",
+                                names.get(chars, ints[intIndex + 2], ints[intIndex + 3]),
+                                names.get(chars, ints[intIndex], ints[intIndex + 1]),
+                                "CDATA",
+                                new String(chars, ints[intIndex + 4], ints[intIndex + 5]));
+                        intIndex += 6;
+                    }
+                    handler.startElement("", qName, qName, attributes);
+                    break;
+                case END_ELEMENT:
+                    String endQName = names.get(chars, ints[intIndex], ints[intIndex + 1]);
+                    intIndex += 2;
+                    handler.endElement("", endQName, endQName);
+                    break;
+                case CHARACTERS:
+                    handler.characters(chars, ints[intIndex], ints[intIndex + 1]);
+                    intIndex += 2;
+                    break;
+                case IGNORABLE_WHITESPACE:
+                    handler.ignorableWhitespace(chars, ints[intIndex], ints[intIndex + 1]);
+                    intIndex += 2;
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    String target = new String(chars, ints[intIndex], ints[intIndex + 1]);
+                    String data = new String(chars, ints[intIndex + 2], ints[intIndex + 3]);
+                    intIndex += 4;
+                    handler.processingInstruction(target, data);
+                    break;
+                case START_CDATA:
+                    if (lexicalHandler != null) {
+                        lexicalHandler.startCDATA();
+                    }
+                    break;
+                case END_CDATA:
+                    if (lexicalHandler != null) {
+                        lexicalHandler.endCDATA();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown event type " + types[event]);
+            }
+        }
+    }
+
+    private void addEvent(byte type) {
+        if (eventCount == types.length) {
+            types = Arrays.copyOf(types, types.length * 2);
+        }
+        types[eventCount++] = type;
+    }
+
+    private void addInt(int value) {
+        if (intCount == ints.length) {
+            ints = Arrays.copyOf(ints, ints.length * 2);
+        }
+        ints[intCount++] = value;
+    }
+
+    private void addString(String value) {
+        String nonNullValue = value == null ? "" : value;
+        int length = nonNullValue.length();
+        ensureCharCapacity(length);
+        nonNullValue.getChars(0, length, chars, charCount);
+        addInt(charCount);
+        addInt(length);
+        charCount += length;
+    }
+
+    private void addChars(char[] ch, int start, int length) {
+        ensureCharCapacity(length);
+        System.arraycopy(ch, start, chars, charCount, length);
+        addInt(charCount);
+        addInt(length);
+        charCount += length;
+    }
+
+    private void ensureCharCapacity(int length) {
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+    }
+
+    /**
+     * Open addressing table returning the same string instance for the same sequence of characters.
+     */
+    static class NameTable {
+        private String[] table = new String[256];
+        private int size;
+
+        String get(char[] chars, int offset, int length) {
+            int hash = 0;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = table.length - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                String name = table[index];
+                if (name == null) {
+                    name = new String(chars, offset, length);
+                    table[index] = name;
+                    if (++size * 2 > table.length) {
+                        grow();
+                    }
+                    return name;
+                }
+                if (name.hashCode() == hash && regionMatches(name, chars, offset, length)) {
+                    return name;
+                }
+            }
+        }
+
+        private void grow() {
+            String[] oldTable = table;
+            table = new String[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (String name : oldTable) {
+                if (name != null) {
+                    int index = name.hashCode() & mask;
+                    while (table[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = name;
+                }
+            }
+        }
+
+        private static boolean regionMatches(String name, char[] chars, int offset, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
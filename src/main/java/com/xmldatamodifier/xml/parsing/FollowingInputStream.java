@@ -0,0 +1,94 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Input stream following a file which is still being written, like "tail -f": at the end of the file it waits for
+ * more content instead of reporting the end of the stream, until the root element has been closed. The parser reading
+ * from it keeps its state between appends, so appended content is transformed as soon as it is written. While
+ * waiting, it stops once the conversion is cancelled or past its deadline, with an {@link IOException} caused by a
+ * {@link ConversionAbortedException}.
+ */
+public class FollowingInputStream extends InputStream {
+
+    public static final long DEFAULT_POLL_MILLIS = 2;
+
+    private final FileInputStream in;
+    private final XmlByteScanner scanner;
+    private final long pollNanos;
+    private final AtomicBoolean cancelled;
+    private final long deadline;
+    private final byte[] single = new byte[1];
+
+    /**
+     * @param scanner scanner reading the bytes returned by this stream, used to find out when the root element is closed
+     */
+    public FollowingInputStream(FileInputStream in, XmlByteScanner scanner, long pollMillis) {
+        this(in, scanner, pollMillis, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param cancelled flag set to cancel the conversion, or null if it can't be cancelled
+     * @param deadline  {@link System#nanoTime()} after which the conversion fails, or {@link Long#MAX_VALUE}
+     */
+    public FollowingInputStream(FileInputStream in, XmlByteScanner scanner, long pollMillis, AtomicBoolean cancelled, long deadline) {
+        this.in = in;
+        this.scanner = scanner;
+        this.pollNanos = TimeUnit.MILLISECONDS.toNanos(pollMillis);
+        this.cancelled = cancelled;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                return read;
+            }
+            if (scanner.isRootClosed()) {
+                return -1;
+            }
+            if (in.getChannel().size() < in.getChannel().position()) {
+                throw new IOException("Input file has been truncated while following it");
+            }
+            LockSupport.parkNanos(pollNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Interrupted while following the input");
+            }
+            if (cancelled != null && cancelled.get()) {
+                throw new IOException(new ConversionAbortedException(ConversionAbortedException.Reason.CANCELLED,
+                        "Conversion cancelled"));
+            }
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                throw new IOException(new ConversionAbortedException(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED,
+                        "Conversion time limit exceeded"));
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
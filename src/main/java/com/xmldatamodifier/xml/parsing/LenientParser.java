@@ -0,0 +1,217 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.xmldatamodifier.xml.output.RecordBufferingWriter;
+import com.xmldatamodifier.xml.output.SplitOutputWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parses the input record by record, carrying on after malformed records instead of failing. When the parsing fails
+ * inside a record, or between two records, the bytes from the start of that record up to the next record start tag
+ * are copied to a quarantine file, the output of the record is discarded, and the parsing starts again at the next
+ * record as if resumed from a checkpoint; without a next record, the elements containing the records are closed.
+ * Errors before the first record, e.g. in the prologue, still fail the parsing.
+ * <p>
+ * The next record is found by looking for its start tag in the raw bytes, so a record start tag in a comment or a
+ * CDATA section of a malformed record is taken for a record too. The entities declared in the doctype are not
+ * available after a malformed record. Works with ASCII compatible encodings only.
+ */
+public class LenientParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(LenientParser.class);
+
+    private final XMLReader xmlReader;
+    private final SAXTransformationHandler handler;
+    private final RecordBufferingWriter recordWriter;
+    private final Path inputFile;
+    private final Path quarantineFile;
+    private final RecordOffsetTracker offsetTracker;
+    private final String wrapperPath;
+    private final List<String> wrapperElements;
+    private final byte[] recordStartTag;
+    private final byte[] resumedStart;
+    private final byte[] wrapperEndTags;
+    private final List<QuarantinedRecord> quarantinedRecords = new ArrayList<>();
+
+    private boolean wrapperSkipMode;
+    private String wrapperSkippedPath;
+
+    /**
+     * Registers itself as record listener of the given handler, which must write its output to the given writer.
+     *
+     * @param encoding encoding of the input
+     */
+    public LenientParser(XMLReader xmlReader, SAXTransformationHandler handler, RecordBufferingWriter recordWriter,
+                         Path inputFile, Charset encoding, String recordPath, Path quarantineFile) throws IOException {
+        requireNonNull(recordPath, "Record path cannot be null");
+        requireNonNull(quarantineFile, "Quarantine file cannot be null");
+        OffsetTrackingInputStream.checkAsciiCompatibleEncoding(inputFile);
+        this.xmlReader = xmlReader;
+        this.handler = handler;
+        this.recordWriter = recordWriter;
+        this.inputFile = inputFile;
+        this.quarantineFile = quarantineFile;
+        this.offsetTracker = new RecordOffsetTracker(recordPath);
+        handler.addRecordListener(offsetTracker);
+        handler.addRecordListener(recordWriter);
+
+        List<String> elements = Lists.newArrayList(Splitter.on('/').omitEmptyStrings().split(recordPath));
+        this.wrapperElements = elements.subList(0, elements.size() - 1);
+        this.wrapperPath = recordPath.substring(0, recordPath.lastIndexOf('/'));
+        this.recordStartTag = ("<" + elements.get(elements.size() - 1)).getBytes(encoding);
+        StringBuilder resumedStart = new StringBuilder(format("<?xml version=\"1.0\" encoding=\"%s\"?>", encoding.name()));
+        for (String wrapperElement : wrapperElements) {
+            resumedStart.append('<').append(wrapperElement).append('>');
+        }
+        this.resumedStart = resumedStart.toString().getBytes(encoding);
+        this.wrapperEndTags = SplitOutputWriter.wrapperEndTags(recordPath).getBytes(encoding);
+    }
+
+    public List<QuarantinedRecord> getQuarantinedRecords() {
+        return Collections.unmodifiableList(quarantinedRecords);
+    }
+
+    public void parse(ContentHandler contentHandler) throws IOException, SAXException {
+        xmlReader.setContentHandler(contentHandler);
+        xmlReader.setProperty(SAXTransformationHandler.LEXICAL_HANDLER_PROPERTY, contentHandler);
+        long inputLength = Files.size(inputFile);
+        try (FileChannel quarantine = FileChannel.open(quarantineFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long segmentStart = 0;
+            while (segmentStart >= 0) {
+                segmentStart = parseSegment(segmentStart, inputLength, quarantine);
+            }
+        }
+        if (!quarantinedRecords.isEmpty()) {
+            log.warn("Quarantined {} malformed records in {}", quarantinedRecords.size(), quarantineFile);
+        }
+    }
+
+    /**
+     * Parses the input from the given offset, the start of the input or of a record, and returns the offset to start
+     * again from, or -1 once the input has been parsed. The elements containing the records are closed by parsing
+     * from the end of the input.
+     */
+    private long parseSegment(long start, long inputLength, FileChannel quarantine) throws IOException, SAXException {
+        try (FileInputStream inputStream = new FileInputStream(inputFile.toFile())) {
+            InputStream input;
+            if (start == 0) {
+                input = new OffsetTrackingInputStream(inputStream, new XmlByteScanner(offsetTracker));
+            } else {
+                offsetTracker.reset(wrapperElements);
+                handler.resynchronize(wrapperElements, wrapperSkipMode, wrapperSkippedPath);
+                inputStream.getChannel().position(start);
+                InputStream remainingInput = start < inputLength
+                        ? new OffsetTrackingInputStream(inputStream, new XmlByteScanner(offsetTracker, start, wrapperElements.size()))
+                        : new ByteArrayInputStream(wrapperEndTags);
+                input = new SequenceInputStream(new ByteArrayInputStream(resumedStart), remainingInput);
+            }
+            InputSource inputSource = new InputSource(input);
+            inputSource.setSystemId(inputFile.toUri().toString());
+            try {
+                xmlReader.parse(inputSource);
+                return -1;
+            } catch (SAXParseException e) {
+                boolean inRecord = recordWriter.isInRecord();
+                if (start == inputLength || (start == 0 && !inRecord && offsetTracker.getLastRecordEndOffset() < 0)) {
+                    throw e;
+                }
+                long brokenStart = inRecord ? offsetTracker.getLastRecordStartOffset() : Math.max(offsetTracker.getLastRecordEndOffset(), start);
+                long nextRecordStart = findRecordStart(brokenStart + 1);
+                long brokenEnd = nextRecordStart >= 0 ? nextRecordStart : inputLength;
+                recordWriter.discardRecord();
+                // failing right at the start means the start tag of the record is malformed, part of the range before
+                quarantine(brokenStart, brokenEnd, e, quarantine, !inRecord && brokenStart == start);
+
+                // records are skipped as a whole only by a skip rule on the elements containing them
+                String skippedPath = handler.getSkippedPath();
+                wrapperSkipMode = handler.isSkipMode() && skippedPath != null
+                        && (wrapperPath.equals(skippedPath) || wrapperPath.startsWith(skippedPath + "/"));
+                wrapperSkippedPath = wrapperSkipMode ? skippedPath : null;
+                return brokenEnd;
+            }
+        }
+    }
+
+    private void quarantine(long start, long end, SAXParseException e, FileChannel quarantine, boolean extendsLast) throws IOException {
+        log.warn("Quarantining bytes {} to {} of the input: {}", start, end, e.getMessage());
+        try (FileChannel input = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            long position = start;
+            while (position < end) {
+                position += input.transferTo(position, end - position, quarantine);
+            }
+        }
+        int last = quarantinedRecords.size() - 1;
+        if (extendsLast && last >= 0) {
+            QuarantinedRecord previous = quarantinedRecords.get(last);
+            quarantinedRecords.set(last, new QuarantinedRecord(previous.getOffset(), end - previous.getOffset(), previous.getMessage()));
+        } else {
+            quarantinedRecords.add(new QuarantinedRecord(start, end - start, e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns the offset of the first record start tag from the given offset, or -1 if there is none.
+     */
+    private long findRecordStart(long from) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(inputFile), BUFFER_SIZE)) {
+            long skipped = 0;
+            while (skipped < from) {
+                long skip = input.skip(from - skipped);
+                if (skip <= 0) {
+                    return -1;
+                }
+                skipped += skip;
+            }
+            long position = from;
+            int matched = 0;
+            int b;
+            while ((b = input.read()) >= 0) {
+                if (matched == recordStartTag.length) {
+                    if (b == '>' || b == '/' || isWhitespace(b)) {
+                        return position - matched;
+                    }
+                    matched = 0;
+                }
+                if (b == recordStartTag[matched]) {
+                    matched++;
+                } else {
+                    matched = b == recordStartTag[0] ? 1 : 0;
+                }
+                position++;
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
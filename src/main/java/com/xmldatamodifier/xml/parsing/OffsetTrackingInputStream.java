@@ -0,0 +1,77 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Input stream feeding every byte read by the parser to a {@link XmlByteScanner}.
+ */
+public class OffsetTrackingInputStream extends FilterInputStream {
+
+    private final XmlByteScanner scanner;
+    private final byte[] single = new byte[1];
+
+    public OffsetTrackingInputStream(InputStream in, XmlByteScanner scanner) {
+        super(in);
+        this.scanner = scanner;
+    }
+
+    /**
+     * Fails if the given file is encoded in UTF-16 or UTF-32, which the byte scanner cannot read.
+     */
+    public static void checkAsciiCompatibleEncoding(Path file) throws IOException {
+        checkArgument(isAsciiCompatibleEncoding(file), "Only ASCII compatible encodings are supported for offset tracking: %s", file);
+    }
+
+    /**
+     * Returns false if the given file is encoded in UTF-16 or UTF-32, which the byte scanner cannot read.
+     */
+    public static boolean isAsciiCompatibleEncoding(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            int first = input.read();
+            int second = input.read();
+            return first != 0 && second != 0 && !(first == 0xFE && second == 0xFF) && !(first == 0xFF && second == 0xFE);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            scanner.scan(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(n, 8192)];
+        int read = read(skipped, 0, skipped.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark is not supported");
+    }
+}
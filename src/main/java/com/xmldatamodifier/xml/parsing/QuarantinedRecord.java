@@ -0,0 +1,44 @@
+package com.xmldatamodifier.xml.parsing;
+
+/**
+ * Byte range of the input left out of the conversion by a {@link LenientParser}, because it couldn't be parsed.
+ */
+public class QuarantinedRecord {
+
+    private final long offset;
+    private final long length;
+    private final String message;
+
+    public QuarantinedRecord(long offset, long length, String message) {
+        this.offset = offset;
+        this.length = length;
+        this.message = message;
+    }
+
+    /**
+     * Returns the offset of the range in the input file.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the message of the parsing error which caused the range to be quarantined.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "QuarantinedRecord{" +
+                "offset=" + offset +
+                ", length=" + length +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
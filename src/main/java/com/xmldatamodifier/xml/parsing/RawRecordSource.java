@@ -0,0 +1,14 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Source of records copied to the output as they are, without being parsed. The input refers to such a record with
+ * a {@link SAXTransformationHandler#RAW_RECORD_MARKER} marker holding the number of the record, see
+ * {@link SAXTransformationHandler#setMarkerTarget}.
+ */
+public interface RawRecordSource {
+
+    void copyRecord(int record, Writer writer) throws IOException;
+}
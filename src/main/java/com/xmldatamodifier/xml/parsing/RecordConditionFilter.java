@@ -0,0 +1,385 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.primitives.Ints;
+import com.xmldatamodifier.core.RecordConditionRule;
+import com.xmldatamodifier.xml.audit.AuditTrail;
+import com.xmldatamodifier.xml.manipulation.XmlRuleSet;
+import org.xml.sax.*;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content handler applying {@link RecordConditionRule}s in front of another handler. The events of an element having
+ * such rules are held back in a {@link SpillingEventBuffer} until the element ends; the element is then dropped, or
+ * sent on with its text and attribute values masked, or sent on as it is. Everything else goes straight through. Conditions of elements
+ * nested in a held back element are not evaluated. CDATA boundaries are sent on if the handler is a
+ * {@link LexicalHandler}. Dropped and masked elements are recorded in the audit trail, if any, with the length of their
+ * text before and after.
+ */
+public class RecordConditionFilter extends DefaultHandler2 {
+
+    private static final int MAX_VALUE_SLACK = 64;
+
+    private final ContentHandler handler;
+    private final LexicalHandler lexicalHandler;
+    private final XmlRuleSet ruleSet;
+    private final XPathHandler xPathHandler = new XPathHandler();
+    private final SpillingEventBuffer buffer;
+    private final MaskingHandler maskingHandler = new MaskingHandler();
+
+    private final Map<String, List<Condition>> conditionsByPath = new HashMap<>();
+    private List<Condition> conditions = Collections.emptyList();
+    private int bufferedDepth;
+    private long bufferedTextLength;
+    private long bufferedOffset;
+
+    private AuditTrail auditTrail;
+    private ElementOffsetTracker elementOffsets;
+
+    private long droppedRecords;
+    private long maskedRecords;
+
+    public RecordConditionFilter(ContentHandler handler, XmlRuleSet ruleSet, long spillThreshold) {
+        this.handler = requireNonNull(handler, "Handler cannot be null");
+        this.lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        this.ruleSet = requireNonNull(ruleSet, "Rule set cannot be null");
+        this.buffer = new SpillingEventBuffer(spillThreshold);
+    }
+
+    public void setAuditTrail(AuditTrail auditTrail) {
+        this.auditTrail = auditTrail;
+    }
+
+    /**
+     * Gives the offsets of the elements recorded in the audit trail. Without it, they are recorded as -1.
+     */
+    public void setElementOffsets(ElementOffsetTracker elementOffsets) {
+        this.elementOffsets = elementOffsets;
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    public long getMaskedRecords() {
+        return maskedRecords;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        handler.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        handler.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        handler.endDocument();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        xPathHandler.enterNode(qName);
+        try {
+            if (bufferedDepth > 0) {
+                bufferedDepth++;
+                buffer.startElement(qName, attributes);
+                return;
+            }
+
+            String currentXPath = xPathHandler.getCurrentXPath();
+            Set<RecordConditionRule> rules = ruleSet.getRulesForXPath(currentXPath, RecordConditionRule.class);
+            if (rules.isEmpty()) {
+                handler.startElement(uri, localName, qName, attributes);
+                return;
+            }
+
+            conditions = getConditions(currentXPath, rules);
+            for (int i = 0; i < conditions.size(); i++) {
+                conditions.get(i).reset();
+            }
+            bufferedDepth = 1;
+            bufferedTextLength = 0;
+            bufferedOffset = elementOffsets != null ? elementOffsets.getElementOffset() : -1;
+            buffer.startElement(qName, attributes);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        try {
+            if (bufferedDepth == 0) {
+                handler.endElement(uri, localName, qName);
+                return;
+            }
+
+            String currentXPath = xPathHandler.getCurrentXPath();
+            for (int i = 0; i < conditions.size(); i++) {
+                Condition condition = conditions.get(i);
+                if (condition.path.equals(currentXPath)) {
+                    condition.childEnded();
+                }
+            }
+            buffer.endElement(qName);
+            if (--bufferedDepth == 0) {
+                release();
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        } finally {
+            xPathHandler.exitLastEnteredNode();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (bufferedDepth == 0) {
+            handler.characters(ch, start, length);
+            return;
+        }
+        String currentXPath = xPathHandler.getCurrentXPath();
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            if (condition.path.equals(currentXPath)) {
+                condition.append(ch, start, length);
+            }
+        }
+        bufferedTextLength += length;
+        try {
+            buffer.characters(ch, start, length);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (bufferedDepth == 0) {
+            handler.ignorableWhitespace(ch, start, length);
+            return;
+        }
+        try {
+            buffer.ignorableWhitespace(ch, start, length);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (bufferedDepth == 0) {
+            handler.processingInstruction(target, data);
+            return;
+        }
+        try {
+            buffer.processingInstruction(target, data);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        try {
+            if (bufferedDepth > 0) {
+                buffer.startCDATA();
+            } else if (lexicalHandler != null) {
+                lexicalHandler.startCDATA();
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        try {
+            if (bufferedDepth > 0) {
+                buffer.endCDATA();
+            } else if (lexicalHandler != null) {
+                lexicalHandler.endCDATA();
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Returns the conditions of the rules of the given path, created once per path and reused by every element.
+     */
+    private List<Condition> getConditions(String path, Set<RecordConditionRule> rules) {
+        List<Condition> pathConditions = conditionsByPath.get(path);
+        if (pathConditions == null) {
+            pathConditions = new ArrayList<>(rules.size());
+            for (RecordConditionRule rule : rules) {
+                pathConditions.add(new Condition(rule, path + "/" + rule.getChild()));
+            }
+            conditionsByPath.put(path, pathConditions);
+        }
+        return pathConditions;
+    }
+
+    private void release() throws SAXException, IOException {
+        RecordConditionRule mask = null;
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            if (condition.matched) {
+                if (condition.rule.getAction() == RecordConditionRule.Action.DROP) {
+                    droppedRecords++;
+                    buffer.clear();
+                    audit(condition.rule, 0);
+                    return;
+                }
+                mask = condition.rule;
+            }
+        }
+        if (mask != null) {
+            maskedRecords++;
+            maskingHandler.replacement = mask.getReplacement();
+            maskingHandler.textLength = 0;
+            buffer.replay(maskingHandler);
+            audit(mask, maskingHandler.textLength);
+        } else {
+            buffer.replay(handler);
+        }
+    }
+
+    private void audit(RecordConditionRule rule, long afterLength) {
+        if (auditTrail != null) {
+            auditTrail.ruleApplied(xPathHandler.getCurrentXPath(), rule, bufferedOffset,
+                    Ints.saturatedCast(bufferedTextLength), Ints.saturatedCast(afterLength));
+        }
+    }
+
+    /**
+     * Condition being evaluated on the element held back.
+     */
+    private static class Condition {
+        private final RecordConditionRule rule;
+        private final String path;
+        private final StringBuilder text = new StringBuilder();
+        private boolean matched;
+
+        Condition(RecordConditionRule rule, String path) {
+            this.rule = rule;
+            this.path = path;
+        }
+
+        void append(char[] ch, int start, int length) {
+            // only the value, with some surrounding whitespace, needs to be kept for the comparison
+            if (text.length() <= rule.getValue().length() + MAX_VALUE_SLACK) {
+                text.append(ch, start, Math.min(length, rule.getValue().length() + MAX_VALUE_SLACK + 1 - text.length()));
+            }
+        }
+
+        void reset() {
+            text.setLength(0);
+            matched = false;
+        }
+
+        void childEnded() {
+            matched = matched || (text.length() <= rule.getValue().length() + MAX_VALUE_SLACK
+                    && text.toString().trim().equals(rule.getValue()));
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * Sends the events on, replacing every text node and attribute value which isn't just whitespace with the
+     * replacement.
+     */
+    private class MaskingHandler extends DefaultHandler2 {
+        private final AttributesImpl maskedAttributes = new AttributesImpl();
+        private String replacement;
+        private boolean inText;
+        private long textLength;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            inText = false;
+            maskedAttributes.clear();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String value = attributes.getValue(i);
+                maskedAttributes.addAttribute(attributes.getURI(i), attributes.getLocalName(i), attributes.getQName(i),
+                        attributes.getType(i), isWhitespace(value) ? value : replacement);
+            }
+            handler.startElement(uri, localName, qName, maskedAttributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            inText = false;
+            handler.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (isWhitespace(ch, start, length)) {
+                textLength += length;
+                handler.characters(ch, start, length);
+            } else if (!inText) {
+                inText = true;
+                textLength += replacement.length();
+                handler.characters(replacement.toCharArray(), 0, replacement.length());
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            handler.processingInstruction(target, data);
+        }
+
+        @Override
+        public void startCDATA() throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.startCDATA();
+            }
+        }
+
+        @Override
+        public void endCDATA() throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.endCDATA();
+            }
+        }
+
+        private boolean isWhitespace(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (!Character.isWhitespace(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isWhitespace(char[] ch, int start, int length) {
+            for (int i = start; i < start + length; i++) {
+                if (!Character.isWhitespace(ch[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
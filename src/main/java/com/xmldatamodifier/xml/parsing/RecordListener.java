@@ -0,0 +1,20 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.IOException;
+
+/**
+ * Notified by {@link SAXTransformationHandler} around every record element of the input, including the ones
+ * which are skipped. A record element is the element found at the configured record path.
+ */
+public interface RecordListener {
+
+    /**
+     * Called right before the start tag of a record is written, if not skipped.
+     */
+    void recordStarted() throws IOException;
+
+    /**
+     * Called right after the end tag of a record has been written, if not skipped.
+     */
+    void recordEnded() throws IOException;
+}
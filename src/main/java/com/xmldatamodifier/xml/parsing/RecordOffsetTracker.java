@@ -0,0 +1,168 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds the byte offsets of the record elements while the input is read by the parser, and hands them out in order
+ * as {@link SAXTransformationHandler} reaches the same records. As the parser always reads ahead of the events it
+ * reports, the offsets of a record are known by the time its events are received.
+ * <p>
+ * Must be registered as record listener before any listener asking for the offsets.
+ */
+public class RecordOffsetTracker implements XmlByteScanner.Listener, RecordListener {
+
+    private final byte[][] recordPathElements;
+    private boolean[] matchesRecordPath;
+
+    private final LongQueue recordStartOffsets = new LongQueue();
+    private final LongQueue recordEndOffsets = new LongQueue();
+
+    private long lastRecordStartOffset = -1;
+    private long lastRecordEndOffset = -1;
+    private long rootStartOffset = -1;
+
+    public RecordOffsetTracker(String recordPath) {
+        this(recordPath, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param openElements names of the elements already open where the tracking starts
+     */
+    public RecordOffsetTracker(String recordPath, List<String> openElements) {
+        requireNonNull(recordPath, "Record path cannot be null");
+        List<String> elements = Lists.newArrayList(Splitter.on('/').omitEmptyStrings().split(recordPath));
+        recordPathElements = new byte[elements.size()][];
+        for (int i = 0; i < elements.size(); i++) {
+            recordPathElements[i] = elements.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        reset(openElements);
+    }
+
+    /**
+     * Starts the tracking again, e.g. after the parsing failed and started again further on.
+     *
+     * @param openElements names of the elements already open where the tracking starts again
+     */
+    public void reset(List<String> openElements) {
+        matchesRecordPath = new boolean[Math.max(16, openElements.size() + 1)];
+        matchesRecordPath[0] = true;
+        for (int depth = 1; depth <= openElements.size(); depth++) {
+            byte[] name = openElements.get(depth - 1).getBytes(StandardCharsets.UTF_8);
+            matchesRecordPath[depth] = matches(name, name.length, depth);
+        }
+        recordStartOffsets.clear();
+        recordEndOffsets.clear();
+        lastRecordStartOffset = -1;
+        lastRecordEndOffset = -1;
+    }
+
+    /**
+     * Offset of the '&lt;' opening the last record started, -1 if no record has been started yet.
+     */
+    public long getLastRecordStartOffset() {
+        return lastRecordStartOffset;
+    }
+
+    /**
+     * Offset right after the end tag of the last record ended, -1 if no record has been ended yet.
+     */
+    public long getLastRecordEndOffset() {
+        return lastRecordEndOffset;
+    }
+
+    /**
+     * Offset of the '&lt;' opening the root element, i.e. the length of the prolog, -1 if not read by this tracker.
+     */
+    public long getRootStartOffset() {
+        return rootStartOffset;
+    }
+
+    @Override
+    public void startTag(byte[] name, int nameLength, int depth, long offset) {
+        if (depth == 1 && rootStartOffset < 0) {
+            rootStartOffset = offset;
+        }
+        if (depth == matchesRecordPath.length) {
+            matchesRecordPath = Arrays.copyOf(matchesRecordPath, depth * 2);
+        }
+        matchesRecordPath[depth] = matches(name, nameLength, depth);
+        if (depth == recordPathElements.length && matchesRecordPath[depth]) {
+            recordStartOffsets.add(offset);
+        }
+    }
+
+    @Override
+    public void endTag(int depth, long endOffset) {
+        if (depth == recordPathElements.length && matchesRecordPath[depth]) {
+            recordEndOffsets.add(endOffset);
+        }
+    }
+
+    @Override
+    public void recordStarted() throws IOException {
+        lastRecordStartOffset = recordStartOffsets.poll();
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        lastRecordEndOffset = recordEndOffsets.poll();
+    }
+
+    private boolean matches(byte[] name, int nameLength, int depth) {
+        if (depth > recordPathElements.length || !matchesRecordPath[depth - 1]) {
+            return false;
+        }
+        byte[] expected = recordPathElements[depth - 1];
+        if (expected.length != nameLength) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (expected[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class LongQueue {
+        private long[] values = new long[64];
+        private int head;
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                long[] grown = new long[values.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = values[(head + i) % values.length];
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + size++) % values.length] = value;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        long poll() {
+            if (size == 0) {
+                throw new IllegalStateException("Record offsets are out of sync with the parser");
+            }
+            long value = values[head];
+            head = (head + 1) % values.length;
+            size--;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Stops the parsing once the first records of a sample have been written, by failing right after the last one: the
+ * caller is expected to check {@link #isComplete()} and close the elements still open.
+ */
+public class RecordSampler implements RecordListener {
+
+    private final SampleOptions options;
+    private final CountingInputStream input;
+    private long records;
+    private boolean complete;
+
+    /**
+     * @param input the input of the parser, counting the bytes read for a sample of {@link SampleOptions.Mode#BYTES}
+     */
+    public RecordSampler(SampleOptions options, CountingInputStream input) {
+        checkArgument(options.getMode() != SampleOptions.Mode.RANDOM, "Random samples are picked from the index");
+        this.options = options;
+        this.input = input;
+    }
+
+    @Override
+    public void recordStarted() {
+    }
+
+    @Override
+    public void recordEnded() throws IOException {
+        records++;
+        long taken = options.getMode() == SampleOptions.Mode.RECORDS ? records : input.getCount();
+        if (taken >= options.getSize()) {
+            complete = true;
+            throw new IOException("Sample complete after " + records + " records");
+        }
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Picks the records of a random sample, with reservoir sampling.
+     */
+    public static BitSet pickRecords(int recordCount, SampleOptions options) {
+        checkArgument(options.getMode() == SampleOptions.Mode.RANDOM, "Only random samples are picked");
+        Random random = new Random(options.getSeed());
+        int[] reservoir = new int[(int) Math.min(options.getSize(), recordCount)];
+        for (int record = 0; record < recordCount; record++) {
+            if (record < reservoir.length) {
+                reservoir[record] = record;
+            } else {
+                int slot = random.nextInt(record + 1);
+                if (slot < reservoir.length) {
+                    reservoir[slot] = record;
+                }
+            }
+        }
+        BitSet picked = new BitSet(recordCount);
+        for (int record : reservoir) {
+            picked.set(record);
+        }
+        return picked;
+    }
+}
@@ -1,26 +1,42 @@
 package com.xmldatamodifier.xml.parsing;
 
+import com.google.common.primitives.Ints;
 import com.xmldatamodifier.core.ContentRule;
+import com.xmldatamodifier.core.ContentStream;
 import com.xmldatamodifier.core.Rule;
 import com.xmldatamodifier.core.SkipRule;
+import com.xmldatamodifier.xml.audit.AuditTrail;
 import com.xmldatamodifier.xml.manipulation.XmlRuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
-import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.Locator2;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
 
 
-public class SAXTransformationHandler extends DefaultHandler {
+/**
+ * Writes the document back, applying the rules of the given rule set. When also registered as the lexical handler
+ * of the parser, CDATA sections without content rules are kept as they are, instead of being escaped.
+ */
+public class SAXTransformationHandler extends DefaultHandler2 {
 
     private final Writer writer;
     private final String documentStart;
@@ -30,8 +46,46 @@ public class SAXTransformationHandler extends DefaultHandler {
     private final XPathHandler xPathHandler;
     private final XmlRuleSet ruleSet;
 
+    private final List<RecordListener> recordListeners = new ArrayList<>();
+    private String recordPath;
+
     private boolean skipMode;
     private String skippedPath;
+    private SkipRule skipRule;
+    private long skipOffset;
+    private long skippedLength;
+
+    private boolean keepOnly;
+    private int keptDepth;
+    private int prunedDepth;
+
+    private long elements;
+    private long rulesApplied;
+
+    private AuditTrail auditTrail;
+    private ContentHandler outputHandler;
+    private final StringBuilder unescaped = new StringBuilder();
+    private char[] unescapedChars = new char[256];
+    private RawRecordSource rawRecordSource;
+    private ChunkListener chunkListener;
+    private String markerTarget;
+    private final TextTransformation text = new TextTransformation();
+    private boolean inCData;
+    private int cDataBrackets;
+
+    private boolean minify;
+    private List<String> preservedWhitespacePaths = Collections.emptyList();
+    private boolean textStarted;
+    private char[] heldWhitespace = new char[256];
+    private int heldWhitespaceLength;
+
+    private Locator locator;
+    private ElementOffsetTracker elementOffsets;
+    private boolean resumed;
+    private int replayedElements;
+    private boolean resumedSkipMode;
+    private String resumedSkippedPath;
+    private final List<String> wrapperStartTags = new ArrayList<>();
 
     public SAXTransformationHandler(Writer writer, XmlRuleSet transformer) {
         this(writer, XML_DOCUMENT_START_DEFAULT, transformer);
@@ -48,11 +102,168 @@ public class SAXTransformationHandler extends DefaultHandler {
         this.xPathHandler = xPathHandler;
     }
 
+    /**
+     * Sets the xpath of the record elements, e.g. "/catalog/item". Record listeners are notified
+     * around every record element of the input, including the skipped ones.
+     */
+    public void setRecordPath(String recordPath) {
+        this.recordPath = recordPath;
+    }
+
+    public void addRecordListener(RecordListener recordListener) {
+        recordListeners.add(requireNonNull(recordListener, "Record listener cannot be null"));
+    }
+
+    /**
+     * Records every application of a content rule to the given audit trail.
+     */
+    public void setAuditTrail(AuditTrail auditTrail) {
+        this.auditTrail = auditTrail;
+    }
+
+    /**
+     * Gives the offsets of the elements recorded in the audit trail. Without it, they are recorded as -1.
+     */
+    public void setElementOffsets(ElementOffsetTracker elementOffsets) {
+        this.elementOffsets = elementOffsets;
+    }
+
+    /**
+     * Sends the transformed document to the given handler too, as it is written: the elements with their attributes,
+     * and the text, unescaped. Processing instructions and CDATA boundaries are not sent.
+     */
+    public void setOutputHandler(ContentHandler outputHandler) {
+        this.outputHandler = outputHandler;
+    }
+
+    /**
+     * Drops the text nodes made only of whitespace, e.g. indentation, except in the elements at the given paths and
+     * their descendants. Whitespace is held back only until the text node turns out to have some other content.
+     */
+    public void setMinify(boolean minify, Collection<String> preservedWhitespacePaths) {
+        this.minify = minify;
+        this.preservedWhitespacePaths = new ArrayList<>(requireNonNull(preservedWhitespacePaths, "Preserved paths cannot be null"));
+    }
+
+    /**
+     * Projects the document on the paths with keep rules: only the elements at those paths, their descendants and
+     * the tags of their ancestors are written. Everything below a pruned element is passed over counting its depth.
+     */
+    public void setKeepOnly(boolean keepOnly) {
+        this.keepOnly = keepOnly;
+    }
+
+    /**
+     * Copies the records referred to by {@link #RAW_RECORD_MARKER} markers from the given source, unless they are
+     * skipped.
+     */
+    public void setRawRecordSource(RawRecordSource rawRecordSource) {
+        this.rawRecordSource = rawRecordSource;
+    }
+
+    /**
+     * Notifies the given listener of the {@link #CHUNK_MARKER} and {@link #CACHED_CHUNK_MARKER} markers.
+     */
+    public void setChunkListener(ChunkListener chunkListener) {
+        this.chunkListener = chunkListener;
+    }
+
+    /**
+     * Takes the processing instructions of the given target for markers, which are not written: their data is the
+     * kind of marker and the number of the record or chunk it refers to. The target must not be used by the input.
+     */
+    public void setMarkerTarget(String markerTarget) {
+        this.markerTarget = markerTarget;
+    }
+
+    /**
+     * Resumes a transformation interrupted right after a record. The input is expected to start with the start tags
+     * of the elements which were open at that point: they are not written again, then the skip state is restored.
+     */
+    public void resumeFrom(List<String> openElements, boolean skipMode, String skippedPath) {
+        this.resumed = true;
+        this.replayedElements = openElements.size();
+        this.resumedSkipMode = skipMode;
+        this.resumedSkippedPath = skippedPath;
+    }
+
+    /**
+     * Resumes, as {@link #resumeFrom}, a transformation whose parsing failed on malformed input and starts again
+     * further on: the state of the elements left open is dropped, including a text node being transformed.
+     */
+    public void resynchronize(List<String> openElements, boolean skipMode, String skippedPath) {
+        while (!xPathHandler.getCurrentXPath().isEmpty()) {
+            xPathHandler.exitLastEnteredNode();
+        }
+        wrapperStartTags.clear();
+        text.discard();
+        inCData = false;
+        textStarted = false;
+        heldWhitespaceLength = 0;
+        keptDepth = 0;
+        prunedDepth = 0;
+        if (!skipMode || !skippedPath.equals(this.skippedPath)) {
+            skipRule = null;
+        }
+        this.skipMode = false;
+        this.skippedPath = null;
+        resumeFrom(openElements, skipMode, skippedPath);
+    }
+
+    public List<String> getOpenElements() {
+        return xPathHandler.getNodes();
+    }
+
+    /**
+     * Returns the start tags, attributes included, of the open elements containing the records, to be replayed when
+     * resuming right after a record.
+     */
+    public List<String> getWrapperStartTags() {
+        return Collections.unmodifiableList(wrapperStartTags);
+    }
+
+    public boolean isSkipMode() {
+        return skipMode;
+    }
+
+    public String getSkippedPath() {
+        return skippedPath;
+    }
+
+    /**
+     * Returns the number of elements read, the skipped and pruned ones included.
+     */
+    public long getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the number of times a rule was applied: once per text node for content rules, once per element whose
+     * content is skipped for skip rules.
+     */
+    public long getRulesApplied() {
+        return rulesApplied;
+    }
+
+    /**
+     * Returns the encoding of the input as detected by the parser, or null if not available.
+     */
+    public String getInputEncoding() {
+        return locator instanceof Locator2 ? ((Locator2) locator).getEncoding() : null;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
     @Override
     public void startDocument() throws SAXException {
         try {
             log.info("START document transformation");
-            writer.write(documentStart + "\n");
+            if (!resumed) {
+                writer.write(documentStart + "\n");
+            }
         } catch (IOException e) {
             throw new SAXException(e);
         }
@@ -60,17 +271,47 @@ public class SAXTransformationHandler extends DefaultHandler {
 
     @Override
     public void endDocument() throws SAXException {
+        finishText();
         log.info("END document transformation");
     }
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 
+        finishText();
+
         String currentXPath = xPathHandler.getCurrentXPath();
+        if (isWrapper(currentXPath, qName)) {
+            wrapperStartTags.add(startTag(qName, attributes));
+        }
+
+        if (replayedElements > 0) {
+            replayElement(qName);
+            return;
+        }
+
+        elements++;
 
         try {
-            if (skipMode || getRule(currentXPath, SkipRule.class).isPresent()) {
-                skippedPath = skipMode ? skippedPath : currentXPath;
+            if (isRecord(currentXPath, qName)) {
+                for (RecordListener recordListener : recordListeners) {
+                    recordListener.recordStarted();
+                }
+            }
+
+            if (!enterProjection(qName)) {
+                return;
+            }
+
+            Optional<SkipRule> rule = skipMode ? Optional.<SkipRule>empty() : getRule(currentXPath, SkipRule.class);
+            if (skipMode || rule.isPresent()) {
+                if (!skipMode) {
+                    skippedPath = currentXPath;
+                    rulesApplied++;
+                    skipRule = rule.get();
+                    skipOffset = elementOffset();
+                    skippedLength = 0;
+                }
                 skipMode = true;
             } else {
                 writer.write(START_TAG);
@@ -81,6 +322,9 @@ public class SAXTransformationHandler extends DefaultHandler {
                     writeAttribute(attributes.getLocalName(i), attributes.getValue(i));
                 }
                 writer.write(END_TAG);
+                if (outputHandler != null) {
+                    outputHandler.startElement("", qName, qName, attributes);
+                }
             }
 
         } catch (Exception err) {
@@ -97,11 +341,33 @@ public class SAXTransformationHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
 
+        finishText();
+
+        String currentXPath = xPathHandler.getCurrentXPath();
+        boolean recordEnded = recordPath != null && recordPath.equals(currentXPath);
+        if (recordPath != null && recordPath.length() > currentXPath.length() && recordPath.startsWith(currentXPath)
+                && recordPath.charAt(currentXPath.length()) == '/' && !wrapperStartTags.isEmpty()) {
+            wrapperStartTags.remove(wrapperStartTags.size() - 1);
+        }
+
         try {
 
-            if (!skipMode || skippedPath.equals(xPathHandler.getCurrentXPath())) {
+            if (prunedDepth > 0) {
+                prunedDepth--;
+            } else if (!skipMode || skippedPath.equals(currentXPath)) {
+                if (skipMode) {
+                    auditSkip();
+                }
                 skipMode = false;
-                writer.write(format("</%s>", qName));
+                writer.write(CLOSING_TAG_START);
+                writer.write(qName);
+                writer.write(END_TAG);
+                if (outputHandler != null) {
+                    outputHandler.endElement("", qName, qName);
+                }
+            }
+            if (keptDepth > 0) {
+                keptDepth--;
             }
 
         } catch (IOException err) {
@@ -112,6 +378,118 @@ public class SAXTransformationHandler extends DefaultHandler {
 
             xPathHandler.exitLastEnteredNode();
         }
+
+        if (recordEnded) {
+            try {
+                for (RecordListener recordListener : recordListeners) {
+                    recordListener.recordEnded();
+                }
+            } catch (IOException err) {
+                throw new SAXException(err);
+            }
+        }
+    }
+
+    /**
+     * Ends a document whose parsing was stopped before the end, e.g. by a record listener: writes the end tags of the
+     * elements still open, unless they are skipped.
+     */
+    public void closeOpenElements() throws SAXException {
+        List<String> openElements = xPathHandler.getNodes();
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            endElement(null, null, openElements.get(i));
+        }
+        endDocument();
+    }
+
+    private void replayElement(String qName) {
+        enterProjection(qName);
+        xPathHandler.enterNode(qName);
+        if (--replayedElements == 0) {
+            skipMode = resumedSkipMode;
+            skippedPath = resumedSkippedPath;
+        }
+    }
+
+    /**
+     * Updates the depths of the projection on the kept paths for the child of the current element with the given
+     * name, and returns whether it's written.
+     */
+    private boolean enterProjection(String qName) {
+        if (prunedDepth > 0) {
+            prunedDepth++;
+            return false;
+        }
+        if (keptDepth > 0) {
+            keptDepth++;
+        } else if (keepOnly) {
+            XmlRuleSet.Projection projection = project(qName);
+            if (projection == XmlRuleSet.Projection.PRUNED) {
+                prunedDepth = 1;
+                return false;
+            }
+            keptDepth = projection == XmlRuleSet.Projection.KEPT ? 1 : 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the projection of the child of the current element with the given name.
+     */
+    private XmlRuleSet.Projection project(String qName) {
+        xPathHandler.enterNode(qName);
+        try {
+            return ruleSet.getProjection(xPathHandler.getCurrentXPath());
+        } finally {
+            xPathHandler.exitLastEnteredNode();
+        }
+    }
+
+    /**
+     * Returns whether the content of the current element is left out of the projection on the kept paths, i.e. the
+     * element is pruned or only an ancestor of kept elements.
+     */
+    private boolean isProjectedOut() {
+        return prunedDepth > 0 || (keepOnly && keptDepth == 0);
+    }
+
+    /**
+     * Returns whether the given child of the element at the given path contains the records.
+     */
+    private boolean isWrapper(String parentXPath, String qName) {
+        int end = parentXPath.length() + 1 + qName.length();
+        return recordPath != null
+                && recordPath.length() > end
+                && recordPath.startsWith(parentXPath)
+                && recordPath.charAt(parentXPath.length()) == '/'
+                && recordPath.startsWith(qName, parentXPath.length() + 1)
+                && recordPath.charAt(end) == '/';
+    }
+
+    private static String startTag(String qName, Attributes attributes) {
+        StringBuilder startTag = new StringBuilder(START_TAG).append(qName);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            startTag.append(' ').append(attributes.getQName(i)).append("=\"");
+            String value = attributes.getValue(i);
+            for (int j = 0; j < value.length(); j++) {
+                String escapedChar = escapeChar(value.charAt(j));
+                if (escapedChar != null) {
+                    startTag.append(escapedChar);
+                } else {
+                    startTag.append(value.charAt(j));
+                }
+            }
+            startTag.append('"');
+        }
+        return startTag.append(END_TAG).toString();
+    }
+
+    private boolean isRecord(String parentXPath, String qName) {
+        return recordPath != null
+                && recordPath.length() == parentXPath.length() + 1 + qName.length()
+                && recordPath.startsWith(parentXPath)
+                && recordPath.charAt(parentXPath.length()) == '/'
+                && recordPath.endsWith(qName);
     }
 
     protected void writeAttribute(String attributeName, String value) throws SAXException {
@@ -119,9 +497,7 @@ public class SAXTransformationHandler extends DefaultHandler {
             try {
                 writer.write(attributeName);
                 writer.write("=\"");
-                char[] attributeValue = value.toCharArray();
-                String escapedString = escape(attributeValue, 0, value.length());
-                writer.write(escapedString);
+                writeEscaped(value);
                 writer.write("\"");
             } catch (IOException err) {
                 throw new SAXException(err);
@@ -131,24 +507,163 @@ public class SAXTransformationHandler extends DefaultHandler {
 
     @Override
     public void characters(char[] input, int start, int length) throws SAXException {
-        if (!skipMode) {
+        if (skipMode) {
+            skippedLength += length;
+        } else if (!isProjectedOut()) {
             try {
 
-                String escapedString = escape(input, start, length);
-
-                String currentXPath = xPathHandler.getCurrentXPath();
-                Set<ContentRule> rulesForXPath = getRules(currentXPath, ContentRule.class);
+                if (inCData) {
+                    writeCData(input, start, length);
+                    return;
+                }
 
-                if (!rulesForXPath.isEmpty()) {
-                    for (ContentRule rule : rulesForXPath) {
-                        log.info("Applying rule [{}] to xpath {}", rule, currentXPath);
-                        escapedString = rule.elaborate(escapedString);
+                if (minify && !textStarted) {
+                    if (isWhitespace(input, start, length) && !isWhitespacePreserved()) {
+                        holdWhitespace(input, start, length);
+                        return;
                     }
+                    releaseHeldWhitespace();
                 }
+                writeCharacters(input, start, length);
+
+            } catch (IOException err) {
+                throw new SAXException(err);
+            }
+        }
+    }
+
+    private void writeCharacters(char[] input, int start, int length) throws IOException, SAXException {
+        if (text.isOpen()) {
+            text.next(input, start, length);
+            return;
+        }
+
+        String currentXPath = xPathHandler.getCurrentXPath();
+        Set<ContentRule> rulesForXPath = getRules(currentXPath, ContentRule.class);
 
-                writer.write(escapedString);
+        if (rulesForXPath.isEmpty()) {
+            writeEscaped(input, start, length);
+            if (outputHandler != null) {
+                outputHandler.characters(input, start, length);
+            }
+        } else {
+            text.open(currentXPath, rulesForXPath);
+            text.next(input, start, length);
+        }
+    }
 
+    private static boolean isWhitespace(char[] ch, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            char c = ch[i];
+            if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private boolean isWhitespacePreserved() {
+        if (preservedWhitespacePaths.isEmpty()) {
+            return false;
+        }
+        String currentXPath = xPathHandler.getCurrentXPath();
+        for (String path : preservedWhitespacePaths) {
+            if (currentXPath.startsWith(path)
+                    && (currentXPath.length() == path.length() || currentXPath.charAt(path.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void holdWhitespace(char[] ch, int start, int length) {
+        if (heldWhitespace.length < heldWhitespaceLength + length) {
+            heldWhitespace = Arrays.copyOf(heldWhitespace, Math.max(heldWhitespace.length * 2, heldWhitespaceLength + length));
+        }
+        System.arraycopy(ch, start, heldWhitespace, heldWhitespaceLength, length);
+        heldWhitespaceLength += length;
+    }
+
+    private void releaseHeldWhitespace() throws IOException, SAXException {
+        textStarted = true;
+        if (heldWhitespaceLength > 0) {
+            writeCharacters(heldWhitespace, 0, heldWhitespaceLength);
+            heldWhitespaceLength = 0;
+        }
+    }
+
+    /**
+     * Starts copying a CDATA section as it is, unless it's part of a text node being transformed: rules work on
+     * escaped content.
+     */
+    @Override
+    public void startCDATA() throws SAXException {
+        if (isProjectedOut()) {
+            return;
+        }
+        if (minify && !skipMode && !textStarted) {
+            // whitespace followed by a CDATA section is part of its text
+            try {
+                releaseHeldWhitespace();
+            } catch (IOException err) {
+                throw new SAXException(err);
+            }
+        }
+        if (skipMode || text.isOpen() || !getRules(xPathHandler.getCurrentXPath(), ContentRule.class).isEmpty()) {
+            return;
+        }
+        try {
+            writer.write(CDATA_START);
+            inCData = true;
+            cDataBrackets = 0;
+        } catch (IOException err) {
+            throw new SAXException(err);
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        if (inCData) {
+            inCData = false;
+            try {
+                writer.write(CDATA_END);
+            } catch (IOException err) {
+                throw new SAXException(err);
+            }
+        }
+    }
+
+    /**
+     * Copies CDATA content without escaping it. The only sequence which can't be copied is "]]&gt;", possibly split
+     * between two chunks: the section is closed and reopened between its brackets and its '&gt;'.
+     */
+    private void writeCData(char[] ch, int start, int length) throws IOException, SAXException {
+        if (outputHandler != null) {
+            outputHandler.characters(ch, start, length);
+        }
+        int runStart = start;
+        for (int i = start; i < start + length; i++) {
+            if (ch[i] == ']') {
+                cDataBrackets++;
+            } else {
+                if (ch[i] == '>' && cDataBrackets >= 2) {
+                    writer.write(ch, runStart, i - runStart);
+                    writer.write(CDATA_END);
+                    writer.write(CDATA_START);
+                    runStart = i;
+                }
+                cDataBrackets = 0;
+            }
+        }
+        writer.write(ch, runStart, start + length - runStart);
+    }
+
+    private void finishText() throws SAXException {
+        textStarted = false;
+        heldWhitespaceLength = 0;
+        if (text.isOpen()) {
+            try {
+                text.finish();
             } catch (IOException err) {
                 throw new SAXException(err);
             }
@@ -156,16 +671,31 @@ public class SAXTransformationHandler extends DefaultHandler {
     }
 
     private <T extends Rule> Set<T> getRules(String currentXPath, Class<T> ruleClass) {
-        log.debug("Trying to look for rules to apply to current xpath {}", currentXPath);
-        Set<T> rulesForXPath = ruleSet.getRulesForXPath(currentXPath, ruleClass);
-        log.debug("Found {} rules", rulesForXPath.size());
-        return rulesForXPath;
+        return ruleSet.getRulesForXPath(currentXPath, ruleClass);
+    }
+
+    /**
+     * Records the skip rule which has just stopped skipping, with the position of the first skipped element and the
+     * length of the skipped text. Not recorded for a skip started before resuming.
+     */
+    private void auditSkip() {
+        if (auditTrail != null && skipRule != null) {
+            auditTrail.ruleApplied(skippedPath, skipRule, skipOffset, Ints.saturatedCast(skippedLength), 0);
+        }
+        skipRule = null;
+    }
+
+    private long elementOffset() {
+        return elementOffsets != null ? elementOffsets.getElementOffset() : -1;
     }
 
     private <T extends Rule> Optional<T> getRule(String currentXPath, Class<T> ruleClass) {
         Set<T> rules = getRules(currentXPath, ruleClass);
-        checkArgument(rules.size() <= 1, "More than one rule of type {} has been defined for path {}. Please specify only rule of that type per path ", ruleClass.getSimpleName(), currentXPath);
-        return rules.stream().findFirst();
+        if (rules.isEmpty()) {
+            return Optional.empty();
+        }
+        checkArgument(rules.size() == 1, "More than one rule of type %s has been defined for path %s. Please specify only rule of that type per path ", ruleClass.getSimpleName(), currentXPath);
+        return Optional.of(rules.iterator().next());
     }
 
     @Override
@@ -177,38 +707,256 @@ public class SAXTransformationHandler extends DefaultHandler {
     @Override
     public void processingInstruction(String target, String data)
             throws SAXException {
+        finishText();
+        if (replayedElements > 0) {
+            // part of the replayed prolog
+            return;
+        }
         try {
+            if (target.equals(markerTarget)) {
+                marker(data);
+                return;
+            }
+            if (isProjectedOut()) {
+                return;
+            }
             writer.write(format("<?%s %s?>", target, data));
         } catch (IOException err) {
             throw new SAXException(err);
         }
     }
 
-    protected String escape(char ch[], int start, int length) {
-        int newLength = 0;
-        char[] out = new char[length * 8]; //worst case scenario
+    private void marker(String data) throws IOException {
+        int separator = data.indexOf(' ');
+        String kind = data.substring(0, separator);
+        int number = Integer.parseInt(data.substring(separator + 1));
+        if (RAW_RECORD_MARKER.equals(kind)) {
+            // raw records are between records, so they are kept only if the record path is
+            if (!skipMode && (!keepOnly || ruleSet.getProjection(recordPath) == XmlRuleSet.Projection.KEPT)) {
+                rawRecordSource.copyRecord(number, writer);
+            }
+        } else {
+            chunkListener.chunkStarted(number, CACHED_CHUNK_MARKER.equals(kind), writer);
+        }
+    }
+
+    /**
+     * Appends the escaped characters to the given builder, for the content rules to work on.
+     */
+    protected void appendEscaped(char ch[], int start, int length, StringBuilder escaped) {
+        int runStart = start;
         for (int i = start; i < start + length; i++) {
-            if (ch[i] == '<') {
-                ("&lt;").getChars(0, 4, out, newLength);
-                newLength += 4;
-            } else if (ch[i] == '>') {
-                ("&gt;").getChars(0, 4, out, newLength);
-                newLength += 4;
-            } else if (ch[i] == '&') {
-                ("&amp;").getChars(0, 5, out, newLength);
-                newLength += 5;
-            } else if (ch[i] == '\"') {
-                ("&#34;").getChars(0, 5, out, newLength);
-                newLength += 5;
-            } else if (ch[i] == '\'') {
-                ("&#39;").getChars(0, 5, out, newLength);
-                newLength += 5;
+            String escapedChar = escapeChar(ch[i]);
+            if (escapedChar != null) {
+                escaped.append(ch, runStart, i - runStart).append(escapedChar);
+                runStart = i + 1;
+            }
+        }
+        escaped.append(ch, runStart, start + length - runStart);
+    }
+
+    /**
+     * Writes the escaped characters without building an intermediate string: unescaped runs are written as they are.
+     */
+    private void writeEscaped(char ch[], int start, int length) throws IOException {
+        int runStart = start;
+        for (int i = start; i < start + length; i++) {
+            String escapedChar = escapeChar(ch[i]);
+            if (escapedChar != null) {
+                writer.write(ch, runStart, i - runStart);
+                writer.write(escapedChar);
+                runStart = i + 1;
+            }
+        }
+        if (runStart < start + length) {
+            writer.write(ch, runStart, start + length - runStart);
+        }
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        int runStart = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String escapedChar = escapeChar(value.charAt(i));
+            if (escapedChar != null) {
+                writer.write(value, runStart, i - runStart);
+                writer.write(escapedChar);
+                runStart = i + 1;
+            }
+        }
+        if (runStart == 0) {
+            writer.write(value);
+        } else if (runStart < value.length()) {
+            writer.write(value, runStart, value.length() - runStart);
+        }
+    }
+
+    /**
+     * Writes the result of content rules, which is escaped like their content.
+     */
+    private void writeTransformed(String result) throws IOException, SAXException {
+        writer.write(result);
+        if (outputHandler != null) {
+            unescaped.setLength(0);
+            appendUnescaped(result, unescaped);
+            if (unescapedChars.length < unescaped.length()) {
+                unescapedChars = new char[Math.max(unescapedChars.length * 2, unescaped.length())];
+            }
+            unescaped.getChars(0, unescaped.length(), unescapedChars, 0);
+            outputHandler.characters(unescapedChars, 0, unescaped.length());
+        }
+    }
+
+    /**
+     * Replaces the predefined entities and the character references, the only ones in escaped content. Other
+     * ampersands are kept as they are.
+     */
+    static void appendUnescaped(String escaped, StringBuilder unescaped) {
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            int semicolon = c == '&' ? escaped.indexOf(';', i) : -1;
+            if (semicolon < 0 || !appendEntity(escaped, i + 1, semicolon, unescaped)) {
+                unescaped.append(c);
             } else {
-                out[newLength++] = ch[i];
+                i = semicolon;
             }
         }
+    }
 
-        return new String(out, 0, newLength).intern();
+    private static boolean appendEntity(String escaped, int start, int end, StringBuilder unescaped) {
+        if (escaped.startsWith("lt", start) && end == start + 2) {
+            unescaped.append('<');
+        } else if (escaped.startsWith("gt", start) && end == start + 2) {
+            unescaped.append('>');
+        } else if (escaped.startsWith("amp", start) && end == start + 3) {
+            unescaped.append('&');
+        } else if (escaped.startsWith("quot", start) && end == start + 4) {
+            unescaped.append('"');
+        } else if (escaped.startsWith("apos", start) && end == start + 4) {
+            unescaped.append('\'');
+        } else if (escaped.startsWith("#", start) && end > start + 1) {
+            boolean hex = escaped.charAt(start + 1) == 'x';
+            try {
+                unescaped.appendCodePoint(Integer.parseInt(escaped.substring(start + (hex ? 2 : 1), end), hex ? 16 : 10));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static String escapeChar(char c) {
+        switch (c) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '\"':
+                return "&#34;";
+            case '\'':
+                return "&#39;";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Content rules being applied to the text node currently read, which the parser may deliver in several chunks.
+     * The result of every rule is written, or handed over to the next rule, as soon as it is final, and the text node
+     * ends at the next markup event.
+     */
+    private class TextTransformation {
+        private String xPath;
+        private ContentRule[] rules = new ContentRule[4];
+        private ContentStream[] streams = new ContentStream[4];
+        private int[] beforeLengths = new int[4];
+        private int[] afterLengths = new int[4];
+        private final StringBuilder escaped = new StringBuilder();
+        private int ruleCount;
+        private long offset;
+
+        boolean isOpen() {
+            return ruleCount > 0;
+        }
+
+        void open(String xPath, Set<ContentRule> rulesForXPath) {
+            if (rules.length < rulesForXPath.size()) {
+                rules = Arrays.copyOf(rules, rulesForXPath.size());
+                streams = Arrays.copyOf(streams, rulesForXPath.size());
+                beforeLengths = new int[rulesForXPath.size()];
+                afterLengths = new int[rulesForXPath.size()];
+            }
+            for (ContentRule rule : rulesForXPath) {
+                rules[ruleCount] = rule;
+                streams[ruleCount] = rule.openStream();
+                beforeLengths[ruleCount] = 0;
+                afterLengths[ruleCount] = 0;
+                ruleCount++;
+            }
+            this.xPath = xPath;
+            this.offset = elementOffset();
+        }
+
+        void next(char[] input, int start, int length) throws IOException, SAXException {
+            // the content of a rule ignoring it is never escaped, nor kept
+            CharSequence escapedChunk = "";
+            if (rules[0].ignoresContent()) {
+                beforeLengths[0] += length;
+            } else {
+                escaped.setLength(0);
+                appendEscaped(input, start, length, escaped);
+                beforeLengths[0] += escaped.length();
+                escapedChunk = escaped;
+            }
+            String chunk = next(0, escapedChunk);
+            for (int i = 1; i < ruleCount && !chunk.isEmpty(); i++) {
+                beforeLengths[i] += chunk.length();
+                chunk = next(i, chunk);
+            }
+            if (!chunk.isEmpty()) {
+                writeTransformed(chunk);
+            }
+        }
+
+        void finish() throws IOException, SAXException {
+            String rest = "";
+            for (int i = 0; i < ruleCount; i++) {
+                String result = rest.isEmpty() ? "" : next(i, rest);
+                beforeLengths[i] += rest.length();
+                String finalResult = streams[i].finish();
+                afterLengths[i] += finalResult.length();
+                rest = result + finalResult;
+            }
+            if (!rest.isEmpty()) {
+                writeTransformed(rest);
+            }
+            for (int i = 0; i < ruleCount; i++) {
+                if (auditTrail != null) {
+                    auditTrail.ruleApplied(xPath, rules[i], offset, beforeLengths[i], afterLengths[i]);
+                }
+                rules[i] = null;
+                streams[i] = null;
+            }
+            rulesApplied += ruleCount;
+            ruleCount = 0;
+        }
+
+        void discard() {
+            for (int i = 0; i < ruleCount; i++) {
+                rules[i] = null;
+                streams[i] = null;
+            }
+            ruleCount = 0;
+        }
+
+        private String next(int index, CharSequence chunk) {
+            String result = streams[index].next(chunk);
+            afterLengths[index] += result.length();
+            return result;
+        }
     }
 
     @Override
@@ -221,7 +969,14 @@ public class SAXTransformationHandler extends DefaultHandler {
         log.error("Exception during xml parsing", e);
     }
 
+    public static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+    public static final String CDATA_START = "<![CDATA[";
+    public static final String CDATA_END = "]]>";
+    public static final String RAW_RECORD_MARKER = "raw-record";
+    public static final String CHUNK_MARKER = "chunk";
+    public static final String CACHED_CHUNK_MARKER = "cached-chunk";
     public static final String XML_DOCUMENT_START_DEFAULT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
     public static final String START_TAG = "<";
+    public static final String CLOSING_TAG_START = "</";
     public static final String END_TAG = ">";
 }
@@ -0,0 +1,60 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+public class SampleOptions {
+
+    public enum Mode {
+        /**
+         * The first records of the input.
+         */
+        RECORDS,
+        /**
+         * The records of the input until the given number of bytes has been read, ending with the one read then.
+         */
+        BYTES,
+        /**
+         * Records picked at random among all the records of the input, kept in the input order. Uses the index.
+         */
+        RANDOM
+    }
+
+    private final Mode mode;
+    private final long size;
+    private final long seed;
+
+    public SampleOptions(Mode mode, long size) {
+        this(mode, size, new Random().nextLong());
+    }
+
+    /**
+     * @param size number of records, or of bytes, of the sample
+     * @param seed seed of the random picks, so that a random sample can be picked again
+     */
+    public SampleOptions(Mode mode, long size, long seed) {
+        checkArgument(size > 0, "Sample size must be positive");
+        this.mode = requireNonNull(mode, "Sample mode cannot be null");
+        this.size = size;
+        this.seed = seed;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleOptions{" + "mode=" + mode + ", size=" + size + (mode == Mode.RANDOM ? ", seed=" + seed : "") + '}';
+    }
+}
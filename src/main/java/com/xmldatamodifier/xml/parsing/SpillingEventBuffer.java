@@ -0,0 +1,292 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@link EventBuffer} moving its events to a temporary file whenever they take more than a given number of bytes, so
+ * that the memory used stays bounded whatever the number of events. Events are replayed in order, first the ones in
+ * the file, then the ones still in memory.
+ */
+public class SpillingEventBuffer {
+
+    public static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+    private static final byte CHARACTERS = 3;
+    private static final byte IGNORABLE_WHITESPACE = 4;
+    private static final byte PROCESSING_INSTRUCTION = 5;
+    private static final byte END = 6;
+    private static final byte START_CDATA = 7;
+    private static final byte END_CDATA = 8;
+
+    private final EventBuffer events = new EventBuffer();
+    private final long spillThreshold;
+
+    private Path spillFile;
+    private DataOutputStream spillOutput;
+    private SpillWriter spillWriter;
+
+    public SpillingEventBuffer(long spillThreshold) {
+        checkArgument(spillThreshold > 0, "Spill threshold must be positive");
+        this.spillThreshold = spillThreshold;
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    public void startElement(String qName, Attributes attributes) throws IOException {
+        events.startElement(qName, attributes);
+        checkSize();
+    }
+
+    public void endElement(String qName) throws IOException {
+        events.endElement(qName);
+        checkSize();
+    }
+
+    public void characters(char[] ch, int start, int length) throws IOException {
+        events.characters(ch, start, length);
+        checkSize();
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int length) throws IOException {
+        events.ignorableWhitespace(ch, start, length);
+        checkSize();
+    }
+
+    public void processingInstruction(String target, String data) throws IOException {
+        events.processingInstruction(target, data);
+        checkSize();
+    }
+
+    public void startCDATA() throws IOException {
+        events.startCDATA();
+        checkSize();
+    }
+
+    public void endCDATA() throws IOException {
+        events.endCDATA();
+        checkSize();
+    }
+
+    /**
+     * Sends the buffered events to the given handler, then clears the buffer.
+     */
+    public void replay(ContentHandler handler) throws SAXException, IOException {
+        try {
+            if (spillFile != null) {
+                spillOutput.writeByte(END);
+                spillOutput.close();
+                try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile), 65536))) {
+                    readSpilledEvents(input, handler);
+                }
+            }
+            events.replay(handler);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Discards the buffered events.
+     */
+    public void clear() throws IOException {
+        events.clear();
+        if (spillFile != null) {
+            spillOutput.close();
+            Files.deleteIfExists(spillFile);
+            spillFile = null;
+            spillOutput = null;
+            spillWriter = null;
+        }
+    }
+
+    private void checkSize() throws IOException {
+        if (events.getCharCount() * 2L + events.getEventCount() * 16L < spillThreshold) {
+            return;
+        }
+        if (spillFile == null) {
+            spillFile = Files.createTempFile("xml-data-modifier-", ".events");
+            spillOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), 65536));
+            spillWriter = new SpillWriter(spillOutput);
+        }
+        try {
+            events.replay(spillWriter);
+        } catch (SAXException e) {
+            throw new IOException("Error spilling events to " + spillFile, e);
+        }
+        events.clear();
+    }
+
+    private static void readSpilledEvents(DataInputStream input, ContentHandler handler) throws IOException, SAXException {
+        AttributesImpl attributes = new AttributesImpl();
+        char[] chars = new char[1024];
+        while (true) {
+            byte type = input.readByte();
+            switch (type) {
+                case START_ELEMENT:
+                    String qName = input.readUTF();
+                    int attributeCount = input.readInt();
+                    attributes.clear();
+                    for (int i = 0; i < attributeCount; i++) {
+                        String attributeQName = input.readUTF();
+                        String attributeLocalName = input.readUTF();
+                        attributes.addAttribute("", attributeLocalName, attributeQName, "CDATA", readString(input));
+                    }
+                    handler.startElement("", qName, qName, attributes);
+                    break;
+                case END_ELEMENT:
+                    String endQName = input.readUTF();
+                    handler.endElement("", endQName, endQName);
+                    break;
+                case CHARACTERS:
+                case IGNORABLE_WHITESPACE:
+                    int length = input.readInt();
+                    if (chars.length < length) {
+                        chars = new char[length];
+                    }
+                    for (int i = 0; i < length; i++) {
+                        chars[i] = input.readChar();
+                    }
+                    if (type == CHARACTERS) {
+                        handler.characters(chars, 0, length);
+                    } else {
+                        handler.ignorableWhitespace(chars, 0, length);
+                    }
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(input.readUTF(), readString(input));
+                    break;
+                case START_CDATA:
+                    if (handler instanceof LexicalHandler) {
+                        ((LexicalHandler) handler).startCDATA();
+                    }
+                    break;
+                case END_CDATA:
+                    if (handler instanceof LexicalHandler) {
+                        ((LexicalHandler) handler).endCDATA();
+                    }
+                    break;
+                case END:
+                    return;
+                default:
+                    throw new IOException("Unknown spilled event type " + type);
+            }
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = input.readChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes the events replayed to it to the spill file.
+     */
+    private static class SpillWriter extends DefaultHandler2 {
+        private final DataOutputStream output;
+
+        SpillWriter(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            try {
+                output.writeByte(START_ELEMENT);
+                output.writeUTF(qName);
+                output.writeInt(attributes.getLength());
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    output.writeUTF(attributes.getQName(i));
+                    output.writeUTF(attributes.getLocalName(i));
+                    writeString(attributes.getValue(i));
+                }
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            try {
+                output.writeByte(END_ELEMENT);
+                output.writeUTF(qName);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            writeChars(CHARACTERS, ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            writeChars(IGNORABLE_WHITESPACE, ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            try {
+                output.writeByte(PROCESSING_INSTRUCTION);
+                output.writeUTF(target);
+                writeString(data);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        @Override
+        public void startCDATA() throws SAXException {
+            writeType(START_CDATA);
+        }
+
+        @Override
+        public void endCDATA() throws SAXException {
+            writeType(END_CDATA);
+        }
+
+        private void writeType(byte type) throws SAXException {
+            try {
+                output.writeByte(type);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        private void writeChars(byte type, char[] ch, int start, int length) throws SAXException {
+            try {
+                output.writeByte(type);
+                output.writeInt(length);
+                for (int i = start; i < start + length; i++) {
+                    output.writeChar(ch[i]);
+                }
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            output.writeInt(value.length());
+            output.writeChars(value);
+        }
+    }
+}
@@ -1,39 +1,66 @@
 package com.xmldatamodifier.xml.parsing;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Keeps track of the xpath of the current node. Paths are kept in a tree built as the nodes are entered, with every
+ * node holding its own path: once a path has been seen, entering it again and getting it doesn't allocate anything.
+ */
 public class XPathHandler {
 
-    private final Stack<String> xpath;
-    private final Logger log = LoggerFactory.getLogger(XPathHandler.class);
-
-    public XPathHandler() {
-        xpath = new Stack<>();
-    }
+    private final PathNode root = new PathNode(null, null, "");
+    private PathNode current = root;
 
     public void enterNode(String node) {
-        xpath.push(node);
+        current = current.child(node);
     }
 
     public void exitLastEnteredNode() {
-        if (xpath.size() == 0) {
+        if (current == root) {
             throw new IllegalStateException("Impossible to exit a node, the xpath was empty");
         }
-        xpath.pop();
+        current = current.parent;
+    }
+
+    /**
+     * Returns a copy of the names of the nodes currently entered, starting from the root.
+     */
+    public List<String> getNodes() {
+        List<String> nodes = new ArrayList<>();
+        for (PathNode node = current; node != root; node = node.parent) {
+            nodes.add(node.name);
+        }
+        Collections.reverse(nodes);
+        return nodes;
     }
 
     public String getCurrentXPath() {
+        return current.path;
+    }
 
-        StringBuilder xPathBuilder = new StringBuilder();
+    private static class PathNode {
+        private final PathNode parent;
+        private final String name;
+        private final String path;
+        private final Map<String, PathNode> children = new HashMap<>();
 
-        for (String node : xpath) {
-            xPathBuilder.append("/");
-            xPathBuilder.append(node);
+        PathNode(PathNode parent, String name, String path) {
+            this.parent = parent;
+            this.name = name;
+            this.path = path;
         }
 
-        return xPathBuilder.toString();
+        PathNode child(String name) {
+            PathNode child = children.get(name);
+            if (child == null) {
+                child = new PathNode(this, name, path + "/" + name);
+                children.put(name, child);
+            }
+            return child;
+        }
     }
 }
@@ -0,0 +1,267 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.util.Arrays;
+
+/**
+ * Lightweight incremental scanner locating start and end tags in the raw bytes of an xml document. It recognises
+ * comments, CDATA sections, processing instructions, doctype declarations and quoted attribute values, but it doesn't
+ * validate anything: it only gives the byte offsets SAX doesn't expose. Works with ASCII compatible encodings only.
+ */
+public class XmlByteScanner {
+
+    public interface Listener {
+
+        /**
+         * Called once the name of a start tag has been read.
+         *
+         * @param name       buffer holding the element name, valid only during the call
+         * @param nameLength length of the element name
+         * @param depth      depth of the element, 1 for the root element
+         * @param offset     offset of the '&lt;' opening the tag
+         */
+        void startTag(byte[] name, int nameLength, int depth, long offset);
+
+        /**
+         * Called at the end of an end tag or of an empty element tag.
+         *
+         * @param depth     depth of the element being closed
+         * @param endOffset offset right after the '&gt;' closing the tag
+         */
+        void endTag(int depth, long endOffset);
+    }
+
+    /**
+     * Returns a listener calling both given listeners in turn, or the first one if the second one is null.
+     */
+    public static Listener both(final Listener first, final Listener second) {
+        if (second == null) {
+            return first;
+        }
+        return new Listener() {
+            @Override
+            public void startTag(byte[] name, int nameLength, int depth, long offset) {
+                first.startTag(name, nameLength, depth, offset);
+                second.startTag(name, nameLength, depth, offset);
+            }
+
+            @Override
+            public void endTag(int depth, long endOffset) {
+                first.endTag(depth, endOffset);
+                second.endTag(depth, endOffset);
+            }
+        };
+    }
+
+    private enum State {
+        TEXT, TAG_OPEN, START_TAG_NAME, START_TAG, ATTRIBUTE_VALUE, EMPTY_TAG_END, END_TAG,
+        PROCESSING_INSTRUCTION, MARKUP_DECLARATION, COMMENT, CDATA, DOCTYPE
+    }
+
+    private static final byte[] COMMENT_START = "--".getBytes();
+    private static final byte[] CDATA_START = "[CDATA[".getBytes();
+
+    private final Listener listener;
+
+    private State state = State.TEXT;
+    private long position;
+    private int depth;
+    private boolean rootClosed;
+
+    private long tagOffset;
+    private byte[] name = new byte[64];
+    private int nameLength;
+    private byte quote;
+    private int markupLength;
+    private int repeatedChars;
+    private int bracketDepth;
+    private boolean internalSubset;
+
+    public XmlByteScanner(Listener listener) {
+        this(listener, 0, 0);
+    }
+
+    /**
+     * @param initialPosition offset of the first byte which will be scanned
+     * @param initialDepth    number of elements already open at the initial position
+     */
+    public XmlByteScanner(Listener listener, long initialPosition, int initialDepth) {
+        this.listener = listener;
+        this.position = initialPosition;
+        this.depth = initialDepth;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns true once the end tag of the root element has been scanned.
+     */
+    public boolean isRootClosed() {
+        return rootClosed;
+    }
+
+    /**
+     * Returns true once a doctype declaration with an internal subset has been scanned.
+     */
+    public boolean hasInternalSubset() {
+        return internalSubset;
+    }
+
+    public void scan(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            switch (state) {
+                case TEXT:
+                    while (b != '<' && ++i < end) {
+                        b = buffer[i];
+                    }
+                    if (b == '<' && i < end) {
+                        tagOffset = position + i - offset;
+                        state = State.TAG_OPEN;
+                    }
+                    break;
+                case TAG_OPEN:
+                    if (b == '/') {
+                        state = State.END_TAG;
+                    } else if (b == '?') {
+                        state = State.PROCESSING_INSTRUCTION;
+                        repeatedChars = 0;
+                    } else if (b == '!') {
+                        state = State.MARKUP_DECLARATION;
+                        markupLength = 0;
+                    } else {
+                        nameLength = 0;
+                        appendToName(b);
+                        state = State.START_TAG_NAME;
+                    }
+                    break;
+                case START_TAG_NAME:
+                    if (isNameEnd(b)) {
+                        listener.startTag(name, nameLength, ++depth, tagOffset);
+                        state = tagContent(b);
+                    } else {
+                        appendToName(b);
+                    }
+                    break;
+                case START_TAG:
+                    state = tagContent(b);
+                    break;
+                case ATTRIBUTE_VALUE:
+                    if (b == quote) {
+                        state = State.START_TAG;
+                    }
+                    break;
+                case EMPTY_TAG_END:
+                    if (b == '>') {
+                        endTag(position + i - offset + 1);
+                    } else {
+                        state = tagContent(b);
+                    }
+                    break;
+                case END_TAG:
+                    if (b == '>') {
+                        endTag(position + i - offset + 1);
+                    }
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    if (b == '>' && repeatedChars > 0) {
+                        state = State.TEXT;
+                    }
+                    repeatedChars = b == '?' ? 1 : 0;
+                    break;
+                case MARKUP_DECLARATION:
+                    state = markupDeclaration(b);
+                    break;
+                case COMMENT:
+                    if (b == '>' && repeatedChars >= 2) {
+                        state = State.TEXT;
+                    }
+                    repeatedChars = b == '-' ? repeatedChars + 1 : 0;
+                    break;
+                case CDATA:
+                    if (b == '>' && repeatedChars >= 2) {
+                        state = State.TEXT;
+                    }
+                    repeatedChars = b == ']' ? repeatedChars + 1 : 0;
+                    break;
+                case DOCTYPE:
+                    state = doctype(b);
+                    break;
+            }
+        }
+        position += length;
+    }
+
+    private void endTag(long endOffset) {
+        listener.endTag(depth--, endOffset);
+        rootClosed = depth == 0;
+        state = State.TEXT;
+    }
+
+    private State tagContent(byte b) {
+        if (b == '"' || b == '\'') {
+            quote = b;
+            return State.ATTRIBUTE_VALUE;
+        } else if (b == '/') {
+            return State.EMPTY_TAG_END;
+        } else if (b == '>') {
+            return State.TEXT;
+        }
+        return State.START_TAG;
+    }
+
+    private State markupDeclaration(byte b) {
+        if (markupLength < COMMENT_START.length && COMMENT_START[markupLength] == b) {
+            if (++markupLength == COMMENT_START.length) {
+                repeatedChars = 0;
+                return State.COMMENT;
+            }
+            return State.MARKUP_DECLARATION;
+        }
+        if (markupLength < CDATA_START.length && CDATA_START[markupLength] == b) {
+            if (++markupLength == CDATA_START.length) {
+                repeatedChars = 0;
+                return State.CDATA;
+            }
+            return State.MARKUP_DECLARATION;
+        }
+        quote = 0;
+        bracketDepth = 0;
+        return doctype(b);
+    }
+
+    private State doctype(byte b) {
+        if (quote != 0) {
+            if (b == quote) {
+                quote = 0;
+            }
+        } else if (b == '"' || b == '\'') {
+            quote = b;
+        } else if (b == '[') {
+            bracketDepth++;
+            internalSubset = true;
+        } else if (b == ']') {
+            bracketDepth--;
+        } else if (b == '>' && bracketDepth <= 0) {
+            return State.TEXT;
+        }
+        return State.DOCTYPE;
+    }
+
+    private void appendToName(byte b) {
+        if (nameLength == name.length) {
+            name = Arrays.copyOf(name, name.length * 2);
+        }
+        name[nameLength++] = b;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,152 @@
+package com.xmldatamodifier.xml.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Encoding and xml declaration of a document, detected from its first bytes as described in appendix F of the xml
+ * specification: byte order mark, UTF-16 without byte order mark, then the encoding in the declaration. Documents
+ * without declaration are UTF-8, unless they start with a UTF-16 byte order mark.
+ */
+public final class XmlDeclaration {
+
+    private static final int HEAD_SIZE = 1024;
+    private static final Pattern DECLARATION = Pattern.compile("^<\\?xml\\s[^>]*\\?>");
+    private static final Pattern ATTRIBUTE = Pattern.compile("(version|encoding|standalone)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private static final String DEFAULT_VERSION = "1.0";
+
+    private final Charset encoding;
+    private final String declaredEncoding;
+    private final String version;
+    private final String standalone;
+    private final boolean byteOrderMark;
+
+    private XmlDeclaration(Charset encoding, String declaredEncoding, String version, String standalone, boolean byteOrderMark) {
+        this.encoding = encoding;
+        this.declaredEncoding = declaredEncoding;
+        this.version = version;
+        this.standalone = standalone;
+        this.byteOrderMark = byteOrderMark;
+    }
+
+    public static XmlDeclaration read(Path file) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        int length = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while (length < head.length && (read = input.read(head, length, head.length - length)) > 0) {
+                length += read;
+            }
+        }
+        return parse(head, length);
+    }
+
+    /**
+     * @throws java.nio.charset.UnsupportedCharsetException if the declared encoding is not supported
+     */
+    static XmlDeclaration parse(byte[] head, int length) {
+        Charset encoding = StandardCharsets.UTF_8;
+        boolean byteOrderMark = true;
+        int start = 0;
+        if (startsWith(head, length, 0xEF, 0xBB, 0xBF)) {
+            start = 3;
+        } else if (startsWith(head, length, 0xFE, 0xFF)) {
+            encoding = StandardCharsets.UTF_16BE;
+            start = 2;
+        } else if (startsWith(head, length, 0xFF, 0xFE)) {
+            encoding = StandardCharsets.UTF_16LE;
+            start = 2;
+        } else {
+            byteOrderMark = false;
+            if (startsWith(head, length, 0x00, '<', 0x00, '?')) {
+                encoding = StandardCharsets.UTF_16BE;
+            } else if (startsWith(head, length, '<', 0x00, '?', 0x00)) {
+                encoding = StandardCharsets.UTF_16LE;
+            }
+        }
+
+        boolean utf16 = !encoding.equals(StandardCharsets.UTF_8);
+        // the declaration is ASCII: decoding it as ISO-8859-1 never fails whatever the actual encoding
+        String text = new String(head, start, length - start, utf16 ? encoding : StandardCharsets.ISO_8859_1);
+        Matcher declaration = DECLARATION.matcher(text);
+        if (!declaration.find()) {
+            return new XmlDeclaration(encoding, null, null, null, byteOrderMark);
+        }
+        String version = null;
+        String declaredEncoding = null;
+        String standalone = null;
+        Matcher attribute = ATTRIBUTE.matcher(declaration.group());
+        while (attribute.find()) {
+            String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3);
+            switch (attribute.group(1)) {
+                case "version":
+                    version = value;
+                    break;
+                case "encoding":
+                    declaredEncoding = value;
+                    break;
+                default:
+                    standalone = value;
+            }
+        }
+        if (declaredEncoding != null && !utf16 && !byteOrderMark) {
+            encoding = Charset.forName(declaredEncoding);
+        }
+        return new XmlDeclaration(encoding, declaredEncoding, version, standalone, byteOrderMark);
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((head[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Charset getEncoding() {
+        return encoding;
+    }
+
+    public boolean hasByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    /**
+     * Returns the start of a document with the same declaration, in the given encoding: the byte order mark, if the
+     * input had one or the output is UTF-16, and the declaration with the same version and standalone attribute.
+     * The encoding is named as in the input when it doesn't change.
+     */
+    public String toDocumentStart(Charset outputEncoding) {
+        boolean sameEncoding = outputEncoding.equals(encoding);
+        boolean utf16 = outputEncoding.equals(StandardCharsets.UTF_16BE) || outputEncoding.equals(StandardCharsets.UTF_16LE);
+        String encodingName = sameEncoding && declaredEncoding != null ? declaredEncoding
+                : utf16 ? StandardCharsets.UTF_16.name() : outputEncoding.name();
+
+        StringBuilder documentStart = new StringBuilder();
+        if (sameEncoding ? byteOrderMark : utf16) {
+            documentStart.append('\uFEFF');
+        }
+        documentStart.append("<?xml version=\"").append(version != null ? version : DEFAULT_VERSION)
+                .append("\" encoding=\"").append(encodingName).append('"');
+        if (standalone != null) {
+            documentStart.append(" standalone=\"").append(standalone).append('"');
+        }
+        return documentStart.append("?>").toString();
+    }
+
+    @Override
+    public String toString() {
+        return "XmlDeclaration{" + "encoding=" + encoding + ", version=" + version + ", standalone=" + standalone
+                + ", byteOrderMark=" + byteOrderMark + '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.xmldatamodifier.xml.pipeline;
+
+/**
+ * Slot of characters to be encoded and written by the last stage of the {@link ConversionPipeline}.
+ */
+class CharChunk {
+
+    final char[] chars;
+    int length;
+    boolean last;
+
+    CharChunk(int capacity) {
+        this.chars = new char[capacity];
+    }
+}
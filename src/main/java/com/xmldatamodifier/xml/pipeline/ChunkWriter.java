@@ -0,0 +1,94 @@
+package com.xmldatamodifier.xml.pipeline;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer filling the chunks of a ring buffer. A chunk is published once full, flushed or closed.
+ */
+class ChunkWriter extends Writer {
+
+    private final RingBuffer<CharChunk> chunks;
+    private CharChunk chunk;
+    private boolean closed;
+
+    ChunkWriter(RingBuffer<CharChunk> chunks) {
+        this.chunks = chunks;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            CharChunk current = current();
+            int copied = Math.min(len, current.chars.length - current.length);
+            System.arraycopy(cbuf, off, current.chars, current.length, copied);
+            current.length += copied;
+            off += copied;
+            len -= copied;
+            publishIfFull(current);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            CharChunk current = current();
+            int copied = Math.min(len, current.chars.length - current.length);
+            str.getChars(off, off + copied, current.chars, current.length);
+            current.length += copied;
+            off += copied;
+            len -= copied;
+            publishIfFull(current);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        CharChunk current = current();
+        current.chars[current.length++] = (char) c;
+        publishIfFull(current);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (chunk != null && chunk.length > 0) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes the last chunk, telling the writing stage that the output is complete.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        current().last = true;
+        closed = true;
+        publish();
+    }
+
+    private CharChunk current() throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        if (chunk == null) {
+            chunk = chunks.claim();
+            chunk.length = 0;
+            chunk.last = false;
+        }
+        return chunk;
+    }
+
+    private void publishIfFull(CharChunk current) {
+        if (current.length == current.chars.length) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        chunk = null;
+        chunks.publish();
+    }
+}
@@ -0,0 +1,233 @@
+package com.xmldatamodifier.xml.pipeline;
+
+import com.google.common.base.Supplier;
+import com.xmldatamodifier.xml.output.EncodedOutputWriter;
+import com.xmldatamodifier.xml.parsing.EventBuffer;
+import com.xmldatamodifier.xml.parsing.SAXTransformationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a conversion as three stages on three threads:
+ * <ol>
+ * <li>the parser thread copies the SAX events into batches of compact events,</li>
+ * <li>the transform thread replays the batches into the transformation handler, which applies the rules, escapes
+ * the content and writes characters into chunks,</li>
+ * <li>the write thread encodes the chunks and writes them to the output.</li>
+ * </ol>
+ * Stages hand batches and chunks over through preallocated {@link RingBuffer}s, so the throughput approaches the
+ * one of the slowest stage instead of the sum of all of them.
+ */
+public class ConversionPipeline {
+
+    private static final int EVENT_BATCHES = 8;
+    private static final int EVENTS_PER_BATCH = 2048;
+    private static final int CHARS_PER_BATCH = 32 * 1024;
+    private static final int CHAR_CHUNKS = 8;
+    private static final int CHARS_PER_CHUNK = 32 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(ConversionPipeline.class);
+
+    private final RingBuffer<EventBuffer> batches;
+    private final RingBuffer<CharChunk> chunks;
+    private final ChunkWriter writer;
+    private final OutputStream output;
+    private final Charset charset;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public ConversionPipeline(OutputStream output, Charset charset) {
+        this.output = output;
+        this.charset = charset;
+        this.batches = new RingBuffer<>(EVENT_BATCHES, new Supplier<EventBuffer>() {
+            @Override
+            public EventBuffer get() {
+                return new EventBuffer();
+            }
+        });
+        this.chunks = new RingBuffer<>(CHAR_CHUNKS, new Supplier<CharChunk>() {
+            @Override
+            public CharChunk get() {
+                return new CharChunk(CHARS_PER_CHUNK);
+            }
+        });
+        this.writer = new ChunkWriter(chunks);
+    }
+
+    /**
+     * Writer to be given to the transformation handler. It's closed by the pipeline at the end of the document.
+     */
+    public Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Parses the input on the calling thread, while the handler and the output writing run on their own threads.
+     * Returns once the whole output has been written.
+     */
+    public void run(XMLReader xmlReader, InputSource inputSource, ContentHandler handler) throws Exception {
+        Thread transformThread = new Thread(new TransformStage(handler), "pipeline-transform");
+        Thread writeThread = new Thread(new WriteStage(), "pipeline-write");
+        transformThread.start();
+        writeThread.start();
+
+        try {
+            EventPublisher publisher = new EventPublisher();
+            xmlReader.setContentHandler(publisher);
+            if (handler instanceof LexicalHandler) {
+                xmlReader.setProperty(SAXTransformationHandler.LEXICAL_HANDLER_PROPERTY, publisher);
+            }
+            xmlReader.parse(inputSource);
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            transformThread.join();
+            writeThread.join();
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof Exception) {
+            throw (Exception) cause;
+        } else if (cause != null) {
+            throw new IllegalStateException("Conversion pipeline failed", cause);
+        }
+    }
+
+    private void fail(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            log.debug("Halting conversion pipeline", cause);
+        }
+        batches.halt();
+        chunks.halt();
+    }
+
+    private class EventPublisher extends DefaultHandler2 {
+        private EventBuffer batch;
+
+        @Override
+        public void startDocument() {
+            batch().startDocument();
+        }
+
+        @Override
+        public void endDocument() {
+            batch().endDocument();
+            publish();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            batch().startElement(qName, attributes);
+            publishIfFull();
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            batch().endElement(qName);
+            publishIfFull();
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            batch().characters(ch, start, length);
+            publishIfFull();
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            batch().ignorableWhitespace(ch, start, length);
+            publishIfFull();
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+            batch().processingInstruction(target, data);
+            publishIfFull();
+        }
+
+        @Override
+        public void startCDATA() {
+            batch().startCDATA();
+        }
+
+        @Override
+        public void endCDATA() {
+            batch().endCDATA();
+            publishIfFull();
+        }
+
+        private EventBuffer batch() {
+            if (batch == null) {
+                batch = batches.claim();
+                batch.clear();
+            }
+            return batch;
+        }
+
+        private void publishIfFull() {
+            if (batch.getEventCount() >= EVENTS_PER_BATCH || batch.getCharCount() >= CHARS_PER_BATCH) {
+                publish();
+            }
+        }
+
+        private void publish() {
+            batch = null;
+            batches.publish();
+        }
+    }
+
+    private class TransformStage implements Runnable {
+        private final ContentHandler handler;
+
+        TransformStage(ContentHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean documentEnded = false;
+                while (!documentEnded) {
+                    EventBuffer batch = batches.take();
+                    batch.replay(handler);
+                    documentEnded = batch.endsDocument();
+                    batches.release();
+                }
+                writer.close();
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    private class WriteStage implements Runnable {
+        private final EncodedOutputWriter encodingWriter = new EncodedOutputWriter(output, charset);
+
+        @Override
+        public void run() {
+            try {
+                boolean last = false;
+                while (!last) {
+                    CharChunk chunk = chunks.take();
+                    encodingWriter.write(chunk.chars, 0, chunk.length);
+                    last = chunk.last;
+                    chunks.release();
+                }
+                encodingWriter.finish();
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+}
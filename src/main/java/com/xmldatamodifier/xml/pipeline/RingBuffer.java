@@ -0,0 +1,135 @@
+package com.xmldatamodifier.xml.pipeline;
+
+import com.google.common.base.Supplier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lock-free ring buffer of preallocated slots between a single producer and a single consumer thread. The producer
+ * claims a free slot, fills it and publishes it; the consumer takes the next published slot and releases it once
+ * done, making it available to the producer again. Slots are never copied nor reallocated.
+ * <p>
+ * Waiting threads spin briefly, then yield, then park for short intervals. Once halted, waiting on the buffer fails
+ * with an {@link IllegalStateException}, so neither side can hang when the other one fails.
+ */
+public class RingBuffer<T> {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Object[] slots;
+    private final int mask;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private volatile boolean halted;
+
+    private long claimed;
+    private long cachedReleased;
+    private long taken;
+    private long cachedPublished;
+
+    public RingBuffer(int capacity, Supplier<T> slotFactory) {
+        checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a power of two");
+        slots = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the next free slot, waiting for the consumer to release one if the buffer is full. Producer only.
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        for (int tries = 0; claimed - cachedReleased >= slots.length; tries++) {
+            cachedReleased = released.get();
+            if (claimed - cachedReleased >= slots.length) {
+                await(tries);
+            }
+        }
+        return (T) slots[(int) (claimed & mask)];
+    }
+
+    /**
+     * Returns the next free slot, or null without waiting if the buffer is full. Producer only.
+     */
+    @SuppressWarnings("unchecked")
+    public T tryClaim() {
+        if (claimed - cachedReleased >= slots.length) {
+            cachedReleased = released.get();
+            if (claimed - cachedReleased >= slots.length) {
+                return null;
+            }
+        }
+        return (T) slots[(int) (claimed & mask)];
+    }
+
+    /**
+     * Makes the last claimed slot available to the consumer. Producer only.
+     */
+    public void publish() {
+        published.lazySet(++claimed);
+    }
+
+    /**
+     * Returns the next published slot, waiting for the producer if the buffer is empty. Consumer only.
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        for (int tries = 0; taken >= cachedPublished; tries++) {
+            cachedPublished = published.get();
+            if (taken >= cachedPublished) {
+                await(tries);
+            }
+        }
+        return (T) slots[(int) (taken & mask)];
+    }
+
+    /**
+     * Returns the next published slot, or null without waiting if the buffer is empty. Consumer only.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (taken >= cachedPublished) {
+            cachedPublished = published.get();
+            if (taken >= cachedPublished) {
+                return null;
+            }
+        }
+        return (T) slots[(int) (taken & mask)];
+    }
+
+    /**
+     * Gives the last taken slot back to the producer. Consumer only.
+     */
+    public void release() {
+        released.lazySet(++taken);
+    }
+
+    /**
+     * Makes any current and future wait on this buffer fail.
+     */
+    public void halt() {
+        halted = true;
+    }
+
+    private void await(int tries) {
+        if (halted) {
+            throw new IllegalStateException("Ring buffer halted");
+        }
+        if (tries < SPIN_TRIES) {
+            return;
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.xmldatamodifier.xml.validation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compiled XSD schemas, kept by file so that the conversions sharing the cache compile every schema only once. A
+ * schema is compiled again when its file is modified. Compiled schemas are immutable, and can be used by several
+ * conversions at the same time. Thread safe.
+ */
+public class SchemaCache {
+
+    private final Logger log = LoggerFactory.getLogger(SchemaCache.class);
+
+    private final ConcurrentMap<Path, CompiledSchema> schemas = new ConcurrentHashMap<>();
+
+    public Schema getSchema(Path schemaFile) throws IOException, SAXException {
+        requireNonNull(schemaFile, "Schema file cannot be null");
+        Path path = schemaFile.toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(path);
+        CompiledSchema compiled = schemas.get(path);
+        if (compiled == null || !compiled.lastModified.equals(lastModified)) {
+            log.info("Compiling schema {}", path);
+            // factories are not thread safe
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            compiled = new CompiledSchema(factory.newSchema(path.toFile()), lastModified);
+            schemas.put(path, compiled);
+        }
+        return compiled.schema;
+    }
+
+    private static class CompiledSchema {
+        private final Schema schema;
+        private final FileTime lastModified;
+
+        CompiledSchema(Schema schema, FileTime lastModified) {
+            this.schema = schema;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.xmldatamodifier.xml.validation;
+
+import com.xmldatamodifier.xml.parsing.XPathHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content handler validating the events against a schema in front of another handler, so that the input is validated
+ * in the same pass as it is transformed. Every event is validated before being sent on. The input is parsed without
+ * namespace processing: names are resolved against the xmlns attributes for the validator only.
+ * <p>
+ * Errors are collected, up to {@link #MAX_KEPT_ERRORS}, with the xpath of the element being validated. If failing
+ * fast, the first error stops the parsing instead. CDATA boundaries are sent on if the handler is a
+ * {@link LexicalHandler}.
+ */
+public class SchemaValidationFilter extends DefaultHandler2 {
+
+    public static final int MAX_KEPT_ERRORS = 1000;
+
+    private static final String XMLNS = "xmlns";
+
+    private final ContentHandler handler;
+    private final LexicalHandler lexicalHandler;
+    private final ValidatorHandler validator;
+    private final boolean failFast;
+    private final XPathHandler xPathHandler = new XPathHandler();
+    private final NamespaceSupport namespaces = new NamespaceSupport();
+    private final AttributesImpl validatorAttributes = new AttributesImpl();
+    private final String[] name = new String[3];
+
+    private final List<ValidationError> errors = new ArrayList<>();
+    private long errorCount;
+
+    public SchemaValidationFilter(ContentHandler handler, Schema schema, boolean failFast) {
+        this.handler = requireNonNull(handler, "Handler cannot be null");
+        this.lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        this.validator = requireNonNull(schema, "Schema cannot be null").newValidatorHandler();
+        this.validator.setErrorHandler(this);
+        this.failFast = failFast;
+    }
+
+    /**
+     * Returns the errors found, the first {@link #MAX_KEPT_ERRORS} ones only.
+     */
+    public List<ValidationError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Returns the number of errors found, warnings excluded.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        validator.setDocumentLocator(locator);
+        handler.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        validator.startDocument();
+        handler.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        validator.endDocument();
+        handler.endDocument();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        xPathHandler.enterNode(qName);
+        namespaces.pushContext();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String attributeName = attributes.getQName(i);
+            if (isNamespaceDeclaration(attributeName)) {
+                String prefix = attributeName.length() > XMLNS.length() ? attributeName.substring(XMLNS.length() + 1) : "";
+                namespaces.declarePrefix(prefix, attributes.getValue(i));
+                validator.startPrefixMapping(prefix, attributes.getValue(i));
+            }
+        }
+        validatorAttributes.clear();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String attributeName = attributes.getQName(i);
+            if (!isNamespaceDeclaration(attributeName)) {
+                resolve(attributeName, true);
+                validatorAttributes.addAttribute(name[0], name[1], attributeName, attributes.getType(i), attributes.getValue(i));
+            }
+        }
+        resolve(qName, false);
+        validator.startElement(name[0], name[1], qName, validatorAttributes);
+        handler.startElement(uri, localName, qName, attributes);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        resolve(qName, false);
+        validator.endElement(name[0], name[1], qName);
+        Enumeration<?> prefixes = namespaces.getDeclaredPrefixes();
+        while (prefixes.hasMoreElements()) {
+            validator.endPrefixMapping((String) prefixes.nextElement());
+        }
+        namespaces.popContext();
+        handler.endElement(uri, localName, qName);
+        xPathHandler.exitLastEnteredNode();
+    }
+
+    /**
+     * Resolves the given name into {@link #name}: namespace uri and local name. Names with an undeclared prefix are
+     * left in no namespace, so that the validator reports them.
+     */
+    private void resolve(String qName, boolean attribute) {
+        String[] parts = namespaces.processName(qName, name, attribute);
+        name[0] = parts != null ? parts[0] : "";
+        name[1] = parts != null ? parts[1] : qName;
+    }
+
+    private static boolean isNamespaceDeclaration(String attributeName) {
+        return attributeName.startsWith(XMLNS)
+                && (attributeName.length() == XMLNS.length() || attributeName.charAt(XMLNS.length()) == ':');
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        validator.characters(ch, start, length);
+        handler.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        validator.ignorableWhitespace(ch, start, length);
+        handler.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        validator.processingInstruction(target, data);
+        handler.processingInstruction(target, data);
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        if (lexicalHandler != null) {
+            lexicalHandler.startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        if (lexicalHandler != null) {
+            lexicalHandler.endCDATA();
+        }
+    }
+
+    @Override
+    public void warning(SAXParseException e) {
+        addError(ValidationError.Severity.WARNING, e);
+    }
+
+    @Override
+    public void error(SAXParseException e) throws SAXException {
+        errorCount++;
+        addError(ValidationError.Severity.ERROR, e);
+        if (failFast) {
+            throw located(e);
+        }
+    }
+
+    @Override
+    public void fatalError(SAXParseException e) throws SAXException {
+        errorCount++;
+        addError(ValidationError.Severity.ERROR, e);
+        throw located(e);
+    }
+
+    private SAXParseException located(SAXParseException e) {
+        return new SAXParseException("Invalid input at " + xPathHandler.getCurrentXPath() + ": " + e.getMessage(),
+                e.getPublicId(), e.getSystemId(), e.getLineNumber(), e.getColumnNumber(), e);
+    }
+
+    private void addError(ValidationError.Severity severity, SAXParseException e) {
+        if (errors.size() < MAX_KEPT_ERRORS) {
+            errors.add(ValidationError.of(severity, e, xPathHandler.getCurrentXPath()));
+        }
+    }
+}
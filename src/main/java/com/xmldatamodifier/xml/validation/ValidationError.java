@@ -0,0 +1,57 @@
+package com.xmldatamodifier.xml.validation;
+
+import org.xml.sax.SAXParseException;
+
+/**
+ * Schema validation error, located by line, column and xpath of the element being validated.
+ */
+public class ValidationError {
+
+    public enum Severity {
+        WARNING,
+        ERROR
+    }
+
+    private final Severity severity;
+    private final int line;
+    private final int column;
+    private final String xPath;
+    private final String message;
+
+    public ValidationError(Severity severity, int line, int column, String xPath, String message) {
+        this.severity = severity;
+        this.line = line;
+        this.column = column;
+        this.xPath = xPath;
+        this.message = message;
+    }
+
+    static ValidationError of(Severity severity, SAXParseException exception, String xPath) {
+        return new ValidationError(severity, exception.getLineNumber(), exception.getColumnNumber(), xPath, exception.getMessage());
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getXPath() {
+        return xPath;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return severity + " at " + line + ":" + column + " " + xPath + ": " + message;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xmldatamodifier;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.XMLConverter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionServerTest {
+
+    private static final String PROPERTIES_PATH = "test/properties.json";
+    private static final String TEST_INPUT_PATH = "test/testInput.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConversionServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ConversionServer(0, 2, folder.getRoot().toPath());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testRemoteConversion() throws Exception {
+        String expectedOutput = new File(folder.getRoot(), "expectedOutput.xml").getPath();
+        new XMLConverter(resourcePath(TEST_INPUT_PATH), expectedOutput, resourcePath(PROPERTIES_PATH)).convert();
+
+        for (int i = 0; i < 2; i++) {
+            String outputFilePath = new File(folder.getRoot(), "remoteOutput" + i + ".xml").getPath();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int exitCode = new ConversionClient(server.getPort(), folder.getRoot().toPath()).execute(Arrays.asList(
+                    "-i", resourcePath(TEST_INPUT_PATH), "-o", outputFilePath, "-c", resourcePath(PROPERTIES_PATH)),
+                    new PrintStream(output, true));
+
+            assertEquals(0, exitCode);
+            assertThat(output.toString()).contains("Conversion completed in");
+            assertTrue(Files.equal(new File(expectedOutput), new File(outputFilePath)));
+        }
+    }
+
+    @Test
+    public void testRemoteConversionWithWrongArguments() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = new ConversionClient(server.getPort(), folder.getRoot().toPath()).execute(Arrays.asList("-o", "output.xml"), new PrintStream(output, true));
+
+        assertEquals(-1, exitCode);
+        assertThat(output.toString()).contains("Wrong arguments");
+    }
+
+    @Test
+    public void testRequestWithoutTokenIsRefused() throws Exception {
+        File otherTokenDirectory = folder.newFolder("other");
+        Files.write("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), ConversionServer.tokenFile(otherTokenDirectory.toPath(), server.getPort()).toFile());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = new ConversionClient(server.getPort(), otherTokenDirectory.toPath()).execute(Arrays.asList(
+                "-i", resourcePath(TEST_INPUT_PATH), "-o", new File(folder.getRoot(), "refusedOutput.xml").getPath()),
+                new PrintStream(output, true));
+
+        assertEquals(-1, exitCode);
+        assertFalse(new File(folder.getRoot(), "refusedOutput.xml").exists());
+        assertEquals(ImmutableSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                java.nio.file.Files.getPosixFilePermissions(ConversionServer.tokenFile(folder.getRoot().toPath(), server.getPort())));
+    }
+
+    private String resourcePath(String resourceName) throws URISyntaxException {
+        URL resource = getClass().getClassLoader().getResource(resourceName);
+        requireNonNull(resource);
+        return Paths.get(resource.toURI()).toString();
+    }
+}
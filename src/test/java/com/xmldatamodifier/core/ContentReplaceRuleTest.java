@@ -28,6 +28,54 @@ public class ContentReplaceRuleTest {
         assertThat(replaceRule.elaborate("jdoi joais oI OISH DO837298 2109 20921 pppp /((=)")).isEqualTo("jdoi joais oI OISH DO______ ____ _____ pppp /((=)");
     }
 
+    @Test
+    public void whenContentIsStreamedThenResultIsTheSameAsWhole() throws Exception {
+        String content = "id 4711-0815, id 12-345; ab ab aab 2019-01-31 x";
+        for (String regex : new String[]{"\\d", "\\d{2,4}-\\d{3,4}", "a?b", "ab|aab", "\\d+", "(?i)ID \\d", "*"}) {
+            ContentReplaceRule replaceRule = new ContentReplaceRule(regex, "#");
+            for (int chunkSize = 1; chunkSize <= content.length(); chunkSize++) {
+                ContentStream stream = replaceRule.openStream();
+                StringBuilder result = new StringBuilder();
+                for (int i = 0; i < content.length(); i += chunkSize) {
+                    result.append(stream.next(content.substring(i, Math.min(content.length(), i + chunkSize))));
+                }
+                result.append(stream.finish());
+                assertThat(result.toString()).as(regex + " in chunks of " + chunkSize).isEqualTo(replaceRule.elaborate(content));
+            }
+        }
+    }
+
+    @Test
+    public void whenEngineIsLinearThenResultIsTheSameAsJava() throws Exception {
+        String content = "card 4111-1111-1111-1111, id 12-345; ab ab aab";
+        for (String regex : new String[]{"\\d", "\\d{4}-\\d{4}", "a?b", "ab|aab", "(\\d+)-(\\d+)", "^\\w+"}) {
+            ContentReplaceRule replaceRule = new ContentReplaceRule(regex, "#", ContentReplaceRule.Engine.LINEAR);
+            assertThat(replaceRule.elaborate(content)).as(regex).isEqualTo(new ContentReplaceRule(regex, "#").elaborate(content));
+            for (int chunkSize = 1; chunkSize <= content.length(); chunkSize++) {
+                ContentStream stream = replaceRule.openStream();
+                StringBuilder result = new StringBuilder();
+                for (int i = 0; i < content.length(); i += chunkSize) {
+                    result.append(stream.next(content.substring(i, Math.min(content.length(), i + chunkSize))));
+                }
+                result.append(stream.finish());
+                assertThat(result.toString()).as(regex + " in chunks of " + chunkSize).isEqualTo(replaceRule.elaborate(content));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenLinearReplacementRefersToMissingGroupThenThrowException() throws Exception {
+        new ContentReplaceRule("(\\d)", "$2", ContentReplaceRule.Engine.LINEAR);
+    }
+
+    @Test
+    public void whenRegexIsStarThenStreamedContentIsDiscarded() throws Exception {
+        ContentStream stream = new ContentReplaceRule("*", "0").openStream();
+        assertThat(stream.next("first")).isEqualTo("0");
+        assertThat(stream.next("second")).isEmpty();
+        assertThat(stream.finish()).isEmpty();
+    }
+
     @Test(expected = NullPointerException.class)
     public void whenRegexIsNotPassedThenThrowException() throws Exception {
         new ContentReplaceRule(null, "_");
@@ -0,0 +1,105 @@
+package com.xmldatamodifier.core;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LinearPatternTest {
+
+    private static final String[] PATTERNS = {
+            "a", "abc", "a|b", "ab|aab", "a?b", "a*", "a+", "a*?", "a+?", "a??b", "(a|ab)(c|bcd)(d*)", "(a)|b",
+            "a{2}", "a{2,}", "a{1,3}", "a{1,3}?", "(ab){2}", "(a|b)*c", "(?:ab)+", "[abc]+",
+            "[^abc]+", "[a-c]+", "[]a]", "[a-]+", "[-a]+", "[\\d-]+", "[^\\s]+", "\\d+", "\\D+", "\\w+", "\\W+",
+            "\\s+", "\\S+", ".", ".+", "^a", "a$", "^$", "$", "\\Aa", "a\\z", "a\\Z", "\\bab\\b", "\\Bb", "\\b",
+            "\\t|\\n", "\\x41", "\\x{41}", "\\u0041", "\\0101", "\\cA", "\\Qa.b\\E+", "\\.", "a.c",
+            "\\d{4}-\\d{4}-\\d{4}-\\d{4}", "\\d{3}-\\d{2}-\\d{4}", "[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+",
+            "\\+?\\d{1,3}[ -]?\\(?\\d{3}\\)?[ -]?\\d{3}[ -]?\\d{4}", "(\\d+)-(\\d+)", "((a)|(b))+"
+    };
+
+    private static final String[] INPUTS = {
+            "", "a", "b", "ab", "aab", "abcd", "abbcd", "aaa", "baaa", "abab", "ccc", "a]b-", "ab\n", "ab\r\n",
+            "a\rb", "ab cd_e", "\tA\u0001\n", "a.b.b", "1234-5678-9012-3456 and 123-45-6789", "x@y.com, a.b+c@d-e.org",
+            "call +44 (555) 123-4567 or 555 123 4567", "12-34-56", "aaaab", "\u00e9t\u00e9 ab \u2028"
+    };
+
+    @Test
+    public void whenPatternIsSupportedThenReplacementsAreTheSameAsJava() throws Exception {
+        for (String regex : PATTERNS) {
+            LinearPattern pattern = LinearPattern.compile(regex);
+            String replacement = pattern.groupCount() > 0 ? "<$1>" : "<$0>";
+            for (String input : INPUTS) {
+                assertThat(pattern.matcher(input).replaceAll(replacement)).as(regex + " on " + input)
+                        .isEqualTo(Pattern.compile(regex).matcher(input).replaceAll(replacement));
+            }
+        }
+    }
+
+    @Test
+    public void whenMatchIsFoundThenGroupsAreTheSameAsJava() throws Exception {
+        LinearMatcher matcher = LinearPattern.compile("(a+)(b)?|(c)").matcher("xaab c");
+        assertThat(matcher.find()).isTrue();
+        assertThat(matcher.start()).isEqualTo(1);
+        assertThat(matcher.end()).isEqualTo(4);
+        assertThat(matcher.group(1)).isEqualTo("aa");
+        assertThat(matcher.group(2)).isEqualTo("b");
+        assertThat(matcher.group(3)).isNull();
+        assertThat(matcher.find()).isTrue();
+        assertThat(matcher.group(1)).isNull();
+        assertThat(matcher.group(3)).isEqualTo("c");
+        assertThat(matcher.find()).isFalse();
+    }
+
+    @Test
+    public void whenPatternIsPathologicalThenMatchingIsLinear() throws Exception {
+        String input = Strings.repeat("a", 100000);
+        long start = System.nanoTime();
+        assertThat(LinearPattern.compile("(a+)+b").matcher(input).replaceAll("#")).isEqualTo(input);
+        assertThat(LinearPattern.compile("(a|aa)*c").matcher(input).find()).isFalse();
+        assertThat(LinearPattern.compile("\\d*-?\\d*-?\\d*-?\\d*x").matcher(Strings.repeat("1", 100000)).find()).isFalse();
+        assertThat(System.nanoTime() - start).isLessThan(10_000_000_000L);
+    }
+
+    @Test
+    public void whenSyntaxIsNotSupportedThenCompilingFails() throws Exception {
+        for (String regex : new String[]{"(a)\\1", "(?=a)", "(?<!a)b", "(?<name>a)", "(?i)a", "a*+", "a++", "(?>a)",
+                "\\p{L}", "\\R", "[a[b]]", "[a&&b]", "\\x{1F600}"}) {
+            try {
+                LinearPattern.compile(regex);
+                fail("Expected " + regex + " to be rejected");
+            } catch (PatternSyntaxException e) {
+                assertThat(e.getDescription()).as(regex).startsWith("Not supported");
+            }
+        }
+    }
+
+    @Test
+    public void whenPatternIsInvalidThenCompilingFails() throws Exception {
+        for (String regex : new String[]{"(a", "a)", "*a", "a**", "x{", "a{,3}", "a{3,2}", "[a", "[b-a]", "[a-\\d]", "\\"}) {
+            try {
+                LinearPattern.compile(regex);
+                fail("Expected " + regex + " to be rejected");
+            } catch (PatternSyntaxException e) {
+                assertThat(e.getPattern()).isEqualTo(regex);
+            }
+        }
+    }
+
+    @Test
+    public void whenReplacementRefersToMissingGroupThenItIsRejected() throws Exception {
+        LinearPattern pattern = LinearPattern.compile("(a)(b)");
+        pattern.checkReplacement("$2$1\\$");
+        for (String replacement : new String[]{"$3", "$", "$x", "a\\"}) {
+            try {
+                pattern.checkReplacement(replacement);
+                fail("Expected " + replacement + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                assertThat(e).hasMessageContaining(replacement.contains("\\") ? "escaped" : "group");
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.xmldatamodifier.core;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the java and linear engines of {@link ContentReplaceRule} on typical masking patterns,
+ * and their time on a pathological input. Not run as part of the tests: run its main method.
+ */
+public class RegexEngineBenchmark {
+
+    private static final int ITERATIONS = 5;
+    private static final double MB = 1024 * 1024;
+
+    private static final String[][] PATTERNS = {
+            {"card", "\\d{4}[ -]?\\d{4}[ -]?\\d{4}[ -]?\\d{4}", "****"},
+            {"ssn", "\\d{3}-\\d{2}-\\d{4}", "***-**-****"},
+            {"email", "[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+", "***@$1"},
+            {"phone", "\\+?\\d{1,3}[ -]?\\(?\\d{3}\\)?[ -]?\\d{3}[ -]?\\d{4}", "***"},
+            {"digit", "\\d", "#"}
+    };
+
+    public static void main(String[] args) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 4 * MB; i++) {
+            text.append("Customer ").append(i).append(" card 4111 1111 1111 ").append(1000 + i % 9000)
+                    .append(", ssn 123-45-").append(1000 + i % 9000).append(", mail john.doe").append(i)
+                    .append("@example.co.uk, phone +44 (020) 555 ").append(1000 + i % 9000).append(".\n");
+        }
+        String content = text.toString();
+        System.out.printf("Input: %.1f MB%n", content.length() / MB);
+        for (String[] pattern : PATTERNS) {
+            for (ContentReplaceRule.Engine engine : ContentReplaceRule.Engine.values()) {
+                ContentReplaceRule rule = new ContentReplaceRule(pattern[1], pattern[2], engine);
+                double seconds = bestSeconds(rule, content);
+                System.out.printf("%-6s %-7s %.0f ms, %.1f MB/s%n", pattern[0], engine, seconds * 1000, content.length() / MB / seconds);
+            }
+        }
+
+        // chained stars backtrack polynomially in java.util.regex: the lengths are kept small enough to finish
+        String slow = "\\d*-?\\d*-?\\d*-?\\d*-?\\d*x";
+        for (int length : new int[]{16, 32, 64}) {
+            String pathological = Strings.repeat("1", length);
+            for (ContentReplaceRule.Engine engine : ContentReplaceRule.Engine.values()) {
+                double seconds = bestSeconds(new ContentReplaceRule(slow, "#", engine), pathological);
+                System.out.printf("%s on %d digits %-7s %.3f ms%n", slow, length, engine, seconds * 1000);
+            }
+        }
+    }
+
+    private static double bestSeconds(ContentReplaceRule rule, String content) {
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            rule.elaborate(content);
+            bestNanos = Math.min(bestNanos, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+        }
+        return bestNanos / 1e9;
+    }
+}
@@ -0,0 +1,36 @@
+package com.xmldatamodifier.core;
+
+import org.junit.Test;
+
+import static com.xmldatamodifier.core.RegexMatchLength.UNBOUNDED;
+import static com.xmldatamodifier.core.RegexMatchLength.maxLength;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RegexMatchLengthTest {
+
+    @Test
+    public void testBoundedExpressions() {
+        assertThat(maxLength("abc")).isEqualTo(3);
+        assertThat(maxLength("\\d")).isEqualTo(1);
+        assertThat(maxLength("[a-z\\]]{2,5}")).isEqualTo(10);
+        assertThat(maxLength("(ab|cde)?x")).isEqualTo(4);
+        assertThat(maxLength("(?i)a(?:bc){3}")).isEqualTo(7);
+        assertThat(maxLength("(?<year>\\d{4})-\\d\\d")).isEqualTo(7);
+        assertThat(maxLength("\\Q*+?\\E.")).isEqualTo(5);
+        assertThat(maxLength("\\u00e8\\x41\\t")).isEqualTo(3);
+    }
+
+    @Test
+    public void testUnboundedExpressions() {
+        assertThat(maxLength("a+")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("a*b")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("a{2,}")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("^abc")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("abc$")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("\\bword\\b")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("a(?=b)")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("(?<!a)b")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("(a)\\1")).isEqualTo(UNBOUNDED);
+        assertThat(maxLength("(?x) a b")).isEqualTo(UNBOUNDED);
+    }
+}
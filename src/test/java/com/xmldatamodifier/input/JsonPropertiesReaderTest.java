@@ -1,13 +1,18 @@
 package com.xmldatamodifier.input;
 
+import com.google.common.io.Files;
+import com.google.gson.JsonParseException;
 import com.xmldatamodifier.core.ContentReplaceRule;
 import com.xmldatamodifier.core.Rule;
 import com.xmldatamodifier.xml.manipulation.XPathRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Map;
@@ -15,12 +20,16 @@ import java.util.Objects;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class JsonPropertiesReaderTest {
 
     private final JsonPropertiesReader reader = new JsonPropertiesReader();
     private static final String PROPERTIES_PATH = "test/properties.json";
 
+    @org.junit.Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testRead() throws IOException, URISyntaxException {
         URL resource = getClass().getClassLoader().getResource(PROPERTIES_PATH);
@@ -57,6 +66,40 @@ public class JsonPropertiesReaderTest {
                 .isNull();
     }
 
+    @Test
+    public void testConditionalRuleWithoutField() throws IOException {
+        File configuration = folder.newFile();
+        Files.write("{\"rule_set\": [{\"xpath\": \"/customers/customer\", \"rules\": ["
+                + "{\"type\": \"MASK_IF\", \"child\": \"status\", \"equals\": \"suspended\"}]}]}", configuration, StandardCharsets.UTF_8);
+
+        try {
+            reader.read(configuration.getPath());
+            fail("A rule without replacement should be refused");
+        } catch (JsonParseException e) {
+            assertThat(e.getMessage()).contains("MASK_IF rule of /customers/customer without \"replacement\"");
+        }
+    }
+
+    @Test
+    public void testReplaceRuleEngine() throws IOException {
+        File configuration = folder.newFile();
+        Files.write("{\"rule_set\": [{\"xpath\": \"/customers/customer/card\", \"rules\": ["
+                + "{\"type\": \"REPLACE\", \"match\": \"\\\\d\", \"replacement\": \"*\", \"engine\": \"linear\"}]}]}",
+                configuration, StandardCharsets.UTF_8);
+        assertThat(reader.read(configuration.getPath()).get("/customers/customer/card").getRuleSet())
+                .containsExactly(new ContentReplaceRule("\\d", "*", ContentReplaceRule.Engine.LINEAR));
+
+        Files.write("{\"rule_set\": [{\"xpath\": \"/customers/customer/card\", \"rules\": ["
+                + "{\"type\": \"REPLACE\", \"match\": \"\\\\d\", \"replacement\": \"*\", \"engine\": \"RE2\"}]}]}",
+                configuration, StandardCharsets.UTF_8);
+        try {
+            reader.read(configuration.getPath());
+            fail("An unknown engine should be refused");
+        } catch (JsonParseException e) {
+            assertThat(e.getMessage()).contains("REPLACE rule of /customers/customer/card with unknown engine \"RE2\", expected one of JAVA, LINEAR");
+        }
+    }
+
     private void testXPathRuleContent(XPathRule xPathRule, int size, Set<Rule> expectedRule) {
         assertThat(xPathRule).isNotNull();
         assertThat(xPathRule.getRuleSet()).hasSize(size);
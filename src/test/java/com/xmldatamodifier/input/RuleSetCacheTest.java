@@ -0,0 +1,44 @@
+package com.xmldatamodifier.input;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.manipulation.XPathRule;
+import com.xmldatamodifier.xml.manipulation.XmlRuleSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class RuleSetCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRuleSetReloadedOnlyWhenContentChanges() throws Exception {
+        FilePropertiesReader reader = mock(FilePropertiesReader.class);
+        when(reader.read(anyString())).thenReturn(Collections.<String, XPathRule>emptyMap());
+        RuleSetCache cache = new RuleSetCache(reader);
+
+        File configuration = folder.newFile("config.json");
+        Files.write("{\"rule_set\": []}", configuration, StandardCharsets.UTF_8);
+
+        XmlRuleSet ruleSet = cache.get(configuration.getPath());
+        assertThat(cache.get(configuration.getPath())).isSameAs(ruleSet);
+        verify(reader, times(1)).read(anyString());
+
+        configuration.setLastModified(configuration.lastModified() - 10000);
+        assertThat(cache.get(configuration.getPath())).isSameAs(ruleSet);
+        verify(reader, times(1)).read(anyString());
+
+        Files.write("{\"rule_set\": [ ]}", configuration, StandardCharsets.UTF_8);
+        assertThat(cache.get(configuration.getPath())).isNotSameAs(ruleSet);
+        verify(reader, times(2)).read(anyString());
+    }
+}
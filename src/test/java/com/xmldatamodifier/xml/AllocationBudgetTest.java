@@ -0,0 +1,118 @@
+package com.xmldatamodifier.xml;
+
+import com.google.common.io.Files;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bytes allocated by a conversion against a budget, per MB of input and per element. Allocation is
+ * measured on two inputs of different sizes and only the difference is considered, so that the fixed cost of
+ * setting up the parser and the output doesn't count.
+ */
+public class AllocationBudgetTest {
+
+    private static final int SMALL_INPUT_RECORDS = 2000;
+    private static final int LARGE_INPUT_RECORDS = 42000;
+    private static final int ELEMENTS_PER_RECORD = 5;
+    private static final double MB = 1024 * 1024;
+
+    // what's left is mostly the attribute values created by the parser, and the results of the regex replacements
+    private static final long BUDGET_PER_MB = 1024 * 1024;
+    private static final long BUDGET_PER_ELEMENT = 48;
+    private static final long REPLACE_BUDGET_PER_MB = 5 * 1024 * 1024 + 512 * 1024;
+    private static final long REPLACE_BUDGET_PER_ELEMENT = 224;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private File smallInput;
+    private File largeInput;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        smallInput = writeInput("smallInput.xml", SMALL_INPUT_RECORDS);
+        largeInput = writeInput("largeInput.xml", LARGE_INPUT_RECORDS);
+    }
+
+    @Test
+    public void testNoRules() throws Exception {
+        assertWithinBudget("{\"rule_set\": []}", BUDGET_PER_MB, BUDGET_PER_ELEMENT);
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        assertWithinBudget("{\"rule_set\": ["
+                + "{\"xpath\": \"/CATALOG/PLANT/COMMON\", \"rules\": [{\"type\": \"REPLACE\", \"match\": \"*\", \"replacement\": \"0\"}]},"
+                + "{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [{\"type\": \"REPLACE\", \"match\": \"\\\\d\", \"replacement\": \"#\"}]}"
+                + "]}", REPLACE_BUDGET_PER_MB, REPLACE_BUDGET_PER_ELEMENT);
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        assertWithinBudget("{\"rule_set\": ["
+                + "{\"xpath\": \"/CATALOG/PLANT\", \"rules\": [{\"type\": \"SKIP\"}]}"
+                + "]}", BUDGET_PER_MB, BUDGET_PER_ELEMENT);
+    }
+
+    private void assertWithinBudget(String configuration, long budgetPerMB, long budgetPerElement) throws Exception {
+        File configurationFile = folder.newFile();
+        Files.write(configuration, configurationFile, StandardCharsets.UTF_8);
+
+        // warm up, so that paths, rules and buffers are already in place
+        convert(largeInput, configurationFile);
+        convert(smallInput, configurationFile);
+
+        long smallAllocation = convert(smallInput, configurationFile);
+        long largeAllocation = convert(largeInput, configurationFile);
+
+        long allocated = Math.max(0, largeAllocation - smallAllocation);
+        double inputMB = (largeInput.length() - smallInput.length()) / MB;
+        long elements = (long) (LARGE_INPUT_RECORDS - SMALL_INPUT_RECORDS) * ELEMENTS_PER_RECORD;
+
+        double allocatedPerMB = allocated / inputMB;
+        double allocatedPerElement = (double) allocated / elements;
+        assertTrue(String.format("Allocated %.0f bytes per input MB, budget is %d", allocatedPerMB, budgetPerMB),
+                allocatedPerMB <= budgetPerMB);
+        assertTrue(String.format("Allocated %.2f bytes per element, budget is %d", allocatedPerElement, budgetPerElement),
+                allocatedPerElement <= budgetPerElement);
+    }
+
+    private long convert(File input, File configurationFile) throws Exception {
+        XMLConverter converter = new XMLConverter(input.getPath(), new File(folder.getRoot(), "output.xml").getPath(), configurationFile.getPath());
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        converter.convert();
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private File writeInput(String name, int records) throws Exception {
+        StringBuilder input = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n");
+        for (int i = 0; i < records; i++) {
+            input.append("    <PLANT id=\"").append(i).append("\" zone=\"a &amp; b\">\n")
+                    .append("        <COMMON>Plant &amp; flower ").append(i).append("</COMMON>\n")
+                    .append("        <BOTANICAL>Plantae ").append(i).append("</BOTANICAL>\n")
+                    .append("        <PRICE>$").append(i).append(".99</PRICE>\n")
+                    .append("        <NOTE>Keep in the shade</NOTE>\n")
+                    .append("    </PLANT>\n");
+        }
+        input.append("</CATALOG>");
+        File file = folder.newFile(name);
+        Files.write(input, file, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,71 @@
+package com.xmldatamodifier.xml;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares output size and throughput of a conversion of a pretty-printed document with and without minify mode.
+ * Not run as part of the tests: run its main method, optionally with the number of records as argument.
+ */
+public class MinifyBenchmark {
+
+    private static final int DEFAULT_RECORDS = 500000;
+    private static final int ITERATIONS = 5;
+    private static final double MB = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RECORDS;
+        File folder = Files.createTempDir();
+        try {
+            File input = writeInput(new File(folder, "input.xml"), records);
+            File configuration = new File(folder, "configuration.json");
+            Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": "
+                    + "[{\"type\": \"REPLACE\", \"match\": \"\\\\d\", \"replacement\": \"#\"}]}]}", configuration, StandardCharsets.UTF_8);
+            System.out.printf("Input: %d records, %.1f MB%n", records, input.length() / MB);
+
+            for (boolean minify : new boolean[]{false, true, false, true}) {
+                run(input, new File(folder, "output.xml"), configuration, minify);
+            }
+        } finally {
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    private static void run(File input, File output, File configuration, boolean minify) throws Exception {
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            XMLConverter converter = new XMLConverter(input.getPath(), output.getPath(), configuration.getPath());
+            converter.setMinify(minify, Collections.<String>emptyList());
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            converter.convert();
+            bestNanos = Math.min(bestNanos, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+        }
+        double seconds = bestNanos / 1e9;
+        System.out.printf("%-8s output %.1f MB (%.0f%% of input), %.0f ms, %.1f MB/s%n", minify ? "minify" : "default",
+                output.length() / MB, 100.0 * output.length() / input.length(), seconds * 1000, input.length() / MB / seconds);
+    }
+
+    private static File writeInput(File file, int records) throws Exception {
+        StringBuilder input = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n");
+        for (int i = 0; i < records; i++) {
+            input.append("    <PLANT id=\"").append(i).append("\">\n")
+                    .append("        <COMMON>Bloodroot ").append(i).append("</COMMON>\n")
+                    .append("        <BOTANICAL>Sanguinaria canadensis</BOTANICAL>\n")
+                    .append("        <ZONE>4</ZONE>\n")
+                    .append("        <LIGHT>Mostly Shady</LIGHT>\n")
+                    .append("        <PRICE>$").append(i % 100).append(".44</PRICE>\n")
+                    .append("    </PLANT>\n");
+        }
+        input.append("</CATALOG>\n");
+        Files.write(input, file, StandardCharsets.UTF_8);
+        return file;
+    }
+}
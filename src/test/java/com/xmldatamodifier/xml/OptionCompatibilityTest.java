@@ -0,0 +1,54 @@
+package com.xmldatamodifier.xml;
+
+import com.google.common.collect.Table;
+import com.xmldatamodifier.xml.OptionCompatibility.Option;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class OptionCompatibilityTest {
+
+    @Test
+    public void testEveryRejectedPairHasItsOwnMessage() throws Exception {
+        Table<Option, Option, String> rejected = OptionCompatibility.getRejected();
+        assertThat(rejected.values()).doesNotHaveDuplicates();
+        for (Table.Cell<Option, Option, String> cell : rejected.cellSet()) {
+            assertThat(rejected.contains(cell.getColumnKey(), cell.getRowKey())).as("%s listed twice", cell).isFalse();
+            try {
+                OptionCompatibility.check(EnumSet.of(cell.getRowKey(), cell.getColumnKey()));
+                fail(cell + " accepted");
+            } catch (IllegalArgumentException e) {
+                assertThat(e).hasMessage(cell.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testRejectedPairs() throws Exception {
+        assertRejected(EnumSet.of(Option.FOLLOW, Option.INDEX), "Follow cannot be used together with the index");
+        assertRejected(EnumSet.of(Option.FOLLOW, Option.PIPELINED), "Follow cannot be used together with pipelined mode");
+        assertRejected(EnumSet.of(Option.CHECKPOINTS, Option.JSON_LINES), "Checkpoints cannot be used together with JSON lines");
+        assertRejected(EnumSet.of(Option.INDEX, Option.JSON_LINES), "The index cannot be used together with JSON lines");
+    }
+
+    @Test
+    public void testAcceptedPairs() throws Exception {
+        OptionCompatibility.check(EnumSet.of(Option.MINIFY, Option.INDEX));
+        OptionCompatibility.check(EnumSet.of(Option.MINIFY, Option.RECORD_RANGE, Option.SHARDS));
+        OptionCompatibility.check(EnumSet.of(Option.FOLLOW, Option.JSON_LINES, Option.AUDIT));
+        OptionCompatibility.check(EnumSet.of(Option.PIPELINED, Option.INDEX, Option.OUTPUT_LIMIT));
+        OptionCompatibility.check(EnumSet.noneOf(Option.class));
+    }
+
+    private static void assertRejected(EnumSet<Option> options, String message) {
+        try {
+            OptionCompatibility.check(options);
+            fail(options + " accepted");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage(message);
+        }
+    }
+}
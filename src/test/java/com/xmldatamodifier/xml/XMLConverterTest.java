@@ -1,18 +1,49 @@
 package com.xmldatamodifier.xml;
 
+import com.google.common.base.Strings;
 import com.google.common.io.Files;
+import com.xmldatamodifier.xml.checkpoint.Checkpoint;
+import com.xmldatamodifier.xml.output.OutputFormat;
+import com.xmldatamodifier.xml.output.SplitOptions;
+import com.xmldatamodifier.xml.output.SplitOutputWriter;
+import com.xmldatamodifier.xml.parsing.CatalogEntityResolver;
+import com.xmldatamodifier.xml.parsing.ConversionAbortedException;
+import com.xmldatamodifier.xml.parsing.QuarantinedRecord;
+import com.xmldatamodifier.xml.parsing.SampleOptions;
+import com.xmldatamodifier.xml.validation.SchemaCache;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXParseException;
 
+import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static java.util.Objects.requireNonNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class XMLConverterTest {
 
@@ -28,7 +59,804 @@ public class XMLConverterTest {
         testConversion(ESCAPED_OUTPUT_PATH);
     }
 
+    @Test
+    public void testSplitByRecords() throws Exception {
+        String outputFilePath = new File(folder.getRoot(), "splitOutput.xml").getPath();
+
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setSplitOptions(new SplitOptions(10, 0, false));
+        converter.convert();
+
+        int[] expectedRecords = {10, 10, 10, 6};
+        for (int i = 0; i < expectedRecords.length; i++) {
+            File part = SplitOutputWriter.partFile(outputFilePath, i + 1).toFile();
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(part);
+            assertEquals("CATALOG", document.getDocumentElement().getNodeName());
+            assertEquals(expectedRecords[i], document.getElementsByTagName("PLANT").getLength());
+            assertEquals("0", document.getElementsByTagName("PRICE").item(0).getTextContent());
+        }
+        assertFalse(SplitOutputWriter.partFile(outputFilePath, expectedRecords.length + 1).toFile().exists());
+    }
+
+    @Test
+    public void testSplitCompressed() throws Exception {
+        String outputFilePath = new File(folder.getRoot(), "splitOutput.xml").getPath();
+
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setSplitOptions(new SplitOptions(20, 0, true));
+        converter.convert();
+
+        for (int i = 1; i <= 2; i++) {
+            Path part = SplitOutputWriter.partFile(outputFilePath, i);
+            assertFalse(part.toFile().exists());
+            try (InputStream input = new GZIPInputStream(new FileInputStream(part + ".gz"))) {
+                Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(input);
+                assertEquals("CATALOG", document.getDocumentElement().getNodeName());
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        File inputFile = new File(resourcePath(TEST_INPUT_PATH));
+        String outputFilePath = new File(folder.getRoot(), "resumedOutput.xml").getPath();
+
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setCheckpointInterval(5);
+        converter.setMaxOutputBytes(3000);
+        try {
+            converter.convert();
+            fail("Conversion should be interrupted by the output limit");
+        } catch (ConversionAbortedException e) {
+            assertTrue(converter.getCheckpointFile().toFile().exists());
+        }
+
+        converter.setMaxOutputBytes(0);
+        converter.setResume(true);
+        converter.convert();
+
+        assertFalse(converter.getCheckpointFile().toFile().exists());
+        assertOutput(ESCAPED_OUTPUT_PATH, outputFilePath);
+    }
+
+    @Test
+    public void testCheckpointOfAnotherConversionIsRefused() throws Exception {
+        File inputFile = folder.newFile("checkpointedInput.xml");
+        Files.write("<!DOCTYPE CATALOG [<!ENTITY co \"Acme\">]>\n<CATALOG xmlns:x=\"urn:x\" x:v=\"1\">"
+                + Strings.repeat("<PLANT><COMMON>&co;</COMMON></PLANT>", 400) + "</CATALOG>", inputFile, StandardCharsets.UTF_8);
+        String outputFilePath = new File(folder.getRoot(), "checkpointedOutput.xml").getPath();
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setCheckpointInterval(5);
+        converter.setMaxOutputBytes(3000);
+        try {
+            converter.convert();
+            fail("Conversion should be interrupted by the output limit");
+        } catch (ConversionAbortedException e) {
+            assertTrue(converter.getCheckpointFile().toFile().exists());
+        }
+        converter.setMaxOutputBytes(0);
+        converter.setResume(true);
+
+        converter.setRecordPath("/CATALOG/OTHER");
+        try {
+            converter.convert();
+            fail("Checkpoint of another record path should be refused");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("record path"));
+        }
+        converter.setRecordPath("/CATALOG/PLANT");
+
+        converter.setOutputEncoding(StandardCharsets.ISO_8859_1);
+        try {
+            converter.convert();
+            fail("Checkpoint of another output encoding should be refused");
+        } catch (IllegalStateException e) {
+            assertEquals("Checkpoint was saved with output encoding UTF-8", e.getMessage());
+        }
+        converter.setOutputEncoding(null);
+
+        converter.setMinify(true, Collections.<String>emptyList());
+        try {
+            converter.convert();
+            fail("Checkpoint of output which isn't minified should be refused");
+        } catch (IllegalStateException e) {
+            assertEquals("Checkpoint was saved without minified output", e.getMessage());
+        }
+        converter.setMinify(false, Collections.<String>emptyList());
+
+        // the doctype and the attributes of the wrapper elements are replayed
+        converter.convert();
+        String output = Files.toString(new File(outputFilePath), StandardCharsets.UTF_8);
+        assertTrue(output.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG xmlns:x=\"urn:x\" x:v=\"1\">"));
+        assertEquals(400, output.split("<COMMON>Acme</COMMON>", -1).length - 1);
+    }
+
+    @Test
+    public void testPipelinedConversion() throws Exception {
+        testConversion(ESCAPED_OUTPUT_PATH, true);
+
+        File inputFile = folder.newFile("bigInput.xml");
+        StringBuilder input = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n");
+        for (int i = 0; i < 5000; i++) {
+            input.append("    <PLANT id=\"").append(i).append("\">\n")
+                    .append("        <COMMON>Plant &amp; flower \uD83C\uDF3B ").append(i).append("</COMMON>\n")
+                    .append("        <PRICE>$").append(i).append(".99</PRICE>\n")
+                    .append("    </PLANT>\n");
+        }
+        input.append("</CATALOG>");
+        Files.write(input, inputFile, StandardCharsets.UTF_8);
+
+        String sequentialOutput = new File(folder.getRoot(), "sequentialOutput.xml").getPath();
+        new XMLConverter(inputFile.getPath(), sequentialOutput, resourcePath(PROPERTIES_PATH)).convert();
+
+        String pipelinedOutput = new File(folder.getRoot(), "pipelinedOutput.xml").getPath();
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), pipelinedOutput, resourcePath(PROPERTIES_PATH));
+        converter.setPipelined(true);
+        converter.convert();
+
+        assertTrue(Files.equal(new File(sequentialOutput), new File(pipelinedOutput)));
+    }
+
+    @Test
+    public void testFollowRejectsIncompatibleOptions() throws Exception {
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), folder.newFile().getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        converter.setUseIndex(true);
+        try {
+            converter.convert();
+            fail("Follow accepted together with the index");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Follow cannot be used together with the index", e.getMessage());
+        }
+
+        converter.setUseIndex(false);
+        converter.setPipelined(true);
+        try {
+            converter.convert();
+            fail("Follow accepted together with pipelined mode");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Follow cannot be used together with pipelined mode", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testFollow() throws Exception {
+        final File inputFile = folder.newFile("growingInput.xml");
+        final File outputFile = new File(folder.getRoot(), "followedOutput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n", inputFile, StandardCharsets.UTF_8);
+
+        final XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Void> conversion = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                converter.convert();
+                return null;
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            Files.append("<PLANT><PRICE>$" + i + ".99</PRICE></PLANT>", inputFile, StandardCharsets.UTF_8);
+            String expectedOutput = Strings.repeat("<PLANT><PRICE>0</PRICE></PLANT>", i + 1);
+            while (!outputFile.exists() || !Files.toString(outputFile, StandardCharsets.UTF_8).endsWith(expectedOutput)) {
+                assertFalse(conversion.isDone());
+                Thread.sleep(5);
+            }
+        }
+
+        Files.append("\n</CATALOG>\n", inputFile, StandardCharsets.UTF_8);
+        conversion.get();
+        executor.shutdown();
+
+        assertFalse(converter.getCheckpointFile().toFile().exists());
+        assertTrue(Files.toString(outputFile, StandardCharsets.UTF_8).endsWith("<PLANT><PRICE>0</PRICE></PLANT>\n</CATALOG>"));
+    }
+
+    @Test(timeout = 30000)
+    public void testFollowCarriesOnFromTheSavedOffset() throws Exception {
+        File inputFile = folder.newFile("restartedInput.xml");
+        File outputFile = new File(folder.getRoot(), "restartedOutput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n<PLANT><PRICE>$0.99</PRICE></PLANT>",
+                inputFile, StandardCharsets.UTF_8);
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<ConversionResult> conversion = converter.convertAsync(executor);
+
+        // the offset is saved at the end of the first record once the period has passed since the start
+        Thread.sleep(XMLConverter.FOLLOW_CHECKPOINT_PERIOD_MILLIS + 100);
+        Files.append("<PLANT><PRICE>$1.99</PRICE></PLANT>", inputFile, StandardCharsets.UTF_8);
+        while (!converter.getCheckpointFile().toFile().exists()) {
+            assertFalse(conversion.isDone());
+            Thread.sleep(5);
+        }
+        assertTrue(conversion.cancel(false));
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(2, Checkpoint.read(converter.getCheckpointFile()).getRecords());
+
+        Files.append("<PLANT><PRICE>$2.99</PRICE></PLANT>\n</CATALOG>\n", inputFile, StandardCharsets.UTF_8);
+        executor = Executors.newSingleThreadExecutor();
+        ConversionResult result = converter.convertAsync(executor).get();
+        executor.shutdown();
+
+        // only the record appended after the checkpoint is converted again
+        assertEquals(2, result.getElements());
+        assertFalse(converter.getCheckpointFile().toFile().exists());
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n"
+                        + Strings.repeat("<PLANT><PRICE>0</PRICE></PLANT>", 3) + "\n</CATALOG>",
+                Files.toString(outputFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAsyncConversion() throws Exception {
+        File outputFile = folder.newFile();
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ConversionResult result = converter.convertAsync(executor).get();
+        executor.shutdown();
+
+        assertOutput(ESCAPED_OUTPUT_PATH, outputFile.getPath());
+        assertEquals(new File(resourcePath(TEST_INPUT_PATH)).length(), result.getInputBytes());
+        assertEquals(outputFile.length(), result.getOutputBytes());
+        assertEquals(1 + 36 * 7, result.getElements());
+        assertEquals(36, result.getRulesApplied());
+    }
+
+    @Test(timeout = 30000)
+    public void testAsyncConversionIsCancelled() throws Exception {
+        File inputFile = folder.newFile("largeInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>"
+                + Strings.repeat("<PLANT><COMMON>Bloodroot</COMMON><PRICE>$2.44</PRICE></PLANT>\n", 200000)
+                + "</CATALOG>", inputFile, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "cancelledOutput.xml");
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<ConversionResult> conversion = converter.convertAsync(executor);
+        while (!outputFile.exists() || outputFile.length() == 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(conversion.cancel(false));
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertTrue(conversion.isCancelled());
+        assertTrue(outputFile.length() < inputFile.length() / 2);
+    }
+
+    @Test
+    public void testConversionLimits() throws Exception {
+        File inputFile = folder.newFile("limitedInput.xml");
+        Files.write("<CATALOG>" + Strings.repeat("<PLANT><PRICE>$2.44</PRICE></PLANT>", 10000) + "</CATALOG>",
+                inputFile, StandardCharsets.UTF_8);
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), folder.newFile().getPath(), resourcePath(PROPERTIES_PATH));
+
+        converter.setTimeLimit(1, TimeUnit.NANOSECONDS);
+        try {
+            converter.convert();
+            fail("Time limit not enforced");
+        } catch (ConversionAbortedException e) {
+            assertEquals(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED, e.getReason());
+        }
+
+        converter.setTimeLimit(0, TimeUnit.SECONDS);
+        converter.setMaxOutputBytes(1000);
+        try {
+            converter.convert();
+            fail("Output limit not enforced");
+        } catch (ConversionAbortedException e) {
+            assertEquals(ConversionAbortedException.Reason.OUTPUT_LIMIT_EXCEEDED, e.getReason());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTimeLimitWhileFollowing() throws Exception {
+        File inputFile = folder.newFile("stalledInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG><PLANT><PRICE>$1.99</PRICE></PLANT>",
+                inputFile, StandardCharsets.UTF_8);
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), folder.newFile().getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        converter.setTimeLimit(200, TimeUnit.MILLISECONDS);
+
+        try {
+            converter.convert();
+            fail("Time limit not enforced while following");
+        } catch (ConversionAbortedException e) {
+            assertEquals(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED, e.getReason());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAsyncFollowingIsCancelled() throws Exception {
+        File inputFile = folder.newFile("followedInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG><PLANT><PRICE>$1.99</PRICE></PLANT>",
+                inputFile, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "followedOutput.xml");
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<ConversionResult> conversion = converter.convertAsync(executor);
+        while (!outputFile.exists() || !Files.toString(outputFile, StandardCharsets.UTF_8).endsWith("</PLANT>")) {
+            Thread.sleep(5);
+        }
+        assertTrue(conversion.cancel(false));
+        executor.shutdown();
+
+        // the conversion stops waiting for the input once cancelled
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testOneConversionAtATime() throws Exception {
+        File inputFile = folder.newFile("sharedInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG><PLANT><PRICE>$1.99</PRICE></PLANT>",
+                inputFile, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "sharedOutput.xml");
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setFollow(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<ConversionResult> conversion = converter.convertAsync(executor);
+        while (!outputFile.exists() || !Files.toString(outputFile, StandardCharsets.UTF_8).endsWith("</PLANT>")) {
+            Thread.sleep(5);
+        }
+        try {
+            converter.convert();
+            fail("Second conversion started while the first one runs");
+        } catch (IllegalStateException e) {
+            assertEquals("A conversion is already running", e.getMessage());
+        }
+        assertFalse(conversion.isDone());
+
+        assertTrue(conversion.cancel(false));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Files.append("</CATALOG>", inputFile, StandardCharsets.UTF_8);
+        converter.convert();
+        assertTrue(Files.toString(outputFile, StandardCharsets.UTF_8).endsWith("<PLANT><PRICE>0</PRICE></PLANT></CATALOG>"));
+    }
+
+    @Test
+    public void testTimeLimitCountsFromSubmission() throws Exception {
+        File inputFile = folder.newFile("smallInput.xml");
+        Files.write("<CATALOG><PLANT><PRICE>$2.44</PRICE></PLANT></CATALOG>", inputFile, StandardCharsets.UTF_8);
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), folder.newFile().getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setTimeLimit(100, TimeUnit.MILLISECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        Future<ConversionResult> conversion = converter.convertAsync(executor);
+        try {
+            conversion.get(10, TimeUnit.SECONDS);
+            fail("Time spent waiting for the executor not counted");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConversionAbortedException);
+            assertEquals(ConversionAbortedException.Reason.TIME_LIMIT_EXCEEDED, ((ConversionAbortedException) e.getCause()).getReason());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMalformedRecordsAreQuarantined() throws Exception {
+        File inputFile = folder.newFile("malformedInput.xml");
+        String brokenRecord = "<adventure><abook>b</abook><broken></adventure>\n";
+        // quarantined from the end of the previous record, as the parsing fails before the record is started
+        String brokenStartTag = "\n<adventure id=e><abook>e</abook></adventure>\n";
+        String truncatedRecord = "<adventure><abook>d</abook>";
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books>\n<adventure><abook>a</abook></adventure>\n" + brokenRecord
+                        + "<adventure><abook>c</abook></adventure>" + brokenStartTag + truncatedRecord, inputFile, StandardCharsets.UTF_8);
+        File outputFile = folder.newFile("malformedOutput.xml");
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/books/adventure");
+        try {
+            converter.convert();
+            fail("Malformed input not reported");
+        } catch (SAXParseException e) {
+            // expected
+        }
+
+        File quarantineFile = new File(folder.getRoot(), "quarantine.xml");
+        converter.setQuarantineFile(quarantineFile.toPath());
+        converter.convert();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books>\n<adventure><abook>0</abook></adventure>\n"
+                + "<adventure><abook>0</abook></adventure>\n</books>", Files.toString(outputFile, StandardCharsets.UTF_8));
+        assertEquals(brokenRecord + brokenStartTag + truncatedRecord, Files.toString(quarantineFile, StandardCharsets.UTF_8));
+        List<QuarantinedRecord> quarantinedRecords = converter.getQuarantinedRecords();
+        assertEquals(3, quarantinedRecords.size());
+        assertEquals(brokenRecord.length(), quarantinedRecords.get(0).getLength());
+        assertEquals(brokenStartTag.length(), quarantinedRecords.get(1).getLength());
+        assertEquals(inputFile.length() - truncatedRecord.length(), quarantinedRecords.get(2).getOffset());
+        assertEquals(truncatedRecord.length(), quarantinedRecords.get(2).getLength());
+    }
+
+    @Test
+    public void testCDataIsKept() throws Exception {
+        File inputFile = folder.newFile("cdataInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books><adventure>"
+                + "<summary><![CDATA[<b>Sun & shade</b>]]></summary><title>x<![CDATA[a]]]]><![CDATA[>b]]></title>"
+                + "<abook><![CDATA[<i>Treasure island</i>]]></abook></adventure></books>", inputFile, StandardCharsets.UTF_8);
+        String expectedOutput = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books><adventure>"
+                + "<summary><![CDATA[<b>Sun & shade</b>]]></summary><title>x<![CDATA[a]]]]><![CDATA[>b]]></title>"
+                + "<abook>0</abook></adventure></books>";
+
+        for (boolean pipelined : new boolean[]{false, true}) {
+            File outputFile = new File(folder.getRoot(), "cdataOutput" + pipelined + ".xml");
+            XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+            converter.setPipelined(pipelined);
+            converter.convert();
+            assertEquals(expectedOutput, Files.toString(outputFile, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testMinify() throws Exception {
+        File inputFile = folder.newFile("prettyInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books>\n  <adventure>\n    <abook>  Treasure island  </abook>\n"
+                + "    <summary>A <b>map</b> <i>and</i>\n  a ship</summary>\n    <poem>\n  Fifteen men\n    </poem>\n"
+                + "    <title>\n<![CDATA[<Kidnapped>]]></title>\n  </adventure>\n</books>\n", inputFile, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "minifiedOutput.xml");
+
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setMinify(true, Arrays.asList("/books/adventure/summary", "/books/adventure/poem"));
+        converter.convert();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books><adventure><abook>0</abook>"
+                + "<summary>A <b>map</b> <i>and</i>\n  a ship</summary><poem>\n  Fifteen men\n    </poem>"
+                + "<title>\n<![CDATA[<Kidnapped>]]></title></adventure></books>", Files.toString(outputFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMinifyWithIndex() throws Exception {
+        // no record has the path with rules, so that the index would copy all of them as they are
+        File configuration = folder.newFile("missingPath.json");
+        Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/NOTE\", \"rules\": [{\"type\": \"REPLACE\", "
+                + "\"match\": \"*\", \"replacement\": \"0\"}]}]}", configuration, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "minifiedOutput.xml");
+        File indexedOutputFile = new File(folder.getRoot(), "minifiedIndexedOutput.xml");
+        for (File output : new File[]{outputFile, indexedOutputFile}) {
+            XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), output.getPath(), configuration.getPath());
+            converter.setRecordPath("/CATALOG/PLANT");
+            converter.setUseIndex(output == indexedOutputFile);
+            converter.setMinify(true, Collections.<String>emptyList());
+            converter.convert();
+        }
+
+        String indexedOutput = Files.toString(indexedOutputFile, StandardCharsets.UTF_8);
+        assertFalse(indexedOutput.contains("<PLANT>\n"));
+        assertEquals(Files.toString(outputFile, StandardCharsets.UTF_8), indexedOutput);
+    }
+
+    @Test
+    public void testInputProcessingInstructionsAreNotTakenForMarkers() throws Exception {
+        File input = folder.newFile("instructionsInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n<?xdm-raw-record 1?>\n"
+                + "<PLANT><PRICE>$1.99</PRICE></PLANT>\n<?xdm-chunk not a number?>\n"
+                + "<PLANT><COMMON>Bloodroot<?xdm-cached-chunk 0?></COMMON></PLANT>\n</CATALOG>", input, StandardCharsets.UTF_8);
+        String expectedOutput = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG>\n<?xdm-raw-record 1?>\n"
+                + "<PLANT><PRICE>0</PRICE></PLANT>\n<?xdm-chunk not a number?>\n"
+                + "<PLANT><COMMON>Bloodroot<?xdm-cached-chunk 0?></COMMON></PLANT>\n</CATALOG>";
+
+        File outputFile = new File(folder.getRoot(), "instructionsOutput.xml");
+        XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setUseIndex(true);
+        converter.convert();
+        assertEquals(expectedOutput, Files.toString(outputFile, StandardCharsets.UTF_8));
+
+        File cache = folder.newFolder("instructionsCache");
+        assertEquals(expectedOutput, convertWithCache(input, cache));
+        assertEquals(expectedOutput, convertWithCache(input, cache));
+    }
+
+    @Test
+    public void testIndexParsesRecordsWhenTheDoctypeDeclaresEntities() throws Exception {
+        File input = folder.newFile("entitiesInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE CATALOG [<!ENTITY acme \"Acme\">]>\n<CATALOG>\n"
+                + "<PLANT><PRICE>$1.99</PRICE></PLANT>\n<PLANT><COMMON>&acme;</COMMON></PLANT>\n</CATALOG>",
+                input, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "entitiesOutput.xml");
+        XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setUseIndex(true);
+        converter.convert();
+
+        String output = Files.toString(outputFile, StandardCharsets.UTF_8);
+        assertTrue(output.endsWith("<PLANT><PRICE>0</PRICE></PLANT>\n<PLANT><COMMON>Acme</COMMON></PLANT>\n</CATALOG>"));
+        converter.setUseIndex(false);
+        converter.convert();
+        assertEquals(Files.toString(outputFile, StandardCharsets.UTF_8), output);
+    }
+
+    @Test
+    public void testSampleFirstRecords() throws Exception {
+        String outputFilePath = new File(folder.getRoot(), "sampleOutput.xml").getPath();
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+
+        converter.setSampleOptions(new SampleOptions(SampleOptions.Mode.RECORDS, 3));
+        converter.convert();
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(outputFilePath));
+        assertEquals(3, document.getElementsByTagName("PLANT").getLength());
+        assertEquals("0", document.getElementsByTagName("PRICE").item(2).getTextContent());
+        assertEquals(3, converter.getSampledRecords());
+        assertTrue(converter.getSampledFraction() > 0 && converter.getSampledFraction() < 1);
+
+        converter.setSampleOptions(new SampleOptions(SampleOptions.Mode.BYTES, 1));
+        converter.convert();
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(outputFilePath));
+        assertEquals(1, document.getElementsByTagName("PLANT").getLength());
+
+        converter.setSampleOptions(new SampleOptions(SampleOptions.Mode.RECORDS, 1000));
+        converter.convert();
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(outputFilePath));
+        assertEquals(36, document.getElementsByTagName("PLANT").getLength());
+        assertEquals(1, converter.getSampledFraction(), 0);
+    }
+
+    @Test
+    public void testRandomSample() throws Exception {
+        File input = folder.newFile("sampleInput.xml");
+        Files.copy(new File(resourcePath(TEST_INPUT_PATH)), input);
+        File outputFile = new File(folder.getRoot(), "randomSampleOutput.xml");
+        XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setSampleOptions(new SampleOptions(SampleOptions.Mode.RANDOM, 5, 42));
+
+        converter.convert();
+        String output = Files.toString(outputFile, StandardCharsets.UTF_8);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(outputFile);
+        assertEquals(5, document.getElementsByTagName("PLANT").getLength());
+        assertEquals("0", document.getElementsByTagName("PRICE").item(4).getTextContent());
+        assertEquals(5 / 36.0, converter.getSampledFraction(), 1e-9);
+
+        converter.convert();
+        assertEquals(output, Files.toString(outputFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResultCache() throws Exception {
+        File input = folder.newFile("cachedInput.xml");
+        String document = Files.toString(new File(resourcePath(TEST_INPUT_PATH)), StandardCharsets.UTF_8);
+        Files.write(document, input, StandardCharsets.UTF_8);
+        File cache = folder.newFolder("cache");
+
+        String output = convertWithCache(input, cache);
+        assertEquals(convertWithCache(input, null), output);
+        XMLConverter converter = new XMLConverter(input.getPath(), new File(folder.getRoot(), "cachedOutput.xml").getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setResultCache(cache.toPath());
+        converter.setCacheChunkSize(512);
+        converter.convert();
+        assertEquals(input.length(), converter.getCachedBytes());
+        assertEquals(output, Files.toString(new File(folder.getRoot(), "cachedOutput.xml"), StandardCharsets.UTF_8));
+
+        Files.write(document.replace("Bloodroot", "Bloodroot (white)"), input, StandardCharsets.UTF_8);
+        converter.convert();
+        assertTrue(converter.getCachedBytes() > input.length() / 2 && converter.getCachedBytes() < input.length());
+        assertEquals(convertWithCache(input, null), Files.toString(new File(folder.getRoot(), "cachedOutput.xml"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResultCacheCoversExternalEntities() throws Exception {
+        File catalog = folder.newFolder("catalog");
+        File input = new File(catalog, "input.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE CATALOG SYSTEM \"http://example.com/plants.dtd\">\n<CATALOG>"
+                + Strings.repeat("<PLANT><COMMON>&co;</COMMON></PLANT>", 50) + "</CATALOG>", input, StandardCharsets.UTF_8);
+        File cache = folder.newFolder("cache");
+        File outputFile = new File(folder.getRoot(), "cachedOutput.xml");
+
+        for (String company : new String[]{"Acme", "Initech"}) {
+            Files.write("<!ENTITY co \"" + company + "\">", new File(catalog, "plants.dtd"), StandardCharsets.UTF_8);
+            XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+            converter.setRecordPath("/CATALOG/PLANT");
+            converter.setResultCache(cache.toPath());
+            converter.setCacheChunkSize(512);
+            converter.setEntityResolver(new CatalogEntityResolver(catalog.toPath(), false));
+            converter.convert();
+
+            assertEquals(0, converter.getCachedBytes());
+            assertTrue(Files.toString(outputFile, StandardCharsets.UTF_8).contains("<COMMON>" + company + "</COMMON>"));
+        }
+    }
+
+    @Test
+    public void testJsonLines() throws Exception {
+        File outputFile = new File(folder.getRoot(), "output.jsonl");
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setOutputFormat(OutputFormat.JSON_LINES);
+        converter.convert();
+
+        List<String> lines = Files.readLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals(36, lines.size());
+        assertEquals("{\"COMMON\":\"Bloodroot\",\"BOTANICAL\":\"Sanguinaria canadensis\",\"ZONE\":\"4\",\"LIGHT\":\"Mostly Shady\","
+                + "\"PRICE\":\"0\",\"AVAILABILITY\":\"031599\"}", lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"COMMON\":{\"@attribute\":\"attribute's!\",\"#text\":\"Columbine\"}"));
+    }
+
+    @Test
+    public void testJsonLinesWithMarkupInText() throws Exception {
+        File inputFile = folder.newFile("markupInput.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG><PLANT><?pi a>b?><COMMON>x &lt;y&gt; <![CDATA[</z>]]></COMMON>"
+                + "<PRICE>$1 &amp; &#65;</PRICE></PLANT></CATALOG>", inputFile, StandardCharsets.UTF_8);
+        File configuration = folder.newFile("markup.json");
+        Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [{\"type\": \"REPLACE\", "
+                + "\"match\": \"\\\\d\", \"replacement\": \"#\"}]}]}", configuration, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "markupOutput.jsonl");
+
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), configuration.getPath());
+        converter.setRecordPath("/CATALOG/PLANT");
+        converter.setOutputFormat(OutputFormat.JSON_LINES);
+        converter.convert();
+
+        assertEquals("{\"COMMON\":\"x <y> </z>\",\"PRICE\":\"$# & A\"}\n", Files.toString(outputFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testKeepRules() throws Exception {
+        File configuration = folder.newFile("keep.json");
+        Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/COMMON\", \"rules\": [{\"type\": \"KEEP\"}]},"
+                + "{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [{\"type\": \"KEEP\"},"
+                + "{\"type\": \"REPLACE\", \"match\": \"*\", \"replacement\": \"0\"}]}]}", configuration, StandardCharsets.UTF_8);
+
+        for (boolean useIndex : new boolean[]{false, true}) {
+            File outputFile = new File(folder.getRoot(), "keptOutput" + useIndex + ".xml");
+            XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFile.getPath(), configuration.getPath());
+            converter.setRecordPath("/CATALOG/PLANT");
+            converter.setUseIndex(useIndex);
+            converter.convert();
+
+            String output = Files.toString(outputFile, StandardCharsets.UTF_8);
+            assertTrue(output.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CATALOG><PLANT>"
+                    + "<COMMON>Bloodroot</COMMON><PRICE>0</PRICE></PLANT><PLANT>"
+                    + "<COMMON attribute=\"attribute&#39;s!\">Columbine</COMMON><PRICE>0</PRICE></PLANT>"));
+            assertTrue(output.endsWith("</PLANT></CATALOG>"));
+            assertFalse(output.contains("BOTANICAL"));
+        }
+    }
+
+    @Test
+    public void testSchemaValidation() throws Exception {
+        File schemaFile = folder.newFile("catalog.xsd");
+        Files.write("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"><xs:element name=\"CATALOG\"><xs:complexType>"
+                + "<xs:sequence><xs:element name=\"PLANT\" maxOccurs=\"unbounded\"><xs:complexType><xs:sequence>"
+                + "<xs:element name=\"COMMON\"><xs:complexType><xs:simpleContent><xs:extension base=\"xs:string\">"
+                + "<xs:attribute name=\"attribute\"/></xs:extension></xs:simpleContent></xs:complexType></xs:element>"
+                + "<xs:element name=\"BOTANICAL\"/><xs:element name=\"ZONE\"/><xs:element name=\"LIGHT\"/>"
+                + "<xs:element name=\"PRICE\" type=\"xs:decimal\"/><xs:element name=\"AVAILABILITY\"/>"
+                + "</xs:sequence></xs:complexType></xs:element></xs:sequence></xs:complexType></xs:element></xs:schema>",
+                schemaFile, StandardCharsets.UTF_8);
+        SchemaCache schemaCache = new SchemaCache();
+        assertSame(schemaCache.getSchema(schemaFile.toPath()), schemaCache.getSchema(schemaFile.toPath()));
+
+        String outputFilePath = folder.newFile().getPath();
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), outputFilePath, resourcePath(PROPERTIES_PATH));
+        converter.setSchema(schemaCache.getSchema(schemaFile.toPath()));
+        converter.convert();
+
+        assertOutput(ESCAPED_OUTPUT_PATH, outputFilePath);
+        // an invalid value is reported both as invalid for its type and as invalid for its element
+        assertEquals(72, converter.getValidationErrorCount());
+        assertEquals("/CATALOG/PLANT/PRICE", converter.getValidationErrors().get(0).getXPath());
+        assertEquals(8, converter.getValidationErrors().get(0).getLine());
+
+        converter.setFailOnInvalid(true);
+        try {
+            converter.convert();
+            fail("Invalid input should fail the conversion");
+        } catch (SAXParseException e) {
+            assertEquals(8, e.getLineNumber());
+        }
+    }
+
+    @Test
+    public void testEntityExpansionLimit() throws Exception {
+        File input = folder.newFile("entitiesInput.xml");
+        Files.write("<!DOCTYPE books [<!ENTITY a \"x\"><!ENTITY b \"&a;&a;&a;&a;\"><!ENTITY c \"&b;&b;&b;&b;\">]>"
+                + "<books><title>&c;</title></books>", input, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "entitiesOutput.xml");
+
+        XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.convert();
+        assertTrue(Files.toString(outputFile, StandardCharsets.UTF_8).contains("<title>" + Strings.repeat("x", 16) + "</title>"));
+
+        converter.setEntityExpansionLimit(10);
+        try {
+            converter.convert();
+            fail("Entity expansion limit not enforced");
+        } catch (SAXParseException e) {
+            assertTrue(e.getMessage().contains("10"));
+        }
+    }
+
+    @Test
+    public void testInputEncodingIsKept() throws Exception {
+        String document = "<books><adventure><title>\u00cele myst\u00e9rieuse</title><abook>Tr\u00e9sor</abook></adventure></books>";
+        String expectedDocument = "<books><adventure><title>\u00cele myst\u00e9rieuse</title><abook>0</abook></adventure></books>";
+        File latin1Input = folder.newFile("latin1Input.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"iso-8859-1\" standalone=\"yes\"?>\n" + document, latin1Input, StandardCharsets.ISO_8859_1);
+        File utf16Input = folder.newFile("utf16Input.xml");
+        Files.write("\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?>\n" + document, utf16Input, StandardCharsets.UTF_16LE);
+
+        for (boolean pipelined : new boolean[]{false, true}) {
+            File outputFile = new File(folder.getRoot(), "latin1Output" + pipelined + ".xml");
+            XMLConverter converter = new XMLConverter(latin1Input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+            converter.setPipelined(pipelined);
+            converter.convert();
+            assertEquals("<?xml version=\"1.0\" encoding=\"iso-8859-1\" standalone=\"yes\"?>\n" + expectedDocument,
+                    Files.toString(outputFile, StandardCharsets.ISO_8859_1));
+
+            outputFile = new File(folder.getRoot(), "utf16Output" + pipelined + ".xml");
+            converter = new XMLConverter(utf16Input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+            converter.setPipelined(pipelined);
+            converter.convert();
+            assertEquals("\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?>\n" + expectedDocument,
+                    Files.toString(outputFile, StandardCharsets.UTF_16LE));
+        }
+    }
+
+    @Test
+    public void testOutputEncoding() throws Exception {
+        File inputFile = folder.newFile("utf8Input.xml");
+        Files.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<books><title a=\"\u00e9\">\u00cele \ud83c\udfdd</title></books>",
+                inputFile, StandardCharsets.UTF_8);
+        File outputFile = new File(folder.getRoot(), "asciiOutput.xml");
+
+        XMLConverter converter = new XMLConverter(inputFile.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setOutputEncoding(StandardCharsets.US_ASCII);
+        converter.convert();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"US-ASCII\"?>\n<books><title a=\"&#233;\">&#206;le &#127965;</title></books>",
+                Files.toString(outputFile, StandardCharsets.US_ASCII));
+    }
+
+    private String convertWithCache(File input, File cache) throws Exception {
+        File outputFile = folder.newFile();
+        XMLConverter converter = new XMLConverter(input.getPath(), outputFile.getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setRecordPath("/CATALOG/PLANT");
+        if (cache != null) {
+            converter.setResultCache(cache.toPath());
+            converter.setCacheChunkSize(512);
+        }
+        converter.convert();
+        return Files.toString(outputFile, StandardCharsets.UTF_8);
+    }
+
+    private String resourcePath(String resourceName) throws URISyntaxException {
+        URL resource = getClass().getClassLoader().getResource(resourceName);
+        requireNonNull(resource);
+        return Paths.get(resource.toURI()).toString();
+    }
+
     private void testConversion(String expectedOutput) throws Exception {
+        testConversion(expectedOutput, false);
+    }
+
+    private void testConversion(String expectedOutput, boolean pipelined) throws Exception {
         URL resource = getClass().getClassLoader().getResource(PROPERTIES_PATH);
         requireNonNull(resource);
         String configurationFilePath = Paths.get(resource.toURI()).toString();
@@ -37,17 +865,23 @@ public class XMLConverterTest {
         requireNonNull(input);
         String inputFilePath = Paths.get(input.toURI()).toString();
 
-        String outputFilePath = folder.newFile("tempOutput.xml").getPath();
+        String outputFilePath = folder.newFile().getPath();
 
         XMLConverter converter = new XMLConverter(inputFilePath, outputFilePath, configurationFilePath);
+        converter.setPipelined(pipelined);
         converter.convert();
 
+        assertOutput(expectedOutput, outputFilePath);
+    }
+
+    private void assertOutput(String expectedOutput, String outputFilePath) throws Exception {
         URL expectedOutputURL = getClass().getClassLoader().getResource(expectedOutput);
         requireNonNull(expectedOutputURL);
 
         List<String> expectedLines = Files.readLines(new File(expectedOutputURL.toURI()), Charset.defaultCharset());
         List<String> convertedLines = Files.readLines(new File(outputFilePath), Charset.defaultCharset());
 
+        assertEquals(expectedLines.size(), convertedLines.size());
         for(int i = 0; i<expectedLines.size(); i++) {
             assertEquals(expectedLines.get(i), convertedLines.get(i));
         }
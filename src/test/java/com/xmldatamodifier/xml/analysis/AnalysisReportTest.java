@@ -0,0 +1,65 @@
+package com.xmldatamodifier.xml.analysis;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.XMLConverter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnalysisReportTest {
+
+    private static final String TEST_INPUT_PATH = "test/testInput.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAnalyze() throws Exception {
+        File configuration = folder.newFile("config.json");
+        Files.write("{ \"rule_set\": ["
+                + "{ \"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [ { \"type\": \"REPLACE\", \"match\": \"*\", \"replacement\": \"0\" } ] },"
+                + "{ \"xpath\": \"/CATALOG/PLANT/BOTANICLA\", \"rules\": [ { \"type\": \"SKIP\" } ] },"
+                + "{ \"xpath\": \"/catalog/plant/zone\", \"rules\": [ { \"type\": \"SKIP\" } ] },"
+                + "{ \"xpath\": \"/somewhere/else\", \"rules\": [ { \"type\": \"SKIP\" } ] }"
+                + "] }", configuration, StandardCharsets.UTF_8);
+
+        URL input = getClass().getClassLoader().getResource(TEST_INPUT_PATH);
+        requireNonNull(input);
+        XMLConverter converter = new XMLConverter(Paths.get(input.toURI()).toString(), "unused", configuration.getPath());
+        AnalysisReport report = converter.analyze();
+
+        assertThat(report.getMaxDepth()).isEqualTo(3);
+        assertThat(report.getPaths()).hasSize(8);
+        assertThat(report.getHits("/CATALOG")).isEqualTo(1);
+        assertThat(report.getHits("/CATALOG/PLANT")).isEqualTo(36);
+        assertThat(report.getHits("/CATALOG/PLANT/PRICE")).isEqualTo(36);
+        assertThat(report.getHits("/CATALOG/PLANT/BOTANICLA")).isEqualTo(0);
+
+        for (PathNode path : report.getPaths()) {
+            if (path.getPath().equals("/CATALOG/PLANT/ZONE")) {
+                assertThat(path.getTextBytes()).isEqualTo(80);
+            }
+        }
+
+        assertThat(report.getNearMisses())
+                .hasSize(2)
+                .containsEntry("/CATALOG/PLANT/BOTANICLA", Collections.singletonList("/CATALOG/PLANT/BOTANICAL"))
+                .containsEntry("/catalog/plant/zone", Collections.singletonList("/CATALOG/PLANT/ZONE"));
+    }
+
+    @Test
+    public void testDistance() {
+        assertThat(AnalysisReport.distance("/a/price", "/a/price", 2)).isEqualTo(0);
+        assertThat(AnalysisReport.distance("/a/price", "/a/prcie", 2)).isEqualTo(2);
+        assertThat(AnalysisReport.distance("/a/price", "/b/other/path", 2)).isEqualTo(3);
+    }
+}
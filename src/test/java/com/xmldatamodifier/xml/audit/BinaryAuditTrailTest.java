@@ -0,0 +1,145 @@
+package com.xmldatamodifier.xml.audit;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.core.ContentReplaceRule;
+import com.xmldatamodifier.xml.XMLConverter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryAuditTrailTest {
+
+    private static final String PROPERTIES_PATH = "test/properties.json";
+    private static final String TEST_INPUT_PATH = "test/testInput.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndDecode() throws Exception {
+        Path auditFile = folder.newFile("audit.bin").toPath();
+        ContentReplaceRule rule = new ContentReplaceRule("\\d", "#");
+        try (BinaryAuditTrail auditTrail = new BinaryAuditTrail(auditFile)) {
+            auditTrail.ruleApplied("/a/b", rule, 120, 5, 5);
+            auditTrail.ruleApplied("/a/c", rule, -1, 10, 1);
+        }
+
+        assertThat(decode(auditFile)).isEqualTo(
+                "120\t/a/b\t" + rule + "\t5 -> 5\n"
+                        + "-1\t/a/c\t" + rule + "\t10 -> 1\n"
+                        + "2 rule applications\n");
+    }
+
+    @Test
+    public void testNoEntryDroppedWhenWriterFallsBehind() throws Exception {
+        Path auditFile = folder.newFile("audit.bin").toPath();
+        ContentReplaceRule rule = new ContentReplaceRule("\\d", "#");
+        try (BinaryAuditTrail auditTrail = new BinaryAuditTrail(auditFile)) {
+            for (int i = 0; i < 100_000; i++) {
+                auditTrail.ruleApplied("/a/b", rule, i, 5, 5);
+            }
+        }
+
+        assertThat(decode(auditFile)).endsWith("99999\t/a/b\t" + rule + "\t5 -> 5\n"
+                + "100000 rule applications\n");
+    }
+
+    @Test(timeout = 30000)
+    public void testStalledWriterNeverBlocksTheCaller() throws Exception {
+        final CountDownLatch stall = new CountDownLatch(1);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        OutputStream stalledFile = new FilterOutputStream(file) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    stall.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                out.write(b, off, len);
+            }
+        };
+        ContentReplaceRule rule = new ContentReplaceRule("\\d", "#");
+        int entries = BinaryAuditTrail.CAPACITY * 4;
+        try (BinaryAuditTrail auditTrail = new BinaryAuditTrail(stalledFile)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < entries; i++) {
+                auditTrail.ruleApplied("/a/b", rule, i, 5, 5);
+            }
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+            assertThat(auditTrail.getOverflowed()).isGreaterThan(0);
+            stall.countDown();
+        }
+
+        Path auditFile = folder.newFile("audit.bin").toPath();
+        java.nio.file.Files.write(auditFile, file.toByteArray());
+        String audit = decode(auditFile);
+        assertThat(audit).contains("\n" + (BinaryAuditTrail.CAPACITY + 1) + "\t/a/b\t" + rule + "\t5 -> 5\n"
+                + (BinaryAuditTrail.CAPACITY + 2) + "\t");
+        assertThat(audit).endsWith((entries - 1) + "\t/a/b\t" + rule + "\t5 -> 5\n" + entries + " rule applications\n");
+    }
+
+    @Test
+    public void testSkipAndConditionalRulesAudit() throws Exception {
+        File input = folder.newFile("input.xml");
+        Files.write("<a><b><c>hello</c><c>!</c></b><r><s>closed</s></r><m><s>hidden</s></m></a>", input, StandardCharsets.UTF_8);
+        File configuration = folder.newFile("configuration.json");
+        Files.write("{\"rule_set\": [{\"xpath\": \"/a/b\", \"rules\": [{\"type\": \"SKIP\"}]},"
+                + "{\"xpath\": \"/a/r\", \"rules\": [{\"type\": \"DROP_IF\", \"child\": \"s\", \"equals\": \"closed\"}]},"
+                + "{\"xpath\": \"/a/m\", \"rules\": [{\"type\": \"MASK_IF\", \"child\": \"s\", \"equals\": \"hidden\", "
+                + "\"replacement\": \"*\"}]}]}", configuration, StandardCharsets.UTF_8);
+        Path auditFile = new File(folder.getRoot(), "audit.bin").toPath();
+        XMLConverter converter = new XMLConverter(input.getPath(), folder.newFile().getPath(), configuration.getPath());
+        converter.setAuditFile(auditFile.toString());
+        converter.convert();
+
+        String audit = decode(auditFile);
+        // offset of the first skipped element
+        assertThat(audit).contains("6\t/a/b\tSkipRule{}\t6 -> 0\n");
+        assertThat(audit).contains("30\t/a/r\tRecordConditionRule{action=DROP, child='s', value='closed'}\t6 -> 0\n");
+        assertThat(audit).contains("50\t/a/m\tRecordConditionRule{action=MASK, child='s', value='hidden', replacement='*'}\t6 -> 1\n");
+        assertThat(audit).endsWith("3 rule applications\n");
+    }
+
+    @Test
+    public void testConversionAudit() throws Exception {
+        Path auditFile = new File(folder.getRoot(), "audit.bin").toPath();
+        XMLConverter converter = new XMLConverter(resourcePath(TEST_INPUT_PATH), folder.newFile().getPath(), resourcePath(PROPERTIES_PATH));
+        converter.setAuditFile(auditFile.toString());
+        converter.convert();
+
+        String audit = decode(auditFile);
+        // offset of the first PRICE start tag
+        assertThat(audit).contains("217\t/CATALOG/PLANT/PRICE\tContentReplaceRule{regex='*', replacement='0'}");
+        assertThat(audit).endsWith("36 rule applications\n");
+    }
+
+    private String decode(Path auditFile) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AuditTrailDecoder.decode(auditFile, new PrintStream(output, true));
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private String resourcePath(String resourceName) throws Exception {
+        URL resource = getClass().getClassLoader().getResource(resourceName);
+        requireNonNull(resource);
+        return Paths.get(resource.toURI()).toString();
+    }
+}
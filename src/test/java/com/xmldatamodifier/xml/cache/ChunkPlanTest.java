@@ -0,0 +1,123 @@
+package com.xmldatamodifier.xml.cache;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.XMLConverter;
+import com.xmldatamodifier.xml.index.RecordIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ChunkPlanTest {
+
+    private static final String RECORD_PATH = "/CATALOG/PLANT";
+    private static final int RECORDS = 500;
+    private static final long CHUNK_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunks() throws Exception {
+        File input = writeInput("Plant 250");
+        ChunkPlan plan = ChunkPlan.create(input.toPath(), index(input), "context", CHUNK_SIZE);
+
+        assertThat(plan.getChunkCount()).isBetween(5, 100);
+        assertEquals(0, plan.getChunkStarts()[0]);
+        long recordBytes = 0;
+        for (int chunk = 0; chunk < plan.getChunkCount(); chunk++) {
+            assertThat(plan.getChunkLength(chunk)).isGreaterThanOrEqualTo(CHUNK_SIZE / 4).isLessThanOrEqualTo(4 * CHUNK_SIZE + 100);
+            recordBytes += plan.getChunkLength(chunk);
+        }
+        RecordIndex index = index(input);
+        assertEquals(index.getRecordEnd(RECORDS - 1) - index.getRecordStart(0), recordBytes);
+
+        ChunkPlan otherContextPlan = ChunkPlan.create(input.toPath(), index, "other context", CHUNK_SIZE);
+        assertNotEquals(plan.getKey(), otherContextPlan.getKey());
+        assertThat(chunkKeys(otherContextPlan)).doesNotContainAnyElementsOf(chunkKeys(plan));
+    }
+
+    @Test
+    public void testChangeOnlyChangesNearbyChunks() throws Exception {
+        File input = writeInput("Plant 250");
+        ChunkPlan plan = ChunkPlan.create(input.toPath(), index(input), "context", CHUNK_SIZE);
+
+        File changedInput = writeInput("Changed plant 250");
+        ChunkPlan changedPlan = ChunkPlan.create(changedInput.toPath(), index(changedInput), "context", CHUNK_SIZE);
+
+        assertNotEquals(plan.getKey(), changedPlan.getKey());
+        Set<String> unchangedChunks = chunkKeys(changedPlan);
+        unchangedChunks.retainAll(chunkKeys(plan));
+        assertThat(unchangedChunks.size()).isGreaterThanOrEqualTo(plan.getChunkCount() - 2);
+    }
+
+    @Test
+    public void testPrologChangesEveryChunk() throws Exception {
+        File input = writeInput("Plant 250");
+        ChunkPlan plan = ChunkPlan.create(input.toPath(), index(input), "context", CHUNK_SIZE);
+
+        File changedInput = writeInput("Plant 250", "<!DOCTYPE CATALOG [<!ENTITY co \"Acme\">]>\n<CATALOG xmlns:x=\"urn:x\">");
+        ChunkPlan changedPlan = ChunkPlan.create(changedInput.toPath(), index(changedInput), "context", CHUNK_SIZE);
+
+        assertEquals(plan.getChunkCount(), changedPlan.getChunkCount());
+        assertThat(chunkKeys(changedPlan)).doesNotContainAnyElementsOf(chunkKeys(plan));
+    }
+
+    @Test
+    public void testWithoutIndex() throws Exception {
+        File input = writeInput("Plant 250");
+        ChunkPlan plan = ChunkPlan.create(input.toPath(), null, "context", CHUNK_SIZE);
+
+        assertEquals(0, plan.getChunkCount());
+        assertEquals(plan.getKey(), ChunkPlan.create(input.toPath(), null, "context", CHUNK_SIZE).getKey());
+        assertNotEquals(plan.getKey(), ChunkPlan.create(writeInput("Plant 251").toPath(), null, "context", CHUNK_SIZE).getKey());
+    }
+
+    private static Set<String> chunkKeys(ChunkPlan plan) {
+        Set<String> keys = new HashSet<>();
+        for (int chunk = 0; chunk < plan.getChunkCount(); chunk++) {
+            keys.add(plan.getChunkKey(chunk));
+        }
+        return keys;
+    }
+
+    private RecordIndex index(File input) throws Exception {
+        XMLConverter converter = new XMLConverter(input.getPath(), folder.newFile().getPath(), writeConfiguration());
+        converter.setRecordPath(RECORD_PATH);
+        return converter.index();
+    }
+
+    private File writeInput(String changedName) throws Exception {
+        return writeInput(changedName, "<CATALOG>");
+    }
+
+    private File writeInput(String changedName, String head) throws Exception {
+        StringBuilder input = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n").append(head).append('\n');
+        for (int i = 0; i < RECORDS; i++) {
+            String name = "Plant " + i;
+            input.append("    <PLANT id=\"").append(i).append("\">\n")
+                    .append("        <COMMON>").append(name.equals("Plant 250") ? changedName : name).append("</COMMON>\n")
+                    .append("        <PRICE>$").append(i).append(".99</PRICE>\n")
+                    .append("    </PLANT>\n");
+        }
+        input.append("</CATALOG>\n");
+        File file = folder.newFile();
+        Files.write(input, file, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private String writeConfiguration() throws Exception {
+        File file = folder.newFile();
+        Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [{\"type\": \"REPLACE\", \"match\": \"*\", \"replacement\": \"0\"}]}]}",
+                file, StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+}
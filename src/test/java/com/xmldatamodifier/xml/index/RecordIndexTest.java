@@ -0,0 +1,143 @@
+package com.xmldatamodifier.xml.index;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.XMLConverter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordIndexTest {
+
+    private static final String RECORD_PATH = "/CATALOG/PLANT";
+    private static final int RECORDS = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndex() throws Exception {
+        File input = writeInput();
+        XMLConverter converter = new XMLConverter(input.getPath(), folder.newFile().getPath(), writeConfiguration());
+        converter.setRecordPath(RECORD_PATH);
+        RecordIndex index = converter.index();
+
+        assertEquals(RECORDS, index.getRecordCount());
+        assertEquals(RECORD_PATH, index.getRecordPath());
+        assertEquals("UTF-8", index.getEncoding());
+        assertThat(index.getPaths()).containsExactly("/CATALOG", "/CATALOG/PLANT", "/CATALOG/PLANT/COMMON", "/CATALOG/PLANT/PRICE");
+        assertTrue(index.isUpToDate(input.toPath(), RECORD_PATH));
+
+        String content = Files.toString(input, StandardCharsets.UTF_8);
+        String record = content.substring((int) index.getRecordStart(3), (int) index.getRecordEnd(3));
+        assertThat(record).startsWith("<PLANT id=\"3\">").endsWith("</PLANT>");
+
+        long pricePath = index.getPathMask(Collections.singleton("/CATALOG/PLANT/PRICE"));
+        assertEquals(0, index.getPathMask(3) & pricePath);
+        assertEquals(pricePath, index.getPathMask(4) & pricePath);
+    }
+
+    @Test
+    public void testUseIndex() throws Exception {
+        File input = writeInput();
+        String configuration = writeConfiguration();
+
+        File expectedOutput = folder.newFile();
+        XMLConverter converter = new XMLConverter(input.getPath(), expectedOutput.getPath(), configuration);
+        converter.convert();
+
+        File indexedOutput = folder.newFile();
+        converter = new XMLConverter(input.getPath(), indexedOutput.getPath(), configuration);
+        converter.setRecordPath(RECORD_PATH);
+        converter.setUseIndex(true);
+        converter.convert();
+
+        assertTrue(converter.getIndexFile().toFile().exists());
+        assertTrue(Files.equal(expectedOutput, indexedOutput));
+    }
+
+    @Test
+    public void testUseIndexKeepsInputEncoding() throws Exception {
+        File input = writeInput(StandardCharsets.ISO_8859_1, "Pl\u00e4nt");
+        String configuration = writeConfiguration();
+
+        File expectedOutput = folder.newFile();
+        new XMLConverter(input.getPath(), expectedOutput.getPath(), configuration).convert();
+
+        File indexedOutput = folder.newFile();
+        XMLConverter converter = new XMLConverter(input.getPath(), indexedOutput.getPath(), configuration);
+        converter.setRecordPath(RECORD_PATH);
+        converter.setUseIndex(true);
+        converter.convert();
+
+        assertTrue(Files.equal(expectedOutput, indexedOutput));
+        assertThat(Files.toString(indexedOutput, StandardCharsets.ISO_8859_1))
+                .startsWith("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>")
+                .contains("<COMMON>Pl\u00e4nt 3</COMMON>", "<PRICE>0</PRICE>");
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        File input = writeInput();
+        String configuration = writeConfiguration();
+
+        int records = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            File output = folder.newFile();
+            XMLConverter converter = new XMLConverter(input.getPath(), output.getPath(), configuration);
+            converter.setRecordPath(RECORD_PATH);
+            converter.setUseIndex(true);
+            converter.setShard(shard, 3);
+            converter.convert();
+
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(output);
+            assertEquals("CATALOG", document.getDocumentElement().getNodeName());
+            int shardRecords = document.getElementsByTagName("PLANT").getLength();
+            assertEquals(RECORDS * (shard + 1) / 3 - RECORDS * shard / 3, shardRecords);
+            assertEquals(String.valueOf(RECORDS * shard / 3), ((Element) document.getElementsByTagName("PLANT").item(0)).getAttribute("id"));
+            for (int i = 0; i < document.getElementsByTagName("PRICE").getLength(); i++) {
+                assertEquals("0", document.getElementsByTagName("PRICE").item(i).getTextContent());
+            }
+            records += shardRecords;
+        }
+        assertEquals(RECORDS, records);
+    }
+
+    private File writeInput() throws Exception {
+        return writeInput(StandardCharsets.UTF_8, "Plant");
+    }
+
+    private File writeInput(Charset charset, String name) throws Exception {
+        StringBuilder input = new StringBuilder("<?xml version=\"1.0\" encoding=\"" + charset.name() + "\"?>\n<CATALOG>\n");
+        for (int i = 0; i < RECORDS; i++) {
+            input.append("    <PLANT id=\"").append(i).append("\">\n")
+                    .append("        <COMMON>").append(name).append(' ').append(i).append("</COMMON>\n");
+            if (i % 2 == 0) {
+                input.append("        <PRICE>$").append(i).append(".99</PRICE>\n");
+            }
+            input.append("    </PLANT>\n");
+        }
+        input.append("</CATALOG>\n");
+        File file = folder.newFile("input.xml");
+        Files.write(input, file, charset);
+        return file;
+    }
+
+    private String writeConfiguration() throws Exception {
+        File file = folder.newFile("config.json");
+        Files.write("{\"rule_set\": [{\"xpath\": \"/CATALOG/PLANT/PRICE\", \"rules\": [{\"type\": \"REPLACE\", \"match\": \"*\", \"replacement\": \"0\"}]}]}",
+                file, StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.xmldatamodifier.core.ContentReplaceRule;
 import com.xmldatamodifier.core.ContentRule;
+import com.xmldatamodifier.core.KeepRule;
 import com.xmldatamodifier.core.Rule;
 import com.xmldatamodifier.core.SkipRule;
 import org.junit.Before;
@@ -76,6 +77,17 @@ public class XmlRuleSetTest {
                 .isEmpty();
     }
 
+    @Test
+    public void testGetProjection() throws Exception {
+        XmlRuleSet keepRuleSet = new XmlRuleSet(ImmutableMap.of("/a/b", new XPathRule("/a/b", ImmutableSet.<Rule>of(new KeepRule()))));
+
+        assertThat(keepRuleSet.getProjection("/a")).isEqualTo(XmlRuleSet.Projection.ANCESTOR);
+        assertThat(keepRuleSet.getProjection("/a/b")).isEqualTo(XmlRuleSet.Projection.KEPT);
+        assertThat(keepRuleSet.getProjection("/a/b/c")).isEqualTo(XmlRuleSet.Projection.KEPT);
+        assertThat(keepRuleSet.getProjection("/a/bc")).isEqualTo(XmlRuleSet.Projection.PRUNED);
+        assertThat(keepRuleSet.getProjection("/d")).isEqualTo(XmlRuleSet.Projection.PRUNED);
+    }
+
     @Test(expected = NullPointerException.class)
     public void whenNoXpathIsPassedThenExceptionIsThrown() {
         ruleSet.getRulesForXPath(null, ContentRule.class);
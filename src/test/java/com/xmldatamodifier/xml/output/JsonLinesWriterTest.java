@@ -0,0 +1,76 @@
+package com.xmldatamodifier.xml.output;
+
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonLinesWriterTest {
+
+    private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+
+    @Test
+    public void testRecords() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLinesWriter writer = new JsonLinesWriter(output);
+        writer.startElement("", "CATALOG", "CATALOG", NO_ATTRIBUTES);
+        text(writer, "\n    ");
+
+        writer.recordStarted();
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "id", "id", "CDATA", "1");
+        attributes.addAttribute("", "zone", "zone", "CDATA", "\"north\"");
+        writer.startElement("", "PLANT", "PLANT", attributes);
+        text(writer, "\n        ");
+        element(writer, "COMMON", "Blood", "root");
+        text(writer, "\n        ");
+        element(writer, "TAG", "a & b");
+        element(writer, "TAG", "<c> & d");
+        text(writer, "\n        ");
+        AttributesImpl currency = new AttributesImpl();
+        currency.addAttribute("", "currency", "currency", "CDATA", "$");
+        writer.startElement("", "PRICE", "PRICE", currency);
+        text(writer, "0");
+        writer.endElement("", "PRICE", "PRICE");
+        text(writer, "\n    ");
+        writer.endElement("", "PLANT", "PLANT");
+        writer.recordEnded();
+
+        text(writer, "\n    ");
+        writer.recordStarted();
+        writer.startElement("", "PLANT", "PLANT", NO_ATTRIBUTES);
+        text(writer, "Mixed ");
+        element(writer, "B", "bold");
+        text(writer, " text");
+        writer.endElement("", "PLANT", "PLANT");
+        writer.recordEnded();
+
+        // skipped record
+        writer.recordStarted();
+        writer.recordEnded();
+        text(writer, "\n");
+        writer.endElement("", "CATALOG", "CATALOG");
+        writer.close();
+
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(
+                "{\"@id\":\"1\",\"@zone\":\"\\\"north\\\"\",\"COMMON\":\"Bloodroot\",\"TAG\":[\"a & b\",\"<c> & d\"],"
+                        + "\"PRICE\":{\"@currency\":\"$\",\"#text\":\"0\"}}\n"
+                        + "{\"B\":\"bold\",\"#text\":\"Mixed  text\"}\n");
+        assertThat(writer.getRecords()).isEqualTo(2);
+    }
+
+    private static void element(JsonLinesWriter writer, String name, String... texts) {
+        writer.startElement("", name, name, NO_ATTRIBUTES);
+        for (String text : texts) {
+            text(writer, text);
+        }
+        writer.endElement("", name, name);
+    }
+
+    private static void text(JsonLinesWriter writer, String text) {
+        writer.characters(text.toCharArray(), 0, text.length());
+    }
+}
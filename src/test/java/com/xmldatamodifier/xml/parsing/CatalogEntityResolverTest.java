@@ -0,0 +1,77 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CatalogEntityResolverTest {
+
+    private static final String DOCUMENT = "<!DOCTYPE books SYSTEM \"http://example.invalid/dtd/books.dtd\"><books>&publisher;</books>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolveBySystemIdFileName() throws Exception {
+        Files.write("<!ENTITY publisher \"Acme\">", folder.newFile("books.dtd"), StandardCharsets.UTF_8);
+
+        assertThat(parse(DOCUMENT, new CatalogEntityResolver(folder.getRoot().toPath(), false))).isEqualTo("Acme");
+    }
+
+    @Test
+    public void testResolveByPublicId() throws Exception {
+        Files.write("<!ENTITY publisher \"Acme\">", folder.newFile("publisher.dtd"), StandardCharsets.UTF_8);
+        Files.write("-//Example//Books//EN=publisher.dtd", folder.newFile(CatalogEntityResolver.CATALOG_FILE), StandardCharsets.UTF_8);
+
+        String document = "<!DOCTYPE books PUBLIC \"-//Example//Books//EN\" \"http://example.invalid/other.dtd\"><books>&publisher;</books>";
+        assertThat(parse(document, new CatalogEntityResolver(folder.getRoot().toPath(), false))).isEqualTo("Acme");
+    }
+
+    @Test
+    public void testEntitiesAreReadOnce() throws Exception {
+        File dtd = folder.newFile("books.dtd");
+        Files.write("<!ENTITY publisher \"Acme\">", dtd, StandardCharsets.UTF_8);
+        CatalogEntityResolver resolver = new CatalogEntityResolver(folder.getRoot().toPath(), false);
+        parse(DOCUMENT, resolver);
+
+        Files.write("<!ENTITY publisher \"Changed\">", dtd, StandardCharsets.UTF_8);
+        assertThat(parse(DOCUMENT, resolver)).isEqualTo("Acme");
+    }
+
+    @Test
+    public void testNeverFetch() throws Exception {
+        try {
+            parse(DOCUMENT, new CatalogEntityResolver(folder.getRoot().toPath(), false));
+            fail("Remote entity fetched");
+        } catch (SAXException e) {
+            assertThat(e.getMessage()).contains("http://example.invalid/dtd/books.dtd").contains("fetching is disabled");
+        }
+    }
+
+    private static String parse(String document, CatalogEntityResolver resolver) throws Exception {
+        XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        final StringBuilder text = new StringBuilder();
+        xmlReader.setContentHandler(new DefaultHandler() {
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+        });
+        xmlReader.setEntityResolver(resolver);
+        xmlReader.parse(new InputSource(new StringReader(document)));
+        return text.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElementOffsetTrackerTest {
+
+    private static final String DOCUMENT = "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE root [<!ENTITY inner \"<entity/>\">]>\n"
+            + "<root>"
+            + "<!-- <fake> -->"
+            + "<record id=\"a>b\">text</record>"
+            + "<other>&inner;<record/></other>"
+            + "</root>";
+
+    @Test
+    public void testOffsetsOfTheOpenElements() throws Exception {
+        final ElementOffsetTracker tracker = new ElementOffsetTracker();
+        final List<String> offsets = new ArrayList<>();
+        XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        ContentHandler filter = tracker.filter(new DefaultHandler2() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                offsets.add(qName + " @" + tracker.getElementOffset());
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                offsets.add(new String(ch, start, length) + " @" + tracker.getElementOffset());
+            }
+        });
+        xmlReader.setContentHandler(filter);
+        xmlReader.setProperty(SAXTransformationHandler.LEXICAL_HANDLER_PROPERTY, filter);
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        xmlReader.parse(new InputSource(new OffsetTrackingInputStream(new ByteArrayInputStream(bytes), new XmlByteScanner(tracker))));
+
+        assertThat(offsets).containsExactly(
+                "root @" + DOCUMENT.indexOf("<root>"),
+                "record @" + DOCUMENT.indexOf("<record id"),
+                "text @" + DOCUMENT.indexOf("<record id"),
+                "other @" + DOCUMENT.indexOf("<other>"),
+                // from the replacement text of an entity
+                "entity @" + DOCUMENT.indexOf("<other>"),
+                "record @" + DOCUMENT.indexOf("<record/>"));
+        assertThat(tracker.getElementOffset()).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.xmldatamodifier.xml.parsing;
+
+import com.google.common.io.Files;
+import com.xmldatamodifier.xml.XMLConverter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordConditionFilterTest {
+
+    private static final String INPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<customers>\n"
+            + "<customer id=\"1\"><name><![CDATA[Ann & <Co>]]></name><status>active</status></customer>\n"
+            + "<customer id=\"2\"><name>Bob</name><status> closed </status></customer>\n"
+            + "<customer id=\"3\"><name>Cid &amp; Co</name><status>suspended</status><note>call <b>back</b></note></customer>\n"
+            + "</customers>";
+
+    private static final String CONFIGURATION = "{\"rule_set\": [{\"xpath\": \"/customers/customer\", \"rules\": ["
+            + "{\"type\": \"DROP_IF\", \"child\": \"status\", \"equals\": \"closed\"},"
+            + "{\"type\": \"MASK_IF\", \"child\": \"status\", \"equals\": \"suspended\", \"replacement\": \"***\"}"
+            + "]}]}";
+
+    private static final String EXPECTED_OUTPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<customers>\n"
+            + "<customer id=\"1\"><name><![CDATA[Ann & <Co>]]></name><status>active</status></customer>\n"
+            + "\n"
+            + "<customer id=\"***\"><name>***</name><status>***</status><note>***<b>***</b></note></customer>\n"
+            + "</customers>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConditionalRules() throws Exception {
+        assertEquals(EXPECTED_OUTPUT, convert(SpillingEventBuffer.DEFAULT_SPILL_THRESHOLD));
+    }
+
+    @Test
+    public void testSpilledRecords() throws Exception {
+        assertEquals(EXPECTED_OUTPUT, convert(32));
+    }
+
+    private String convert(long recordBufferLimit) throws Exception {
+        File input = folder.newFile();
+        Files.write(INPUT, input, StandardCharsets.UTF_8);
+        File configuration = folder.newFile();
+        Files.write(CONFIGURATION, configuration, StandardCharsets.UTF_8);
+        File output = folder.newFile();
+
+        XMLConverter converter = new XMLConverter(input.getPath(), output.getPath(), configuration.getPath());
+        converter.setRecordBufferLimit(recordBufferLimit);
+        converter.convert();
+        return Files.toString(output, StandardCharsets.UTF_8);
+    }
+}
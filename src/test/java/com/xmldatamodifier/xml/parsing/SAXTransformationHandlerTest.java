@@ -9,6 +9,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.xml.sax.Attributes;
@@ -107,7 +108,9 @@ public class SAXTransformationHandlerTest {
     @Test
     public void testEndElement() throws Exception {
         handler.endElement(null, null, ELEMENT_NAME);
-        verify(writer, times(1)).write(format("</%s>", ELEMENT_NAME));
+        verify(writer, times(1)).write(SAXTransformationHandler.CLOSING_TAG_START);
+        verify(writer, times(1)).write(ELEMENT_NAME);
+        verify(writer, times(1)).write(SAXTransformationHandler.END_TAG);
         verify(xPathHandler, times(1)).exitLastEnteredNode();
     }
 
@@ -117,9 +120,10 @@ public class SAXTransformationHandlerTest {
         when(xPathHandler.getCurrentXPath()).thenReturn("/");
         when(ruleSet.getRulesForXPath("/", ContentReplaceRule.class)).thenReturn(ImmutableSet.<ContentReplaceRule>of());
 
-        handler.characters(CONTENT_NODE.toCharArray(), 0, CONTENT_NODE.length());
+        char[] content = CONTENT_NODE.toCharArray();
+        handler.characters(content, 0, content.length);
 
-        verify(writer, times(1)).write(any(String.class));
+        verify(writer, times(1)).write(content, 0, content.length);
         verify(xPathHandler, times(1)).getCurrentXPath();
         verify(ruleSet, times(1)).getRulesForXPath(anyString(), any(Class.class));
         verifyNoMoreInteractions(writer, ruleSet, xPathHandler);
@@ -142,6 +146,47 @@ public class SAXTransformationHandlerTest {
         assertThat(stringArgumentCaptor.getValue()).isEqualTo("0");
     }
 
+    @Test
+    public void testCharactersInSeveralChunksWRules() throws Exception {
+        Set<ContentRule> rules = ImmutableSet.<ContentRule>of(new ContentReplaceRule("\\d{3}", "#"));
+        when(xPathHandler.getCurrentXPath()).thenReturn("/");
+        when(ruleSet.getRulesForXPath("/", ContentRule.class)).thenReturn(rules);
+
+        handler.characters("ab12".toCharArray(), 0, 4);
+        handler.characters("34cd".toCharArray(), 0, 4);
+        handler.endElement(null, null, ELEMENT_NAME);
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).write("ab");
+        inOrder.verify(writer).write("#4");
+        inOrder.verify(writer).write("cd");
+        inOrder.verify(writer).write(SAXTransformationHandler.CLOSING_TAG_START);
+        verify(ruleSet, times(1)).getRulesForXPath(anyString(), any(Class.class));
+    }
+
+    @Test
+    public void testCData() throws Exception {
+        when(xPathHandler.getCurrentXPath()).thenReturn("/");
+        when(ruleSet.getRulesForXPath("/", ContentRule.class)).thenReturn(ImmutableSet.<ContentRule>of());
+
+        handler.startCDATA();
+        char[] firstChunk = "<a> & ]]".toCharArray();
+        char[] secondChunk = "> b".toCharArray();
+        handler.characters(firstChunk, 0, firstChunk.length);
+        handler.characters(secondChunk, 0, secondChunk.length);
+        handler.endCDATA();
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).write(SAXTransformationHandler.CDATA_START);
+        inOrder.verify(writer).write(firstChunk, 0, firstChunk.length);
+        inOrder.verify(writer).write(secondChunk, 0, 0);
+        inOrder.verify(writer).write(SAXTransformationHandler.CDATA_END);
+        inOrder.verify(writer).write(SAXTransformationHandler.CDATA_START);
+        inOrder.verify(writer).write(secondChunk, 0, secondChunk.length);
+        inOrder.verify(writer).write(SAXTransformationHandler.CDATA_END);
+        verifyNoMoreInteractions(writer);
+    }
+
     @Test
     public void testIgnorableWhitespace() throws Exception {
         Set<ContentRule> rules = ImmutableSet.<ContentRule>of(new ContentReplaceRule("*", "0"));
@@ -196,7 +241,8 @@ public class SAXTransformationHandlerTest {
 
         when(xPathHandler.getCurrentXPath()).thenReturn("/path/to/skip");
         handler.endElement(null, null, ELEMENT_NAME);
-        verify(writer, times(1)).write(format("</%s>", ELEMENT_NAME));
+        verify(writer, times(1)).write(SAXTransformationHandler.CLOSING_TAG_START);
+        verify(writer, times(1)).write(ELEMENT_NAME);
         verify(xPathHandler, times(2)).exitLastEnteredNode();
 
         when(xPathHandler.getCurrentXPath()).thenReturn("/another/path");
@@ -205,7 +251,7 @@ public class SAXTransformationHandlerTest {
 
         char[] characters = (ELEMENT_NAME + "_CHARS").toCharArray();
         handler.characters(characters, 0, characters.length);
-        verify(writer, times(1)).write(new String(characters).intern());
+        verify(writer, times(1)).write(characters, 0, characters.length);
 
         handler.writeAttribute("AttributeName", "AttributeValue");
         verify(writer, times(1)).write("AttributeName");
@@ -236,7 +282,8 @@ public class SAXTransformationHandlerTest {
 
     private void testEscapedCharacter(char characterToEscape, String expectedOutput) {
         char[] input = String.format("test %s", characterToEscape).toCharArray();
-        String escapedString = handler.escape(input, 0, input.length);
-        assertThat(escapedString).isEqualTo("test " + expectedOutput);
+        StringBuilder escaped = new StringBuilder();
+        handler.appendEscaped(input, 0, input.length, escaped);
+        assertThat(escaped.toString()).isEqualTo("test " + expectedOutput);
     }
 }
\ No newline at end of file
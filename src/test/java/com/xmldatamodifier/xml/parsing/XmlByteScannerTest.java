@@ -0,0 +1,81 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XmlByteScannerTest {
+
+    private static final String DOCUMENT = "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE root [<!ELEMENT root ANY> <!ATTLIST root a CDATA \"<b>\">]>\n"
+            + "<root>"
+            + "<!-- <fake> -->"
+            + "<record id=\"a>b\" other='/>'>text<![CDATA[<fake/>]]></record>"
+            + "<record/>"
+            + "<?pi <fake>?>"
+            + "<other><record></record></other>"
+            + "</root>";
+
+    @Test
+    public void testScanWholeDocument() {
+        assertThat(scan(1024)).containsExactly(
+                "start root 1 @" + DOCUMENT.indexOf("<root>"),
+                "start record 2 @" + DOCUMENT.indexOf("<record id"),
+                "end 2 @" + (DOCUMENT.indexOf("</record>") + "</record>".length()),
+                "start record 2 @" + DOCUMENT.indexOf("<record/>"),
+                "end 2 @" + (DOCUMENT.indexOf("<record/>") + "<record/>".length()),
+                "start other 2 @" + DOCUMENT.indexOf("<other>"),
+                "start record 3 @" + DOCUMENT.indexOf("<record></record></other>"),
+                "end 3 @" + (DOCUMENT.indexOf("</record></other>") + "</record>".length()),
+                "end 2 @" + (DOCUMENT.indexOf("</other>") + "</other>".length()),
+                "end 1 @" + DOCUMENT.length());
+    }
+
+    @Test
+    public void testScanAcrossBufferBoundaries() {
+        List<String> expected = scan(1024);
+        for (int chunkSize = 1; chunkSize < 16; chunkSize++) {
+            assertThat(scan(chunkSize)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testRecordOffsets() throws Exception {
+        RecordOffsetTracker tracker = new RecordOffsetTracker("/root/record");
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        new XmlByteScanner(tracker).scan(bytes, 0, bytes.length);
+
+        tracker.recordStarted();
+        tracker.recordEnded();
+        assertThat(tracker.getLastRecordStartOffset()).isEqualTo(DOCUMENT.indexOf("<record id"));
+        assertThat(tracker.getLastRecordEndOffset()).isEqualTo(DOCUMENT.indexOf("</record>") + "</record>".length());
+
+        tracker.recordStarted();
+        tracker.recordEnded();
+        assertThat(tracker.getLastRecordStartOffset()).isEqualTo(DOCUMENT.indexOf("<record/>"));
+    }
+
+    private List<String> scan(int chunkSize) {
+        final List<String> events = new ArrayList<>();
+        XmlByteScanner scanner = new XmlByteScanner(new XmlByteScanner.Listener() {
+            @Override
+            public void startTag(byte[] name, int nameLength, int depth, long offset) {
+                events.add("start " + new String(name, 0, nameLength, StandardCharsets.UTF_8) + " " + depth + " @" + offset);
+            }
+
+            @Override
+            public void endTag(int depth, long endOffset) {
+                events.add("end " + depth + " @" + endOffset);
+            }
+        });
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            scanner.scan(bytes, i, Math.min(chunkSize, bytes.length - i));
+        }
+        return events;
+    }
+}
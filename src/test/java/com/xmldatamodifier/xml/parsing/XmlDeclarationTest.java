@@ -0,0 +1,42 @@
+package com.xmldatamodifier.xml.parsing;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XmlDeclarationTest {
+
+    @Test
+    public void testDetectEncoding() throws Exception {
+        assertThat(parse("<root/>", StandardCharsets.UTF_8).getEncoding()).isEqualTo(StandardCharsets.UTF_8);
+        assertThat(parse("<?xml version='1.0' encoding='windows-1252'?><root/>", StandardCharsets.ISO_8859_1).getEncoding())
+                .isEqualTo(Charset.forName("windows-1252"));
+        assertThat(parse("<?xml version=\"1.0\" encoding=\"UTF-16\"?><root/>", StandardCharsets.UTF_16LE).getEncoding())
+                .isEqualTo(StandardCharsets.UTF_16LE);
+
+        XmlDeclaration declaration = parse("\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?><root/>", StandardCharsets.UTF_16BE);
+        assertThat(declaration.getEncoding()).isEqualTo(StandardCharsets.UTF_16BE);
+        assertThat(declaration.hasByteOrderMark()).isTrue();
+    }
+
+    @Test
+    public void testDocumentStart() throws Exception {
+        XmlDeclaration declaration = parse("<?xml version=\"1.1\" encoding=\"latin1\" standalone=\"no\"?><root/>", StandardCharsets.ISO_8859_1);
+        assertThat(declaration.toDocumentStart(StandardCharsets.ISO_8859_1))
+                .isEqualTo("<?xml version=\"1.1\" encoding=\"latin1\" standalone=\"no\"?>");
+        assertThat(declaration.toDocumentStart(StandardCharsets.UTF_8))
+                .isEqualTo("<?xml version=\"1.1\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        assertThat(declaration.toDocumentStart(StandardCharsets.UTF_16LE))
+                .isEqualTo("\uFEFF<?xml version=\"1.1\" encoding=\"UTF-16\" standalone=\"no\"?>");
+        assertThat(parse("<root/>", StandardCharsets.UTF_8).toDocumentStart(StandardCharsets.UTF_8))
+                .isEqualTo(SAXTransformationHandler.XML_DOCUMENT_START_DEFAULT);
+    }
+
+    private static XmlDeclaration parse(String document, Charset charset) {
+        byte[] bytes = document.getBytes(charset);
+        return XmlDeclaration.parse(bytes, bytes.length);
+    }
+}
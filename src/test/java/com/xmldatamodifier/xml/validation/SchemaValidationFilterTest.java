@@ -0,0 +1,93 @@
+package com.xmldatamodifier.xml.validation;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SchemaValidationFilterTest {
+
+    private static final String BOOKS_SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"%s>"
+            + "<xs:element name=\"books\"><xs:complexType><xs:sequence>"
+            + "<xs:element name=\"book\" maxOccurs=\"unbounded\"><xs:complexType><xs:sequence>"
+            + "<xs:element name=\"title\" type=\"xs:string\"/><xs:element name=\"price\" type=\"xs:decimal\"/>"
+            + "</xs:sequence><xs:attribute name=\"id\" type=\"xs:int\"/></xs:complexType></xs:element>"
+            + "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+
+    @Test
+    public void testErrorsAreCollected() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        SchemaValidationFilter filter = new SchemaValidationFilter(handler, schema(""), false);
+
+        // an invalid value is reported both as invalid for its type and as invalid for its element or attribute
+        parse(filter, "<books>\n<book id=\"1\"><title>Treasure island</title><price>4.50</price></book>\n"
+                + "<book id=\"x\"><title>Kidnapped</title><price>cheap</price></book>\n</books>");
+
+        assertThat(filter.getErrorCount()).isEqualTo(4);
+        assertThat(filter.getErrors()).hasSize(4);
+        ValidationError error = filter.getErrors().get(filter.getErrors().size() - 1);
+        assertThat(error.getSeverity()).isEqualTo(ValidationError.Severity.ERROR);
+        assertThat(error.getLine()).isEqualTo(3);
+        assertThat(error.getXPath()).isEqualTo("/books/book/price");
+        assertThat(filter.getErrors().get(0).getXPath()).isEqualTo("/books/book");
+        assertThat(handler.elements).isEqualTo(7);
+    }
+
+    @Test
+    public void testPrefixedNamesAreResolved() throws Exception {
+        SchemaValidationFilter filter = new SchemaValidationFilter(new CountingHandler(),
+                schema(" targetNamespace=\"urn:books\" elementFormDefault=\"qualified\""), false);
+
+        parse(filter, "<b:books xmlns:b=\"urn:books\"><b:book><b:title>Kidnapped</b:title><b:price>3</b:price></b:book>"
+                + "<book xmlns=\"urn:books\"><title>Treasure island</title><price>4.50</price></book></b:books>");
+
+        assertThat(filter.getErrors()).isEmpty();
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        SchemaValidationFilter filter = new SchemaValidationFilter(handler, schema(""), true);
+
+        try {
+            parse(filter, "<books><book><title>Kidnapped</title><price>cheap</price></book><book/></books>");
+            fail("Invalid input should fail the parsing");
+        } catch (SAXParseException e) {
+            assertThat(e.getMessage()).startsWith("Invalid input at /books/book/price: ");
+        }
+        assertThat(filter.getErrorCount()).isEqualTo(1);
+        assertThat(handler.elements).isEqualTo(4);
+    }
+
+    private static Schema schema(String schemaAttributes) throws Exception {
+        return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new StreamSource(new StringReader(String.format(BOOKS_SCHEMA, schemaAttributes))));
+    }
+
+    private static void parse(SchemaValidationFilter filter, String document) throws Exception {
+        XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        xmlReader.setContentHandler(filter);
+        xmlReader.parse(new InputSource(new StringReader(document)));
+    }
+
+    private static class CountingHandler extends DefaultHandler2 {
+        private int elements;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            elements++;
+        }
+    }
+}